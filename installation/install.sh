@@ -18,6 +18,8 @@ GITHOOK_COMMON_PATH=example_path
 find . -name "*.sh" -exec dos2unix {} \;
 find . -name "*pre-commit" -exec dos2unix {} \;
 find . -name "*commit-msg" -exec dos2unix {} \;
+find . -name "*post-commit" -exec dos2unix {} \;
+find . -name "*pre-push" -exec dos2unix {} \;
 
 ############################## GIT CONFIGURATION SETTINGS ##############################
 # ------------- GLOBAL GIT CONFIG SETTINGS -------------------------------
@@ -88,10 +90,33 @@ fi
        read -p "Add more JIRA projects [y/n]? " -n 1 -r add_projectkey_response
      done
   fi
+
+# Issue snapshot published to the common path by the team (java -jar githook.jar --publish-snapshot <file>)
+# The snapshot only has the issues the JIRA account of the publisher can browse. The publisher lists the projects whose
+# issues the account can all browse (git config --add githook.snapshot.completeproject EXAMPLE). Only missing keys
+# of these projects are rejected without asking JIRA, the other keys are always looked up in JIRA
+if [ ! -n "$(git config --local githook.snapshot.path)" -a -e ${GITHOOK_COMMON_PATH}/issuesnapshot.bin ];
+then
+   git config --local githook.snapshot.path ${GITHOOK_COMMON_PATH}/issuesnapshot.bin
+fi
 ############################## GIT CONFIGURATION SETTINGS ##############################
 
 # Copy the necessary pre-commit file to its correct location
 if [ ! -e .git/hooks/pre-commit ]; then
     cp -p ${GITHOOK_COMMON_PATH}/hooks/pre-commit .git/hooks/
 	cp -p ${GITHOOK_COMMON_PATH}/hooks/commit-msg .git/hooks/
-fi
\ No newline at end of file
+	cp -p ${GITHOOK_COMMON_PATH}/hooks/post-commit .git/hooks/
+fi
+
+# The validation of the pushed commits (e.g made using --no-verify or rebased) is optional
+if [ ! -e .git/hooks/pre-push ]; then
+    read -p "Validate the commits before pushing them [y/n]? " -n 1 -r install_pre_push; echo
+
+    if [ "${install_pre_push}" == Y -o "${install_pre_push}" == y ];
+    then
+      cp -p ${GITHOOK_COMMON_PATH}/hooks/pre-push .git/hooks/
+    fi
+fi
+
+# Copy the git hook (and its native executable, if published) and create its class data sharing archive
+sh .git/hooks/pre-commit
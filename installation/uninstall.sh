@@ -31,6 +31,14 @@ if [ -e .git/hooks/commit-msg ]; then
   rm -f .git/hooks/commit-msg
 fi
 
+if [ -e .git/hooks/post-commit ]; then
+  rm -f .git/hooks/post-commit
+fi
+
+if [ -e .git/hooks/pre-push ]; then
+  rm -f .git/hooks/pre-push
+fi
+
 if [ -d .git/hooks/util ]; then
     rm -rf .git/hooks/util
 fi
\ No newline at end of file
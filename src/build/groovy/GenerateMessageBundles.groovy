@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+
+// Compiles the messages*.properties bundles into ListResourceBundle classes and a MessageBundles class
+// selecting the bundle of a language. Each language bundle contains all keys of the base bundle, so no
+// parent lookup is needed at runtime. Executed by gmavenplus-plugin in the generate-sources phase.
+
+final String PACKAGE = 'org.karivar.utils.other'
+final String CHARSET = 'UTF-8'
+
+File resourceDirectory = new File(project.basedir, 'src/main/resources')
+File outputDirectory = new File(project.build.directory,
+        'generated-sources/messages/' + PACKAGE.replace('.', '/'))
+outputDirectory.mkdirs()
+
+def load = { File file ->
+    Properties properties = new Properties()
+    // The bundles are read as UTF-8 at runtime (see UTF8Control)
+    file.withReader(CHARSET) { reader -> properties.load(reader) }
+    properties
+}
+
+def escape = { String value ->
+    StringBuilder escaped = new StringBuilder()
+    for (char character : value.toCharArray()) {
+        if (character == '\\' as char) {
+            escaped.append('\\\\')
+        } else if (character == '"' as char) {
+            escaped.append('\\"')
+        } else if (character == '\n' as char) {
+            escaped.append('\\n')
+        } else if (character < (0x20 as char) || character > (0x7e as char)) {
+            escaped.append(String.format('\\u%04x', (int) character))
+        } else {
+            escaped.append(character)
+        }
+    }
+    escaped.toString()
+}
+
+def writeBundle = { String className, String source, Properties properties ->
+    StringBuilder contents = new StringBuilder()
+    new TreeSet<String>(properties.stringPropertyNames()).each { key ->
+        contents.append('            {"').append(escape(key)).append('", "')
+                .append(escape(properties.getProperty(key))).append('"},\n')
+    }
+
+    new File(outputDirectory, className + '.java').write("""\
+// Generated from ${source} by GenerateMessageBundles.groovy. Do not edit
+package ${PACKAGE};
+
+import java.util.ListResourceBundle;
+
+public class ${className} extends ListResourceBundle {
+    private static final Object[][] CONTENTS = {
+${contents}    };
+
+    @Override
+    protected Object[][] getContents() {
+        return CONTENTS;
+    }
+}
+""", CHARSET)
+}
+
+Properties baseProperties = load(new File(resourceDirectory, 'messages.properties'))
+writeBundle('Messages', 'messages.properties', baseProperties)
+
+List<String> languages = []
+resourceDirectory.eachFileMatch(~/messages_([a-z]{2,3})\.properties/) { File file ->
+    String language = (file.name =~ /messages_([a-z]{2,3})\.properties/)[0][1]
+    Properties properties = new Properties()
+    properties.putAll(baseProperties)
+    properties.putAll(load(file))
+
+    writeBundle('Messages_' + language, file.name, properties)
+    languages << language
+}
+
+StringBuilder cases = new StringBuilder()
+languages.sort().each { language ->
+    cases.append('            case "').append(language).append('":\n')
+            .append('                return new Messages_').append(language).append('();\n')
+}
+
+new File(outputDirectory, 'MessageBundles.java').write("""\
+// Generated by GenerateMessageBundles.groovy. Do not edit
+package ${PACKAGE};
+
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+public final class MessageBundles {
+
+    private MessageBundles() {
+    }
+
+    /**
+     * Gets the precompiled messages of the given language
+     * @param languageTag the IETF BCP 47 language tag (e.g EN or NO) or null to use the default locale
+     * @return the messages of the language or the default messages if the language isn't supported
+     */
+    public static ResourceBundle forLanguage(String languageTag) {
+        Locale locale = languageTag != null ? Locale.forLanguageTag(languageTag) : Locale.getDefault();
+
+        switch (locale.getLanguage()) {
+${cases}            default:
+                return new Messages();
+        }
+    }
+}
+""", CHARSET)
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.karivar.utils.domain.BasicJiraIssue;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.other.MessageBundles;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the hot paths of the commit message processing. The commit message varies from a single line
+ * to a multi-MB message of git commit -v (i.e with the diff below the scissors line), the number of JIRA
+ * project keys from 1 to 5000 and the number of related issues from 0 to 500.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitMessageBenchmark {
+    private static final String HOOK_INFORMATION = "git-jira-hook benchmark";
+
+    @State(Scope.Benchmark)
+    public static class MessageState {
+        // 1 line, a typical message and a diff of about 6 MB
+        @Param({ "1", "20", "100000" })
+        public int messageLines;
+
+        CommitMessageManipulator manipulator;
+        private File messageFile;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            List<String> message = new ArrayList<>();
+            message.add("P4999-123 -A Fix the rounding of the invoice totals");
+            if (messageLines > 1) {
+                message.add("");
+            }
+            for (int i = 2; i < messageLines; i++) {
+                if (i == 10) {
+                    message.add("# ------------------------ >8 ------------------------");
+                }
+                message.add(i < 10 ? "Explain why the change is needed " + i
+                        : "+        total = total.add(line.getAmount().setScale(2, RoundingMode.HALF_UP)); // " + i);
+            }
+
+            messageFile = File.createTempFile("COMMIT_EDITMSG", ".benchmark");
+            Files.asCharSink(messageFile, Charsets.UTF_8).writeLines(message);
+            manipulator = new CommitMessageManipulator(MessageBundles.forLanguage("en"));
+            manipulator.loadCommitMessage(messageFile.getPath());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            if (!messageFile.delete()) {
+                messageFile.deleteOnExit();
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ProjectState {
+        @Param({ "1", "100", "5000" })
+        public int projectKeys;
+
+        String jiraProjects;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            // The issue key of the message belongs to the last project (if it exists)
+            StringBuilder builder = new StringBuilder();
+            for (int i = 5000 - projectKeys; i < 5000; i++) {
+                builder.append(builder.length() > 0 ? " " : "").append('P').append(i);
+            }
+            jiraProjects = builder.toString();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class IssueState {
+        @Param({ "0", "10", "500" })
+        public int relatedIssues;
+
+        CommitMessageManipulator manipulator;
+        JiraIssue issue;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            ResourceBundle messages = MessageBundles.forLanguage("en");
+            manipulator = new CommitMessageManipulator(messages);
+
+            issue = new JiraIssue("P1-123", "Fix the rounding of the invoice totals");
+            issue.setSubtask(true);
+            issue.setParentIssue(Optional.of(new BasicJiraIssue("P1-100", "Invoicing")));
+            List<BasicJiraIssue> related = new ArrayList<>();
+            for (int i = 0; i < relatedIssues; i++) {
+                related.add(new BasicJiraIssue("P1-" + (1000 + i), "Related issue number " + i));
+            }
+            issue.setRelatedIssues(related);
+        }
+    }
+
+    @Benchmark
+    public Optional<String> getJiraIssueKeyFromCommitMessage(MessageState message, ProjectState project) {
+        return message.manipulator.getJiraIssueKeyFromCommitMessage(project.jiraProjects);
+    }
+
+    @Benchmark
+    public String getStrippedFirstCommitLine(MessageState message) {
+        return message.manipulator.getStrippedFirstCommitLine(
+                "p4999-123 -A -O Fix the rounding of the invoice totals");
+    }
+
+    @Benchmark
+    public boolean hasTraceabilityInformation(MessageState message) {
+        return message.manipulator.hasTraceabilityInformation();
+    }
+
+    @Benchmark
+    public List<String> addTraceabilityInformationToMessage(IssueState issue) {
+        return issue.manipulator.addTraceabilityInformationToMessage(new ArrayList<>(), issue.issue,
+                HOOK_INFORMATION, false, true);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of compiling and evaluating the decision table of the commit rules. The rules are random allow and
+ * deny rules of 50 issue types, 20 statuses and 100 projects, from 100 to 10000 rules.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecisionTableBenchmark {
+    private static final int ISSUE_TYPES = 50;
+    private static final int STATUSES = 20;
+    private static final int PROJECTS = 100;
+
+    @Param({ "100", "10000" })
+    public int rules;
+
+    private List<CommitRule> commitRules;
+    private DecisionTable table;
+    private final String[] issueTypes = new String[ISSUE_TYPES];
+    private final String[] statuses = new String[STATUSES];
+    private final String[] projects = new String[PROJECTS];
+    private int evaluation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        commitRules = new ArrayList<>();
+        for (int i = 0; i < rules; i++) {
+            String definition = (random.nextInt(4) == 0 ? "deny" : "allow")
+                    + " type=Type" + random.nextInt(ISSUE_TYPES)
+                    + " status=Status" + random.nextInt(STATUSES) + ",Status" + random.nextInt(STATUSES)
+                    + (random.nextBoolean() ? " project=P" + random.nextInt(PROJECTS) : "")
+                    + (random.nextInt(3) == 0 ? " branch=release/*" : "");
+            commitRules.add(CommitRule.parse(definition, Collections.emptyMap()));
+        }
+        table = DecisionTable.compile(commitRules);
+
+        for (int i = 0; i < ISSUE_TYPES; i++) {
+            issueTypes[i] = "Type" + i;
+        }
+        for (int i = 0; i < STATUSES; i++) {
+            statuses[i] = "Status" + i;
+        }
+        for (int i = 0; i < PROJECTS; i++) {
+            projects[i] = "P" + i;
+        }
+    }
+
+    @Benchmark
+    public DecisionTable compile() {
+        return DecisionTable.compile(commitRules);
+    }
+
+    @Benchmark
+    public boolean isAllowed() {
+        // Each invocation evaluates another combination of issue type, status, project and branch
+        int i = evaluation++ & Integer.MAX_VALUE;
+        return table.isAllowed(issueTypes[i % ISSUE_TYPES], statuses[(i / ISSUE_TYPES) % STATUSES], null,
+                projects[i % PROJECTS], (i & 1) == 0 ? "master" : "release/1.0", null);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of looking up the issues of a commit in the issue snapshot of a team, i.e mapping the snapshot and
+ * rejecting a mistyped key or finding an existing issue. The snapshot has from 10000 to 500000 issues.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IssueSnapshotBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SnapshotState {
+        @Param({ "10000", "500000" })
+        public int issues;
+
+        File snapshotFile;
+        IssueSnapshot snapshot;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            List<JiraIssue> snapshotIssues = new ArrayList<>();
+            // Every tenth issue is deleted
+            for (int i = 1; i <= issues; i++) {
+                if (i % 10 != 0) {
+                    JiraIssue issue = new JiraIssue("EXAMPLE-" + i, "Add functionality for accounting " + i);
+                    issue.setStatus("In Progress");
+                    issue.setStatusId("3");
+                    issue.setStatusCategory("indeterminate");
+                    issue.setIssueTypeName("Task");
+                    issue.setAssignee(Optional.of(new User("alice", "Alice")));
+                    snapshotIssues.add(issue);
+                }
+            }
+
+            snapshotFile = File.createTempFile("issuesnapshot", ".benchmark");
+            IssueSnapshot.write(snapshotFile, snapshotIssues, System.currentTimeMillis(),
+                    Collections.singletonList("EXAMPLE"), Collections.emptyList());
+            snapshot = IssueSnapshot.open(snapshotFile).get();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            if (!snapshotFile.delete()) {
+                snapshotFile.deleteOnExit();
+            }
+        }
+    }
+
+    @Benchmark
+    public Optional<IssueSnapshot> open(SnapshotState state) {
+        return IssueSnapshot.open(state.snapshotFile);
+    }
+
+    @Benchmark
+    public boolean isMissing(SnapshotState state) {
+        return state.snapshot.isMissing("EXAMPLE-" + (state.issues / 10 * 10));
+    }
+
+    @Benchmark
+    public Optional<JiraIssue> getIssue(SnapshotState state) {
+        return state.snapshot.getIssue("EXAMPLE-" + (state.issues / 2 + 1));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.karivar.utils.other.MessageBundles;
+import org.karivar.utils.other.UTF8Control;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of loading the messages using ResourceBundle.getBundle compared to the precompiled message bundles.
+ * The first load is what a hook invocation pays, so it's measured once in each of 10 fresh JVMs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBundlesBenchmark {
+    private static final String LANGUAGE = "NO";
+    private static final String KEY = "commit.convention.summary";
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public String firstLoadBundle() {
+        return getBundle().getString(KEY);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public String firstLoadCompiled() {
+        return MessageBundles.forLanguage(LANGUAGE).getString(KEY);
+    }
+
+    @Benchmark
+    public String loadBundle() {
+        // The bundle is cached by ResourceBundle, so the cache is cleared to load it again
+        ResourceBundle.clearCache();
+        return getBundle().getString(KEY);
+    }
+
+    @Benchmark
+    public String loadCompiled() {
+        return MessageBundles.forLanguage(LANGUAGE).getString(KEY);
+    }
+
+    private static ResourceBundle getBundle() {
+        return ResourceBundle.getBundle("messages", Locale.forLanguageTag(LANGUAGE), new UTF8Control());
+    }
+}
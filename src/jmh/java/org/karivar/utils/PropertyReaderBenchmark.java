@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.karivar.utils.other.MessageBundles;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of loading and compiling the commit policy, both from the files of the hook only and with
+ * a commit rules file in the override directory of the repository with up to 1000 rules.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PropertyReaderBenchmark {
+
+    @Param({ "10", "1000" })
+    public int overrideRules;
+
+    private PropertyReader propertyReader;
+    private File overrideDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        propertyReader = new PropertyReader(MessageBundles.forLanguage("en"));
+
+        List<String> rules = new ArrayList<>();
+        rules.add("group release-managers=alice, bob, carol");
+        for (int i = 0; i < overrideRules; i++) {
+            rules.add(i % 2 == 0
+                    ? "allow branch=release/" + i + "/* status=In_Review assignee=@release-managers"
+                    : "deny type=Bug status=Closed project=P" + i);
+        }
+
+        overrideDirectory = Files.createTempDir();
+        Files.asCharSink(new File(overrideDirectory, "commitrules"), Charsets.UTF_8).writeLines(rules);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        // Files are deleted in the reverse order of registration, i.e the directory last
+        overrideDirectory.deleteOnExit();
+        new File(overrideDirectory, "commitrules").deleteOnExit();
+    }
+
+    @Benchmark
+    public CommitPolicy getCommitPolicy() {
+        return propertyReader.getCommitPolicy(null);
+    }
+
+    @Benchmark
+    public CommitPolicy getCommitPolicyWithOverrides() {
+        return propertyReader.getCommitPolicy(overrideDirectory);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.io.Files;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of checking whether a commit only changes paths exempt from JIRA validation. The index has from 1000
+ * to 200000 files in directories of 100 files, and the commit changes README.md only. Version 4 of the index
+ * compresses the paths using the previous path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StagedChangesBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class IndexState {
+        @Param({ "1000", "200000" })
+        public int files;
+
+        @Param({ "2", "4" })
+        public int version;
+
+        GitRepository gitRepository;
+        ExemptPaths exemptPaths;
+        private File gitDirectory;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            gitDirectory = Files.createTempDir();
+            Map<String, String> paths = new TreeMap<>();
+            paths.put("README.md", GitIndexWriter.blobId("readme"));
+            for (int i = 0; i < files; i++) {
+                paths.put("src/module" + i / 100 + "/File" + i + ".java", GitIndexWriter.blobId("file " + i));
+            }
+
+            GitIndexWriter writer = new GitIndexWriter(gitDirectory);
+            writer.commit(paths);
+            paths.put("README.md", GitIndexWriter.blobId("new readme"));
+            writer.writeIndex(paths, version, Collections.singleton(""));
+
+            gitRepository = new GitRepository(gitDirectory);
+            exemptPaths = new ExemptPaths(Collections.singletonList("*.md"));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            MoreFiles.deleteRecursively(gitDirectory.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+    }
+
+    @Benchmark
+    public GitIndex readIndex(IndexState state) throws IOException {
+        return GitIndex.read(state.gitRepository.getIndexFile());
+    }
+
+    @Benchmark
+    public boolean allExempt(IndexState state) throws IOException {
+        return new StagedChanges(state.gitRepository).allMatch(state.exemptPaths::isExempt);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.PropertyConfigurator;
+import org.crac.CheckpointException;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import org.crac.RestoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URL;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * This class is responsible for the checkpoint of a warmed-up hook JVM on Linux using CRaC
+ * (java -XX:CRaCCheckpointTo=githook.crac -jar githook.jar --checkpoint). The training run of the class data
+ * sharing archive is repeated before the checkpoint, which loads the message bundles, parses the commit policy,
+ * initializes the classes of the JIRA client and lets the JIT compile the code of a hook run.<br>
+ * Restoring the checkpoint (java -XX:CRaCRestoreFrom=githook.crac -Dgithook.restore.args=.git/COMMIT_EDITMSG)
+ * continues the JVM after the checkpoint with the arguments of the restore. The git configuration is read and
+ * the JIRA client is created after the restore, so the checkpoint holds no credentials or connections. The JVM
+ * is restored in the directory of the checkpoint, i.e the checkpoint belongs to one repository.
+ * The metrics and phases of the warm-up runs are removed, so they aren't reported by the restored hook runs.
+ */
+final class CheckpointRestore implements Resource {
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointRestore.class);
+
+    static final String RESTORE_ARGUMENTS_PROPERTY = "githook.restore.args";
+    private static final String LOG_CONFIGURATION = "log4j.properties";
+    private static final int WARM_UP_RUNS = 10;
+
+    // The CRaC context only holds a weak reference to the registered resources
+    private static final CheckpointRestore RESOURCE = new CheckpointRestore();
+
+    private CheckpointRestore() {
+    }
+
+    /**
+     * Warms up the hook and checkpoints the JVM. The method returns in the restored JVM
+     * @param hookVersion the version of the hook
+     * @return the arguments of the restore or empty if the JVM can't be checkpointed
+     */
+    static Optional<String[]> checkpoint(String hookVersion) {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            ClassDataSharingTraining.run(hookVersion);
+        }
+
+        try {
+            Core.getGlobalContext().register(RESOURCE);
+            Core.checkpointRestore();
+        } catch (CheckpointException | RestoreException e) {
+            logger.error("Unable to checkpoint the JVM", e);
+            return Optional.empty();
+        } catch (RuntimeException e) {
+            // The JVM doesn't support CRaC
+            logger.error("Unable to checkpoint the JVM: {}", e.getMessage());
+            return Optional.empty();
+        }
+
+        List<String> arguments = Splitter.on(CharMatcher.whitespace()).omitEmptyStrings()
+                .splitToList(System.getProperty(RESTORE_ARGUMENTS_PROPERTY, ""));
+        return Optional.of(arguments.toArray(new String[arguments.size()]));
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+        // Open files can't be checkpointed. The log file is opened again after the restore
+        LogManager.shutdown();
+        clearWarmUpRuns();
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        // Also called if the checkpoint failed
+        LogManager.resetConfiguration();
+        URL configuration = CheckpointRestore.class.getClassLoader().getResource(LOG_CONFIGURATION);
+        if (configuration != null) {
+            PropertyConfigurator.configure(configuration);
+        }
+        clearWarmUpRuns();
+        PhaseTimer.markRestored();
+    }
+
+    /**
+     * Removes the metrics and the phases recorded by the warm-up runs (e.g JIRA responses and cache requests)
+     */
+    static void clearWarmUpRuns() {
+        HookMetrics.reset();
+        PhaseTimer.reset();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.google.common.io.Resources;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.karivar.utils.domain.IssueKeyNotFoundException;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.Verdict;
+import org.karivar.utils.other.MessageBundles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for the training run used to create the class data sharing archive of the hook
+ * (java -XX:ArchiveClassesAtExit=githook.jsa -jar githook.jar --cds-training). The run validates a commit
+ * message of a temporary git directory against a JIRA stub on the loopback interface, so the archive contains
+ * the classes of a normal hook run (JIRA client, JSON parsing, commit policy and the commit message) without
+ * contacting the real JIRA or touching the repository.
+ */
+final class ClassDataSharingTraining {
+    private static final Logger logger = LoggerFactory.getLogger(ClassDataSharingTraining.class);
+
+    private static final String PROJECT_KEY = "TRAINING";
+    private static final String ISSUE_RESOURCE = "cds/issue.json";
+    private static final String STATUSES_RESOURCE = "cds/statuses.json";
+    private static final String ADDRESS_PLACEHOLDER = "${address}";
+    private static final String OTHER_LANGUAGE = "no";
+    private static final long DECISION_LOG_TIMEOUT_MILLIS = 5000;
+
+    private ClassDataSharingTraining() {
+    }
+
+    /**
+     * Runs the training
+     * @param hookVersion the version of the hook
+     * @return true if the training run validated the commit message
+     */
+    static boolean run(String hookVersion) {
+        HttpServer server = null;
+        File workDirectory = Files.createTempDir();
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            String address = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+                    + "/";
+            String issue = Resources.toString(Resources.getResource(ISSUE_RESOURCE), Charsets.UTF_8)
+                    .replace(ADDRESS_PLACEHOLDER, address);
+            String statuses = Resources.toString(Resources.getResource(STATUSES_RESOURCE), Charsets.UTF_8)
+                    .replace(ADDRESS_PLACEHOLDER, address);
+            server.createContext("/rest/api/latest/issue/", exchange -> respond(exchange, issue));
+            server.createContext("/rest/api/2/project/", exchange -> respond(exchange, statuses));
+            server.start();
+
+            return validate(hookVersion, address, new File(workDirectory, GitRepository.DEFAULT_GIT_DIRECTORY));
+        } catch (IOException | IssueKeyNotFoundException e) {
+            logger.debug("The training run failed", e);
+            return false;
+        } catch (RuntimeException e) {
+            // The classes loaded until the failure are still archived. Never fail the installation
+            logger.debug("The training run failed", e);
+            return false;
+        } finally {
+            if (server != null) {
+                server.stop(0);
+            }
+            try {
+                MoreFiles.deleteRecursively(workDirectory.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+            } catch (IOException e) {
+                logger.debug("Unable to delete {}", workDirectory, e);
+            }
+        }
+    }
+
+    private static boolean validate(String hookVersion, String address, File gitDirectory)
+            throws IOException, IssueKeyNotFoundException {
+        // Both message bundles are archived. The training itself uses the default language
+        MessageBundles.forLanguage(OTHER_LANGUAGE);
+        ResourceBundle messages = MessageBundles.forLanguage(null);
+
+        File commitMessageFile = new File(gitDirectory, "COMMIT_EDITMSG");
+        Files.createParentDirs(commitMessageFile);
+        Files.asCharSink(new File(gitDirectory, "HEAD"), Charsets.UTF_8).write("ref: refs/heads/master\n");
+        Files.asCharSink(commitMessageFile, Charsets.UTF_8).write(PROJECT_KEY
+                + "-1 Train the class data sharing archive\n\n# Please enter the commit message\n");
+
+        GitRepository gitRepository = GitRepository.fromCommitMessageFile(commitMessageFile.getPath());
+        CommitPolicy commitPolicy = CommitPolicy.get(messages, gitRepository.getPolicyDirectory());
+        CommitMessageManipulator manipulator = new CommitMessageManipulator(messages);
+        manipulator.loadCommitMessage(commitMessageFile.getPath());
+        manipulator.setCommitPolicy(commitPolicy);
+        manipulator.setBranch(gitRepository.getCurrentBranch().orElse(null));
+        Optional<String> issueKey = manipulator.getJiraIssueKeyFromCommitMessage(
+                manipulator.getJiraIssueKeyFromPattern(PROJECT_KEY));
+
+        JiraConnector jiraConnector = new JiraConnector(messages);
+        JiraIssue populatedIssue;
+        try {
+            jiraConnector.connectToJira("training", Base64.getEncoder().encodeToString(
+                    "training".getBytes(Charsets.UTF_8)), address);
+            populatedIssue = jiraConnector.getJiraPopulatedIssue(issueKey, commitPolicy.getIssueLinks());
+            new StatusResolver(new StatusCatalogCache(gitRepository.getHookDirectory()), () -> jiraConnector,
+                    TimeUnit.HOURS.toMillis(1)).resolve(populatedIssue);
+        } finally {
+            // A checkpointed JVM can't have open connections
+            jiraConnector.close();
+        }
+
+        JiraIssueCache cache = new JiraIssueCache(gitRepository.getHookDirectory(), TimeUnit.MINUTES.toMillis(1));
+        cache.putIssue(populatedIssue);
+        cache.getFreshIssue(populatedIssue.getKey());
+
+        boolean accepted = manipulator.checkStateAndManipulateCommitMessage(populatedIssue, false, null,
+                hookVersion);
+
+        Decision decision = new Decision("commit-msg", accepted ? Verdict.ACCEPTED : Verdict.REJECTED,
+                manipulator.getDecisionReason());
+        decision.setPhasesFromTimer();
+        DecisionLog decisionLog = new DecisionLog(gitRepository.getHookDirectory());
+        decisionLog.record(decision);
+        decisionLog.close(DECISION_LOG_TIMEOUT_MILLIS);
+        return accepted;
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(Charsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, bytes.length);
+        try (OutputStream stream = exchange.getResponseBody()) {
+            stream.write(bytes);
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.FileWriteMode;
+import com.google.common.io.Files;
+import org.karivar.utils.domain.Verdict;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for the ledger of already validated commits. Each line in the ledger has the format
+ * &lt;commit SHA-1&gt; &lt;verdict&gt; &lt;JIRA issue key or -&gt; &lt;policy version&gt; &lt;timestamp&gt;.
+ * The latest line for a commit wins.<br>
+ * Only commits decided by the commit-msg hook are recorded after the commit. The hook leaves a one-shot verdict
+ * marker for the final commit message, which the post-commit hook consumes. Commits made without the commit-msg
+ * hook (e.g using --no-verify, cherry-picks and rebases) have no marker and are left for the range validation.
+ */
+class CommitLedger {
+    private final Logger logger = LoggerFactory.getLogger(CommitLedger.class);
+
+    private static final String LEDGER_FILENAME = "ledger";
+    private static final String VERDICT_FILENAME = "verdict";
+    private static final String NO_ISSUE_KEY = "-";
+    private static final String SCISSORS_LINE = "# ------------------------ >8 ------------------------";
+    // A marker left by an aborted commit isn't used by a much later commit with the same message
+    private static final long VERDICT_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final File ledgerFile;
+    private final File verdictFile;
+    private Map<String, Entry> entries;
+
+    CommitLedger(File hookDirectory) {
+        this.ledgerFile = new File(hookDirectory, LEDGER_FILENAME);
+        this.verdictFile = new File(hookDirectory, VERDICT_FILENAME);
+    }
+
+    /**
+     * Gets the verdict of an already validated commit
+     * @param sha the SHA-1 of the commit
+     * @param policyVersion the version of the current commit policy
+     * @return the verdict or empty if the commit isn't validated using the current commit policy
+     */
+    Optional<Verdict> getVerdict(String sha, String policyVersion) {
+        Entry entry = getEntries().get(sha);
+
+        if (entry != null && entry.policyVersion.equals(policyVersion)) {
+            return Optional.of(entry.verdict);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Records the verdict of a validated commit
+     * @param sha the SHA-1 of the commit
+     * @param verdict the verdict
+     * @param issueKey the JIRA issue key or null if the commit doesn't refer to any JIRA issue
+     * @param policyVersion the version of the commit policy used
+     */
+    void record(String sha, Verdict verdict, String issueKey, String policyVersion) {
+        String key = issueKey != null ? issueKey : NO_ISSUE_KEY;
+        long timestamp = System.currentTimeMillis();
+
+        try {
+            Files.createParentDirs(ledgerFile);
+            Files.asCharSink(ledgerFile, Charsets.UTF_8, FileWriteMode.APPEND)
+                    .write(sha + " " + verdict + " " + key + " " + policyVersion + " " + timestamp + "\n");
+
+            if (entries != null) {
+                entries.put(sha, new Entry(verdict, policyVersion));
+            }
+        } catch (IOException e) {
+            logger.error("Unable to update the commit ledger {}", ledgerFile, e);
+        }
+    }
+
+    /**
+     * Leaves the verdict of the commit-msg hook for the final commit message. The verdict is recorded by
+     * {@link #recordMarkedVerdict} when the commit is made. A rejected commit removes any previous marker
+     * @param commitMessage the lines of the final commit message
+     * @param verdict the verdict of the commit-msg hook
+     * @param issueKey the JIRA issue key or null if the commit doesn't refer to any JIRA issue
+     * @param policyVersion the version of the commit policy used
+     */
+    void markVerdict(List<String> commitMessage, Verdict verdict, String issueKey, String policyVersion) {
+        try {
+            if (!verdict.isAccepted()) {
+                java.nio.file.Files.deleteIfExists(verdictFile.toPath());
+                return;
+            }
+
+            Files.createParentDirs(verdictFile);
+            Files.asCharSink(verdictFile, Charsets.UTF_8).write(hashMessage(commitMessage) + " " + verdict + " "
+                    + (issueKey != null ? issueKey : NO_ISSUE_KEY) + " " + policyVersion + " "
+                    + System.currentTimeMillis() + "\n");
+        } catch (IOException e) {
+            logger.error("Unable to write the verdict {}", verdictFile, e);
+        }
+    }
+
+    /**
+     * Records the verdict left by the commit-msg hook if it was left for the message of the commit.
+     * The marker is removed in any case
+     * @param sha the SHA-1 of the commit
+     * @param commitMessage the lines of the message of the commit
+     * @return true if the verdict is recorded
+     */
+    boolean recordMarkedVerdict(String sha, List<String> commitMessage) {
+        if (!verdictFile.exists()) {
+            return false;
+        }
+
+        try {
+            List<String> columns = Splitter.on(' ').splitToList(Files.asCharSource(verdictFile, Charsets.UTF_8)
+                    .read().trim());
+            java.nio.file.Files.delete(verdictFile.toPath());
+
+            if (columns.size() == 5 && columns.get(0).equals(hashMessage(commitMessage))
+                    && System.currentTimeMillis() - Long.parseLong(columns.get(4)) <= VERDICT_MAX_AGE_MILLIS) {
+                String issueKey = columns.get(2);
+                record(sha, Verdict.valueOf(columns.get(1)), NO_ISSUE_KEY.equals(issueKey) ? null : issueKey,
+                        columns.get(3));
+                return true;
+            }
+            logger.debug("The verdict {} isn't left for the commit {}", columns, sha);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.debug("Unable to read the verdict {}", verdictFile, e);
+        }
+        return false;
+    }
+
+    /**
+     * Hashes the commit message as stored by git, i.e without git comments, the diff after the scissors line,
+     * trailing whitespace and empty lines
+     * @param commitMessage the lines of the commit message
+     * @return the hash of the commit message
+     */
+    static String hashMessage(List<String> commitMessage) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (String line : commitMessage) {
+            if (line.equals(SCISSORS_LINE)) {
+                break;
+            }
+
+            String trimmedLine = CharMatcher.whitespace().trimTrailingFrom(line);
+            if (!trimmedLine.isEmpty() && !trimmedLine.startsWith("#")) {
+                hasher.putString(trimmedLine, Charsets.UTF_8).putChar('\n');
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private Map<String, Entry> getEntries() {
+        if (entries == null) {
+            entries = new HashMap<>();
+
+            if (ledgerFile.exists()) {
+                try {
+                    Splitter splitter = Splitter.on(' ');
+                    for (String line : Files.readLines(ledgerFile, Charsets.UTF_8)) {
+                        List<String> columns = splitter.splitToList(line);
+                        if (columns.size() == 5) {
+                            entries.put(columns.get(0), new Entry(Verdict.valueOf(columns.get(1)), columns.get(3)));
+                        }
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    logger.debug("Unable to read the commit ledger {}", ledgerFile, e);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static class Entry {
+        private final Verdict verdict;
+        private final String policyVersion;
+
+        Entry(Verdict verdict, String policyVersion) {
+            this.verdict = verdict;
+            this.policyVersion = policyVersion;
+        }
+    }
+}
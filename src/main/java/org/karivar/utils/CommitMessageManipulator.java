@@ -10,6 +10,7 @@ package org.karivar.utils;
 import com.google.common.base.Charsets;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.Lists;
 import org.karivar.utils.domain.BasicJiraIssue;
 import org.karivar.utils.domain.JiraIssue;
@@ -22,6 +23,7 @@ import java.io.IOException;
 import com.google.common.io.Files;
 
 import java.util.*;
+import java.util.function.Supplier;
 
 
 /**
@@ -34,21 +36,56 @@ class CommitMessageManipulator {
     private static final String JIRA_COMMUNICATION_OVERRIDDEN = "-O";
     private static final String JIRA_ASSIGNEE_OVERRIDDEN = "-A";
     private static final String JIRA_COMMIT_OVERRIDDEN = "NONE";
+    private static final Splitter KEY_SPLITTER = Splitter.onPattern("[\\s,;]+").omitEmptyStrings();
 
     private final ResourceBundle messages;
     private String commitMessageFilename;
     private List<String> commitFileContents = null;
     private boolean jiraIssueKeyFound;
+    private boolean traceabilityInformationReused;
+    private boolean traceabilityInformationInNotes;
+    private CommitPolicy commitPolicy;
+    private String branch;
+    private String decisionReason;
+    private boolean exemptFromValidation;
+    private Supplier<String> jiraUsername = Suppliers.memoize(GitConfig::getJiraUsername);
 
     public CommitMessageManipulator(ResourceBundle bundle) {
         messages = bundle;
     }
 
+    /**
+     * Sets the commit message without a commit message file (e.g validating a message in-process). The
+     * manipulated message is only kept in memory, see {@link #getCommitMessage()}
+     * @param commitMessage the lines of the commit message
+     */
+    void setCommitMessage(List<String> commitMessage) {
+        commitFileContents = new ArrayList<>(commitMessage);
+        commitMessageFilename = null;
+    }
+
+    /**
+     * Gets the lines of the commit message, manipulated if the commit is accepted
+     * @return the commit message or an empty list if not loaded
+     */
+    List<String> getCommitMessage() {
+        return commitFileContents != null ? new ArrayList<>(commitFileContents) : new ArrayList<>();
+    }
+
+    /**
+     * Sets the JIRA username of the committer used to check the assignee. The username of the git
+     * configuration is used if not set
+     * @param username the JIRA username
+     */
+    void setJiraUsername(String username) {
+        jiraUsername = () -> username;
+    }
+
     void loadCommitMessage(String filename) {
 
         // Load the commit message file
         if (!Strings.isNullOrEmpty(filename)) {
-            try {
+            try (PhaseTimer.Phase ignored = PhaseTimer.start("commitmessage.load")) {
                 File file = new File(filename);
                 commitFileContents = Files.readLines(file, Charsets.UTF_8);
                 logger.debug("The file contents are: \n\t {}", commitFileContents);
@@ -77,17 +114,46 @@ class CommitMessageManipulator {
         return isOverridden;
     }
 
+    /**
+     * Checks whether the given commit message was accepted with the communication with JIRA overridden (-O). The
+     * option is removed from the first line, so only the traceability information added by this hook tells
+     * @param message the lines of the commit message (e.g of a commit being pushed)
+     * @return true if the communication with JIRA was overridden
+     */
+    boolean isCommunicationOverridden(List<String> message) {
+        int start = getTraceabilityInformationStart(message);
+        if (start < 0) {
+            return false;
+        }
+
+        String communicationOverridden = messages.getString("commit.convention.communicationoverridden").trim();
+        for (String line : message.subList(start, getTraceabilityInformationEnd(message))) {
+            if (line.startsWith(communicationOverridden)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     boolean isCommitOverridden() {
+        return commitFileContents != null && commitFileContents.size() > 0
+                && isCommitOverridden(commitFileContents.get(0));
+    }
+
+    /**
+     * Checks whether the given commit line (e.g the first line of any commit message) overrides the commit
+     * @param commitLine the commit line
+     * @return true if the commit is overridden
+     */
+    boolean isCommitOverridden(String commitLine) {
         boolean isCommitOverridden = false;
-        if (commitFileContents != null && commitFileContents.size() > 0) {
-            String[] wordList = commitFileContents.get(0).split("\\s+");
+        String[] wordList = commitLine.split("\\s+");
 
-            if (wordList.length > 0) {
-                String first = wordList[0];
+        if (wordList.length > 0) {
+            String first = wordList[0];
 
-                if (first.equalsIgnoreCase(JIRA_COMMIT_OVERRIDDEN)) {
-                    isCommitOverridden = true;
-                }
+            if (first.equalsIgnoreCase(JIRA_COMMIT_OVERRIDDEN)) {
+                isCommitOverridden = true;
             }
         }
         return isCommitOverridden;
@@ -116,20 +182,9 @@ class CommitMessageManipulator {
             if (!Strings.isNullOrEmpty(firstLineOfCommitMessage)) {
 
                 if (!Strings.isNullOrEmpty(jiraIssuePattern)) {
-                    Splitter jiraPatternSplitter = Splitter.on(" ");
-                    List<String> commitLineWords = jiraPatternSplitter.splitToList(firstLineOfCommitMessage);
-                    List<String> jiraIssuePatterns = jiraPatternSplitter.splitToList(jiraIssuePattern);
-
-                    if (!commitLineWords.isEmpty()) {
-                        for (String pattern : jiraIssuePatterns) {
-                            for (String word : commitLineWords) {
-                                if (word.toUpperCase().startsWith(pattern.toUpperCase())) {
-                                    jiraIssueKey = Optional.of(word.toUpperCase());
-                                    jiraIssueKeyFound = true;
-                                    break;
-                                }
-                            }
-                        }
+                    jiraIssueKey = findJiraIssueKey(firstLineOfCommitMessage, jiraIssuePattern);
+                    if (jiraIssueKey.isPresent()) {
+                        jiraIssueKeyFound = true;
                     }
                 } else {
                     logger.error(messages.getString("githook.jiraissue.pattern.notfound"));
@@ -142,6 +197,86 @@ class CommitMessageManipulator {
         return jiraIssueKey;
     }
 
+    /**
+     * Finds the JIRA issue key in the given commit line (e.g the first line of any commit message)
+     * @param commitLine the commit line
+     * @param jiraIssuePattern the JIRA issue patterns
+     * @return the JIRA issue key or empty if not found
+     */
+    Optional<String> findJiraIssueKey(String commitLine, String jiraIssuePattern) {
+        Optional<String> jiraIssueKey = Optional.empty();
+        Splitter jiraPatternSplitter = Splitter.on(" ");
+        List<String> commitLineWords = jiraPatternSplitter.splitToList(commitLine);
+        List<String> jiraIssuePatterns = jiraPatternSplitter.splitToList(jiraIssuePattern);
+
+        if (!commitLineWords.isEmpty()) {
+            for (String pattern : jiraIssuePatterns) {
+                for (String word : commitLineWords) {
+                    if (word.toUpperCase().startsWith(pattern.toUpperCase())) {
+                        jiraIssueKey = Optional.of(word.toUpperCase());
+                        break;
+                    }
+                }
+            }
+        }
+        return jiraIssueKey;
+    }
+
+    /**
+     * Gets all JIRA issue keys of the commit message: the keys of the first line followed by the keys of the
+     * given trailers (e.g Refs: PROJ-3, PROJ-4). Each key is only included once
+     * @param jiraIssuePattern the JIRA issue patterns
+     * @param trailers the names of the trailers referring to JIRA issues (may be empty)
+     * @return the JIRA issue keys in the order of appearance
+     */
+    List<String> getJiraIssueKeysFromCommitMessage(String jiraIssuePattern, Collection<String> trailers) {
+        Set<String> jiraIssueKeys = new LinkedHashSet<>();
+        if (commitFileContents != null && commitFileContents.size() > 0 && !Strings.isNullOrEmpty(jiraIssuePattern)) {
+            jiraIssueKeys.addAll(findJiraIssueKeys(commitFileContents.get(0), jiraIssuePattern));
+
+            int traceabilityStart = getTraceabilityInformationStart(commitFileContents);
+            int end = traceabilityStart >= 0 ? traceabilityStart : commitFileContents.size();
+            for (String line : commitFileContents.subList(1, end)) {
+                for (String trailer : trailers) {
+                    if (!line.startsWith("#") && line.length() > trailer.length()
+                            && line.regionMatches(true, 0, trailer, 0, trailer.length())
+                            && line.charAt(trailer.length()) == ':') {
+                        jiraIssueKeys.addAll(findJiraIssueKeys(line.substring(trailer.length() + 1),
+                                jiraIssuePattern));
+                    }
+                }
+            }
+            jiraIssueKeyFound = !jiraIssueKeys.isEmpty();
+        }
+        logger.debug("Found the JIRA issue keys {}", jiraIssueKeys);
+
+        return new ArrayList<>(jiraIssueKeys);
+    }
+
+    /**
+     * Finds all JIRA issue keys in the given text (e.g the first line of any commit message). The keys may be
+     * separated by commas
+     * @param text the text
+     * @param jiraIssuePattern the JIRA issue patterns
+     * @return the JIRA issue keys in the order of appearance
+     */
+    List<String> findJiraIssueKeys(String text, String jiraIssuePattern) {
+        List<String> jiraIssueKeys = new ArrayList<>();
+        List<String> jiraIssuePatterns = Splitter.on(" ").omitEmptyStrings().splitToList(jiraIssuePattern);
+
+        for (String word : KEY_SPLITTER.split(text)) {
+            for (String pattern : jiraIssuePatterns) {
+                if (word.toUpperCase().startsWith(pattern.toUpperCase())) {
+                    if (!jiraIssueKeys.contains(word.toUpperCase())) {
+                        jiraIssueKeys.add(word.toUpperCase());
+                    }
+                    break;
+                }
+            }
+        }
+        return jiraIssueKeys;
+    }
+
     /**
      * Removes any options from the original commit message (first line only)
      * @return the first line without any options
@@ -175,12 +310,51 @@ class CommitMessageManipulator {
      */
     void manipulateCommitMessage(JiraIssue populatedIssue, String hookInformation, String filename,
                                         boolean communicationOverridden, boolean assigneeOverridden) {
+        manipulateCommitMessage(populatedIssue != null ? Collections.singletonList(populatedIssue)
+                : Collections.emptyList(), hookInformation, filename, communicationOverridden, assigneeOverridden);
+    }
+
+    private void manipulateCommitMessage(List<JiraIssue> populatedIssues, String hookInformation, String filename,
+                                         boolean communicationOverridden, boolean assigneeOverridden) {
+        try (HookEvent event = HookEvent.messageRewrite(!populatedIssues.isEmpty()
+                ? populatedIssues.get(0).getKey() : null)) {
+            manipulateCommitMessage(populatedIssues, hookInformation, filename, communicationOverridden,
+                    assigneeOverridden, event);
+        }
+    }
+
+    private void manipulateCommitMessage(List<JiraIssue> populatedIssues, String hookInformation, String filename,
+                                         boolean communicationOverridden, boolean assigneeOverridden,
+                                         HookEvent event) {
+        List<String> originalMessage = commitFileContents != null ? Lists.newArrayList(commitFileContents) : null;
+        int traceabilityStart = getTraceabilityInformationStart(commitFileContents);
+        int traceabilityEnd = getTraceabilityInformationEnd(commitFileContents);
+
         List<String> manipulatedMessage = getStrippedCommitMessage();
         if (manipulatedMessage != null && manipulatedMessage.size() > 0 ) {
-            manipulatedMessage = addTraceabilityInformationToMessage(manipulatedMessage, populatedIssue,
-                    hookInformation, communicationOverridden, assigneeOverridden);
+            List<String> traceabilityInformation = addTraceabilityInformationToMessage(Lists.newArrayList(),
+                    populatedIssues, hookInformation, communicationOverridden, assigneeOverridden);
+
+            if (traceabilityStart >= 0) {
+                // The message already contains traceability information (e.g git commit --amend).
+                // Replace it in place instead of adding another one
+                List<String> existingInformation = manipulatedMessage.subList(traceabilityStart,
+                        traceabilityEnd + 1);
+                existingInformation.clear();
+                existingInformation.addAll(traceabilityInformation);
+            } else {
+                manipulatedMessage.addAll(traceabilityInformation);
+            }
             logger.debug("The manipulated message is {}", manipulatedMessage);
+            event.setLines(manipulatedMessage.size());
+
+            if (Strings.isNullOrEmpty(filename) && !traceabilityInformationReused
+                    && manipulatedMessage.equals(originalMessage)) {
+                logger.debug("The traceability information is unchanged. Leaving the commit message as it is");
+                return;
+            }
             writeCommitMessage(manipulatedMessage, filename);
+            event.setChanged(true);
         } else {
             logger.error("The commit message is empty");
         }
@@ -196,11 +370,71 @@ class CommitMessageManipulator {
      */
     boolean checkStateAndManipulateCommitMessage(JiraIssue populatedIssue, boolean jiraCommunicationOverridden,
                                                  String filename, String hookVersion) {
+        return checkStateAndManipulateCommitMessage(Collections.singletonList(populatedIssue), false,
+                jiraCommunicationOverridden, filename, hookVersion);
+    }
+
+    /**
+     * Checks each of the JIRA issues of the commit against the commit policy and combines the checks: either all
+     * issues or at least one of them must allow the commit. The summary of each found issue is added to the
+     * commit message of an accepted commit
+     * @param populatedIssues the populated JIRA issues in the order of the commit message. An issue which
+     * isn't found is null. No issues is the same as a single issue which isn't found
+     * @param anyIssueAllowed true if one issue allowing the commit is enough. Otherwise all issues must allow it
+     * @param jiraCommunicationOverridden true if the communication with JIRA is overridden
+     * @param filename The name of the file to be written to. Not null when testing only!
+     * @param hookVersion The version number of the hook
+     * @return true if everything went fine. Otherwise false is returned.
+     */
+    boolean checkStateAndManipulateCommitMessage(List<JiraIssue> populatedIssues, boolean anyIssueAllowed,
+                                                 boolean jiraCommunicationOverridden, String filename,
+                                                 String hookVersion) {
+        List<JiraIssue> checkedIssues = !populatedIssues.isEmpty()
+                ? populatedIssues : Collections.singletonList(null);
+        boolean assigneeOverridden = isAssigneeOverridden();
+        int allowedIssues = 0;
+        String rejectionReason = null;
+
+        for (JiraIssue populatedIssue : checkedIssues) {
+            String reason = checkState(populatedIssue, assigneeOverridden);
+            if (reason == null) {
+                allowedIssues++;
+            } else if (rejectionReason == null) {
+                rejectionReason = reason;
+            }
+        }
+
+        if (anyIssueAllowed ? allowedIssues > 0 : rejectionReason == null) {
+            decisionReason = isCommunicationOverridden() || isCommitOverridden() ? Decision.REASON_OVERRIDE
+                    : exemptFromValidation ? Decision.REASON_EXEMPT : Decision.REASON_ALLOWED;
+
+            // Status is OK. Start manipulating commit message and accept commits to repo
+            List<JiraIssue> foundIssues = new ArrayList<>();
+            checkedIssues.stream().filter(Objects::nonNull).forEach(foundIssues::add);
+            manipulateCommitMessage(foundIssues, getHookInformation(hookVersion), filename,
+                    jiraCommunicationOverridden, assigneeOverridden);
+
+        } else {
+            decisionReason = rejectionReason;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks the status and assignee of the JIRA issue
+     * @param populatedIssue the populated JIRA issue or null if not found
+     * @param assigneeOverridden true if assignee is overrridden
+     * @return null if the issue allows the commit. Otherwise the reason of the rejection
+     */
+    private String checkState(JiraIssue populatedIssue, boolean assigneeOverridden) {
         // check status against allowed statues
-        boolean statusOK = checkAllowedStatus(populatedIssue);
+        boolean statusOK;
+        try (PhaseTimer.Phase ignored = PhaseTimer.start("policy.evaluate")) {
+            statusOK = checkAllowedStatus(populatedIssue);
+        }
 
         boolean assigneeOK;
-        boolean assigneeOverridden = isAssigneeOverridden();
         if (!assigneeOverridden) {
             // check assignee
             assigneeOK = checkAssignee(populatedIssue);
@@ -212,30 +446,216 @@ class CommitMessageManipulator {
         }
 
         if (statusOK && assigneeOK) {
-            // Status is OK. Start manipulating commit message and accept commits to repo
-            manipulateCommitMessage(populatedIssue, getHookInformation(hookVersion), filename,
-                    jiraCommunicationOverridden, assigneeOverridden);
+            return null;
+        }
 
-        } else {
-            // Status is not OK.
-            if (!statusOK) {
-                if (populatedIssue != null) {
-                    logger.info(messages.getString("commitnotallowedstatus")
-                            + populatedIssue.getStatus());
-                }
+        // Status is not OK.
+        if (!statusOK) {
+            if (populatedIssue != null) {
+                logger.info(messages.getString("commitnotallowedstatus")
+                        + populatedIssue.getStatus());
+            }
 
-                if (!assigneeOK) {
-                    if (populatedIssue.getAssignee() != null && populatedIssue.getAssignee().isPresent()) {
-                        logger.info(messages.getString("commitnotallowedassignee")
-                                + populatedIssue.getAssignee().get().getDisplayName());
-                    } else {
-                        logger.info(messages.getString("commitnotallowedassigneeunknown"));
-                    }
+            if (!assigneeOK) {
+                if (populatedIssue.getAssignee() != null && populatedIssue.getAssignee().isPresent()) {
+                    logger.info(messages.getString("commitnotallowedassignee")
+                            + populatedIssue.getAssignee().get().getDisplayName());
+                } else {
+                    logger.info(messages.getString("commitnotallowedassigneeunknown"));
                 }
             }
-            return false;
+            return populatedIssue != null ? Decision.REASON_STATUS : Decision.REASON_ISSUE_NOT_FOUND;
+        }
+        return Decision.REASON_ASSIGNEE;
+    }
+
+    /**
+     * Gets the reason of the latest decision of {@link #checkStateAndManipulateCommitMessage}
+     * @return the reason (e.g status or assignee) or null if no decision is made
+     */
+    String getDecisionReason() {
+        return decisionReason;
+    }
+
+    /**
+     * Sets whether the commit only changes paths exempt from JIRA validation. An exempt commit is accepted
+     * without any JIRA issue
+     * @param exempt true if the commit is exempt
+     */
+    void setExemptFromValidation(boolean exempt) {
+        exemptFromValidation = exempt;
+    }
+
+    /**
+     * Sets whether the JIRA issue information (summary, parent and related issues) is stored in git notes
+     * after the commit instead of in the commit message.
+     * @param inNotes true if the information is stored in git notes
+     */
+    void setTraceabilityInformationInNotes(boolean inNotes) {
+        traceabilityInformationInNotes = inNotes;
+    }
+
+    /**
+     * Creates the JIRA issue information stored in git notes. The note uses the same conventions as
+     * the traceability information in the commit message.
+     * @param populatedIssue the populated JIRA issue
+     * @param hookVersion The version number of the hook
+     * @return the lines of the note
+     */
+    List<String> getTraceabilityNote(JiraIssue populatedIssue, String hookVersion) {
+        List<String> note = Lists.newArrayList();
+        String summaryInfo = getSummaryInformation(populatedIssue);
+
+        if (summaryInfo != null) {
+            note.add(summaryInfo);
+        }
+
+        if (populatedIssue != null && populatedIssue.isSubtask()) {
+            String parentInfo = getParentIssueInformation(populatedIssue);
+            if (parentInfo != null) {
+                note.add(parentInfo);
+            }
+        }
+
+        List<String> relatedIssues = getRelatedIssuesInformation(populatedIssue);
+        if (relatedIssues != null) {
+            note.addAll(relatedIssues);
+        }
+
+        note.add(getHookInformation(hookVersion));
+        return note;
+    }
+
+    /**
+     * Checks whether the commit message already contains traceability information added by this hook,
+     * e.g when the commit is amended.
+     * @return true if the traceability information is found
+     */
+    boolean hasTraceabilityInformation() {
+        return getTraceabilityInformationStart(commitFileContents) >= 0;
+    }
+
+    /**
+     * Reuses the traceability information of the commit being cherry-picked, reverted or merged. The information
+     * is only reused if the source commit message contains traceability information added by this hook and the
+     * commit message either refers to the same JIRA issue or doesn't refer to any JIRA issue at all.
+     * @param sourceMessage the commit message of the source commit
+     * @param jiraIssuePattern the JIRA issue patterns
+     * @return the JIRA issue key of the source commit or empty if the information can't be reused
+     */
+    Optional<String> reuseTraceabilityInformation(List<String> sourceMessage, String jiraIssuePattern) {
+        if (commitFileContents == null || commitFileContents.isEmpty()
+                || sourceMessage == null || sourceMessage.isEmpty() || Strings.isNullOrEmpty(jiraIssuePattern)) {
+            return Optional.empty();
+        }
+
+        int sourceStart = getTraceabilityInformationStart(sourceMessage);
+        Optional<String> sourceIssueKey = findJiraIssueKey(sourceMessage.get(0), jiraIssuePattern);
+
+        if (sourceStart < 0 || !sourceIssueKey.isPresent()) {
+            logger.debug("The source commit has no traceability information to reuse");
+            return Optional.empty();
+        }
+
+        Optional<String> issueKey = findJiraIssueKey(commitFileContents.get(0), jiraIssuePattern);
+        if (issueKey.isPresent() && !issueKey.get().equals(sourceIssueKey.get())) {
+            logger.debug("The commit refers to {} while the source commit refers to {}", issueKey.get(),
+                    sourceIssueKey.get());
+            return Optional.empty();
+        }
+
+        List<String> sourceInformation = sourceMessage.subList(sourceStart,
+                getTraceabilityInformationEnd(sourceMessage) + 1);
+
+        int start = getTraceabilityInformationStart(commitFileContents);
+        if (start >= 0) {
+            // Cherry-picked commits keep the message as it is
+            List<String> information = commitFileContents.subList(start,
+                    getTraceabilityInformationEnd(commitFileContents) + 1);
+            return information.equals(sourceInformation) ? sourceIssueKey : Optional.empty();
+        }
+
+        // Add the information after the message itself, but before any trailing empty lines or git comments
+        int end = commitFileContents.size();
+        while (end > 1 && (commitFileContents.get(end - 1).trim().isEmpty()
+                || commitFileContents.get(end - 1).startsWith("#"))) {
+            end--;
+        }
+        commitFileContents.addAll(end, sourceInformation);
+        traceabilityInformationReused = true;
+        logger.debug("Reused the traceability information of the source commit {}", sourceInformation);
+
+        return sourceIssueKey;
+    }
+
+    /**
+     * Saves the commit message with the options removed from the first line.
+     */
+    void saveCommitMessage() {
+        List<String> strippedMessage = getStrippedCommitMessage();
+        if (!strippedMessage.isEmpty()) {
+            writeCommitMessage(strippedMessage, null);
         }
-        return true;
+    }
+
+    /**
+     * Finds the start of the traceability information previously added by this hook. The information starts
+     * with an empty line followed by lines using the commit conventions and ends with the hook information.
+     * @param message the lines of the commit message
+     * @return the index of the empty line starting the traceability information or -1 if not found
+     */
+    private int getTraceabilityInformationStart(List<String> message) {
+        int end = getTraceabilityInformationEnd(message);
+
+        if (end > 0) {
+            List<String> conventions = Lists.newArrayList(
+                    messages.getString("commit.convention.summary"),
+                    messages.getString("commit.convention.parentissue"),
+                    messages.getString("commit.convention.relatedissue"),
+                    messages.getString("commit.convention.communicationoverridden"),
+                    messages.getString("commit.convention.exempt"),
+                    messages.getString("commit.convention.assigneeoverridden"));
+
+            int start = end - 1;
+            while (start > 0 && startsWithAny(message.get(start), conventions)) {
+                start--;
+            }
+
+            if (start > 0 && message.get(start).isEmpty()) {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the hook information line ending the traceability information. Trailing empty lines
+     * and git comments are skipped.
+     * @param message the lines of the commit message
+     * @return the index of the hook information line or -1 if not found
+     */
+    private int getTraceabilityInformationEnd(List<String> message) {
+        if (message != null && message.size() > 2) {
+            int end = message.size() - 1;
+            while (end > 0 && (message.get(end).trim().isEmpty() || message.get(end).startsWith("#"))) {
+                end--;
+            }
+
+            String hookInformation = messages.getString("commit.convention.hookinformation");
+            if (end > 0 && message.get(end).startsWith(hookInformation.trim())) {
+                return end;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsWithAny(String line, List<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (line.startsWith(prefix.trim())) {
+                return true;
+            }
+        }
+        return false;
     }
 
     String getJiraIssueKeyFromPattern(String jiraProjectPattern) {
@@ -260,12 +680,15 @@ class CommitMessageManipulator {
     private void writeCommitMessage(List<String> commitFileContents, String filename) {
         File file;
         // Filename is not null for testing
-        if (Strings.isNullOrEmpty(filename)) {
+        if (Strings.isNullOrEmpty(filename) && commitMessageFilename == null) {
+            // The commit message isn't loaded from a file
+            return;
+        } else if (Strings.isNullOrEmpty(filename)) {
             file = new File(commitMessageFilename);
         } else {
             file = new File(filename);
         }
-        try {
+        try (PhaseTimer.Phase ignored = PhaseTimer.start("commitmessage.write")) {
             Files.asCharSink(file, Charsets.UTF_8).writeLines(commitFileContents);
         } catch (IOException e) {
             logger.error(messages.getString("writefile.commit.io"), e);
@@ -283,22 +706,52 @@ class CommitMessageManipulator {
             return true;
         }
 
-        if (populatedIssue != null) {
-            PropertyReader propertyReader = new PropertyReader(messages);
-            List<String> issueTypeStatuses = propertyReader.getIssueTypesAndStatuses()
-                    .get(populatedIssue.getIssueTypeName());
+        if (exemptFromValidation) {
+            return true;
+        }
 
-            if (issueTypeStatuses != null && !issueTypeStatuses.isEmpty()) {
+        return isStatusAllowed(populatedIssue);
+    }
 
-                for (String status : issueTypeStatuses) {
-                    if (status.equals(populatedIssue.getStatus())) {
-                        return true;
-                    }
-                }
-            }
+    /**
+     * Checks the JIRA issue against the rules of the commit policy
+     * @param populatedIssue the populated JIRA issue
+     * @return true if the status allows commits
+     */
+    boolean isStatusAllowed(JiraIssue populatedIssue) {
+        if (populatedIssue == null) {
+            return false;
         }
 
-        return false;
+        try (HookEvent event = HookEvent.policyEvaluation(populatedIssue.getKey(),
+                populatedIssue.getIssueTypeName(), populatedIssue.getStatus(), branch)) {
+            boolean allowed = getCommitPolicy().isCommitAllowed(populatedIssue, branch);
+            event.setAllowed(allowed);
+            return allowed;
+        }
+    }
+
+    /**
+     * Sets the branch being committed to. The branch is used by the commit rules
+     * @param branch the name of the branch or null if unknown
+     */
+    void setBranch(String branch) {
+        this.branch = branch;
+    }
+
+    /**
+     * Sets the commit policy used to check the JIRA issues. The default policy of the hook is used if not set
+     * @param commitPolicy the commit policy
+     */
+    void setCommitPolicy(CommitPolicy commitPolicy) {
+        this.commitPolicy = commitPolicy;
+    }
+
+    private CommitPolicy getCommitPolicy() {
+        if (commitPolicy == null) {
+            commitPolicy = CommitPolicy.get(messages, null);
+        }
+        return commitPolicy;
     }
 
     private String getHookInformation(String version) {
@@ -311,8 +764,7 @@ class CommitMessageManipulator {
                 && populatedIssue.getAssignee().isPresent()) {
             String assignedUsername = populatedIssue.getAssignee().get().getName();
 
-            if (!Strings.isNullOrEmpty(GitConfig.getJiraUsername())
-                    && assignedUsername.equals(GitConfig.getJiraUsername())) {
+            if (!Strings.isNullOrEmpty(jiraUsername.get()) && assignedUsername.equals(jiraUsername.get())) {
                 return true;
             }
         } else {
@@ -322,25 +774,63 @@ class CommitMessageManipulator {
         return false;
     }
 
+    /**
+     * Adds the traceability information (summary, parent and related issues, overrides and hook information)
+     * @param manipulatedMessage the list to add the information to
+     * @param populatedIssue the populated JIRA issue
+     * @param hookInformation string containing information about the hook
+     * @param communicationOverridden true if the communication with JIRA is overridden
+     * @param assigneeOverridden true if assignee is overrridden
+     * @return the given list
+     */
+    List<String> addTraceabilityInformationToMessage(final List<String> manipulatedMessage,
+                                                     JiraIssue populatedIssue, String hookInformation,
+                                                     boolean communicationOverridden,
+                                                     boolean assigneeOverridden) {
+        return addTraceabilityInformationToMessage(manipulatedMessage, populatedIssue != null
+                ? Collections.singletonList(populatedIssue) : Collections.emptyList(), hookInformation,
+                communicationOverridden, assigneeOverridden);
+    }
+
+    /**
+     * Adds the traceability information of several JIRA issues. Each summary line starts with the key of its
+     * issue, while the parent and related issues shared by the issues are only added once
+     * @param manipulatedMessage the list to add the information to
+     * @param populatedIssues the populated JIRA issues
+     * @param hookInformation string containing information about the hook
+     * @param communicationOverridden true if the communication with JIRA is overridden
+     * @param assigneeOverridden true if assignee is overrridden
+     * @return the given list
+     */
     private List<String> addTraceabilityInformationToMessage(final List<String> manipulatedMessage,
-                                                             JiraIssue populatedIssue, String hookInformation,
+                                                             List<JiraIssue> populatedIssues, String hookInformation,
                                                              boolean communicationOverridden,
                                                              boolean assigneeOverridden) {
         ArrayList<String> addedTraceabilityMessage = (ArrayList<String>) manipulatedMessage;
         addedTraceabilityMessage.add("");
-        String summaryInfo = getSummaryInformation(populatedIssue);
 
-        if (summaryInfo !=null) {
-            addedTraceabilityMessage.add(summaryInfo);
-        }
+        // The JIRA issue information is added to git notes after the commit when stored in notes
+        if (!traceabilityInformationInNotes) {
+            Set<String> issueInformation = new LinkedHashSet<>();
+            Set<String> relatedIssueInformation = new LinkedHashSet<>();
 
-        if (populatedIssue != null && populatedIssue.isSubtask()) {
-            addedTraceabilityMessage.add(getParentIssueInformation(populatedIssue));
-        }
+            for (JiraIssue populatedIssue : populatedIssues) {
+                issueInformation.add(populatedIssues.size() > 1
+                        ? messages.getString("commit.convention.summary") + populatedIssue.getKey() + " "
+                        + populatedIssue.getSummary()
+                        : getSummaryInformation(populatedIssue));
 
-        List<String> relatedIssues = getRelatedIssuesInformation(populatedIssue);
-        if (relatedIssues != null) {
-            addedTraceabilityMessage.addAll(relatedIssues);
+                if (populatedIssue.isSubtask()) {
+                    issueInformation.add(getParentIssueInformation(populatedIssue));
+                }
+
+                List<String> relatedIssues = getRelatedIssuesInformation(populatedIssue);
+                if (relatedIssues != null) {
+                    relatedIssueInformation.addAll(relatedIssues);
+                }
+            }
+            addedTraceabilityMessage.addAll(issueInformation);
+            addedTraceabilityMessage.addAll(relatedIssueInformation);
         }
 
         List<String> additionalInformation = getAdditionalInformation(communicationOverridden, assigneeOverridden);
@@ -393,6 +883,8 @@ class CommitMessageManipulator {
 
         if (jiraCommunicationOverridden) {
             additionalInfo.add(messages.getString("commit.convention.communicationoverridden"));
+        } else if (exemptFromValidation) {
+            additionalInfo.add(messages.getString("commit.convention.exempt"));
         }
 
         if (assigneeOverridden) {
@@ -402,7 +894,12 @@ class CommitMessageManipulator {
         return additionalInfo;
     }
 
-    private String getStrippedFirstCommitLine(final String firstLine) {
+    /**
+     * Removes the override options from the first line of the commit message
+     * @param firstLine the first line
+     * @return the first line without the options
+     */
+    String getStrippedFirstCommitLine(final String firstLine) {
         List<String> arrayList = Collections.singletonList(firstLine);
         String[] wordList = arrayList.get(0).split("\\s+");
 
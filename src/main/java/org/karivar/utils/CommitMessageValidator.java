@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.karivar.utils.domain.IssueKeyNotFoundException;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.Verdict;
+import org.karivar.utils.other.MessageBundles;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validates commit messages in-process the way the commit-msg hook does, so build tools and IDEs can
+ * validate many messages without starting the hook for each of them. Nothing is written to the repository,
+ * the caches of the hook or the decision log.<br>
+ * The validator is thread-safe. The threads share the commit policy, the JIRA client and the fetched JIRA
+ * issues (each issue is fetched once while fresh), while each message is validated on its own. The commit
+ * policy is reloaded when its override files change.<br>
+ * Usage: new CommitMessageValidator(HookConfiguration.fromGit()).validate(message,
+ * new RepositoryContext("master", null))
+ */
+public final class CommitMessageValidator {
+    private static final long MAXIMUM_CACHED_ISSUES = 10000;
+    private static final Splitter LINE_SPLITTER = Splitter.onPattern("\r\n|\n|\r");
+
+    private final HookConfiguration configuration;
+    private final ResourceBundle messages;
+    private final IssueSource issueSource;
+    private final Cache<String, JiraIssue> issues;
+
+    /**
+     * Creates a validator fetching the JIRA issues from the JIRA of the configuration
+     * @param configuration the configuration of the hook
+     */
+    public CommitMessageValidator(HookConfiguration configuration) {
+        this(configuration, null);
+    }
+
+    /**
+     * Creates a validator
+     * @param configuration the configuration of the hook
+     * @param issueSource the source of the JIRA issues or null to fetch them from the JIRA of the configuration
+     */
+    public CommitMessageValidator(HookConfiguration configuration, IssueSource issueSource) {
+        this.configuration = configuration;
+        messages = MessageBundles.forLanguage(configuration.getLanguage());
+        this.issueSource = issueSource != null ? issueSource
+                : new JiraIssueSource(configuration, messages, () -> getCommitPolicy().getIssueLinks());
+        issues = CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_CACHED_ISSUES)
+                .expireAfterWrite(configuration.getCacheTimeToLiveMinutes(), TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * Validates the commit message
+     * @param commitMessage the commit message (including the override options of the hook, if any)
+     * @param context the repository state of the commit
+     * @return the decision and the commit message as the hook would have written it
+     */
+    public ValidationResult validate(String commitMessage, RepositoryContext context) {
+        List<String> lines = splitLines(commitMessage);
+        CommitMessageManipulator manipulator = new CommitMessageManipulator(messages);
+        manipulator.setCommitMessage(lines);
+        manipulator.setCommitPolicy(getCommitPolicy());
+        manipulator.setBranch(context.getBranch().orElse(null));
+        manipulator.setJiraUsername(context.getJiraUsername().orElse(configuration.getJiraUsername()));
+
+        boolean communicationOverridden = manipulator.isCommunicationOverridden();
+        List<String> issueKeys = Collections.emptyList();
+        List<JiraIssue> issues = new ArrayList<>();
+
+        if (!communicationOverridden && !manipulator.isCommitOverridden()) {
+            issueKeys = manipulator.getJiraIssueKeysFromCommitMessage(configuration.getJiraProjects(),
+                    configuration.getIssueKeyTrailers());
+            boolean jiraError = false;
+            for (String issueKey : issueKeys) {
+                try {
+                    issues.add(getIssue(issueKey));
+                } catch (IssueKeyNotFoundException e) {
+                    // One issue is enough when any issue may allow the commit
+                    jiraError = true;
+                    issues.add(null);
+                }
+            }
+
+            if (jiraError && (!configuration.isAnyIssueKeyAllowed() || issues.stream().allMatch(Objects::isNull))) {
+                return new ValidationResult(Verdict.REJECTED, Decision.REASON_JIRA_ERROR, issueKeys, lines, false);
+            }
+        }
+
+        boolean accepted = manipulator.checkStateAndManipulateCommitMessage(issues,
+                configuration.isAnyIssueKeyAllowed(), communicationOverridden, null, GitHook.HOOK_VERSION);
+        String reason = manipulator.getDecisionReason();
+        Verdict verdict = !accepted ? Verdict.REJECTED
+                : Decision.REASON_OVERRIDE.equals(reason) ? Verdict.OVERRIDDEN : Verdict.ACCEPTED;
+        List<String> validatedMessage = manipulator.getCommitMessage();
+        return new ValidationResult(verdict, reason, issueKeys, validatedMessage,
+                !validatedMessage.equals(lines));
+    }
+
+    /**
+     * Forgets the fetched issue and the fetched issues having it as parent or related issue, so they're fetched
+     * again by the next validation, e.g when JIRA tells the issue is changed or deleted
+     * (see {@link IssueWebhookListener})
+     * @param issueKey the JIRA issue key
+     */
+    public void invalidate(String issueKey) {
+        issues.invalidate(issueKey);
+        issues.asMap().values().removeIf(issue -> refersTo(issue, issueKey));
+        issueSource.invalidate(issueKey);
+    }
+
+    private static boolean refersTo(JiraIssue issue, String issueKey) {
+        if (issue.getParentIssue() != null && issue.getParentIssue().isPresent()
+                && issueKey.equals(issue.getParentIssue().get().getKey())) {
+            return true;
+        }
+        return issue.getRelatedIssues() != null
+                && issue.getRelatedIssues().stream().anyMatch(related -> issueKey.equals(related.getKey()));
+    }
+
+    private CommitPolicy getCommitPolicy() {
+        return CommitPolicy.reloadIfModified(messages, configuration.getPolicyDirectory());
+    }
+
+    private JiraIssue getIssue(String issueKey) throws IssueKeyNotFoundException {
+        try {
+            return issues.get(issueKey, () -> issueSource.getIssue(issueKey));
+        } catch (CacheLoader.InvalidCacheLoadException e) {
+            // The issue doesn't exist. Missing issues aren't cached
+            return null;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static List<String> splitLines(String commitMessage) {
+        // The same lines as read from the commit message file, i.e without the line ending the message
+        List<String> lines = new ArrayList<>(LINE_SPLITTER.splitToList(commitMessage));
+        if (lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
+    }
+}
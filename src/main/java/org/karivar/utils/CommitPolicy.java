@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.karivar.utils.domain.JiraIssue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class holds the compiled commit policy, i.e the decision table of the commit rules
+ * and the JIRA issue link names used for traceability. The policy is immutable and loaded once per process and
+ * override directory, so validators of different repositories keep their own policies.
+ * Long-running processes may call {@link #reloadIfModified(ResourceBundle, File)} to swap in a new policy when
+ * any of the override files of the repository changes.
+ */
+final class CommitPolicy {
+    private static final Logger logger = LoggerFactory.getLogger(CommitPolicy.class);
+    // The policies by the absolute path of the override directory. The policy without overrides has an empty key
+    private static final ConcurrentMap<String, CommitPolicy> policies = new ConcurrentHashMap<>();
+    private static final int VERSION_LENGTH = 12;
+
+    private final DecisionTable decisionTable;
+    private final ImmutableSet<String> issueLinks;
+    private final File overrideDirectory;
+    private final ImmutableMap<File, Long> overrideFilesLastModified;
+    private final String version;
+
+    CommitPolicy(DecisionTable decisionTable, ImmutableSet<String> issueLinks,
+                 File overrideDirectory, ImmutableMap<File, Long> overrideFilesLastModified) {
+        this.decisionTable = decisionTable;
+        this.issueLinks = issueLinks;
+        this.overrideDirectory = overrideDirectory;
+        this.overrideFilesLastModified = overrideFilesLastModified;
+        this.version = createVersion(decisionTable);
+    }
+
+    /**
+     * Gets the commit policy of the override directory. The policy is loaded the first time the directory is
+     * requested.
+     * @param messages the i18n messages
+     * @param overrideDirectory the directory containing the override files of the repository or null if none
+     * @return the commit policy
+     */
+    static CommitPolicy get(ResourceBundle messages, File overrideDirectory) {
+        return policies.computeIfAbsent(getKey(overrideDirectory),
+                key -> new PropertyReader(messages).getCommitPolicy(overrideDirectory));
+    }
+
+    /**
+     * Gets the commit policy of the override directory, reloading it if any of its override files is added,
+     * changed or removed. The new policy replaces the current one of the directory atomically.
+     * @param messages the i18n messages
+     * @param overrideDirectory the directory containing the override files of the repository or null if none
+     * @return the current commit policy
+     */
+    static CommitPolicy reloadIfModified(ResourceBundle messages, File overrideDirectory) {
+        String key = getKey(overrideDirectory);
+        CommitPolicy policy = get(messages, overrideDirectory);
+
+        if (policy.isModified()) {
+            CommitPolicy reloadedPolicy = new PropertyReader(messages).getCommitPolicy(overrideDirectory);
+            if (policies.replace(key, policy, reloadedPolicy)) {
+                logger.debug("Reloaded the commit policy of {}. Version is now {}", overrideDirectory,
+                        reloadedPolicy.getVersion());
+            }
+            return policies.get(key);
+        }
+        return policy;
+    }
+
+    private static String getKey(File overrideDirectory) {
+        return overrideDirectory != null ? overrideDirectory.getAbsolutePath() : "";
+    }
+
+    /**
+     * Checks whether the JIRA issue allows commits on the given branch
+     * @param issue the populated JIRA issue
+     * @param branch the name of the branch or null if unknown
+     * @return true if commits are allowed
+     */
+    boolean isCommitAllowed(JiraIssue issue, String branch) {
+        String project = null;
+        if (issue.getKey() != null && issue.getKey().indexOf('-') > 0) {
+            project = issue.getKey().substring(0, issue.getKey().indexOf('-')).toUpperCase(Locale.ROOT);
+        }
+
+        String assignee = null;
+        if (issue.getAssignee() != null && issue.getAssignee().isPresent()) {
+            assignee = issue.getAssignee().get().getName();
+        }
+        return decisionTable.isAllowed(issue.getIssueTypeName(), issue.getStatus(), issue.getStatusCategory(),
+                project, branch, assignee);
+    }
+
+    /**
+     * Gets the JIRA issue link names used to connect related issues. The names are in lower case
+     * @return the issue link names
+     */
+    Set<String> getIssueLinks() {
+        return issueLinks;
+    }
+
+    /**
+     * Checks whether the given JIRA issue link name connects related issues. The check ignores case
+     * @param issueLinkName the name of the JIRA issue link type
+     * @return true if the issue link connects related issues
+     */
+    boolean isIssueLink(String issueLinkName) {
+        return issueLinkName != null && issueLinks.contains(issueLinkName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Gets the version of the policy. The version is a hash of the commit rules and changes whenever
+     * the rules change.
+     * @return the version of the policy
+     */
+    String getVersion() {
+        return version;
+    }
+
+    private boolean isModified() {
+        for (Map.Entry<File, Long> entry : overrideFilesLastModified.entrySet()) {
+            if (entry.getKey().lastModified() != entry.getValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String createVersion(DecisionTable decisionTable) {
+        // Hash the canonical rules to keep the version stable regardless of formatting
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (CommitRule rule : decisionTable.getRules()) {
+            hasher.putString(rule.toString(), Charsets.UTF_8).putChar('\n');
+        }
+        return hasher.hash().toString().substring(0, VERSION_LENGTH);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.karivar.utils.domain.IssueKeyNotFoundException;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.Verdict;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * This class is responsible for validating all commits in a revision range (e.g before a push).
+ * Commits already accepted using the current commit policy are found in the ledger and skipped,
+ * so only new commits are validated against JIRA. Commits changing exempt paths only (githook.exemptpaths) are
+ * accepted without a JIRA issue, like in the commit-msg hook.<br>
+ * Only the status of the JIRA issue is checked. The assignee check of the commit-msg hook is left out on purpose:
+ * the issue is often reassigned (e.g to a reviewer) before the commits are pushed, and the commits in the range
+ * may be made by others than the user pushing them.
+ */
+class CommitRangeValidator {
+    private final Logger logger = LoggerFactory.getLogger(CommitRangeValidator.class);
+
+    private static final String COMMAND = "validate-range";
+
+    private final GitRepository gitRepository;
+    private final CommitMessageManipulator manipulator;
+    private final CommitLedger ledger;
+    private final DecisionLog decisionLog;
+    private final JiraIssueCache cache;
+    private final StatusResolver statusResolver;
+    private final Supplier<JiraConnector> jiraConnectorSupplier;
+    private final ResourceBundle messages;
+    private final String jiraProjects;
+    private final ExemptPaths exemptPaths;
+    private final String policyVersion;
+    private final Map<String, JiraIssue> fetchedIssues = new HashMap<>();
+    private JiraConnector jiraConnector;
+    private boolean issueFromCache;
+
+    CommitRangeValidator(GitRepository gitRepository, CommitMessageManipulator manipulator, CommitLedger ledger,
+                         DecisionLog decisionLog, JiraIssueCache cache, StatusResolver statusResolver,
+                         Supplier<JiraConnector> jiraConnectorSupplier,
+                         ResourceBundle messages, String jiraProjects, ExemptPaths exemptPaths,
+                         String policyVersion) {
+        this.gitRepository = gitRepository;
+        this.manipulator = manipulator;
+        this.ledger = ledger;
+        this.decisionLog = decisionLog;
+        this.cache = cache;
+        this.statusResolver = statusResolver;
+        this.jiraConnectorSupplier = jiraConnectorSupplier;
+        this.messages = messages;
+        this.jiraProjects = jiraProjects;
+        this.exemptPaths = exemptPaths;
+        this.policyVersion = policyVersion;
+    }
+
+    /**
+     * Validates all non-merge commits in the given revisions. The verdict of each validated commit
+     * is recorded in the ledger and the decision log.
+     * @param revisions the revisions (e.g origin/master..HEAD or HEAD --not --remotes)
+     * @return true if none of the commits are rejected
+     */
+    boolean validate(String... revisions) {
+        int skippedCommits = 0;
+        int rejectedCommits = 0;
+        Map<String, String> unvalidatedCommits = new LinkedHashMap<>();
+
+        for (String commitSubject : gitRepository.listNonMergeCommitSubjects(revisions)) {
+            int separator = commitSubject.indexOf(' ');
+            String sha = separator > 0 ? commitSubject.substring(0, separator) : commitSubject;
+            String subject = separator > 0 ? commitSubject.substring(separator + 1) : "";
+
+            Optional<Verdict> previousVerdict = ledger.getVerdict(sha, policyVersion);
+            if (previousVerdict.isPresent() && previousVerdict.get().isAccepted()) {
+                skippedCommits++;
+            } else {
+                unvalidatedCommits.put(sha, subject);
+            }
+        }
+
+        // The fresh cached issues of all the commits are read at once
+        if (jiraProjects != null) {
+            Set<String> issueKeys = new LinkedHashSet<>();
+            for (String subject : unvalidatedCommits.values()) {
+                manipulator.findJiraIssueKey(subject, jiraProjects).ifPresent(issueKeys::add);
+            }
+            fetchedIssues.putAll(cache.getFreshIssues(issueKeys));
+        }
+
+        for (Map.Entry<String, String> commit : unvalidatedCommits.entrySet()) {
+            if (!validateCommit(commit.getKey(), commit.getValue()).isAccepted()) {
+                rejectedCommits++;
+            }
+        }
+
+        logger.debug("Skipped {} already validated commits. Rejected {} commits", skippedCommits, rejectedCommits);
+        return rejectedCommits == 0;
+    }
+
+    private Verdict validateCommit(String sha, String subject) {
+        long start = System.nanoTime();
+        issueFromCache = false;
+
+        if (manipulator.isCommitOverridden(subject)) {
+            return record(sha, Verdict.OVERRIDDEN, null, Decision.REASON_OVERRIDE, start);
+        }
+
+        // The commit-msg hook removes -O from the first line, but notes the override in the traceability information
+        Optional<List<String>> message = gitRepository.getCommitMessage(sha);
+        if (message.isPresent() && manipulator.isCommunicationOverridden(message.get())) {
+            return record(sha, Verdict.OVERRIDDEN, null, Decision.REASON_OVERRIDE, start);
+        }
+
+        // Like in the commit-msg hook, a commit changing exempt paths only (e.g docs/) needs no JIRA issue
+        if (isExempt(sha)) {
+            return record(sha, Verdict.ACCEPTED, null, Decision.REASON_EXEMPT, start);
+        }
+
+        Optional<String> issueKey = jiraProjects != null
+                ? manipulator.findJiraIssueKey(subject, jiraProjects) : Optional.empty();
+        if (!issueKey.isPresent()) {
+            logger.error("{}: {}", sha, messages.getString("githook.jiraissue.pattern.notfound"));
+            return record(sha, Verdict.REJECTED, null, Decision.REASON_ISSUE_NOT_FOUND, start);
+        }
+
+        JiraIssue issue;
+        try {
+            issue = getIssue(issueKey.get());
+        } catch (IssueKeyNotFoundException e) {
+            logger.error("{}: {}", sha, e.getLocalizedMessage());
+            return record(sha, Verdict.REJECTED, issueKey.get(), Decision.REASON_JIRA_ERROR, start);
+        }
+
+        if (!manipulator.isStatusAllowed(issue)) {
+            logger.error("{}: {}{}", sha, messages.getString("commitnotallowedstatus"),
+                    issue != null ? issue.getStatus() : "");
+            return record(sha, Verdict.REJECTED, issueKey.get(),
+                    issue != null ? Decision.REASON_STATUS : Decision.REASON_ISSUE_NOT_FOUND, start);
+        }
+        return record(sha, Verdict.ACCEPTED, issueKey.get(), Decision.REASON_ALLOWED, start);
+    }
+
+    private boolean isExempt(String sha) {
+        if (exemptPaths.isEmpty()) {
+            return false;
+        }
+
+        Optional<List<String>> changedPaths = gitRepository.getChangedPaths(sha);
+        return changedPaths.isPresent() && !changedPaths.get().isEmpty()
+                && changedPaths.get().stream().allMatch(exemptPaths::isExempt);
+    }
+
+    private Verdict record(String sha, Verdict verdict, String issueKey, String reason, long start) {
+        ledger.record(sha, verdict, issueKey, policyVersion);
+
+        Decision decision = new Decision(COMMAND, verdict, reason);
+        decision.setCommit(sha);
+        decision.setIssueKey(issueKey);
+        decision.setCached(issueFromCache);
+        decision.setPolicyVersion(policyVersion);
+        decision.setDurationMillis((System.nanoTime() - start) / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        decisionLog.record(decision);
+        return verdict;
+    }
+
+    private JiraIssue getIssue(String issueKey) throws IssueKeyNotFoundException {
+        JiraIssue issue = fetchedIssues.get(issueKey);
+        issueFromCache = issue != null;
+
+        // The fresh cached issues are already fetched by validate, so a missing issue is fetched from JIRA
+        if (issue == null) {
+            if (jiraConnector == null) {
+                jiraConnector = jiraConnectorSupplier.get();
+            }
+            // Only the status is needed. Related issues are not fetched
+            issue = jiraConnector.getJiraPopulatedIssue(Optional.of(issueKey), Collections.emptySet());
+            statusResolver.resolve(issue);
+            cache.putIssue(issue);
+            fetchedIssues.put(issueKey, issue);
+        }
+        return issue;
+    }
+}
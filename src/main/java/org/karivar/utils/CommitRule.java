@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * This class represents a single rule of the commit policy. A rule allows or denies commits when all of its
+ * conditions match. A missing condition matches everything. The rule syntax is<br>
+ * &lt;allow|deny&gt; [type=&lt;issue types&gt;] [status=&lt;statuses&gt;] [category=&lt;status categories&gt;]
+ * [project=&lt;project keys&gt;] [branch=&lt;branch patterns&gt;] [assignee=&lt;user names or @group&gt;]<br>
+ * e.g<br>
+ * deny branch=release/* status=In_Review<br>
+ * allow type=Bug,New_Feature status=In_Progress project=EXAMPLE assignee=@developers<br>
+ * Values are separated by comma. Underscore is used as separator if an issue type or a status contains more
+ * than one word. Branch patterns may use * and ? as wildcards. Status categories are given by their key
+ * (new, indeterminate or done) or by their default name (To Do, In Progress or Done).
+ */
+final class CommitRule {
+    enum Action { ALLOW, DENY }
+
+    private static final String TYPE = "type";
+    private static final String STATUS = "status";
+    private static final String CATEGORY = "category";
+    private static final String PROJECT = "project";
+    private static final String BRANCH = "branch";
+    private static final String ASSIGNEE = "assignee";
+    private static final String GROUP_PREFIX = "@";
+    private static final Splitter CONDITION_SPLITTER = Splitter.on(Pattern.compile("\\s+")).omitEmptyStrings();
+    private static final Splitter VALUE_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+    private static final ImmutableMap<String, String> CATEGORY_KEYS = ImmutableMap.of(
+            "to do", "new", "in progress", "indeterminate", "done", "done");
+
+    private final Action action;
+    private final ImmutableSet<String> issueTypes;
+    private final ImmutableSet<String> statuses;
+    private final ImmutableSet<String> categories;
+    private final ImmutableSet<String> projects;
+    private final ImmutableSet<String> branches;
+    private final ImmutableList<Pattern> branchPatterns;
+    private final ImmutableSet<String> assignees;
+
+    CommitRule(Action action, Set<String> issueTypes, Set<String> statuses, Set<String> categories,
+               Set<String> projects, Set<String> branches, Set<String> assignees) {
+        this.action = action;
+        this.issueTypes = intern(issueTypes);
+        this.statuses = intern(statuses);
+        this.categories = ImmutableSet.copyOf(categories);
+        this.projects = ImmutableSet.copyOf(projects);
+        this.branches = ImmutableSet.copyOf(branches);
+        this.assignees = ImmutableSet.copyOf(assignees);
+
+        ImmutableList.Builder<Pattern> patterns = ImmutableList.builder();
+        for (String branch : branches) {
+            patterns.add(toPattern(branch));
+        }
+        this.branchPatterns = patterns.build();
+    }
+
+    /**
+     * Parses a rule
+     * @param definition the rule definition
+     * @param groups the user groups which may be referred to by the assignee condition
+     * @return the rule
+     * @throws IllegalArgumentException if the rule is invalid
+     */
+    static CommitRule parse(String definition, Map<String, List<String>> groups) {
+        List<String> tokens = CONDITION_SPLITTER.splitToList(definition);
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("The rule is empty");
+        }
+
+        Action action;
+        try {
+            action = Action.valueOf(tokens.get(0).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown action " + tokens.get(0));
+        }
+
+        ImmutableSet.Builder<String> issueTypes = ImmutableSet.builder();
+        ImmutableSet.Builder<String> statuses = ImmutableSet.builder();
+        ImmutableSet.Builder<String> categories = ImmutableSet.builder();
+        ImmutableSet.Builder<String> projects = ImmutableSet.builder();
+        ImmutableSet.Builder<String> branches = ImmutableSet.builder();
+        ImmutableSet.Builder<String> assignees = ImmutableSet.builder();
+
+        for (String condition : tokens.subList(1, tokens.size())) {
+            int separator = condition.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Malformed condition " + condition);
+            }
+
+            String name = condition.substring(0, separator).toLowerCase();
+            Iterable<String> values = VALUE_SPLITTER.split(condition.substring(separator + 1));
+
+            switch (name) {
+                case TYPE:
+                    values.forEach(value -> issueTypes.add(value.replace('_', ' ')));
+                    break;
+                case STATUS:
+                    values.forEach(value -> statuses.add(value.replace('_', ' ')));
+                    break;
+                case CATEGORY:
+                    for (String value : values) {
+                        String category = value.replace('_', ' ').toLowerCase();
+                        categories.add(CATEGORY_KEYS.getOrDefault(category, category));
+                    }
+                    break;
+                case PROJECT:
+                    values.forEach(value -> projects.add(value.toUpperCase()));
+                    break;
+                case BRANCH:
+                    branches.addAll(values);
+                    break;
+                case ASSIGNEE:
+                    for (String value : values) {
+                        if (value.startsWith(GROUP_PREFIX)) {
+                            List<String> members = groups.get(value.substring(GROUP_PREFIX.length()));
+                            if (members == null) {
+                                throw new IllegalArgumentException("Unknown group " + value);
+                            }
+                            assignees.addAll(members);
+                        } else {
+                            assignees.add(value);
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown condition " + name);
+            }
+        }
+
+        return new CommitRule(action, issueTypes.build(), statuses.build(), categories.build(), projects.build(),
+                branches.build(), assignees.build());
+    }
+
+    Action getAction() {
+        return action;
+    }
+
+    /**
+     * Gets the issue types of the rule
+     * @return the issue types or an empty set if the rule matches any issue type
+     */
+    Set<String> getIssueTypes() {
+        return issueTypes;
+    }
+
+    /**
+     * Gets the statuses of the rule
+     * @return the statuses or an empty set if the rule matches any status
+     */
+    Set<String> getStatuses() {
+        return statuses;
+    }
+
+    boolean matchesIssueType(String issueType) {
+        return issueTypes.isEmpty() || issueTypes.contains(issueType);
+    }
+
+    boolean matchesStatus(String status) {
+        return statuses.isEmpty() || statuses.contains(status);
+    }
+
+    /**
+     * Checks the conditions not used to index the rule (status category, project, branch and assignee)
+     * @param statusCategory the key of the status category or null if unknown
+     * @param project the JIRA project key
+     * @param branch the name of the branch or null if unknown
+     * @param assignee the name of the assignee or null if the issue isn't assigned
+     * @return true if the conditions match
+     */
+    boolean matchesRemainingConditions(String statusCategory, String project, String branch, String assignee) {
+        if (!categories.isEmpty() && (statusCategory == null || !categories.contains(statusCategory))) {
+            return false;
+        }
+        if (!projects.isEmpty() && (project == null || !projects.contains(project))) {
+            return false;
+        }
+        if (!assignees.isEmpty() && (assignee == null || !assignees.contains(assignee))) {
+            return false;
+        }
+        if (!branchPatterns.isEmpty()) {
+            if (branch == null) {
+                return false;
+            }
+            for (Pattern pattern : branchPatterns) {
+                if (pattern.matcher(branch).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the canonical definition of the rule. Equal rules have equal definitions
+     * @return the canonical definition
+     */
+    @Override
+    public String toString() {
+        StringBuilder definition = new StringBuilder(action.name().toLowerCase());
+        appendCondition(definition, TYPE, issueTypes);
+        appendCondition(definition, STATUS, statuses);
+        appendCondition(definition, CATEGORY, categories);
+        appendCondition(definition, PROJECT, projects);
+        appendCondition(definition, BRANCH, branches);
+        appendCondition(definition, ASSIGNEE, assignees);
+        return definition.toString();
+    }
+
+    private static void appendCondition(StringBuilder definition, String name, Set<String> values) {
+        if (!values.isEmpty()) {
+            definition.append(' ').append(name).append('=')
+                    .append(Joiner.on(',').join(ImmutableSortedSet.copyOf(values)).replace(' ', '_'));
+        }
+    }
+
+    private static ImmutableSet<String> intern(Set<String> values) {
+        ImmutableSet.Builder<String> interned = ImmutableSet.builder();
+        for (String value : values) {
+            interned.add(value.intern());
+        }
+        return interned.build();
+    }
+
+    private static Pattern toPattern(String branch) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+
+        for (char character : branch.toCharArray()) {
+            if (character == '*' || character == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(character == '*' ? ".*" : ".");
+            } else {
+                literal.append(character);
+            }
+        }
+
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
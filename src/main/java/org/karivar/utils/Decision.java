@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.karivar.utils.domain.Verdict;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class holds a decision of the hook, i.e the verdict of a commit with the reason, the override options
+ * used and the time spent in each phase. Decisions are written to the decision log as one JSON object per line.
+ */
+final class Decision {
+    static final String REASON_ALLOWED = "allowed";
+    static final String REASON_STATUS = "status";
+    static final String REASON_ASSIGNEE = "assignee";
+    static final String REASON_ISSUE_NOT_FOUND = "issue-not-found";
+    static final String REASON_JIRA_ERROR = "jira-error";
+    static final String REASON_OVERRIDE = "override";
+    static final String REASON_REUSED = "reused";
+    static final String REASON_EXEMPT = "exempt";
+
+    private long time;
+    private String command;
+    private String commit;
+    private String issueKey;
+    private Verdict verdict;
+    private String reason;
+    private List<String> overrides = new ArrayList<>();
+    private boolean cached;
+    private String branch;
+    private String policyVersion;
+    private double durationMillis;
+    private Map<String, Double> phases = new LinkedHashMap<>();
+
+    Decision(String command, Verdict verdict, String reason) {
+        this.time = System.currentTimeMillis();
+        this.command = command;
+        this.verdict = verdict;
+        this.reason = reason;
+    }
+
+    /**
+     * Creates a decision from a line of the decision log
+     * @param json the line
+     * @return the decision
+     * @throws JSONException if the line is malformed
+     */
+    static Decision fromJson(String json) throws JSONException {
+        JSONObject object = new JSONObject(json);
+        Decision decision = new Decision(object.optString("command", null),
+                Verdict.valueOf(object.getString("verdict")), object.optString("reason", null));
+        decision.time = object.optLong("time");
+        decision.commit = object.optString("commit", null);
+        decision.issueKey = object.optString("issueKey", null);
+        decision.cached = object.optBoolean("cached");
+        decision.branch = object.optString("branch", null);
+        decision.policyVersion = object.optString("policyVersion", null);
+        decision.durationMillis = object.optDouble("durationMillis", 0);
+
+        JSONArray overrideArray = object.optJSONArray("overrides");
+        if (overrideArray != null) {
+            for (int i = 0; i < overrideArray.length(); i++) {
+                decision.overrides.add(overrideArray.getString(i));
+            }
+        }
+
+        JSONObject phaseObject = object.optJSONObject("phases");
+        if (phaseObject != null) {
+            Iterator<?> names = phaseObject.keys();
+            while (names.hasNext()) {
+                String name = (String) names.next();
+                decision.phases.put(name, phaseObject.optDouble(name, 0));
+            }
+        }
+        return decision;
+    }
+
+    /**
+     * Creates the line of the decision log
+     * @return the decision as a JSON object
+     * @throws JSONException if the decision can't be converted
+     */
+    String toJson() throws JSONException {
+        JSONObject object = new JSONObject();
+        object.put("time", time);
+        object.putOpt("command", command);
+        object.putOpt("commit", commit);
+        object.putOpt("issueKey", issueKey);
+        object.put("verdict", verdict.name());
+        object.putOpt("reason", reason);
+        object.put("overrides", new JSONArray(overrides));
+        object.put("cached", cached);
+        object.putOpt("branch", branch);
+        object.putOpt("policyVersion", policyVersion);
+        object.put("durationMillis", round(durationMillis));
+
+        JSONObject phaseObject = new JSONObject();
+        for (Map.Entry<String, Double> phase : phases.entrySet()) {
+            phaseObject.put(phase.getKey(), round(phase.getValue()));
+        }
+        object.put("phases", phaseObject);
+        return object.toString();
+    }
+
+    /**
+     * Sets the duration of the hook and its phases from the phase timer
+     */
+    void setPhasesFromTimer() {
+        if (!PhaseTimer.isEnabled()) {
+            return;
+        }
+
+        for (PhaseTimer.Phase phase : PhaseTimer.getPhases()) {
+            // The phase name may end with its argument (e.g the JIRA issue key)
+            String name = phase.getName();
+            phases.merge(name.indexOf(' ') > 0 ? name.substring(0, name.indexOf(' ')) : name,
+                    toMillis(phase.getDurationNanos()), Double::sum);
+        }
+        durationMillis = toMillis(PhaseTimer.getElapsedNanos());
+    }
+
+    long getTime() {
+        return time;
+    }
+
+    String getCommand() {
+        return command;
+    }
+
+    String getCommit() {
+        return commit;
+    }
+
+    void setCommit(String commit) {
+        this.commit = commit;
+    }
+
+    String getIssueKey() {
+        return issueKey;
+    }
+
+    void setIssueKey(String issueKey) {
+        this.issueKey = issueKey;
+    }
+
+    Verdict getVerdict() {
+        return verdict;
+    }
+
+    String getReason() {
+        return reason;
+    }
+
+    List<String> getOverrides() {
+        return Collections.unmodifiableList(overrides);
+    }
+
+    void addOverride(String override) {
+        overrides.add(override);
+    }
+
+    boolean isCached() {
+        return cached;
+    }
+
+    void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
+    String getBranch() {
+        return branch;
+    }
+
+    void setBranch(String branch) {
+        this.branch = branch;
+    }
+
+    String getPolicyVersion() {
+        return policyVersion;
+    }
+
+    void setPolicyVersion(String policyVersion) {
+        this.policyVersion = policyVersion;
+    }
+
+    double getDurationMillis() {
+        return durationMillis;
+    }
+
+    void setDurationMillis(double durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    Map<String, Double> getPhases() {
+        return Collections.unmodifiableMap(phases);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static double round(double millis) {
+        return Math.round(millis * 1000) / 1000.0;
+    }
+}
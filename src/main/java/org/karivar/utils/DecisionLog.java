@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.codehaus.jettison.json.JSONException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is responsible for the append-only log of the decisions of the hook. Each decision is a line
+ * of JSON in .git/githook/decisions/decisions.jsonl. The file is rotated to decisions.1.jsonl and so on when
+ * it exceeds its maximum size, and the oldest file is removed.<br>
+ * The decisions are queued and written by a background thread, so a slow disk never delays the commit.
+ * Decisions are dropped if the queue is full, and the hook waits a short while for the queue to be written
+ * when it exits.
+ */
+class DecisionLog {
+    private final Logger logger = LoggerFactory.getLogger(DecisionLog.class);
+
+    private static final String LOG_DIRECTORY = "decisions";
+    private static final String LOG_NAME = "decisions";
+    private static final String LOG_SUFFIX = ".jsonl";
+    private static final String LOCK_FILENAME = "decisions.lock";
+    private static final long DEFAULT_MAX_FILE_BYTES = 5 * 1024 * 1024;
+    private static final int DEFAULT_MAX_ROTATED_FILES = 5;
+    private static final int DEFAULT_QUEUE_CAPACITY = 256;
+    private static final long CLOSE_TIMEOUT_MILLIS = 250;
+    // Marks the end of the queue. Decisions are never empty lines
+    private static final String END_OF_QUEUE = "";
+
+    private final File logDirectory;
+    private final long maxFileBytes;
+    private final int maxRotatedFiles;
+    private final BlockingQueue<String> queue;
+    private final AtomicInteger droppedDecisions = new AtomicInteger();
+    private Thread writer;
+
+    DecisionLog(File hookDirectory) {
+        this(hookDirectory, DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_ROTATED_FILES, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    DecisionLog(File hookDirectory, long maxFileBytes, int maxRotatedFiles, int queueCapacity) {
+        this.logDirectory = new File(hookDirectory, LOG_DIRECTORY);
+        this.maxFileBytes = maxFileBytes;
+        this.maxRotatedFiles = maxRotatedFiles;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Queues the decision to be written. The writer is started by the first decision
+     * @param decision the decision
+     * @return true if the decision is queued, false if it's dropped
+     */
+    boolean record(Decision decision) {
+        String line;
+        try {
+            line = decision.toJson();
+        } catch (JSONException e) {
+            logger.debug("Unable to convert the decision", e);
+            return false;
+        }
+
+        startWriter();
+        if (!queue.offer(line)) {
+            droppedDecisions.incrementAndGet();
+            logger.debug("The decision log queue is full. Dropping the decision");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the queued decisions and stops the writer
+     * @param timeoutMillis the maximum time to wait for the decisions to be written
+     */
+    void close(long timeoutMillis) {
+        Thread currentWriter;
+        synchronized (this) {
+            currentWriter = writer;
+        }
+        if (currentWriter == null || !currentWriter.isAlive()) {
+            return;
+        }
+
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            if (queue.offer(END_OF_QUEUE, timeoutMillis, TimeUnit.MILLISECONDS)) {
+                currentWriter.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (currentWriter.isAlive() || !queue.isEmpty()) {
+            logger.debug("Unable to write all decisions within {} ms", timeoutMillis);
+        }
+        if (droppedDecisions.get() > 0) {
+            logger.debug("Dropped {} decisions", droppedDecisions.get());
+        }
+    }
+
+    /**
+     * Gets the log files from the oldest to the newest
+     * @return the existing log files
+     */
+    List<File> getLogFiles() {
+        List<File> logFiles = new ArrayList<>();
+        for (int i = maxRotatedFiles; i >= 0; i--) {
+            File logFile = getLogFile(i);
+            if (logFile.isFile()) {
+                logFiles.add(logFile);
+            }
+        }
+        return logFiles;
+    }
+
+    /**
+     * Reads all decisions from the log files. Malformed lines are skipped
+     * @return the decisions from the oldest to the newest
+     */
+    List<Decision> readAll() {
+        List<Decision> decisions = new ArrayList<>();
+
+        for (File logFile : getLogFiles()) {
+            try {
+                for (String line : Files.readLines(logFile, Charsets.UTF_8)) {
+                    if (!line.trim().isEmpty()) {
+                        try {
+                            decisions.add(Decision.fromJson(line));
+                        } catch (JSONException | IllegalArgumentException e) {
+                            logger.debug("Skipping the malformed decision {}", line);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                logger.debug("Unable to read the decision log {}", logFile, e);
+            }
+        }
+        return decisions;
+    }
+
+    private synchronized void startWriter() {
+        if (writer == null) {
+            writer = new Thread(this::writeQueue, "githook-decision-log");
+            writer.setDaemon(true);
+            writer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> close(CLOSE_TIMEOUT_MILLIS)));
+        }
+    }
+
+    private void writeQueue() {
+        List<String> lines = new ArrayList<>();
+        boolean endOfQueue = false;
+
+        while (!endOfQueue) {
+            try {
+                lines.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(lines);
+
+            endOfQueue = lines.remove(END_OF_QUEUE);
+            if (!lines.isEmpty()) {
+                write(lines);
+                lines.clear();
+            }
+        }
+    }
+
+    private void write(List<String> lines) {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append('\n');
+        }
+        byte[] bytes = builder.toString().getBytes(Charsets.UTF_8);
+
+        if (!logDirectory.exists() && !logDirectory.mkdirs()) {
+            logger.debug("Unable to create the decision log directory {}", logDirectory);
+            return;
+        }
+
+        // Other hooks may write to the same log. The lock covers both the rotation and the write
+        try (FileChannel lockChannel = FileChannel.open(new File(logDirectory, LOCK_FILENAME).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock()) {
+            File logFile = getLogFile(0);
+            if (logFile.length() > 0 && logFile.length() + bytes.length > maxFileBytes) {
+                rotate();
+            }
+
+            try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to write to the decision log {}", logDirectory, e);
+        }
+    }
+
+    private void rotate() throws IOException {
+        java.nio.file.Files.deleteIfExists(getLogFile(maxRotatedFiles).toPath());
+        for (int i = maxRotatedFiles - 1; i >= 0; i--) {
+            File logFile = getLogFile(i);
+            if (logFile.isFile()) {
+                java.nio.file.Files.move(logFile.toPath(), getLogFile(i + 1).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private File getLogFile(int index) {
+        return new File(logDirectory, index == 0 ? LOG_NAME + LOG_SUFFIX : LOG_NAME + "." + index + LOG_SUFFIX);
+    }
+}
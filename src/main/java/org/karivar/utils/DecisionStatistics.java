@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.karivar.utils.domain.Verdict;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class summarizes the decisions of the decision log, i.e the number of decisions by verdict and reason,
+ * the rejection rate and the percentiles of the duration of the hook and of each phase.
+ */
+final class DecisionStatistics {
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    private final int decisionCount;
+    private final Map<Verdict, Integer> verdicts = new EnumMap<>(Verdict.class);
+    private final Map<String, Integer> reasons = new TreeMap<>();
+    private final int cachedCount;
+    private final List<Double> durations = new ArrayList<>();
+    private final Map<String, List<Double>> phaseDurations = new TreeMap<>();
+
+    DecisionStatistics(List<Decision> decisions) {
+        int cached = 0;
+        for (Decision decision : decisions) {
+            verdicts.merge(decision.getVerdict(), 1, Integer::sum);
+            if (decision.getReason() != null) {
+                reasons.merge(decision.getReason(), 1, Integer::sum);
+            }
+            if (decision.isCached()) {
+                cached++;
+            }
+            if (decision.getDurationMillis() > 0) {
+                durations.add(decision.getDurationMillis());
+            }
+            for (Map.Entry<String, Double> phase : decision.getPhases().entrySet()) {
+                phaseDurations.computeIfAbsent(phase.getKey(), name -> new ArrayList<>()).add(phase.getValue());
+            }
+        }
+
+        this.decisionCount = decisions.size();
+        this.cachedCount = cached;
+        Collections.sort(durations);
+        phaseDurations.values().forEach(Collections::sort);
+    }
+
+    /**
+     * Gets the percentile of the given sorted values using the nearest rank
+     * @param sortedValues the values in ascending order
+     * @param percentile the percentile (0 - 100)
+     * @return the percentile or 0 if there are no values
+     */
+    static double percentile(List<Double> sortedValues, double percentile) {
+        if (sortedValues.isEmpty()) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sortedValues.size());
+        return sortedValues.get(Math.min(sortedValues.size() - 1, Math.max(0, rank - 1)));
+    }
+
+    int getDecisionCount() {
+        return decisionCount;
+    }
+
+    int getVerdictCount(Verdict verdict) {
+        return verdicts.getOrDefault(verdict, 0);
+    }
+
+    double getRejectionRate() {
+        return decisionCount > 0 ? getVerdictCount(Verdict.REJECTED) / (double) decisionCount : 0;
+    }
+
+    double getDurationPercentile(double percentile) {
+        return percentile(durations, percentile);
+    }
+
+    double getPhasePercentile(String phase, double percentile) {
+        return percentile(phaseDurations.getOrDefault(phase, Collections.emptyList()), percentile);
+    }
+
+    /**
+     * Formats the statistics as lines of text
+     * @return the lines
+     */
+    List<String> format() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("Decisions: %d (accepted %d, overridden %d, rejected %d)", decisionCount,
+                getVerdictCount(Verdict.ACCEPTED), getVerdictCount(Verdict.OVERRIDDEN),
+                getVerdictCount(Verdict.REJECTED)));
+        lines.add(String.format("Rejection rate: %.1f %%", getRejectionRate() * 100));
+        lines.add(String.format("From cache: %d", cachedCount));
+        for (Map.Entry<String, Integer> reason : reasons.entrySet()) {
+            lines.add(String.format("Reason %s: %d", reason.getKey(), reason.getValue()));
+        }
+
+        lines.add(String.format("%-24s %8s %10s %10s %10s %10s", "Duration (ms)", "count", "p50", "p90", "p99",
+                "max"));
+        lines.add(formatPercentiles("total", durations));
+        for (Map.Entry<String, List<Double>> phase : phaseDurations.entrySet()) {
+            lines.add(formatPercentiles(phase.getKey(), phase.getValue()));
+        }
+        return lines;
+    }
+
+    private static String formatPercentiles(String name, List<Double> sortedValues) {
+        StringBuilder builder = new StringBuilder(String.format("%-24s %8d", name, sortedValues.size()));
+        for (double percentile : PERCENTILES) {
+            builder.append(String.format(" %10.1f", percentile(sortedValues, percentile)));
+        }
+        builder.append(String.format(" %10.1f", percentile(sortedValues, 100)));
+        return builder.toString();
+    }
+}
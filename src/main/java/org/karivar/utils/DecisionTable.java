@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class is the compiled form of the commit rules. The rules are indexed by issue type and status, so an
+ * evaluation only checks the rules which may match the issue. Each index entry keeps the original order of
+ * the rules, and the first rule matching all conditions decides. Commits are denied if no rule matches.
+ */
+final class DecisionTable {
+    private static final CommitRule[] NO_RULES = new CommitRule[0];
+
+    private final ImmutableList<CommitRule> rules;
+    private final ImmutableMap<String, StatusIndex> issueTypeIndex;
+    private final StatusIndex anyIssueTypeIndex;
+
+    private DecisionTable(ImmutableList<CommitRule> rules) {
+        this.rules = rules;
+
+        Set<String> issueTypes = new LinkedHashSet<>();
+        for (CommitRule rule : rules) {
+            issueTypes.addAll(rule.getIssueTypes());
+        }
+
+        ImmutableMap.Builder<String, StatusIndex> index = ImmutableMap.builder();
+        for (String issueType : issueTypes) {
+            index.put(issueType, new StatusIndex(rulesMatchingIssueType(issueType)));
+        }
+        this.issueTypeIndex = index.build();
+        this.anyIssueTypeIndex = new StatusIndex(rulesMatchingIssueType(null));
+    }
+
+    /**
+     * Compiles the given rules
+     * @param rules the rules in order of precedence
+     * @return the decision table
+     */
+    static DecisionTable compile(List<CommitRule> rules) {
+        return new DecisionTable(ImmutableList.copyOf(rules));
+    }
+
+    /**
+     * Gets the rules of the table
+     * @return the rules in order of precedence
+     */
+    List<CommitRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Checks whether a commit is allowed
+     * @param issueType the name of the JIRA issue type
+     * @param status the status of the JIRA issue
+     * @param statusCategory the key of the status category or null if unknown
+     * @param project the JIRA project key
+     * @param branch the name of the branch or null if unknown
+     * @param assignee the name of the assignee or null if the issue isn't assigned
+     * @return true if the first matching rule allows the commit
+     */
+    boolean isAllowed(String issueType, String status, String statusCategory, String project, String branch,
+                      String assignee) {
+        StatusIndex statusIndex = issueType != null ? issueTypeIndex.get(issueType) : null;
+        if (statusIndex == null) {
+            statusIndex = anyIssueTypeIndex;
+        }
+
+        for (CommitRule rule : statusIndex.getCandidates(status)) {
+            if (rule.matchesRemainingConditions(statusCategory, project, branch, assignee)) {
+                return rule.getAction() == CommitRule.Action.ALLOW;
+            }
+        }
+        return false;
+    }
+
+    private List<CommitRule> rulesMatchingIssueType(String issueType) {
+        // A null issue type only matches rules without any issue type condition
+        List<CommitRule> matchingRules = new ArrayList<>();
+        for (CommitRule rule : rules) {
+            if (issueType != null ? rule.matchesIssueType(issueType) : rule.getIssueTypes().isEmpty()) {
+                matchingRules.add(rule);
+            }
+        }
+        return matchingRules;
+    }
+
+    private static final class StatusIndex {
+        private final ImmutableMap<String, CommitRule[]> statusIndex;
+        private final CommitRule[] anyStatusRules;
+
+        StatusIndex(List<CommitRule> rules) {
+            Set<String> statuses = new LinkedHashSet<>();
+            for (CommitRule rule : rules) {
+                statuses.addAll(rule.getStatuses());
+            }
+
+            ImmutableMap.Builder<String, CommitRule[]> index = ImmutableMap.builder();
+            for (String status : statuses) {
+                index.put(status, rulesMatchingStatus(rules, status));
+            }
+            this.statusIndex = index.build();
+            this.anyStatusRules = rulesMatchingStatus(rules, null);
+        }
+
+        CommitRule[] getCandidates(String status) {
+            CommitRule[] candidates = status != null ? statusIndex.get(status) : null;
+            return candidates != null ? candidates : anyStatusRules;
+        }
+
+        private static CommitRule[] rulesMatchingStatus(List<CommitRule> rules, String status) {
+            // A null status only matches rules without any status condition
+            List<CommitRule> matchingRules = new ArrayList<>();
+            for (CommitRule rule : rules) {
+                if (status != null ? rule.matchesStatus(status) : rule.getStatuses().isEmpty()) {
+                    matchingRules.add(rule);
+                }
+            }
+            return matchingRules.toArray(NO_RULES);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * This class is responsible for matching paths against the globs of the paths exempt from JIRA validation
+ * (e.g documentation, generated files or CI configuration). The globs use the conventions of .gitignore:<br>
+ * A glob without a slash matches the name of a file or directory at any depth (e.g *.md or docs).<br>
+ * A glob with a slash matches the path relative to the top of the work tree (e.g /README.md or src/generated).
+ * A trailing slash matches a directory only.<br>
+ * * matches anything but a slash, ? any character but a slash and ** any number of directories.
+ * A matching directory exempts all paths below it.
+ */
+final class ExemptPaths {
+    private final List<Pattern> patterns = new ArrayList<>();
+
+    ExemptPaths(Collection<String> globs) {
+        for (String glob : globs) {
+            String trimmed = glob.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                patterns.add(toPattern(trimmed));
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /**
+     * Checks whether the path is exempt from JIRA validation
+     * @param path the path relative to the top of the work tree, separated by slashes
+     * @return true if the path matches one of the globs
+     */
+    boolean isExempt(String path) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Pattern toPattern(String glob) {
+        boolean directory = glob.endsWith("/");
+        String path = directory ? glob.substring(0, glob.length() - 1) : glob;
+        boolean anchored = path.contains("/");
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+
+        StringBuilder regex = new StringBuilder(anchored ? "" : "(?:.*/)?");
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (path.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 2;
+            } else if (path.startsWith("**", i)) {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+
+        // A directory exempts everything below it
+        regex.append(directory ? "/.*" : "(?:/.*)?");
+        return Pattern.compile(regex.toString());
+    }
+}
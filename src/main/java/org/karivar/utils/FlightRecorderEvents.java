@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class contains the Java Flight Recorder events of the hook. It's only loaded by {@link HookEvent}
+ * when the JVM supports the Flight Recorder, so the hook still runs on JVMs without it.
+ */
+final class FlightRecorderEvents {
+    private static final String CATEGORY = "git-jira-hook";
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Begins the Flight Recorder event of the given type
+     * @param type the type of the event
+     * @return the event or null if the event isn't recorded
+     */
+    static Object begin(HookEvent.Type type) {
+        Event event;
+        switch (type) {
+            case CONFIG_LOAD:
+                event = new ConfigLoad();
+                break;
+            case POLICY_EVALUATION:
+                event = new PolicyEvaluation();
+                break;
+            case JIRA_REQUEST:
+                event = new JiraRequest();
+                break;
+            default:
+                event = new MessageRewrite();
+        }
+
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the given Flight Recorder event and records the values of the hook event
+     * @param event the event returned by {@link #begin(HookEvent.Type)}
+     * @param values the hook event
+     */
+    static void commit(Object event, HookEvent values) {
+        if (event instanceof ConfigLoad) {
+            ConfigLoad configLoad = (ConfigLoad) event;
+            configLoad.source = values.getSource();
+            configLoad.entries = values.getEntries();
+        } else if (event instanceof PolicyEvaluation) {
+            PolicyEvaluation policyEvaluation = (PolicyEvaluation) event;
+            policyEvaluation.issueKey = values.getIssueKey();
+            policyEvaluation.issueType = values.getIssueType();
+            policyEvaluation.status = values.getStatus();
+            policyEvaluation.branch = values.getBranch();
+            policyEvaluation.allowed = values.isAllowed();
+        } else if (event instanceof JiraRequest) {
+            JiraRequest jiraRequest = (JiraRequest) event;
+            jiraRequest.operation = values.getOperation();
+            jiraRequest.issueKey = values.getIssueKey();
+            jiraRequest.statusCode = values.getStatusCode();
+            jiraRequest.bytes = values.getBytes();
+        } else if (event instanceof MessageRewrite) {
+            MessageRewrite messageRewrite = (MessageRewrite) event;
+            messageRewrite.issueKey = values.getIssueKey();
+            messageRewrite.lines = values.getLines();
+            messageRewrite.changed = values.isChanged();
+        }
+        ((Event) event).commit();
+    }
+
+    @Name("org.karivar.githook.ConfigLoad")
+    @Label("Config Load")
+    @Category(CATEGORY)
+    @Description("Loading of a configuration file of the hook")
+    static final class ConfigLoad extends Event {
+        @Label("Source")
+        String source;
+
+        @Label("Entries")
+        int entries;
+    }
+
+    @Name("org.karivar.githook.PolicyEvaluation")
+    @Label("Policy Evaluation")
+    @Category(CATEGORY)
+    @Description("Evaluation of the commit policy for a JIRA issue")
+    static final class PolicyEvaluation extends Event {
+        @Label("Issue Key")
+        String issueKey;
+
+        @Label("Issue Type")
+        String issueType;
+
+        @Label("Status")
+        String status;
+
+        @Label("Branch")
+        String branch;
+
+        @Label("Allowed")
+        boolean allowed;
+    }
+
+    @Name("org.karivar.githook.JiraRequest")
+    @Label("JIRA Request")
+    @Category(CATEGORY)
+    @Description("Request to the JIRA REST API")
+    static final class JiraRequest extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Issue Key")
+        String issueKey;
+
+        @Label("Status Code")
+        @Description("The HTTP status code or 0 if no response was received")
+        int statusCode;
+
+        @Label("Bytes")
+        @DataAmount
+        @Description("The size of the response or -1 if unknown")
+        long bytes;
+    }
+
+    @Name("org.karivar.githook.MessageRewrite")
+    @Label("Message Rewrite")
+    @Category(CATEGORY)
+    @Description("Rewrite of the commit message with the traceability information")
+    static final class MessageRewrite extends Event {
+        @Label("Issue Key")
+        String issueKey;
+
+        @Label("Lines")
+        int lines;
+
+        @Label("Changed")
+        boolean changed;
+    }
+}
@@ -7,6 +7,7 @@
  */
 package org.karivar.utils;
 
+import com.google.common.base.Splitter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,6 +15,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.List;
 import java.util.Scanner;
 import java.util.stream.Collectors;
 
@@ -29,6 +32,21 @@ class GitConfig {
     private static final String JIRA_ADDRESS = "githook.jira.address";
     private static final String GIT_HOOK_LANGUAGE_SETTINGS = "githook.language";
     private static final String JIRA_PROJECTS = "githook.jira.projectkey";
+    private static final String CACHE_TIME_TO_LIVE = "githook.cache.ttl";
+    private static final long DEFAULT_CACHE_TIME_TO_LIVE_MINUTES = 15;
+    private static final String STATUS_CATALOG_TIME_TO_LIVE = "githook.statuscatalog.ttl";
+    private static final long DEFAULT_STATUS_CATALOG_TIME_TO_LIVE_HOURS = 168;
+    private static final String ENRICHMENT = "githook.enrichment";
+    private static final String ENRICHMENT_NOTES = "notes";
+    private static final String JIRA_TRAILERS = "githook.jira.trailer";
+    private static final String JIRA_MULTIPLE_KEYS = "githook.jira.multiplekeys";
+    private static final String MULTIPLE_KEYS_ANY = "any";
+    private static final String EXEMPT_PATHS = "githook.exempt.path";
+    private static final String JIRA_REQUEST_RATE = "githook.jira.ratelimit";
+    private static final String ISSUE_SNAPSHOT_PATH = "githook.snapshot.path";
+    private static final String ISSUE_SNAPSHOT_MAX_AGE = "githook.snapshot.maxage";
+    private static final long DEFAULT_ISSUE_SNAPSHOT_MAX_AGE_MINUTES = 60;
+    private static final String ISSUE_SNAPSHOT_COMPLETE_PROJECTS = "githook.snapshot.completeproject";
 
     /**
      * Gets the Jira username from the global git configuration
@@ -109,6 +127,198 @@ class GitConfig {
         return null;
     }
 
+    /**
+     * Gets the number of minutes a cached JIRA issue is considered fresh from the git configuration
+     * @return the time to live in minutes. Defaults to 15 minutes if not set
+     */
+    static long getCacheTimeToLiveMinutes() {
+
+        try {
+            String value = getValueFromGitConfig(CACHE_TIME_TO_LIVE, false, false);
+            if (value != null) {
+                return Long.parseLong(value.trim());
+            }
+        } catch (NumberFormatException e) {
+            logger.error("The value of {} is not a number", CACHE_TIME_TO_LIVE);
+        } catch (InterruptedException e) {
+            logger.error("InterruptedException", e);
+        } catch (IOException e) {
+            logger.error("IOException", e);
+        }
+        return DEFAULT_CACHE_TIME_TO_LIVE_MINUTES;
+    }
+
+    /**
+     * Gets the number of hours a cached status catalog of a JIRA project is considered fresh from the
+     * git configuration
+     * @return the time to live in hours. Defaults to one week if not set
+     */
+    static long getStatusCatalogTimeToLiveHours() {
+
+        try {
+            String value = getValueFromGitConfig(STATUS_CATALOG_TIME_TO_LIVE, false, false);
+            if (value != null) {
+                return Long.parseLong(value.trim());
+            }
+        } catch (NumberFormatException e) {
+            logger.error("The value of {} is not a number", STATUS_CATALOG_TIME_TO_LIVE);
+        } catch (InterruptedException e) {
+            logger.error("InterruptedException", e);
+        } catch (IOException e) {
+            logger.error("IOException", e);
+        }
+        return DEFAULT_STATUS_CATALOG_TIME_TO_LIVE_HOURS;
+    }
+
+    /**
+     * Gets the maximum rate of requests to JIRA from the git configuration
+     * @return the requests per second. Defaults to 10 requests per second if not set
+     */
+    static double getJiraRequestRate() {
+
+        try {
+            String value = getValueFromGitConfig(JIRA_REQUEST_RATE, false, false);
+            if (value != null) {
+                return Double.parseDouble(value.trim());
+            }
+        } catch (NumberFormatException e) {
+            logger.error("The value of {} is not a number", JIRA_REQUEST_RATE);
+        } catch (InterruptedException e) {
+            logger.error("InterruptedException", e);
+        } catch (IOException e) {
+            logger.error("IOException", e);
+        }
+        return JiraRateLimiter.DEFAULT_REQUESTS_PER_SECOND;
+    }
+
+    /**
+     * Gets the path of the issue snapshot shared by the team (e.g in the common path of the git hook) from the
+     * git configuration
+     * @return the path of the snapshot file or null if not set
+     */
+    static String getIssueSnapshotPath() {
+
+        try {
+            return getValueFromGitConfig(ISSUE_SNAPSHOT_PATH, false, false);
+        } catch (InterruptedException e) {
+            logger.error("InterruptedException", e);
+        } catch (IOException e) {
+            logger.error("IOException", e);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the JIRA project keys whose issues the account publishing the issue snapshot can all browse (i.e no
+     * issue security levels or other restrictions) from the git configuration of the publisher
+     * @return the JIRA project keys separated by space or null if not set
+     */
+    static String getIssueSnapshotCompleteProjects() {
+
+        try {
+            return getValueFromGitConfig(ISSUE_SNAPSHOT_COMPLETE_PROJECTS, false, true);
+        } catch (InterruptedException e) {
+            logger.error("InterruptedException", e);
+        } catch (IOException e) {
+            logger.error("IOException", e);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the number of minutes the issues of the issue snapshot are considered fresh from the git configuration
+     * @return the maximum age in minutes. Defaults to 60 minutes if not set
+     */
+    static long getIssueSnapshotMaxAgeMinutes() {
+
+        try {
+            String value = getValueFromGitConfig(ISSUE_SNAPSHOT_MAX_AGE, false, false);
+            if (value != null) {
+                return Long.parseLong(value.trim());
+            }
+        } catch (NumberFormatException e) {
+            logger.error("The value of {} is not a number", ISSUE_SNAPSHOT_MAX_AGE);
+        } catch (InterruptedException e) {
+            logger.error("InterruptedException", e);
+        } catch (IOException e) {
+            logger.error("IOException", e);
+        }
+        return DEFAULT_ISSUE_SNAPSHOT_MAX_AGE_MINUTES;
+    }
+
+    /**
+     * Checks whether the JIRA issue information is stored in git notes after the commit instead of
+     * in the commit message (githook.enrichment=notes) in the local git configuration
+     * @return true if the information is stored in git notes
+     */
+    static boolean isTraceabilityInformationInNotes() {
+
+        try {
+            return ENRICHMENT_NOTES.equalsIgnoreCase(getValueFromGitConfig(ENRICHMENT, false, false));
+        } catch (InterruptedException e) {
+            logger.error("InterruptedException", e);
+        } catch (IOException e) {
+            logger.error("IOException", e);
+        }
+        return false;
+    }
+
+    /**
+     * Gets the names of the commit message trailers referring to additional JIRA issues (e.g Refs) from the
+     * local git configuration. The key may be given several times
+     * @return the names of the trailers or an empty list if not set
+     */
+    static List<String> getIssueKeyTrailers() {
+
+        try {
+            String trailers = getValueFromGitConfig(JIRA_TRAILERS, false, true);
+            if (trailers != null) {
+                return Splitter.on(' ').omitEmptyStrings().splitToList(trailers);
+            }
+        } catch (InterruptedException e) {
+            logger.error("InterruptedException", e);
+        } catch (IOException e) {
+            logger.error("IOException", e);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Checks whether one JIRA issue allowing the commit is enough when the commit refers to several issues
+     * (githook.jira.multiplekeys=any) in the local git configuration. By default all the issues must allow it
+     * @return true if one of the issues must allow the commit, false if all of them must
+     */
+    static boolean isAnyIssueKeyAllowed() {
+
+        try {
+            return MULTIPLE_KEYS_ANY.equalsIgnoreCase(getValueFromGitConfig(JIRA_MULTIPLE_KEYS, false, false));
+        } catch (InterruptedException e) {
+            logger.error("InterruptedException", e);
+        } catch (IOException e) {
+            logger.error("IOException", e);
+        }
+        return false;
+    }
+
+    /**
+     * Gets the globs of the paths exempt from JIRA validation (e.g docs/ or *.md) from the local git configuration.
+     * The key may be given several times
+     * @return the globs or an empty list if not set
+     */
+    static List<String> getExemptPaths() {
+
+        try {
+            String globs = getValueFromGitConfig(EXEMPT_PATHS, false, true);
+            if (globs != null) {
+                return Splitter.on(' ').omitEmptyStrings().splitToList(globs);
+            }
+        } catch (InterruptedException e) {
+            logger.error("InterruptedException", e);
+        } catch (IOException e) {
+            logger.error("IOException", e);
+        }
+        return Collections.emptyList();
+    }
 
     private static String getValueFromGitConfig(String key, boolean isGlobalElement, boolean multipleFetches)
             throws InterruptedException, IOException {
@@ -123,12 +333,14 @@ class GitConfig {
         }
 
         command += key;
-        Runtime runtime = Runtime.getRuntime();
-        Process process = runtime.exec(command);
-        int errorCode = process.waitFor();
+        try (PhaseTimer.Phase ignored = PhaseTimer.start("gitconfig " + key)) {
+            Runtime runtime = Runtime.getRuntime();
+            Process process = runtime.exec(command);
+            int errorCode = process.waitFor();
 
-        if (errorCode == 0) {
-            return output(process.getInputStream(), multipleFetches);
+            if (errorCode == 0) {
+                return output(process.getInputStream(), multipleFetches);
+            }
         }
 
         return null;
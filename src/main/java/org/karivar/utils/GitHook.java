@@ -7,44 +7,358 @@
  */
 package org.karivar.utils;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.base.Suppliers;
+import com.google.common.io.Files;
 import org.karivar.utils.domain.IssueKeyNotFoundException;
 import org.karivar.utils.domain.JiraIssue;
-import org.karivar.utils.other.UTF8Control;
+import org.karivar.utils.domain.Verdict;
+import org.karivar.utils.other.MessageBundles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 class GitHook {
-    private static final String HOOK_VERSION = "0.9.5";
+    static final String HOOK_VERSION = "0.9.5";
+    private static final String COMMAND_PREFIX = "--";
+    private static final String COMMIT_MSG = "commit-msg";
+    private static final String POST_COMMIT_COMMAND = "--post-commit";
+    private static final String BACKFILL_NOTES_COMMAND = "--backfill-notes";
+    private static final String BUILD_INDEX_COMMAND = "--build-index";
+    private static final String FIND_COMMAND = "--find";
+    private static final String VALIDATE_RANGE_COMMAND = "--validate-range";
+    private static final String REFRESH_STATUSES_COMMAND = "--refresh-statuses";
+    private static final String DECISION_STATS_COMMAND = "--decision-stats";
+    private static final String PUBLISH_SNAPSHOT_COMMAND = "--publish-snapshot";
+    private static final String CDS_TRAINING_COMMAND = "--cds-training";
+    private static final String CHECKPOINT_COMMAND = "--checkpoint";
     private final Logger logger = LoggerFactory.getLogger(GitHook.class);
     private ResourceBundle messages;
     private static CommitMessageManipulator manipulator;
     private boolean jiraCommunicationOverridden = false;
+    private boolean traceabilityInformationInNotes = false;
+    private GitRepository gitRepository;
+    private String commitMessageFilename;
+    private Optional<String> reusedIssueKey = Optional.empty();
+    private CommitPolicy commitPolicy;
+    private Optional<String> jiraIssueKey = Optional.empty();
+    private boolean issueFromCache = false;
+    private boolean anyIssueKeyAllowed = false;
+    private boolean exemptFromValidation = false;
+    private Supplier<JiraConnector> jiraConnectorSupplier;
+    // All the JIRA connectors of a hook run share the limits of the requests to JIRA
+    private final Supplier<JiraRateLimiter> jiraRateLimiter =
+            Suppliers.memoize(() -> new JiraRateLimiter(GitConfig.getJiraRequestRate()));
 
     public static void main(String[] args) {
+        args = PhaseTimer.configure(args);
         GitHook githook = new GitHook();
-        githook.init(args);
+
+        if (args != null && args.length > 0 && CDS_TRAINING_COMMAND.equals(args[0])) {
+            // The training run only loads the classes archived for the next runs. Nothing is measured
+            ClassDataSharingTraining.run(HOOK_VERSION);
+        } else if (args != null && args.length > 0 && CHECKPOINT_COMMAND.equals(args[0])) {
+            // The restored JVM continues here and runs the commit-msg hook with the arguments of the restore
+            Optional<String[]> restoredArgs = CheckpointRestore.checkpoint(HOOK_VERSION);
+            if (!restoredArgs.isPresent()) {
+                System.exit(1);
+            }
+            String[] commitMsgArgs = PhaseTimer.configure(restoredArgs.get());
+            HookMetrics.configure(COMMIT_MSG);
+            githook.init(commitMsgArgs);
+        } else if (args != null && args.length > 0 && args[0].startsWith(COMMAND_PREFIX)) {
+            HookMetrics.configure(args[0].substring(COMMAND_PREFIX.length()));
+            githook.runCommand(args);
+        } else {
+            HookMetrics.configure(COMMIT_MSG);
+            githook.init(args);
+        }
     }
 
-    private void init(String[] args) {
+    /**
+     * Runs one of the commands below (used by other git hooks or directly by the user)<br>
+     * --post-commit : adds HEAD to the issue index and JIRA issue information as git notes to HEAD
+     * (githook.enrichment=notes)<br>
+     * --backfill-notes &lt;revision range&gt; : adds JIRA issue information as git notes to all commits in the range<br>
+     * --build-index [revision] : builds the index from JIRA issue keys to commits (defaults to all refs)<br>
+     * --find &lt;JIRA issue key&gt; : lists all commits referring to the JIRA issue using the index<br>
+     * --validate-range &lt;revisions&gt; : validates all commits not already found in the ledger of validated commits<br>
+     * --refresh-statuses : fetches the status catalogs of all JIRA projects in the git configuration<br>
+     * --decision-stats [days] : summarizes the decision log (optionally only the decisions of the last days)<br>
+     * --publish-snapshot &lt;file&gt; : writes the snapshot of all issues of the JIRA projects in the git configuration
+     * (e.g to the common path of the git hook, see githook.snapshot.path). Run periodically by one job for the team.
+     * The snapshot only has the issues the JIRA account of the job can browse. Keys missing from the snapshot are
+     * only rejected without JIRA for the projects listed in githook.snapshot.completeproject, i.e the projects
+     * whose issues the account can all browse (no issue security levels). The old keys of issues moved out of these
+     * projects are found in JIRA and left to JIRA by the hook<br>
+     * --cds-training : runs the hook against a local JIRA stub to create the class data sharing archive<br>
+     * --checkpoint : warms up the hook and checkpoints the JVM (CRaC). The restored JVM runs the commit-msg hook
+     * with the arguments of the githook.restore.args system property<br>
+     * The --trace argument (or the GITHOOK_TRACE environment variable) prints the time spent in each phase
+     * @param args the command and its arguments
+     */
+    private void runCommand(String[] args) {
+        loadI18nMessages(GitConfig.getLanguageSettings());
+        manipulator = new CommitMessageManipulator(messages);
+        gitRepository = new GitRepository(new File(GitRepository.DEFAULT_GIT_DIRECTORY));
+        commitPolicy = CommitPolicy.get(messages, gitRepository.getPolicyDirectory());
+        manipulator.setCommitPolicy(commitPolicy);
+        manipulator.setBranch(gitRepository.getCurrentBranch().orElse(null));
+
+        switch (args[0]) {
+            case POST_COMMIT_COMMAND:
+                Optional<String> head = gitRepository.getHeadCommit();
+                if (head.isPresent()) {
+                    addToIssueIndex(head.get());
+                    addToCommitLedger(head.get());
+
+                    if (GitConfig.isTraceabilityInformationInNotes()) {
+                        createTraceabilityNotes().addNote(head.get());
+                    }
+                }
+                break;
+            case BACKFILL_NOTES_COMMAND:
+                if (args.length > 1) {
+                    int addedNotes = createTraceabilityNotes().addNotes(args[1]);
+                    logger.info("Added {} notes to {}", addedNotes, TraceabilityNotes.NOTES_REF);
+                } else {
+                    logger.error("Usage: {} <revision range>", BACKFILL_NOTES_COMMAND);
+                    System.exit(1);
+                }
+                break;
+            case BUILD_INDEX_COMMAND:
+                buildIssueIndex(args.length > 1 ? args[1] : "--all");
+                break;
+            case FIND_COMMAND:
+                if (args.length > 1) {
+                    IssueIndex issueIndex = new IssueIndex(gitRepository.getHookDirectory());
+                    issueIndex.find(args[1]).forEach(logger::info);
+                } else {
+                    logger.error("Usage: {} <JIRA issue key>", FIND_COMMAND);
+                    System.exit(1);
+                }
+                break;
+            case VALIDATE_RANGE_COMMAND:
+                if (args.length > 1) {
+                    if (!createCommitRangeValidator().validate(Arrays.copyOfRange(args, 1, args.length))) {
+                        System.exit(1);
+                    }
+                } else {
+                    logger.error("Usage: {} <revisions>", VALIDATE_RANGE_COMMAND);
+                    System.exit(1);
+                }
+                break;
+            case REFRESH_STATUSES_COMMAND:
+                String jiraProjects = GitConfig.getJiraProjects();
+                if (jiraProjects != null) {
+                    int refreshedCatalogs = createStatusResolver(Suppliers.memoize(this::createJiraConnector))
+                            .refreshAll(Splitter.on(' ').omitEmptyStrings().split(jiraProjects));
+                    logger.info("Fetched {} status catalogs", refreshedCatalogs);
+                } else {
+                    logger.error(messages.getString("githook.jiraissue.pattern.notfound"));
+                    System.exit(1);
+                }
+                break;
+            case DECISION_STATS_COMMAND:
+                printDecisionStatistics(args.length > 1 ? args[1] : null);
+                break;
+            case PUBLISH_SNAPSHOT_COMMAND:
+                if (args.length > 1) {
+                    if (!publishIssueSnapshot(new File(args[1]))) {
+                        System.exit(1);
+                    }
+                } else {
+                    logger.error("Usage: {} <file>", PUBLISH_SNAPSHOT_COMMAND);
+                    System.exit(1);
+                }
+                break;
+            default:
+                logger.error("Unknown command {}", args[0]);
+                System.exit(1);
+        }
+    }
+
+    private void printDecisionStatistics(String days) {
+        List<Decision> decisions = new DecisionLog(gitRepository.getHookDirectory()).readAll();
+
+        if (days != null) {
+            try {
+                long since = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(Long.parseLong(days));
+                decisions.removeIf(decision -> decision.getTime() < since);
+            } catch (NumberFormatException e) {
+                logger.error("Usage: {} [days]", DECISION_STATS_COMMAND);
+                System.exit(1);
+            }
+        }
+        new DecisionStatistics(decisions).format().forEach(logger::info);
+    }
+
+    private boolean publishIssueSnapshot(File snapshotFile) {
+        String jiraProjects = GitConfig.getJiraProjects();
+        if (jiraProjects == null) {
+            logger.error(messages.getString("githook.jiraissue.pattern.notfound"));
+            return false;
+        }
+
+        List<String> projectKeys = new ArrayList<>();
+        Splitter.on(' ').omitEmptyStrings().split(jiraProjects)
+                .forEach(projectKey -> projectKeys.add("\"" + projectKey.toUpperCase() + "\""));
+        long created = System.currentTimeMillis();
+        JiraConnector jiraConnector = createJiraConnector();
+        Optional<List<JiraIssue>> issues = jiraConnector.searchIssues(
+                "project in (" + String.join(",", projectKeys) + ") ORDER BY key");
+        if (!issues.isPresent()) {
+            logger.error("Unable to fetch the issues of {}", projectKeys);
+            return false;
+        }
+
+        // Only the publisher knows whether its account can browse all the issues of a project
+        String completeProjects = GitConfig.getIssueSnapshotCompleteProjects();
+        List<String> completeProjectKeys = completeProjects != null
+                ? Splitter.on(' ').omitEmptyStrings().splitToList(completeProjects) : Collections.emptyList();
+
+        // The old keys of issues moved out of the complete projects must not be rejected as missing
+        List<String> missingIssueKeys = IssueSnapshot.getMissingIssueKeys(issues.get(), completeProjectKeys);
+        Optional<List<String>> movedIssueKeys = missingIssueKeys.isEmpty()
+                ? Optional.of(Collections.emptyList()) : jiraConnector.findMovedIssueKeys(missingIssueKeys);
+        if (!movedIssueKeys.isPresent()) {
+            logger.error("Unable to find the moved issues of {}", completeProjectKeys);
+            return false;
+        }
+
+        try {
+            IssueSnapshot.write(snapshotFile, issues.get(), created, completeProjectKeys, movedIssueKeys.get());
+            logger.info("Published {} issues to {}", issues.get().size(), snapshotFile);
+            return true;
+        } catch (IOException e) {
+            logger.error("Unable to write the issue snapshot {}", snapshotFile, e);
+            return false;
+        }
+    }
+
+    private void addToIssueIndex(String sha) {
+        Optional<List<String>> commitMessage = gitRepository.getCommitMessage(sha);
+        String jiraProjects = GitConfig.getJiraProjects();
+
+        if (commitMessage.isPresent() && !commitMessage.get().isEmpty() && jiraProjects != null) {
+            IssueIndex issueIndex = new IssueIndex(gitRepository.getHookDirectory());
+            for (String issueKey : manipulator.findJiraIssueKeys(commitMessage.get().get(0), jiraProjects)) {
+                issueIndex.add(issueKey, sha);
+            }
+        }
+    }
+
+    private void addToCommitLedger(String sha) {
+        // Only the verdict left by the commit-msg hook for this very message is recorded. Other commits
+        // (e.g made using --no-verify, cherry-picks and rebases) are left for the range validation
+        Optional<List<String>> commitMessage = gitRepository.getCommitMessage(sha);
+        CommitLedger ledger = new CommitLedger(gitRepository.getHookDirectory());
+
+        if (commitMessage.isPresent() && !ledger.recordMarkedVerdict(sha, commitMessage.get())) {
+            logger.debug("The commit {} isn't validated by the commit-msg hook", sha);
+        }
+    }
+
+    private CommitRangeValidator createCommitRangeValidator() {
+        JiraIssueCache cache = new JiraIssueCache(gitRepository.getHookDirectory(),
+                TimeUnit.MINUTES.toMillis(GitConfig.getCacheTimeToLiveMinutes()));
+        Supplier<JiraConnector> jiraConnectorSupplier = Suppliers.memoize(this::createJiraConnector);
+        return new CommitRangeValidator(gitRepository, manipulator,
+                new CommitLedger(gitRepository.getHookDirectory()),
+                new DecisionLog(gitRepository.getHookDirectory()), cache,
+                createStatusResolver(jiraConnectorSupplier), jiraConnectorSupplier, messages,
+                GitConfig.getJiraProjects(), new ExemptPaths(GitConfig.getExemptPaths()), commitPolicy.getVersion());
+    }
+
+    private StatusResolver createStatusResolver(Supplier<JiraConnector> jiraConnectorSupplier) {
+        return new StatusResolver(new StatusCatalogCache(gitRepository.getHookDirectory()), jiraConnectorSupplier,
+                TimeUnit.HOURS.toMillis(GitConfig.getStatusCatalogTimeToLiveHours()));
+    }
+
+    private void buildIssueIndex(String revision) {
+        String jiraProjects = GitConfig.getJiraProjects();
+        if (jiraProjects == null) {
+            logger.error(messages.getString("githook.jiraissue.pattern.notfound"));
+            return;
+        }
+
+        List<String> entries = new ArrayList<>();
+        for (String commitSubject : gitRepository.listCommitSubjects(revision)) {
+            int separator = commitSubject.indexOf(' ');
+            if (separator > 0) {
+                for (String issueKey : manipulator.findJiraIssueKeys(commitSubject.substring(separator + 1),
+                        jiraProjects)) {
+                    entries.add(issueKey + " " + commitSubject.substring(0, separator));
+                }
+            }
+        }
+
+        new IssueIndex(gitRepository.getHookDirectory()).rebuild(entries);
+        logger.info("Indexed {} commits", entries.size());
+    }
+
+    private TraceabilityNotes createTraceabilityNotes() {
+        return new TraceabilityNotes(gitRepository, manipulator, createJiraConnector(),
+                commitPolicy.getIssueLinks(), GitConfig.getJiraProjects(), HOOK_VERSION);
+    }
 
+    private JiraConnector createJiraConnector() {
+        JiraConnector jiraConnector = new JiraConnector(messages, jiraRateLimiter.get());
+        jiraConnector.connectToJira(GitConfig.getJiraUsername(),
+                GitConfig.getJiraEncodedPassword(), GitConfig.getJiraAddress());
+        return jiraConnector;
+    }
+
+    private void init(String[] args) {
+        // The decision log holds the time spent in each phase
+        PhaseTimer.startRecording();
         loadI18nMessages(GitConfig.getLanguageSettings());
         manipulator = new CommitMessageManipulator(messages);
         printInitalText();
 
         if (args != null && args.length > 0) {
             manipulator.loadCommitMessage(args[0]);
-            JiraIssue populatedIssue = null;
+            commitMessageFilename = args[0];
+            gitRepository = GitRepository.fromCommitMessageFile(args[0]);
+            exemptFromValidation = isExemptFromValidation();
+            manipulator.setExemptFromValidation(exemptFromValidation);
+            startJiraConnectionWarmUp();
+            try (PhaseTimer.Phase ignored = PhaseTimer.start("policy.load")) {
+                commitPolicy = CommitPolicy.get(messages, gitRepository.getPolicyDirectory());
+            }
+            manipulator.setCommitPolicy(commitPolicy);
+            manipulator.setBranch(gitRepository.getCurrentBranch().orElse(null));
+            traceabilityInformationInNotes = GitConfig.isTraceabilityInformationInNotes();
+            manipulator.setTraceabilityInformationInNotes(traceabilityInformationInNotes);
+            List<String> overrides = getOverrideOptions();
+            overrides.forEach(option -> HookMetrics.increment(HookMetrics.OVERRIDES, "option", option));
+            anyIssueKeyAllowed = GitConfig.isAnyIssueKeyAllowed();
+            List<JiraIssue> populatedIssues = Collections.emptyList();
             try {
-                populatedIssue = getPopulatedJiraIssue();
+                populatedIssues = getPopulatedJiraIssues();
             } catch (IssueKeyNotFoundException e) {
                 logger.error(e.getLocalizedMessage());
+                logDecision(Verdict.REJECTED, Decision.REASON_JIRA_ERROR, overrides);
                 System.exit(1);
             }
 
-            if (!manipulator.checkStateAndManipulateCommitMessage(populatedIssue,
+            if (populatedIssues.isEmpty() && reusedIssueKey.isPresent()) {
+                // The source commit is already validated and its traceability information is reused as it is
+                manipulator.saveCommitMessage();
+                logDecision(Verdict.ACCEPTED, Decision.REASON_REUSED, overrides);
+            } else if (!manipulator.checkStateAndManipulateCommitMessage(populatedIssues, anyIssueKeyAllowed,
                     jiraCommunicationOverridden, null, HOOK_VERSION)) {
+                logDecision(Verdict.REJECTED, manipulator.getDecisionReason(), overrides);
                 System.exit(1);
+            } else {
+                logDecision(Decision.REASON_OVERRIDE.equals(manipulator.getDecisionReason())
+                        ? Verdict.OVERRIDDEN : Verdict.ACCEPTED, manipulator.getDecisionReason(), overrides);
             }
 
         } else {
@@ -52,7 +366,79 @@ class GitHook {
         }
     }
 
-    private JiraIssue getPopulatedJiraIssue() throws IssueKeyNotFoundException {
+    private void startJiraConnectionWarmUp() {
+        // The JIRA connector is created while the repository, the commit policy and the cache are loaded.
+        // JIRA isn't contacted for overridden or exempt commits, so the JRJC classes aren't even loaded then
+        if (manipulator.isCommunicationOverridden() || manipulator.isCommitOverridden() || exemptFromValidation) {
+            jiraConnectorSupplier = this::createJiraConnector;
+        } else {
+            jiraConnectorSupplier = JiraConnectionWarmUp.start(this::createJiraConnector);
+        }
+    }
+
+    private boolean isExemptFromValidation() {
+        // Overridden commits aren't validated anyway
+        if (manipulator.isCommunicationOverridden() || manipulator.isCommitOverridden()) {
+            return false;
+        }
+
+        ExemptPaths exemptPaths = new ExemptPaths(GitConfig.getExemptPaths());
+        if (exemptPaths.isEmpty()) {
+            return false;
+        }
+
+        // The changed paths are read from the index, so git diff --cached isn't run
+        try (PhaseTimer.Phase ignored = PhaseTimer.start("index.read")) {
+            boolean exempt = new StagedChanges(gitRepository).allMatch(exemptPaths::isExempt);
+            logger.debug(exempt ? "Only exempt paths are changed. Skipping communication with JIRA"
+                    : "Paths not exempt from validation are changed");
+            return exempt;
+        } catch (IOException e) {
+            logger.debug("Unable to read the changes of the commit. Validating it", e);
+            return false;
+        }
+    }
+
+    private List<String> getOverrideOptions() {
+        List<String> overrides = new ArrayList<>();
+        if (manipulator.isCommunicationOverridden()) {
+            overrides.add("-O");
+        }
+        if (manipulator.isAssigneeOverridden()) {
+            overrides.add("-A");
+        }
+        if (manipulator.isCommitOverridden()) {
+            overrides.add("NONE");
+        }
+        return overrides;
+    }
+
+    private void logDecision(Verdict verdict, String reason, List<String> overrides) {
+        Decision decision = new Decision(COMMIT_MSG, verdict, reason);
+        decision.setIssueKey(jiraIssueKey.orElse(null));
+        overrides.forEach(decision::addOverride);
+        decision.setCached(issueFromCache);
+        decision.setBranch(gitRepository.getCurrentBranch().orElse(null));
+        decision.setPolicyVersion(commitPolicy.getVersion());
+        decision.setPhasesFromTimer();
+
+        // The decision is written in the background. The log waits briefly for it when the hook exits
+        new DecisionLog(gitRepository.getHookDirectory()).record(decision);
+        markVerdict(verdict);
+    }
+
+    private void markVerdict(Verdict verdict) {
+        // The post-commit hook records the verdict in the ledger when git makes the commit using the final message
+        try {
+            List<String> commitMessage = Files.readLines(new File(commitMessageFilename), Charsets.UTF_8);
+            new CommitLedger(gitRepository.getHookDirectory()).markVerdict(commitMessage, verdict,
+                    jiraIssueKey.orElse(null), commitPolicy.getVersion());
+        } catch (IOException e) {
+            logger.debug("Unable to read the commit message {}", commitMessageFilename, e);
+        }
+    }
+
+    private List<JiraIssue> getPopulatedJiraIssues() throws IssueKeyNotFoundException {
         // Get options for
         //   1: override communication with JIRA altogether
         //   2: override (e.g force) commits
@@ -60,30 +446,147 @@ class GitHook {
         boolean commitOverridden = manipulator.isCommitOverridden();
 
         if (!jiraCommunicationOverridden && !commitOverridden) {
-            // Contact JIRA, fetch JIRA issue and check state and return populated issue
-            logger.debug("Preparing to communicate with JIRA");
+            String jiraProjects = GitConfig.getJiraProjects();
+            List<String> issueKeys = manipulator.getJiraIssueKeysFromCommitMessage(jiraProjects,
+                    GitConfig.getIssueKeyTrailers());
+            jiraIssueKey = issueKeys.stream().findFirst();
 
-            JiraConnector jiraConnector = new JiraConnector(messages);
-            jiraConnector.connectToJira(GitConfig.getJiraUsername(),
-                    GitConfig.getJiraEncodedPassword(), GitConfig.getJiraAddress());
+            if (exemptFromValidation) {
+                return Collections.emptyList();
+            }
+
+            // Cherry-picked, reverted and merged commits may reuse the information of an already validated commit.
+            // A merge only reuses it if its message names the issue. Otherwise the merge of a branch would be
+            // accepted on behalf of the issue of the tip of the branch, which may be closed by now
+            Optional<String> sourceCommit = gitRepository.getSourceCommit();
+            boolean reusable = issueKeys.size() == 1 || (issueKeys.isEmpty() && !gitRepository.isMerging());
+            if (sourceCommit.isPresent() && reusable) {
+                Optional<List<String>> sourceMessage = gitRepository.getCommitMessage(sourceCommit.get());
+                if (sourceMessage.isPresent()) {
+                    reusedIssueKey = manipulator.reuseTraceabilityInformation(sourceMessage.get(), jiraProjects);
+                    if (reusedIssueKey.isPresent()) {
+                        issueKeys = Collections.singletonList(reusedIssueKey.get());
+                        jiraIssueKey = reusedIssueKey;
+                    }
+                }
+            }
+
+            if (issueKeys.isEmpty()) {
+                logger.error(messages.getString("githook.jiraissue.pattern.notfound"));
+                return Collections.emptyList();
+            }
+
+            JiraIssueCache cache = new JiraIssueCache(gitRepository.getHookDirectory(),
+                    TimeUnit.MINUTES.toMillis(GitConfig.getCacheTimeToLiveMinutes()));
+
+            if (manipulator.hasTraceabilityInformation()) {
+                // The commit is amended or reuses the information of a source commit.
+                // Reuse the previously fetched issues if they're still fresh
+                List<JiraIssue> cachedIssues = new ArrayList<>(cache.getFreshIssues(issueKeys).values());
+                if (cachedIssues.size() == issueKeys.size()) {
+                    logger.debug("Using cached JIRA issues {}. Skipping communication with JIRA", issueKeys);
+                    issueFromCache = true;
+                    return cachedIssues;
+                }
 
+                if (reusedIssueKey.isPresent()) {
+                    logger.debug("Reusing the validated JIRA issue {} of commit {}", reusedIssueKey.get(),
+                            sourceCommit.get());
+                    return Collections.emptyList();
+                }
+            }
+
+            // Related issues are fetched by the post-commit hook when the information is stored in git notes
+            Set<String> issueLinks = traceabilityInformationInNotes
+                    ? Collections.emptySet() : commitPolicy.getIssueLinks();
+
+            Optional<List<JiraIssue>> snapshotIssues = getSnapshotIssues(issueKeys, !issueLinks.isEmpty());
+            if (snapshotIssues.isPresent()) {
+                logger.debug("Using JIRA issues {} of the issue snapshot. Skipping communication with JIRA",
+                        issueKeys);
+                issueFromCache = true;
+                return snapshotIssues.get();
+            }
+
+            // Contact JIRA, fetch JIRA issues and check state and return populated issues
+            logger.debug("Preparing to communicate with JIRA");
 
-            Optional<String> issueKey = manipulator.getJiraIssueKeyFromCommitMessage(
-                    manipulator.getJiraIssueKeyFromPattern(GitConfig.getJiraProjects()));
+            JiraConnector jiraConnector = jiraConnectorSupplier.get();
 
-            PropertyReader propertyReader = new PropertyReader(messages);
-            return jiraConnector.getJiraPopulatedIssue(issueKey,  propertyReader.getIssueLinks());
+            // All the issues are requested at once. Missing issues are rejected by the policy unless one issue
+            // is enough to allow the commit
+            List<JiraIssue> populatedIssues = jiraConnector.getJiraPopulatedIssues(issueKeys, issueLinks,
+                    anyIssueKeyAllowed);
+            try (PhaseTimer.Phase ignored = PhaseTimer.start("status.resolve")) {
+                StatusResolver statusResolver = createStatusResolver(() -> jiraConnector);
+                populatedIssues.stream().filter(Objects::nonNull).forEach(statusResolver::resolve);
+            }
+            populatedIssues.stream().filter(Objects::nonNull).forEach(cache::putIssue);
+            return populatedIssues;
         } else {
             logger.debug("Communication with JIRA is overridden or commit is overridden");
         }
-        return null;
+        return Collections.emptyList();
+    }
+
+    /**
+     * Looks the issues up in the issue snapshot of the team (githook.snapshot.path). An issue of a complete
+     * project which certainly doesn't exist is rejected like JIRA would, without contacting JIRA. Other issues
+     * missing from the snapshot are left to JIRA. The issues of a fresh snapshot are used when the snapshot has
+     * all of them, unless their related issues are needed
+     * @param issueKeys the JIRA issue keys of the commit
+     * @param relatedIssuesNeeded true if the related issues must be fetched from JIRA
+     * @return the issues or empty if JIRA must be contacted
+     * @throws IssueKeyNotFoundException if an issue doesn't exist
+     */
+    private Optional<List<JiraIssue>> getSnapshotIssues(List<String> issueKeys, boolean relatedIssuesNeeded)
+            throws IssueKeyNotFoundException {
+        String snapshotPath = GitConfig.getIssueSnapshotPath();
+        if (snapshotPath == null) {
+            return Optional.empty();
+        }
+
+        Optional<IssueSnapshot> snapshot;
+        try (PhaseTimer.Phase ignored = PhaseTimer.start("snapshot.load")) {
+            snapshot = IssueSnapshot.open(new File(snapshotPath));
+        }
+        if (!snapshot.isPresent()) {
+            return Optional.empty();
+        }
+
+        boolean fresh = snapshot.get().isFresh(TimeUnit.MINUTES.toMillis(GitConfig.getIssueSnapshotMaxAgeMinutes()));
+        boolean complete = fresh && !relatedIssuesNeeded;
+        List<JiraIssue> issues = new ArrayList<>();
+        String missingIssueKey = null;
+        for (String issueKey : issueKeys) {
+            if (snapshot.get().isMissing(issueKey)) {
+                HookMetrics.increment(HookMetrics.CACHE_REQUESTS, "cache", "snapshot", "result", "missing");
+                if (!anyIssueKeyAllowed) {
+                    throw new IssueKeyNotFoundException(messages.getString("error.jira.statuscode.404") + issueKey);
+                }
+                missingIssueKey = missingIssueKey != null ? missingIssueKey : issueKey;
+                issues.add(null);
+            } else {
+                Optional<JiraIssue> issue = fresh ? snapshot.get().getIssue(issueKey) : Optional.empty();
+                HookMetrics.increment(HookMetrics.CACHE_REQUESTS, "cache", "snapshot", "result",
+                        issue.isPresent() ? "hit" : fresh ? "miss" : "expired");
+                complete &= issue.isPresent();
+                issues.add(issue.orElse(null));
+            }
+        }
+
+        if (missingIssueKey != null && issues.stream().allMatch(Objects::isNull)) {
+            // None of the issues exists
+            throw new IssueKeyNotFoundException(messages.getString("error.jira.statuscode.404") + missingIssueKey);
+        }
+        return complete ? Optional.of(issues) : Optional.empty();
     }
 
     private void loadI18nMessages(String languageSettings) {
-        if (languageSettings != null) {
-            messages = ResourceBundle.getBundle("messages", Locale.forLanguageTag(languageSettings),
-                    new UTF8Control());
-        } else messages = ResourceBundle.getBundle("messages");
+        // The messages are compiled from messages*.properties at build time
+        try (PhaseTimer.Phase ignored = PhaseTimer.start("messages.load")) {
+            messages = MessageBundles.forLanguage(languageSettings);
+        }
     }
 
     private void printInitalText() {
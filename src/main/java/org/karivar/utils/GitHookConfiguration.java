@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * The hook configuration of a git repository. The values are read from the git configuration when created,
+ * so the configuration can be shared by threads without running git again.
+ */
+final class GitHookConfiguration implements HookConfiguration {
+    private final String jiraAddress;
+    private final String jiraUsername;
+    private final String jiraEncodedPassword;
+    private final String jiraProjects;
+    private final String language;
+    private final long cacheTimeToLiveMinutes;
+    private final long statusCatalogTimeToLiveHours;
+    private final File hookDirectory;
+    private final File policyDirectory;
+    private final List<String> issueKeyTrailers;
+    private final boolean anyIssueKeyAllowed;
+    private final double jiraRequestRate;
+
+    GitHookConfiguration(GitRepository gitRepository) {
+        jiraAddress = GitConfig.getJiraAddress();
+        jiraUsername = GitConfig.getJiraUsername();
+        jiraEncodedPassword = GitConfig.getJiraEncodedPassword();
+        jiraProjects = GitConfig.getJiraProjects();
+        language = GitConfig.getLanguageSettings();
+        cacheTimeToLiveMinutes = GitConfig.getCacheTimeToLiveMinutes();
+        statusCatalogTimeToLiveHours = GitConfig.getStatusCatalogTimeToLiveHours();
+        hookDirectory = gitRepository.getHookDirectory();
+        policyDirectory = gitRepository.getPolicyDirectory();
+        issueKeyTrailers = GitConfig.getIssueKeyTrailers();
+        anyIssueKeyAllowed = GitConfig.isAnyIssueKeyAllowed();
+        jiraRequestRate = GitConfig.getJiraRequestRate();
+    }
+
+    @Override
+    public String getJiraAddress() {
+        return jiraAddress;
+    }
+
+    @Override
+    public String getJiraUsername() {
+        return jiraUsername;
+    }
+
+    @Override
+    public String getJiraEncodedPassword() {
+        return jiraEncodedPassword;
+    }
+
+    @Override
+    public String getJiraProjects() {
+        return jiraProjects;
+    }
+
+    @Override
+    public String getLanguage() {
+        return language;
+    }
+
+    @Override
+    public long getCacheTimeToLiveMinutes() {
+        return cacheTimeToLiveMinutes;
+    }
+
+    @Override
+    public long getStatusCatalogTimeToLiveHours() {
+        return statusCatalogTimeToLiveHours;
+    }
+
+    @Override
+    public File getHookDirectory() {
+        return hookDirectory;
+    }
+
+    @Override
+    public File getPolicyDirectory() {
+        return policyDirectory;
+    }
+
+    @Override
+    public List<String> getIssueKeyTrailers() {
+        return issueKeyTrailers;
+    }
+
+    @Override
+    public boolean isAnyIssueKeyAllowed() {
+        return anyIssueKeyAllowed;
+    }
+
+    @Override
+    public double getJiraRequestRate() {
+        return jiraRequestRate;
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * This class is responsible for reading the git index (e.g .git/index), i.e the paths and object ids of the
+ * staged files and the cached trees of the directories (the TREE extension). The file is memory mapped and only
+ * the lengths of the entries are read up front. The paths and object ids are decoded when asked for, so
+ * skipping the entries of an unchanged directory costs nothing. This includes the prefix compressed paths of
+ * version 4, which are rebuilt from the suffixes of the previous entries.<br>
+ * Versions 2, 3 and 4 of the index using SHA-1 are supported, but not split or sparse indexes. The index of a
+ * SHA-256 repository looks the same, so the caller must check the object format of the repository. Not thread
+ * safe.
+ */
+final class GitIndex {
+    private static final int SIGNATURE = 0x44495243;
+    private static final int TREE_EXTENSION = 0x54524545;
+    private static final int LINK_EXTENSION = 0x6c696e6b;
+    private static final int SPARSE_EXTENSION = 0x73646972;
+    private static final int HEADER_LENGTH = 12;
+    private static final int OBJECT_ID_LENGTH = 20;
+    private static final int OBJECT_ID_OFFSET = 40;
+    private static final int FLAGS_OFFSET = OBJECT_ID_OFFSET + OBJECT_ID_LENGTH;
+    private static final int MODE_OFFSET = 24;
+    private static final int ENTRY_LENGTH = FLAGS_OFFSET + 2;
+    private static final int EXTENDED_FLAG = 0x4000;
+    private static final int STAGE_MASK = 0x3000;
+    private static final int NAME_MASK = 0x0fff;
+    private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+    private final ByteBuffer buffer;
+    private final int[] entryOffsets;
+    private final int[] pathOffsets;
+    private final int[] pathLengths;
+    // Version 4 stores the length of the previous path kept and the rest of the path only (the suffix)
+    private final int[] prefixLengths;
+    private CacheTree cacheTree;
+    // The last decoded version 4 path, since its prefix is usually the prefix of the next path as well
+    private int decodedEntry = -1;
+    private byte[] decodedPath;
+
+    private GitIndex(ByteBuffer buffer, int entries, boolean prefixCompressed) {
+        this.buffer = buffer;
+        entryOffsets = new int[entries];
+        pathOffsets = new int[entries];
+        pathLengths = new int[entries];
+        prefixLengths = prefixCompressed ? new int[entries] : null;
+    }
+
+    /**
+     * Reads the index
+     * @param indexFile the index file (e.g .git/index)
+     * @return the index
+     * @throws IOException if the file can't be read or isn't a supported index
+     */
+    static GitIndex read(File indexFile) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.limit() < HEADER_LENGTH + OBJECT_ID_LENGTH || buffer.getInt(0) != SIGNATURE) {
+            throw new IOException(indexFile + " isn't a git index");
+        }
+
+        int version = buffer.getInt(4);
+        if (version < 2 || version > 4) {
+            throw new IOException("Unsupported version " + version + " of " + indexFile);
+        }
+
+        GitIndex index = new GitIndex(buffer, buffer.getInt(8), version == 4);
+        int extensionsOffset = index.readEntries(version);
+        index.readExtensions(extensionsOffset);
+        return index;
+    }
+
+    private int readEntries(int version) throws IOException {
+        int end = buffer.limit() - OBJECT_ID_LENGTH;
+        int offset = HEADER_LENGTH;
+        int previousPathLength = 0;
+
+        for (int i = 0; i < entryOffsets.length; i++) {
+            if (offset + ENTRY_LENGTH > end) {
+                throw new IOException("The git index is truncated");
+            }
+
+            int flags = buffer.getShort(offset + FLAGS_OFFSET) & 0xffff;
+            int pathOffset = offset + ENTRY_LENGTH + ((flags & EXTENDED_FLAG) != 0 && version >= 3 ? 2 : 0);
+            entryOffsets[i] = offset;
+
+            if (prefixLengths != null) {
+                // The path is the previous path without its last N bytes followed by the suffix
+                int removed = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buffer.get(pathOffset++);
+                    removed = shift == 0 ? b & 0x7f : ((removed + 1) << 7) | (b & 0x7f);
+                    shift++;
+                } while ((b & 0x80) != 0);
+
+                int suffixLength = findNul(pathOffset, end) - pathOffset;
+                int prefixLength = previousPathLength - removed;
+                if (prefixLength < 0) {
+                    throw new IOException("The git index is corrupt");
+                }
+
+                prefixLengths[i] = prefixLength;
+                pathOffsets[i] = pathOffset;
+                pathLengths[i] = prefixLength + suffixLength;
+                previousPathLength = pathLengths[i];
+                offset = pathOffset + suffixLength + 1;
+            } else {
+                int pathLength = flags & NAME_MASK;
+                if (pathLength == NAME_MASK) {
+                    pathLength = findNul(pathOffset + NAME_MASK, end) - pathOffset;
+                }
+                pathOffsets[i] = pathOffset;
+                pathLengths[i] = pathLength;
+
+                // The entries are padded with 1-8 NUL bytes to a multiple of eight bytes
+                offset += (pathOffset - offset + pathLength + 8) & ~7;
+            }
+        }
+        return offset;
+    }
+
+    private void readExtensions(int offset) throws IOException {
+        int end = buffer.limit() - OBJECT_ID_LENGTH;
+
+        while (offset + 8 <= end) {
+            int signature = buffer.getInt(offset);
+            int length = buffer.getInt(offset + 4);
+            int dataOffset = offset + 8;
+            if (length < 0 || dataOffset + length > end) {
+                throw new IOException("The git index is corrupt");
+            }
+
+            if (signature == LINK_EXTENSION || signature == SPARSE_EXTENSION) {
+                throw new IOException("Split and sparse git indexes aren't supported");
+            } else if (signature == TREE_EXTENSION && length > 0) {
+                int[] position = { dataOffset };
+                cacheTree = readCacheTree(position, dataOffset + length);
+            }
+            offset = dataOffset + length;
+        }
+    }
+
+    private CacheTree readCacheTree(int[] position, int end) throws IOException {
+        // <path>\0<entry count> <subtree count>\n[<object id>], followed by the subtrees
+        int nameEnd = findNul(position[0], end);
+        String name = decode(position[0], nameEnd - position[0]);
+        int countEnd = find((byte) ' ', nameEnd + 1, end);
+        int entryCount = Integer.parseInt(decode(nameEnd + 1, countEnd - nameEnd - 1));
+        int subtreesEnd = find((byte) '\n', countEnd + 1, end);
+        int subtreeCount = Integer.parseInt(decode(countEnd + 1, subtreesEnd - countEnd - 1));
+        position[0] = subtreesEnd + 1;
+
+        String objectId = null;
+        if (entryCount >= 0) {
+            objectId = hex(position[0]);
+            position[0] += OBJECT_ID_LENGTH;
+        }
+
+        CacheTree tree = new CacheTree(name, entryCount, objectId);
+        for (int i = 0; i < subtreeCount; i++) {
+            CacheTree subtree = readCacheTree(position, end);
+            tree.subtrees.put(subtree.name, subtree);
+        }
+        return tree;
+    }
+
+    /**
+     * Gets the number of entries. A path in conflict has one entry for each stage
+     * @return the number of entries
+     */
+    int size() {
+        return entryOffsets.length;
+    }
+
+    /**
+     * Gets the path of the entry, relative to the top of the work tree and separated by slashes
+     * @param entry the index of the entry
+     * @return the path
+     */
+    String getPath(int entry) {
+        return prefixLengths != null ? new String(decodePrefixCompressed(entry), Charsets.UTF_8)
+                : decode(pathOffsets[entry], pathLengths[entry]);
+    }
+
+    /**
+     * Gets the object id of the staged contents of the entry
+     * @param entry the index of the entry
+     * @return the object id in hex
+     */
+    String getObjectId(int entry) {
+        return hex(entryOffsets[entry] + OBJECT_ID_OFFSET);
+    }
+
+    /**
+     * Gets the mode of the entry, e.g 0100644 for a file or 0160000 for a submodule
+     * @param entry the index of the entry
+     * @return the mode
+     */
+    int getMode(int entry) {
+        return buffer.getInt(entryOffsets[entry] + MODE_OFFSET);
+    }
+
+    /**
+     * Gets the merge stage of the entry
+     * @param entry the index of the entry
+     * @return 0 for a staged file or 1-3 for a path in conflict
+     */
+    int getStage(int entry) {
+        return (buffer.getShort(entryOffsets[entry] + FLAGS_OFFSET) & STAGE_MASK) >> 12;
+    }
+
+    /**
+     * Gets the cached tree of the top directory
+     * @return the cached tree or empty if the index has no cached trees
+     */
+    Optional<CacheTree> getCacheTree() {
+        return Optional.ofNullable(cacheTree);
+    }
+
+    private int findNul(int from, int end) throws IOException {
+        return find((byte) 0, from, end);
+    }
+
+    private int find(byte value, int from, int end) throws IOException {
+        for (int i = from; i < end; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        throw new IOException("The git index is corrupt");
+    }
+
+    private String decode(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private byte[] decodePrefixCompressed(int entry) {
+        if (entry == decodedEntry) {
+            return decodedPath;
+        }
+
+        // The suffixes of the previous paths are copied backwards until the whole prefix is known. The walk stops
+        // at the last decoded path, so decoding the paths in order copies each byte once
+        byte[] path = new byte[pathLengths[entry]];
+        int needed = path.length;
+        for (int i = entry; needed > 0; i--) {
+            if (i == decodedEntry && decodedPath.length >= needed) {
+                System.arraycopy(decodedPath, 0, path, 0, needed);
+                break;
+            }
+
+            int prefixLength = prefixLengths[i];
+            for (int j = prefixLength; j < needed; j++) {
+                path[j] = buffer.get(pathOffsets[i] + j - prefixLength);
+            }
+            needed = Math.min(needed, prefixLength);
+        }
+
+        decodedEntry = entry;
+        decodedPath = path;
+        return path;
+    }
+
+    private String hex(int offset) {
+        byte[] objectId = new byte[OBJECT_ID_LENGTH];
+        for (int i = 0; i < OBJECT_ID_LENGTH; i++) {
+            objectId[i] = buffer.get(offset + i);
+        }
+        return HEX.encode(objectId);
+    }
+
+    /**
+     * The cached tree of a directory. The tree is valid if none of the entries of the directory are changed since
+     * the tree was written (e.g by the last commit). A valid tree covers the next entry count entries of the index.
+     */
+    static final class CacheTree {
+        private final String name;
+        private final int entryCount;
+        private final String objectId;
+        private final Map<String, CacheTree> subtrees = new HashMap<>();
+
+        private CacheTree(String name, int entryCount, String objectId) {
+            this.name = name;
+            this.entryCount = entryCount;
+            this.objectId = objectId;
+        }
+
+        boolean isValid() {
+            return entryCount >= 0;
+        }
+
+        /**
+         * Gets the number of index entries in the directory and its subdirectories
+         * @return the number of entries or -1 if the tree isn't valid
+         */
+        int getEntryCount() {
+            return entryCount;
+        }
+
+        /**
+         * Gets the object id of the tree
+         * @return the object id in hex or null if the tree isn't valid
+         */
+        String getObjectId() {
+            return objectId;
+        }
+
+        /**
+         * Gets the cached tree of a subdirectory
+         * @param name the name of the subdirectory
+         * @return the cached tree or null if not cached
+         */
+        CacheTree getSubtree(String name) {
+            return subtrees.get(name);
+        }
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This class is responsible for retrieving information directly from the git directory
+ * (e.g .git) of the repository being committed to.
+ */
+class GitRepository {
+    private final Logger logger = LoggerFactory.getLogger(GitRepository.class);
+
+    static final String DEFAULT_GIT_DIRECTORY = ".git";
+    private static final String HOOK_DIRECTORY = "githook";
+    private static final String POLICY_DIRECTORY = ".githook";
+    private static final String SYMBOLIC_REF = "ref: ";
+    private static final String SYMBOLIC_REF_PREFIX = SYMBOLIC_REF + "refs/heads/";
+    private static final String TREE_PREFIX = "tree ";
+    private static final int TREE_LINE_LENGTH = TREE_PREFIX.length() + 40;
+    private static final String INDEX_FILE_VARIABLE = "GIT_INDEX_FILE";
+    private static final String EXTENSIONS_SECTION = "[extensions]";
+    private static final String OBJECT_FORMAT_KEY = "objectformat";
+    static final String SHA1_OBJECT_FORMAT = "sha1";
+    private static final String CHERRY_PICK_HEAD = "CHERRY_PICK_HEAD";
+    private static final String REVERT_HEAD = "REVERT_HEAD";
+    private static final String MERGE_HEAD = "MERGE_HEAD";
+    private static final String[] SOURCE_COMMIT_HEADS = { CHERRY_PICK_HEAD, REVERT_HEAD, MERGE_HEAD };
+
+    private final File gitDirectory;
+
+    GitRepository(File gitDirectory) {
+        this.gitDirectory = gitDirectory;
+    }
+
+    /**
+     * Creates a repository based on the location of the commit message file. The commit message file
+     * is located in the git directory (e.g .git/COMMIT_EDITMSG)
+     * @param commitMessageFilename the name of the commit message file
+     * @return the repository
+     */
+    static GitRepository fromCommitMessageFile(String commitMessageFilename) {
+        return new GitRepository(new File(commitMessageFilename).getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Gets the directory used by the hook to store its own files
+     * @return the directory of the hook files
+     */
+    File getHookDirectory() {
+        return new File(gitDirectory, HOOK_DIRECTORY);
+    }
+
+    /**
+     * Gets the directory in the work tree containing the files overriding the commit policy of the hook
+     * (e.g issuetypes.properties)
+     * @return the directory of the override files
+     */
+    File getPolicyDirectory() {
+        return new File(gitDirectory.getAbsoluteFile().getParentFile(), POLICY_DIRECTORY);
+    }
+
+    /**
+     * Gets the commit being cherry-picked, reverted or merged if any of these operations are in progress
+     * @return the SHA-1 of the source commit or empty if none of the operations are in progress
+     */
+    Optional<String> getSourceCommit() {
+        for (String head : SOURCE_COMMIT_HEADS) {
+            File headFile = new File(gitDirectory, head);
+
+            if (headFile.isFile()) {
+                try {
+                    String sha = Files.asCharSource(headFile, Charsets.UTF_8).readFirstLine();
+                    if (sha != null && !sha.trim().isEmpty()) {
+                        logger.debug("Found {} pointing to {}", head, sha.trim());
+                        return Optional.of(sha.trim());
+                    }
+                } catch (IOException e) {
+                    logger.debug("Unable to read {}", headFile, e);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Checks whether a merge is in progress, i.e the commit being made is a merge commit
+     * @return true if git is merging
+     */
+    boolean isMerging() {
+        return new File(gitDirectory, MERGE_HEAD).isFile() && !new File(gitDirectory, CHERRY_PICK_HEAD).isFile()
+                && !new File(gitDirectory, REVERT_HEAD).isFile();
+    }
+
+    /**
+     * Gets the commit message of the given commit. The loose object is read directly from the object store.
+     * Packed objects are read using git cat-file.
+     * @param sha the SHA-1 of the commit
+     * @return the lines of the commit message or empty if the commit can't be read
+     */
+    Optional<List<String>> getCommitMessage(String sha) {
+        byte[] commit = readObject("commit", sha);
+
+        if (commit == null) {
+            return Optional.empty();
+        }
+
+        String contents = new String(commit, Charsets.UTF_8);
+        int messageStart = contents.indexOf("\n\n");
+        if (messageStart < 0) {
+            return Optional.empty();
+        }
+
+        String message = contents.substring(messageStart + 2);
+        if (message.endsWith("\n")) {
+            message = message.substring(0, message.length() - 1);
+        }
+        return Optional.of(Splitter.on('\n').splitToList(message));
+    }
+
+    /**
+     * Gets the name of the current branch by reading HEAD directly
+     * @return the name of the branch (e.g release/1.0) or empty if HEAD is detached
+     */
+    Optional<String> getCurrentBranch() {
+        File headFile = new File(gitDirectory, "HEAD");
+
+        try {
+            String head = headFile.isFile() ? Files.asCharSource(headFile, Charsets.UTF_8).readFirstLine() : null;
+            if (head != null && head.startsWith(SYMBOLIC_REF_PREFIX)) {
+                return Optional.of(head.substring(SYMBOLIC_REF_PREFIX.length()).trim());
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to read {}", headFile, e);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Gets the index being committed. Git uses a temporary index for e.g git commit -a (GIT_INDEX_FILE)
+     * @return the index file
+     */
+    File getIndexFile() {
+        String indexFile = System.getenv(INDEX_FILE_VARIABLE);
+        return !Strings.isNullOrEmpty(indexFile) ? new File(indexFile) : new File(gitDirectory, "index");
+    }
+
+    /**
+     * Gets the tree of the current HEAD commit by reading HEAD, the refs and the commit directly. Packed commits
+     * are read using git cat-file.
+     * @return the SHA-1 of the tree or empty if HEAD is unborn (i.e the first commit)
+     * @throws IOException if HEAD or its commit can't be read
+     */
+    Optional<String> getHeadTree() throws IOException {
+        Optional<String> head = resolveHead();
+        if (!head.isPresent()) {
+            return Optional.empty();
+        }
+
+        byte[] commit = readObject("commit", head.get());
+        String contents = commit != null
+                ? new String(commit, 0, Math.min(commit.length, TREE_LINE_LENGTH), Charsets.UTF_8) : "";
+        if (!contents.startsWith(TREE_PREFIX) || contents.length() != TREE_LINE_LENGTH) {
+            throw new IOException("Unable to read the commit " + head.get());
+        }
+        return Optional.of(contents.substring(TREE_PREFIX.length()));
+    }
+
+    /**
+     * Reads a tree object. The loose object is read directly from the object store. Packed objects are read
+     * using git cat-file.
+     * @param sha the SHA-1 of the tree
+     * @return the contents of the tree (i.e &lt;mode&gt; &lt;name&gt;\0&lt;20 byte object id&gt; per entry) or empty
+     * if the tree can't be read
+     */
+    Optional<byte[]> readTree(String sha) {
+        return Optional.ofNullable(readObject("tree", sha));
+    }
+
+    /**
+     * Gets the hash algorithm of the object ids, i.e extensions.objectformat of the repository configuration
+     * (e.g .git/config). The configuration is read directly, so git isn't run
+     * @return sha1 (the default) or sha256
+     * @throws IOException if the configuration can't be read
+     */
+    String getObjectFormat() throws IOException {
+        File configFile = new File(getCommonDirectory(), "config");
+        if (!configFile.isFile()) {
+            return SHA1_OBJECT_FORMAT;
+        }
+
+        boolean extensions = false;
+        for (String line : Files.asCharSource(configFile, Charsets.UTF_8).readLines()) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("[")) {
+                extensions = trimmed.equalsIgnoreCase(EXTENSIONS_SECTION);
+            } else if (extensions) {
+                List<String> keyValue = Splitter.on('=').trimResults().limit(2).splitToList(trimmed);
+                if (keyValue.size() == 2 && keyValue.get(0).equalsIgnoreCase(OBJECT_FORMAT_KEY)) {
+                    return keyValue.get(1).toLowerCase();
+                }
+            }
+        }
+        return SHA1_OBJECT_FORMAT;
+    }
+
+    private Optional<String> resolveHead() throws IOException {
+        File commonDirectory = getCommonDirectory();
+        String head = Files.asCharSource(new File(gitDirectory, "HEAD"), Charsets.UTF_8).readFirstLine();
+        if (head == null) {
+            throw new IOException("HEAD of " + gitDirectory + " is empty");
+        }
+
+        if (!head.startsWith(SYMBOLIC_REF)) {
+            return Optional.of(head.trim());
+        }
+
+        String ref = head.substring(SYMBOLIC_REF.length()).trim();
+        File refFile = new File(commonDirectory, ref);
+        if (refFile.isFile()) {
+            String sha = Files.asCharSource(refFile, Charsets.UTF_8).readFirstLine();
+            if (sha == null) {
+                throw new IOException(refFile + " is empty");
+            }
+            return Optional.of(sha.trim());
+        }
+
+        // Each line of packed-refs consists of <SHA-1> <ref>
+        File packedRefs = new File(commonDirectory, "packed-refs");
+        if (packedRefs.isFile()) {
+            for (String line : Files.asCharSource(packedRefs, Charsets.UTF_8).readLines()) {
+                int separator = line.indexOf(' ');
+                if (separator > 0 && line.substring(separator + 1).equals(ref)) {
+                    return Optional.of(line.substring(0, separator));
+                }
+            }
+        }
+
+        // The branch has no commits yet
+        return Optional.empty();
+    }
+
+    private File getCommonDirectory() {
+        // The git directory of a linked work tree shares the objects and refs of the main git directory
+        File commonDirFile = new File(gitDirectory, "commondir");
+        if (commonDirFile.isFile()) {
+            try {
+                String commonDirectory = Files.asCharSource(commonDirFile, Charsets.UTF_8).readFirstLine();
+                if (!Strings.isNullOrEmpty(commonDirectory)) {
+                    File directory = new File(commonDirectory.trim());
+                    return directory.isAbsolute() ? directory : new File(gitDirectory, commonDirectory.trim());
+                }
+            } catch (IOException e) {
+                logger.debug("Unable to read {}", commonDirFile, e);
+            }
+        }
+        return gitDirectory;
+    }
+
+    private byte[] readObject(String type, String sha) {
+        byte[] object = readLooseObject(sha);
+        return object != null ? object : runGit("cat-file", type, sha);
+    }
+
+    /**
+     * Gets the SHA-1 of the current HEAD commit
+     * @return the SHA-1 of HEAD or empty if it can't be resolved
+     */
+    Optional<String> getHeadCommit() {
+        Optional<List<String>> output = runGitCommand("rev-parse", "HEAD");
+        if (output.isPresent() && !output.get().isEmpty()) {
+            return Optional.of(output.get().get(0).trim());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Lists all commits in the given revision range (e.g origin/master..HEAD)
+     * @param revisionRange the revision range
+     * @return the SHA-1 of the commits, newest first
+     */
+    List<String> listCommits(String revisionRange) {
+        return runGitCommand("rev-list", revisionRange).orElse(Collections.emptyList());
+    }
+
+    /**
+     * Lists all commits reachable from the given revision together with the first line of their commit message
+     * @param revision the revision (e.g HEAD or --all)
+     * @return lines with the format &lt;commit SHA-1&gt; &lt;first line of the commit message&gt;
+     */
+    List<String> listCommitSubjects(String revision) {
+        return runGitCommand("log", "--format=%H %s", revision).orElse(Collections.emptyList());
+    }
+
+    /**
+     * Lists all non-merge commits in the given revisions together with the first line of their commit message
+     * @param revisions the revisions (e.g origin/master..HEAD or HEAD --not --remotes)
+     * @return lines with the format &lt;commit SHA-1&gt; &lt;first line of the commit message&gt;
+     */
+    List<String> listNonMergeCommitSubjects(String... revisions) {
+        List<String> arguments = new ArrayList<>(Arrays.asList("log", "--no-merges", "--format=%H %s"));
+        arguments.addAll(Arrays.asList(revisions));
+        return runGitCommand(arguments.toArray(new String[arguments.size()])).orElse(Collections.emptyList());
+    }
+
+    /**
+     * Lists the paths changed by a commit compared to its first parent (all its paths for a root commit)
+     * @param sha the SHA-1 of the commit
+     * @return the paths relative to the top of the work tree or empty if the commit can't be read
+     */
+    Optional<List<String>> getChangedPaths(String sha) {
+        // The paths are separated by NUL, so unusual file names aren't quoted
+        byte[] output = runGit("diff-tree", "-r", "-z", "--name-only", "--no-commit-id", "--root", "-m",
+                "--first-parent", sha);
+        if (output == null) {
+            return Optional.empty();
+        }
+        return Optional.of(Splitter.on('\0').omitEmptyStrings().splitToList(new String(output, Charsets.UTF_8)));
+    }
+
+    /**
+     * Lists all commits having a note in the given notes ref
+     * @param notesRef the notes ref (e.g refs/notes/githook)
+     * @return the SHA-1 of the annotated commits
+     */
+    Set<String> getAnnotatedCommits(String notesRef) {
+        Set<String> commits = new HashSet<>();
+        for (String line : runGitCommand("notes", "--ref=" + notesRef, "list").orElse(Collections.emptyList())) {
+            // Each line consists of <note object> <annotated object>
+            int separator = line.indexOf(' ');
+            if (separator > 0) {
+                commits.add(line.substring(separator + 1).trim());
+            }
+        }
+        return commits;
+    }
+
+    /**
+     * Adds (or replaces) a note on the given commit
+     * @param notesRef the notes ref (e.g refs/notes/githook)
+     * @param sha the SHA-1 of the commit
+     * @param note the lines of the note
+     * @return true if the note is added
+     */
+    boolean addNote(String notesRef, String sha, List<String> note) {
+        try {
+            File noteFile = File.createTempFile("githook", ".note");
+            try {
+                Files.asCharSink(noteFile, Charsets.UTF_8).writeLines(note);
+                return runGitCommand("notes", "--ref=" + notesRef, "add", "-f", "-F", noteFile.getPath(), sha)
+                        .isPresent();
+            } finally {
+                if (!noteFile.delete()) {
+                    logger.debug("Unable to delete {}", noteFile);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("IOException", e);
+        }
+        return false;
+    }
+
+    private Optional<List<String>> runGitCommand(String... arguments) {
+        byte[] output = runGit(arguments);
+        if (output == null) {
+            return Optional.empty();
+        }
+
+        String contents = new String(output, Charsets.UTF_8);
+        return Optional.of(Splitter.on('\n').omitEmptyStrings().splitToList(contents));
+    }
+
+    private byte[] runGit(String... arguments) {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.add("--git-dir=" + gitDirectory.getPath());
+        command.addAll(Arrays.asList(arguments));
+
+        try {
+            Process process = new ProcessBuilder(command).start();
+            byte[] contents = ByteStreams.toByteArray(process.getInputStream());
+
+            if (process.waitFor() == 0) {
+                return contents;
+            }
+            logger.debug("The command {} failed", command);
+        } catch (InterruptedException e) {
+            logger.error("InterruptedException", e);
+        } catch (IOException e) {
+            logger.error("IOException", e);
+        }
+        return null;
+    }
+
+    private byte[] readLooseObject(String sha) {
+        if (sha.length() < 3) {
+            return null;
+        }
+
+        File objectFile = new File(getCommonDirectory(),
+                "objects/" + sha.substring(0, 2) + "/" + sha.substring(2));
+        if (!objectFile.isFile()) {
+            return null;
+        }
+
+        try (InputStream stream = new InflaterInputStream(new FileInputStream(objectFile))) {
+            byte[] object = ByteStreams.toByteArray(stream);
+
+            // Skip the object header (e.g "commit 234\0")
+            for (int i = 0; i < object.length; i++) {
+                if (object[i] == 0) {
+                    byte[] contents = new byte[object.length - i - 1];
+                    System.arraycopy(object, i + 1, contents, 0, contents.length);
+                    return contents;
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to read the loose object {}", objectFile, e);
+        }
+        return null;
+    }
+}
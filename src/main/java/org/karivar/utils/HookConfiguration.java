@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The configuration of the hook used by a {@link CommitMessageValidator}. The hook itself reads it from the
+ * git configuration (see {@link #fromGit()}), while build tools and IDEs may provide their own.
+ * The values are read once when the validator is created.
+ */
+public interface HookConfiguration {
+
+    /**
+     * Gets the address of JIRA
+     * @return the address or null if not configured
+     */
+    String getJiraAddress();
+
+    /**
+     * Gets the JIRA username. The username is used to connect to JIRA and to check the assignee of the issues
+     * (unless given by the {@link RepositoryContext})
+     * @return the username or null if not configured
+     */
+    String getJiraUsername();
+
+    /**
+     * Gets the base64 encoded JIRA password
+     * @return the password or null if not configured
+     */
+    String getJiraEncodedPassword();
+
+    /**
+     * Gets the JIRA project keys found in commit messages
+     * @return the project keys separated by a space or null if not configured
+     */
+    String getJiraProjects();
+
+    /**
+     * Gets the language of the messages added to commit messages (e.g en or no)
+     * @return the language or null for the default language
+     */
+    String getLanguage();
+
+    /**
+     * Gets the number of minutes a fetched JIRA issue is reused
+     * @return the time to live in minutes
+     */
+    long getCacheTimeToLiveMinutes();
+
+    /**
+     * Gets the number of hours a status catalog of a JIRA project is considered fresh
+     * @return the time to live in hours
+     */
+    long getStatusCatalogTimeToLiveHours();
+
+    /**
+     * Gets the directory of the status catalogs of the JIRA projects (e.g .git/githook)
+     * @return the directory
+     */
+    File getHookDirectory();
+
+    /**
+     * Gets the directory of the commit rules overriding the rules of the hook
+     * @return the directory or null if the rules of the hook are used
+     */
+    File getPolicyDirectory();
+
+    /**
+     * Gets the names of the commit message trailers referring to additional JIRA issues (e.g Refs)
+     * @return the names of the trailers. None by default
+     */
+    default List<String> getIssueKeyTrailers() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Checks whether one JIRA issue allowing the commit is enough when the commit message refers to several issues
+     * @return true if one of the issues must allow the commit. By default all of them must
+     */
+    default boolean isAnyIssueKeyAllowed() {
+        return false;
+    }
+
+    /**
+     * Gets the maximum rate of requests to JIRA
+     * @return the requests per second. 10 by default
+     */
+    default double getJiraRequestRate() {
+        return JiraRateLimiter.DEFAULT_REQUESTS_PER_SECOND;
+    }
+
+    /**
+     * Reads the configuration of the git repository of the working directory
+     * @return the configuration
+     */
+    static HookConfiguration fromGit() {
+        return new GitHookConfiguration(new GitRepository(new File(GitRepository.DEFAULT_GIT_DIRECTORY)));
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+/**
+ * This class emits the Java Flight Recorder events of the hook (config load, policy evaluation,
+ * JIRA requests and message rewrite). The events are recorded with e.g -XX:StartFlightRecording, and
+ * show up in the "git-jira-hook" category next to the GC, allocation and socket events of the JVM.
+ * Creating an event only checks whether it's recorded, and nothing is done on JVMs without the Flight Recorder.
+ * <br>
+ * Usage: try (HookEvent event = HookEvent.jiraRequest("getIssue", key)) { ...; event.setStatusCode(200); }
+ */
+final class HookEvent implements AutoCloseable {
+
+    enum Type { CONFIG_LOAD, POLICY_EVALUATION, JIRA_REQUEST, MESSAGE_REWRITE }
+
+    private static final boolean AVAILABLE = isFlightRecorderAvailable();
+    private static final HookEvent DISABLED = new HookEvent(null);
+
+    private final Object event;
+    private String source;
+    private String operation;
+    private String issueKey;
+    private String issueType;
+    private String status;
+    private String branch;
+    private boolean allowed;
+    private int entries;
+    private int statusCode;
+    private long bytes = -1;
+    private int lines;
+    private boolean changed;
+
+    private HookEvent(Object event) {
+        this.event = event;
+    }
+
+    /**
+     * Begins the loading of a configuration file
+     * @param source the name of the file
+     * @return the event
+     */
+    static HookEvent configLoad(String source) {
+        HookEvent hookEvent = begin(Type.CONFIG_LOAD);
+        hookEvent.source = source;
+        return hookEvent;
+    }
+
+    /**
+     * Begins the evaluation of the commit policy
+     * @param issueKey the JIRA issue key
+     * @param issueType the name of the JIRA issue type
+     * @param status the status of the JIRA issue
+     * @param branch the name of the branch or null if unknown
+     * @return the event
+     */
+    static HookEvent policyEvaluation(String issueKey, String issueType, String status, String branch) {
+        HookEvent hookEvent = begin(Type.POLICY_EVALUATION);
+        hookEvent.issueKey = issueKey;
+        hookEvent.issueType = issueType;
+        hookEvent.status = status;
+        hookEvent.branch = branch;
+        return hookEvent;
+    }
+
+    /**
+     * Begins a request to JIRA
+     * @param operation the name of the operation (e.g getIssue)
+     * @param issueKey the JIRA issue key or project key
+     * @return the event
+     */
+    static HookEvent jiraRequest(String operation, String issueKey) {
+        HookEvent hookEvent = begin(Type.JIRA_REQUEST);
+        hookEvent.operation = operation;
+        hookEvent.issueKey = issueKey;
+        return hookEvent;
+    }
+
+    /**
+     * Begins the rewrite of the commit message
+     * @param issueKey the JIRA issue key or null if none
+     * @return the event
+     */
+    static HookEvent messageRewrite(String issueKey) {
+        HookEvent hookEvent = begin(Type.MESSAGE_REWRITE);
+        hookEvent.issueKey = issueKey;
+        return hookEvent;
+    }
+
+    boolean isRecorded() {
+        return event != null;
+    }
+
+    void setEntries(int entries) {
+        this.entries = entries;
+    }
+
+    void setAllowed(boolean allowed) {
+        this.allowed = allowed;
+    }
+
+    void setStatusCode(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    void setLines(int lines) {
+        this.lines = lines;
+    }
+
+    void setChanged(boolean changed) {
+        this.changed = changed;
+    }
+
+    String getSource() {
+        return source;
+    }
+
+    String getOperation() {
+        return operation;
+    }
+
+    String getIssueKey() {
+        return issueKey;
+    }
+
+    String getIssueType() {
+        return issueType;
+    }
+
+    String getStatus() {
+        return status;
+    }
+
+    String getBranch() {
+        return branch;
+    }
+
+    boolean isAllowed() {
+        return allowed;
+    }
+
+    int getEntries() {
+        return entries;
+    }
+
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    int getLines() {
+        return lines;
+    }
+
+    boolean isChanged() {
+        return changed;
+    }
+
+    @Override
+    public void close() {
+        if (event != null) {
+            FlightRecorderEvents.commit(event, this);
+        }
+    }
+
+    private static HookEvent begin(Type type) {
+        // The disabled event is shared. Its values are never read
+        Object event = AVAILABLE ? FlightRecorderEvents.begin(type) : null;
+        return event != null ? new HookEvent(event) : DISABLED;
+    }
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class collects the metrics of a hook run and adds them to a metrics file in the Prometheus text format
+ * (e.g for the textfile collector of node_exporter). The file holds the totals of all hook runs of the user
+ * and is located in $XDG_CACHE_HOME/githook (defaults to ~/.cache/githook). The GITHOOK_METRICS environment
+ * variable gives another directory, or disables the metrics when set to "off".<br>
+ * The metrics are written once when the hook exits. The file is updated under a file lock and replaced
+ * atomically, so concurrent hooks never see a half written file. A hook which can't get the lock in time
+ * skips its update instead of delaying the commit.
+ */
+final class HookMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(HookMetrics.class);
+
+    static final String METRICS_FILE = "githook.prom";
+    static final String RUNS = "githook_runs_total";
+    static final String PHASE_DURATION = "githook_phase_duration_seconds";
+    static final String JIRA_RESPONSES = "githook_jira_responses_total";
+    static final String OVERRIDES = "githook_overrides_total";
+    static final String CACHE_REQUESTS = "githook_cache_requests_total";
+    static final String JIRA_RETRIES = "githook_jira_retries_total";
+    static final String JIRA_REQUEST_RATE = "githook_jira_request_rate";
+    static final String JIRA_CONCURRENCY_LIMIT = "githook_jira_concurrency_limit";
+
+    private static final String METRICS_ENVIRONMENT_VARIABLE = "GITHOOK_METRICS";
+    private static final String METRICS_DISABLED = "off";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final long LOCK_TIMEOUT_MILLIS = 500;
+    private static final long LOCK_RETRY_MILLIS = 10;
+    private static final double[] BUCKETS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+    private static final String TOTAL_PHASE = "total";
+
+    // The type and help text of each metric family
+    private static final Map<String, String[]> FAMILIES = ImmutableMap.<String, String[]>builder()
+            .put(RUNS, new String[] { "counter", "Number of hook runs by command" })
+            .put(PHASE_DURATION, new String[] { "histogram", "Time spent in each phase of the hook" })
+            .put(JIRA_RESPONSES, new String[] { "counter", "Responses of JIRA when fetching issues by status code" })
+            .put(OVERRIDES, new String[] { "counter", "Number of commits using an override option" })
+            .put(CACHE_REQUESTS, new String[] { "counter", "Cache lookups by cache and result" })
+            .put(JIRA_RETRIES, new String[] { "counter", "Requests to JIRA retried after being throttled" })
+            .put(JIRA_REQUEST_RATE, new String[] { "gauge", "Maximum rate of requests to JIRA per second" })
+            .put(JIRA_CONCURRENCY_LIMIT, new String[] { "gauge", "Adaptive limit of concurrent requests to JIRA" })
+            .build();
+
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    // Gauges replace the value of the previous hook runs instead of adding to it
+    private static final Map<String, Double> gauges = new ConcurrentHashMap<>();
+
+    private HookMetrics() {
+    }
+
+    /**
+     * Enables the metrics unless they're disabled by the environment. The metrics file is updated when
+     * the JVM exits.
+     * @param command the command of the hook run
+     */
+    static void configure(String command) {
+        Optional<File> metricsDirectory = getMetricsDirectory();
+        if (metricsDirectory.isPresent()) {
+            PhaseTimer.startRecording();
+            increment(RUNS, "command", command);
+
+            File metricsFile = new File(metricsDirectory.get(), METRICS_FILE);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> write(metricsFile)));
+        }
+    }
+
+    /**
+     * Increments a counter of this hook run
+     * @param name the name of the metric
+     * @param labels the names and values of the labels
+     */
+    static void increment(String name, String... labels) {
+        counters.computeIfAbsent(getSampleName(name, "", labels), key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Sets a gauge to its current value in this hook run
+     * @param name the name of the metric
+     * @param value the value
+     * @param labels the names and values of the labels
+     */
+    static void set(String name, double value, String... labels) {
+        gauges.put(getSampleName(name, "", labels), value);
+    }
+
+    /**
+     * Adds the metrics of this hook run to the given metrics file
+     * @param metricsFile the metrics file
+     */
+    static void write(File metricsFile) {
+        File directory = metricsFile.getAbsoluteFile().getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) {
+            logger.debug("Unable to create the metrics directory {}", directory);
+            return;
+        }
+
+        Map<String, Double> samples = getSamples();
+        File lockFile = new File(directory, metricsFile.getName() + LOCK_SUFFIX);
+
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            FileLock lock = acquireLock(channel);
+            if (lock == null) {
+                logger.debug("The metrics file {} is locked by another hook. Skipping the metrics", metricsFile);
+                return;
+            }
+
+            File temporaryFile = null;
+            try {
+                Map<String, Double> totals = read(metricsFile);
+                samples.forEach((sample, value) -> totals.merge(sample, value, Double::sum));
+                totals.putAll(gauges);
+
+                // Write to a temporary file first to avoid exposing a half written file to the collector
+                temporaryFile = File.createTempFile(METRICS_FILE, ".tmp", directory);
+                Files.asCharSink(temporaryFile, Charsets.UTF_8).write(render(totals));
+                java.nio.file.Files.move(temporaryFile.toPath(), metricsFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                lock.release();
+                if (temporaryFile != null) {
+                    java.nio.file.Files.deleteIfExists(temporaryFile.toPath());
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to write the metrics file {}", metricsFile, e);
+        }
+    }
+
+    /**
+     * Removes the metrics of this hook run
+     */
+    static void reset() {
+        counters.clear();
+        gauges.clear();
+    }
+
+    private static Optional<File> getMetricsDirectory() {
+        String metricsDirectory = System.getenv(METRICS_ENVIRONMENT_VARIABLE);
+        if (METRICS_DISABLED.equalsIgnoreCase(metricsDirectory)) {
+            return Optional.empty();
+        }
+        if (!Strings.isNullOrEmpty(metricsDirectory)) {
+            return Optional.of(new File(metricsDirectory));
+        }
+
+        String cacheDirectory = System.getenv("XDG_CACHE_HOME");
+        if (Strings.isNullOrEmpty(cacheDirectory)) {
+            cacheDirectory = System.getProperty("user.home") + File.separator + ".cache";
+        }
+        return Optional.of(new File(cacheDirectory, "githook"));
+    }
+
+    private static FileLock acquireLock(FileChannel channel) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LOCK_TIMEOUT_MILLIS);
+        do {
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return lock;
+            }
+            try {
+                Thread.sleep(LOCK_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        } while (System.nanoTime() < deadline);
+        return null;
+    }
+
+    private static Map<String, Double> getSamples() {
+        Map<String, Double> samples = new LinkedHashMap<>();
+        counters.forEach((sample, counter) -> samples.put(sample, counter.doubleValue()));
+
+        if (PhaseTimer.isEnabled()) {
+            for (PhaseTimer.Phase phase : PhaseTimer.getPhases()) {
+                // The phase name may end with its argument (e.g the JIRA issue key)
+                String name = phase.getName();
+                observe(samples, name.indexOf(' ') > 0 ? name.substring(0, name.indexOf(' ')) : name,
+                        phase.getDurationNanos());
+            }
+            observe(samples, TOTAL_PHASE, PhaseTimer.getElapsedNanos());
+        }
+        return samples;
+    }
+
+    private static void observe(Map<String, Double> samples, String phase, long durationNanos) {
+        double seconds = durationNanos / (double) TimeUnit.SECONDS.toNanos(1);
+
+        for (double bucket : BUCKETS) {
+            samples.merge(getSampleName(PHASE_DURATION, "_bucket", "phase", phase, "le", format(bucket)),
+                    seconds <= bucket ? 1.0 : 0.0, Double::sum);
+        }
+        samples.merge(getSampleName(PHASE_DURATION, "_bucket", "phase", phase, "le", "+Inf"), 1.0, Double::sum);
+        samples.merge(getSampleName(PHASE_DURATION, "_sum", "phase", phase), seconds, Double::sum);
+        samples.merge(getSampleName(PHASE_DURATION, "_count", "phase", phase), 1.0, Double::sum);
+    }
+
+    private static Map<String, Double> read(File metricsFile) throws IOException {
+        Map<String, Double> samples = new LinkedHashMap<>();
+        if (!metricsFile.isFile()) {
+            return samples;
+        }
+
+        for (String line : Files.readLines(metricsFile, Charsets.UTF_8)) {
+            int separator = line.lastIndexOf(' ');
+            if (line.startsWith("#") || separator <= 0) {
+                continue;
+            }
+
+            try {
+                samples.put(line.substring(0, separator), Double.parseDouble(line.substring(separator + 1)));
+            } catch (NumberFormatException e) {
+                logger.debug("Ignoring the invalid metric {}", line);
+            }
+        }
+        return samples;
+    }
+
+    private static String render(Map<String, Double> samples) {
+        StringBuilder builder = new StringBuilder();
+        Set<String> rendered = new HashSet<>();
+
+        for (Map.Entry<String, String[]> family : FAMILIES.entrySet()) {
+            boolean headerWritten = false;
+            for (Map.Entry<String, Double> sample : samples.entrySet()) {
+                if (getFamily(sample.getKey()).equals(family.getKey())) {
+                    if (!headerWritten) {
+                        builder.append("# HELP ").append(family.getKey()).append(' ')
+                                .append(family.getValue()[1]).append('\n');
+                        builder.append("# TYPE ").append(family.getKey()).append(' ')
+                                .append(family.getValue()[0]).append('\n');
+                        headerWritten = true;
+                    }
+                    builder.append(sample.getKey()).append(' ').append(format(sample.getValue())).append('\n');
+                    rendered.add(sample.getKey());
+                }
+            }
+        }
+
+        // Keep the metrics of other versions of the hook
+        for (Map.Entry<String, Double> sample : samples.entrySet()) {
+            if (!rendered.contains(sample.getKey())) {
+                builder.append(sample.getKey()).append(' ').append(format(sample.getValue())).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String getFamily(String sample) {
+        String name = sample.indexOf('{') > 0 ? sample.substring(0, sample.indexOf('{')) : sample;
+        for (String suffix : new String[] { "_bucket", "_sum", "_count" }) {
+            if (name.endsWith(suffix) && FAMILIES.containsKey(name.substring(0, name.length() - suffix.length()))) {
+                return name.substring(0, name.length() - suffix.length());
+            }
+        }
+        return name;
+    }
+
+    private static String getSampleName(String name, String suffix, String... labels) {
+        StringBuilder builder = new StringBuilder(name).append(suffix);
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            builder.append(i == 0 ? '{' : ',').append(labels[i]).append("=\"")
+                    .append(Strings.nullToEmpty(labels[i + 1]).replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append('"');
+        }
+        return labels.length > 1 ? builder.append('}').toString() : builder.toString();
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return String.valueOf(value);
+    }
+}
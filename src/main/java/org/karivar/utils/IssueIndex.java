@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.FileWriteMode;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * This class is responsible for the local reverse index from JIRA issue keys to commits. The index consists of
+ * a compacted file sorted by issue key, which is searched using binary search, and an append-only log of
+ * recently added commits. The log is merged into the compacted file when it grows too large.<br>
+ * Each line in both files has the format &lt;JIRA issue key&gt; &lt;commit SHA-1&gt;
+ */
+class IssueIndex {
+    private final Logger logger = LoggerFactory.getLogger(IssueIndex.class);
+
+    private static final String INDEX_FILENAME = "issueindex";
+    private static final String LOG_FILENAME = "issueindex.log";
+    private static final String LOCK_FILENAME = "issueindex.lock";
+    private static final long COMPACTION_THRESHOLD_BYTES = 64 * 1024;
+
+    private final File indexFile;
+    private final File logFile;
+    private final File lockFile;
+
+    IssueIndex(File hookDirectory) {
+        this.indexFile = new File(hookDirectory, INDEX_FILENAME);
+        this.logFile = new File(hookDirectory, LOG_FILENAME);
+        this.lockFile = new File(hookDirectory, LOCK_FILENAME);
+    }
+
+    /**
+     * Adds a commit to the index. The index is compacted when the log of added commits grows too large.
+     * @param issueKey the JIRA issue key
+     * @param sha the SHA-1 of the commit
+     */
+    void add(String issueKey, String sha) {
+        try (FileChannel channel = openLock(); FileLock ignored = channel.lock()) {
+            Files.asCharSink(logFile, Charsets.UTF_8, FileWriteMode.APPEND)
+                    .write(issueKey + " " + sha + "\n");
+
+            if (logFile.length() > COMPACTION_THRESHOLD_BYTES) {
+                compact(new TreeSet<>());
+            }
+        } catch (IOException e) {
+            logger.error("Unable to update the issue index {}", logFile, e);
+        }
+    }
+
+    /**
+     * Replaces the whole index with the given entries
+     * @param entries the entries with the format &lt;JIRA issue key&gt; &lt;commit SHA-1&gt;
+     */
+    void rebuild(Collection<String> entries) {
+        try (FileChannel channel = openLock(); FileLock ignored = channel.lock()) {
+            if (logFile.exists() && !logFile.delete()) {
+                logger.debug("Unable to delete {}", logFile);
+            }
+            if (indexFile.exists() && !indexFile.delete()) {
+                logger.debug("Unable to delete {}", indexFile);
+            }
+            compact(new TreeSet<>(entries));
+        } catch (IOException e) {
+            logger.error("Unable to rebuild the issue index {}", indexFile, e);
+        }
+    }
+
+    /**
+     * Finds all commits referring to the given JIRA issue key
+     * @param issueKey the JIRA issue key
+     * @return the SHA-1 of the commits
+     */
+    List<String> find(String issueKey) {
+        List<String> commits = new ArrayList<>();
+        String prefix = issueKey.toUpperCase() + " ";
+
+        try {
+            if (indexFile.exists()) {
+                findInIndex(prefix, commits);
+            }
+
+            if (logFile.exists()) {
+                for (String line : Files.readLines(logFile, Charsets.UTF_8)) {
+                    if (line.startsWith(prefix) && !commits.contains(line.substring(prefix.length()))) {
+                        commits.add(line.substring(prefix.length()));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Unable to read the issue index {}", indexFile, e);
+        }
+        return commits;
+    }
+
+    private void findInIndex(String prefix, List<String> commits) throws IOException {
+        try (RandomAccessFile index = new RandomAccessFile(indexFile, "r")) {
+            long low = 0;
+            long high = index.length();
+
+            // Find the first line which is greater than or equal to the prefix
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                String line = readLineStartingAtOrAfter(index, middle);
+
+                if (line == null || line.compareTo(prefix) >= 0) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+
+            String line = readLineStartingAtOrAfter(index, low);
+            while (line != null && line.startsWith(prefix)) {
+                commits.add(line.substring(prefix.length()));
+                line = index.readLine();
+            }
+        }
+    }
+
+    private String readLineStartingAtOrAfter(RandomAccessFile index, long position) throws IOException {
+        if (position == 0) {
+            index.seek(0);
+        } else {
+            // Skip the rest of the line unless the position is at the start of a line
+            index.seek(position - 1);
+            index.readLine();
+        }
+        return index.readLine();
+    }
+
+    private void compact(SortedSet<String> entries) throws IOException {
+        if (indexFile.exists()) {
+            entries.addAll(Files.readLines(indexFile, Charsets.UTF_8));
+        }
+        if (logFile.exists()) {
+            entries.addAll(Files.readLines(logFile, Charsets.UTF_8));
+        }
+        entries.remove("");
+
+        File temporaryFile = File.createTempFile(INDEX_FILENAME, ".tmp", indexFile.getParentFile());
+        Files.asCharSink(temporaryFile, Charsets.UTF_8).writeLines(entries, "\n");
+        java.nio.file.Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        if (logFile.exists() && !logFile.delete()) {
+            logger.debug("Unable to delete {}", logFile);
+        }
+        logger.debug("Compacted the issue index to {} entries", entries.size());
+    }
+
+    private FileChannel openLock() throws IOException {
+        Files.createParentDirs(lockFile);
+        return new RandomAccessFile(lockFile, "rw").getChannel();
+    }
+}
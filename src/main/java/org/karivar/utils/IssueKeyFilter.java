@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Locale;
+
+/**
+ * A Bloom filter over JIRA issue keys, telling whether a key certainly isn't in the set or maybe is (about one
+ * false positive per hundred missing keys). The bits are held in a LongBuffer, so a filter read from a memory
+ * mapped issue snapshot is used without copying it to the heap.<br>
+ * Each key sets the bits chosen by double hashing the murmur3 hash of the upper case key. The hash is part of
+ * the format of the snapshot and must not change.
+ */
+final class IssueKeyFilter {
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final LongBuffer bits;
+    private final long bitCount;
+    private final int hashFunctions;
+
+    private IssueKeyFilter(LongBuffer bits, int hashFunctions) {
+        this.bits = bits;
+        this.bitCount = (long) bits.capacity() * Long.SIZE;
+        this.hashFunctions = hashFunctions;
+    }
+
+    /**
+     * Creates an empty filter sized for the given number of keys
+     * @param expectedKeys the number of keys to add
+     * @return the filter
+     */
+    static IssueKeyFilter create(int expectedKeys) {
+        int keys = Math.max(1, expectedKeys);
+        long optimalBits = (long) Math.ceil(-keys * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (optimalBits + Long.SIZE - 1) / Long.SIZE);
+        int hashFunctions = (int) Math.max(1, Math.round((double) words * Long.SIZE / keys * Math.log(2)));
+        return new IssueKeyFilter(LongBuffer.allocate(words), hashFunctions);
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(DataOutput)}, sharing the bits of the buffer. The position of
+     * the buffer is moved past the filter
+     * @param buffer the buffer, e.g a memory mapped snapshot
+     * @return the filter
+     * @throws IOException if the filter is malformed
+     */
+    static IssueKeyFilter read(ByteBuffer buffer) throws IOException {
+        int hashFunctions = buffer.getInt();
+        int words = buffer.getInt();
+        if (hashFunctions <= 0 || words <= 0 || words > buffer.remaining() / Long.BYTES) {
+            throw new IOException("Malformed issue key filter");
+        }
+
+        ByteBuffer slice = buffer.slice();
+        slice.limit(words * Long.BYTES);
+        buffer.position(buffer.position() + words * Long.BYTES);
+        return new IssueKeyFilter(slice.order(buffer.order()).asLongBuffer(), hashFunctions);
+    }
+
+    void put(String issueKey) {
+        long[] hash = hash(issueKey);
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = bitIndex(hash, i);
+            int word = (int) (index >>> 6);
+            bits.put(word, bits.get(word) | (1L << index));
+        }
+    }
+
+    /**
+     * Checks whether the key may be in the filter
+     * @param issueKey the JIRA issue key (in any case)
+     * @return false if the key certainly isn't in the filter
+     */
+    boolean mightContain(String issueKey) {
+        long[] hash = hash(issueKey);
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = bitIndex(hash, i);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void writeTo(DataOutput output) throws IOException {
+        output.writeInt(hashFunctions);
+        output.writeInt(bits.capacity());
+        for (int i = 0; i < bits.capacity(); i++) {
+            output.writeLong(bits.get(i));
+        }
+    }
+
+    int getSizeInBytes() {
+        return bits.capacity() * Long.BYTES;
+    }
+
+    private long bitIndex(long[] hash, int i) {
+        return ((hash[0] + i * hash[1]) & Long.MAX_VALUE) % bitCount;
+    }
+
+    private static long[] hash(String issueKey) {
+        ByteBuffer hash = ByteBuffer.wrap(HASH_FUNCTION.hashString(issueKey.toUpperCase(Locale.ROOT),
+                Charsets.UTF_8).asBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        return new long[] { hash.getLong(0), hash.getLong(Long.BYTES) };
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.karivar.utils.domain.BasicJiraIssue;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.User;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * This class holds a page of the issues found by the /rest/api/2/search resource, with the fields kept in the
+ * issue snapshot. The response is read as a stream, so a page of many issues isn't held in memory as JSON.
+ */
+final class IssueSearchPage {
+    static final String FIELDS = "summary,issuetype,status,assignee,parent";
+
+    private final int startAt;
+    private final int total;
+    private final List<JiraIssue> issues;
+
+    private IssueSearchPage(int startAt, int total, List<JiraIssue> issues) {
+        this.startAt = startAt;
+        this.total = total;
+        this.issues = Collections.unmodifiableList(issues);
+    }
+
+    /**
+     * Creates a page from the response of the /rest/api/2/search resource
+     * @param json the response
+     * @return the page
+     * @throws IOException if the response can't be read or is malformed
+     */
+    static IssueSearchPage fromJson(Reader json) throws IOException {
+        JsonStreamReader reader = new JsonStreamReader(json);
+        int[] startAtAndTotal = new int[2];
+        List<JiraIssue> issues = new ArrayList<>();
+
+        if (reader.peek() != JsonStreamReader.Token.BEGIN_OBJECT) {
+            throw new IOException("Malformed search result: expected an object but was " + reader.peek());
+        }
+        readObject(reader, name -> {
+            if ("startAt".equals(name)) {
+                startAtAndTotal[0] = parseInt(reader.nextString());
+            } else if ("total".equals(name)) {
+                startAtAndTotal[1] = parseInt(reader.nextString());
+            } else if ("issues".equals(name) && reader.peek() == JsonStreamReader.Token.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    issues.add(readIssue(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        });
+        return new IssueSearchPage(startAtAndTotal[0], startAtAndTotal[1], issues);
+    }
+
+    int getStartAt() {
+        return startAt;
+    }
+
+    /**
+     * Gets the number of issues found by the search, i.e of all the pages
+     * @return the number of issues
+     */
+    int getTotal() {
+        return total;
+    }
+
+    List<JiraIssue> getIssues() {
+        return issues;
+    }
+
+    private static JiraIssue readIssue(JsonStreamReader reader) throws IOException {
+        IssueFields issue = new IssueFields();
+        readObject(reader, name -> {
+            if ("key".equals(name)) {
+                issue.key = reader.nextString();
+            } else if ("fields".equals(name)) {
+                readObject(reader, field -> readField(reader, field, issue));
+            } else {
+                reader.skipValue();
+            }
+        });
+
+        if (issue.key == null) {
+            throw new IOException("Malformed search result: an issue without key");
+        }
+        return issue.toJiraIssue();
+    }
+
+    private static void readField(JsonStreamReader reader, String field, IssueFields issue) throws IOException {
+        switch (field) {
+            case "summary":
+                issue.summary = reader.nextString();
+                break;
+            case "issuetype":
+                readObject(reader, name -> {
+                    if ("name".equals(name)) {
+                        issue.issueTypeName = reader.nextString();
+                    } else if ("subtask".equals(name)) {
+                        issue.subtask = Boolean.parseBoolean(reader.nextString());
+                    } else {
+                        reader.skipValue();
+                    }
+                });
+                break;
+            case "status":
+                readObject(reader, name -> {
+                    if ("id".equals(name)) {
+                        issue.statusId = reader.nextString();
+                    } else if ("name".equals(name)) {
+                        issue.status = reader.nextString();
+                    } else if ("statusCategory".equals(name)) {
+                        readObject(reader, categoryField -> {
+                            if ("key".equals(categoryField)) {
+                                issue.statusCategory = reader.nextString();
+                            } else {
+                                reader.skipValue();
+                            }
+                        });
+                    } else {
+                        reader.skipValue();
+                    }
+                });
+                break;
+            case "assignee":
+                readObject(reader, name -> {
+                    if ("name".equals(name)) {
+                        issue.assigneeName = reader.nextString();
+                    } else if ("displayName".equals(name)) {
+                        issue.assigneeDisplayName = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                });
+                break;
+            case "parent":
+                readObject(reader, name -> {
+                    if ("key".equals(name)) {
+                        issue.parentKey = reader.nextString();
+                    } else if ("fields".equals(name)) {
+                        readObject(reader, parentField -> {
+                            if ("summary".equals(parentField)) {
+                                issue.parentSummary = reader.nextString();
+                            } else {
+                                reader.skipValue();
+                            }
+                        });
+                    } else {
+                        reader.skipValue();
+                    }
+                });
+                break;
+            default:
+                reader.skipValue();
+        }
+    }
+
+    /**
+     * Reads the fields of an object. A null value is skipped like an empty object
+     */
+    private static void readObject(JsonStreamReader reader, FieldReader fieldReader) throws IOException {
+        if (reader.peek() != JsonStreamReader.Token.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            fieldReader.read(reader.nextName());
+        }
+        reader.endObject();
+    }
+
+    private static int parseInt(String value) throws IOException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed search result: " + value + " is not a number", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface FieldReader {
+        void read(String name) throws IOException;
+    }
+
+    /**
+     * The fields of an issue while it's read
+     */
+    private static final class IssueFields {
+        private String key;
+        private String summary;
+        private String issueTypeName;
+        private boolean subtask;
+        private String statusId;
+        private String status;
+        private String statusCategory;
+        private String assigneeName;
+        private String assigneeDisplayName;
+        private String parentKey;
+        private String parentSummary;
+
+        private JiraIssue toJiraIssue() {
+            JiraIssue issue = new JiraIssue(key, summary);
+            issue.setIssueTypeName(issueTypeName);
+            issue.setSubtask(subtask);
+            issue.setStatusId(statusId);
+            issue.setStatus(status);
+            issue.setStatusCategory(statusCategory);
+            issue.setAssignee(assigneeName != null ? Optional.of(new User(assigneeName, assigneeDisplayName))
+                    : Optional.empty());
+            issue.setParentIssue(parentKey != null ? Optional.of(new BasicJiraIssue(parentKey, parentSummary))
+                    : Optional.empty());
+            return issue;
+        }
+    }
+}
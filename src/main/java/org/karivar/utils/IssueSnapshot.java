@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.karivar.utils.domain.BasicJiraIssue;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * This class is responsible for the read-only snapshot of the JIRA issues of a team, published periodically to the
+ * common path of the git hook (see --publish-snapshot) and memory mapped by each hook run.<br>
+ * The snapshot holds a Bloom filter over all issue keys and the key, summary, type, status and assignee of each
+ * issue sorted by key. The snapshot only has the issues the publishing account can browse. A project is marked
+ * complete when the publisher declares that the account can browse all its issues (no issue security levels).
+ * A key of a complete project, whose number isn't higher than the highest number of the project at the time of
+ * the snapshot and which isn't in the filter certainly doesn't exist, so a mistyped key is rejected without
+ * contacting JIRA. Issues created later have higher numbers and, like the keys of other projects, are left to
+ * JIRA. An issue moved to another project keeps its old key in JIRA, so the publisher adds the old keys of moved
+ * issues to the filter (see {@link #getMissingIssueKeys(Collection, Collection)}), and they're left to JIRA too.
+ * An issue moved after the snapshot is published is still rejected by its old key until the next snapshot.
+ * The issues themselves are only used while the snapshot is fresh.<br>
+ * The file starts with a magic number and a format version, so a hook reading a snapshot of another format
+ * ignores it. A new snapshot replaces the old one atomically, and mapped copies of the old one stay valid.
+ */
+final class IssueSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(IssueSnapshot.class);
+
+    static final String SNAPSHOT_FILENAME = "issuesnapshot.bin";
+    private static final int MAGIC = 0x474A4953;
+    private static final int FORMAT_VERSION = 2;
+    private static final int NULL_LENGTH = -1;
+
+    private final ByteBuffer buffer;
+    private final long created;
+    private final Map<String, Integer> highestIssueNumbers;
+    private final Set<String> completeProjects;
+    private final IssueKeyFilter filter;
+    private final int issueCount;
+    private final int offsetsPosition;
+    private final int issuesPosition;
+
+    private IssueSnapshot(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not an issue snapshot");
+        }
+        int formatVersion = buffer.getInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version " + formatVersion);
+        }
+        created = buffer.getLong();
+
+        ImmutableMap.Builder<String, Integer> projects = ImmutableMap.builder();
+        ImmutableSet.Builder<String> complete = ImmutableSet.builder();
+        for (int projectCount = buffer.getInt(); projectCount > 0; projectCount--) {
+            String projectKey = readString(buffer);
+            projects.put(projectKey, buffer.getInt());
+            if (buffer.get() != 0) {
+                complete.add(projectKey);
+            }
+        }
+        highestIssueNumbers = projects.build();
+        completeProjects = complete.build();
+        filter = IssueKeyFilter.read(buffer);
+
+        issueCount = buffer.getInt();
+        if (issueCount < 0 || issueCount > buffer.remaining() / Integer.BYTES) {
+            throw new IOException("Malformed issue snapshot");
+        }
+        offsetsPosition = buffer.position();
+        issuesPosition = offsetsPosition + issueCount * Integer.BYTES;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Memory maps the snapshot
+     * @param file the snapshot file
+     * @return the snapshot or empty if it's missing or can't be read
+     */
+    static Optional<IssueSnapshot> open(File file) {
+        if (!file.isFile()) {
+            logger.debug("The issue snapshot {} doesn't exist", file);
+            return Optional.empty();
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The issue snapshot is too large to be mapped");
+            }
+            // The mapping stays valid after the channel is closed
+            return Optional.of(new IssueSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Unable to read the issue snapshot {}. Ignoring it", file, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Gets the keys of the complete projects which aren't among the issues, i.e the keys of deleted issues and the
+     * old keys of issues moved to another project. The publisher asks JIRA which of them are moved
+     * @param issues all the issues of the projects in the snapshot the publishing account can browse
+     * @param completeProjects the keys of the projects whose issues the publishing account can all browse
+     * @return the missing keys sorted by project and number
+     */
+    static List<String> getMissingIssueKeys(Collection<JiraIssue> issues, Collection<String> completeProjects) {
+        Set<String> complete = toUpperCase(completeProjects);
+        Map<String, JiraIssue> sortedIssues = new TreeMap<>();
+        Map<String, Integer> highestIssueNumbers = new TreeMap<>();
+        sortIssues(issues, sortedIssues, highestIssueNumbers);
+
+        List<String> missingIssueKeys = new ArrayList<>();
+        for (Map.Entry<String, Integer> project : highestIssueNumbers.entrySet()) {
+            if (complete.contains(project.getKey())) {
+                for (int number = 1; number <= project.getValue(); number++) {
+                    String key = project.getKey() + "-" + number;
+                    if (!sortedIssues.containsKey(key)) {
+                        missingIssueKeys.add(key);
+                    }
+                }
+            }
+        }
+        return missingIssueKeys;
+    }
+
+    /**
+     * Writes a snapshot of the given issues, replacing the existing snapshot
+     * @param file the snapshot file
+     * @param issues all the issues of the projects in the snapshot the publishing account can browse
+     * @param created the time the issues were fetched (in milliseconds)
+     * @param completeProjects the keys of the projects whose issues the publishing account can all browse
+     * @param movedIssueKeys the old keys of the issues moved from the complete projects to another project
+     * @throws IOException if the snapshot can't be written
+     */
+    static void write(File file, Collection<JiraIssue> issues, long created, Collection<String> completeProjects,
+                      Collection<String> movedIssueKeys) throws IOException {
+        Set<String> complete = toUpperCase(completeProjects);
+        Set<String> moved = toUpperCase(movedIssueKeys);
+        Map<String, JiraIssue> sortedIssues = new TreeMap<>();
+        Map<String, Integer> highestIssueNumbers = new TreeMap<>();
+        sortIssues(issues, sortedIssues, highestIssueNumbers);
+
+        // The old keys of moved issues aren't missing, but their issues are only found in JIRA
+        IssueKeyFilter filter = IssueKeyFilter.create(sortedIssues.size() + moved.size());
+        moved.forEach(filter::put);
+        ByteArrayOutputStream issueBytes = new ByteArrayOutputStream();
+        DataOutputStream issueOutput = new DataOutputStream(issueBytes);
+        List<Integer> offsets = new ArrayList<>();
+        for (Map.Entry<String, JiraIssue> entry : sortedIssues.entrySet()) {
+            filter.put(entry.getKey());
+            offsets.add(issueOutput.size());
+            writeIssue(issueOutput, entry.getKey(), entry.getValue());
+        }
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temporaryFile = File.createTempFile(SNAPSHOT_FILENAME, ".tmp", directory);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temporaryFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(created);
+            output.writeInt(highestIssueNumbers.size());
+            for (Map.Entry<String, Integer> project : highestIssueNumbers.entrySet()) {
+                writeString(output, project.getKey());
+                output.writeInt(project.getValue());
+                output.writeByte(complete.contains(project.getKey()) ? 1 : 0);
+            }
+            filter.writeTo(output);
+            output.writeInt(offsets.size());
+            for (int offset : offsets) {
+                output.writeInt(offset);
+            }
+            issueBytes.writeTo(output);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryFile.toPath());
+            throw e;
+        }
+
+        // The hooks mapping the old snapshot keep reading it
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        logger.debug("Wrote {} issues of {} to {} ({} bytes of filter)", sortedIssues.size(),
+                highestIssueNumbers.keySet(), file, filter.getSizeInBytes());
+    }
+
+    /**
+     * Gets the time the issues of the snapshot were fetched
+     * @return the time in milliseconds
+     */
+    long getCreated() {
+        return created;
+    }
+
+    /**
+     * Checks whether the snapshot is recent enough for its issues to be used
+     * @param maxAgeMillis the maximum age of the snapshot
+     * @return true if the snapshot is fresh
+     */
+    boolean isFresh(long maxAgeMillis) {
+        long age = System.currentTimeMillis() - created;
+        return age >= 0 && age <= maxAgeMillis;
+    }
+
+    int size() {
+        return issueCount;
+    }
+
+    /**
+     * Checks whether the issue certainly doesn't exist, e.g because the key is mistyped
+     * @param issueKey the JIRA issue key
+     * @return true if the issue didn't exist when the snapshot was created and can't have been created since.
+     * Always false for projects not marked complete, as the issue may be hidden from the publishing account
+     */
+    boolean isMissing(String issueKey) {
+        String key = issueKey.toUpperCase(Locale.ROOT);
+        int separator = key.lastIndexOf('-');
+        if (separator <= 0 || !completeProjects.contains(key.substring(0, separator))) {
+            return false;
+        }
+
+        Integer highestIssueNumber = highestIssueNumbers.get(key.substring(0, separator));
+        int number = parseIssueNumber(key.substring(separator + 1));
+        return highestIssueNumber != null && number >= 0 && number <= highestIssueNumber
+                && !filter.mightContain(key);
+    }
+
+    /**
+     * Gets the issue as it was when the snapshot was created. Related issues aren't part of the snapshot
+     * @param issueKey the JIRA issue key
+     * @return the issue or empty if it's not in the snapshot
+     */
+    Optional<JiraIssue> getIssue(String issueKey) {
+        String key = issueKey.toUpperCase(Locale.ROOT);
+        if (!filter.mightContain(key)) {
+            return Optional.empty();
+        }
+
+        // Each lookup has its own view of the buffer, so the snapshot may be shared by threads
+        ByteBuffer issues = buffer.duplicate();
+        try {
+            int low = 0;
+            int high = issueCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                issues.position(issuesPosition + issues.getInt(offsetsPosition + middle * Integer.BYTES));
+                int comparison = readString(issues).compareTo(key);
+
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return Optional.of(readIssue(issues, key));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Unable to read {} from the issue snapshot", key, e);
+        }
+        return Optional.empty();
+    }
+
+    private static void sortIssues(Collection<JiraIssue> issues, Map<String, JiraIssue> sortedIssues,
+                                   Map<String, Integer> highestIssueNumbers) {
+        for (JiraIssue issue : issues) {
+            String key = issue.getKey().toUpperCase(Locale.ROOT);
+            int separator = key.lastIndexOf('-');
+            int number = separator > 0 ? parseIssueNumber(key.substring(separator + 1)) : -1;
+            if (number >= 0) {
+                sortedIssues.put(key, issue);
+                highestIssueNumbers.merge(key.substring(0, separator), number, Math::max);
+            }
+        }
+    }
+
+    private static Set<String> toUpperCase(Collection<String> keys) {
+        Set<String> upperCaseKeys = new HashSet<>();
+        keys.forEach(key -> upperCaseKeys.add(key.toUpperCase(Locale.ROOT)));
+        return upperCaseKeys;
+    }
+
+    private static JiraIssue readIssue(ByteBuffer buffer, String key) throws IOException {
+        JiraIssue issue = new JiraIssue(key, readString(buffer));
+        issue.setIssueTypeName(readString(buffer));
+        issue.setSubtask(buffer.get() != 0);
+        issue.setStatus(readString(buffer));
+        issue.setStatusId(readString(buffer));
+        issue.setStatusCategory(readString(buffer));
+
+        String assigneeName = readString(buffer);
+        String assigneeDisplayName = readString(buffer);
+        issue.setAssignee(assigneeName != null ? Optional.of(new User(assigneeName, assigneeDisplayName))
+                : Optional.empty());
+
+        String parentKey = readString(buffer);
+        String parentSummary = readString(buffer);
+        issue.setParentIssue(parentKey != null ? Optional.of(new BasicJiraIssue(parentKey, parentSummary))
+                : Optional.empty());
+        issue.setRelatedIssues(new ArrayList<>());
+        return issue;
+    }
+
+    private static void writeIssue(DataOutputStream output, String key, JiraIssue issue) throws IOException {
+        writeString(output, key);
+        writeString(output, issue.getSummary());
+        writeString(output, issue.getIssueTypeName());
+        output.writeByte(issue.isSubtask() ? 1 : 0);
+        writeString(output, issue.getStatus());
+        writeString(output, issue.getStatusId());
+        writeString(output, issue.getStatusCategory());
+
+        Optional<User> assignee = issue.getAssignee() != null ? issue.getAssignee() : Optional.empty();
+        writeString(output, assignee.map(User::getName).orElse(null));
+        writeString(output, assignee.map(User::getDisplayName).orElse(null));
+
+        Optional<BasicJiraIssue> parent = issue.getParentIssue() != null ? issue.getParentIssue() : Optional.empty();
+        writeString(output, parent.map(BasicJiraIssue::getKey).orElse(null));
+        writeString(output, parent.map(BasicJiraIssue::getSummary).orElse(null));
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(NULL_LENGTH);
+        } else {
+            byte[] bytes = value.getBytes(Charsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Malformed issue snapshot");
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static int parseIssueNumber(String number) {
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
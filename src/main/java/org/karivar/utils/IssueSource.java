@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.karivar.utils.domain.IssueKeyNotFoundException;
+import org.karivar.utils.domain.JiraIssue;
+
+/**
+ * The source of the JIRA issues validated by a {@link CommitMessageValidator}, e.g JIRA itself or a
+ * snapshot of the issues kept by a build tool. The source is called concurrently by the threads sharing
+ * the validator.
+ */
+@FunctionalInterface
+public interface IssueSource {
+
+    /**
+     * Gets the populated JIRA issue (status, assignee, parent and related issues)
+     * @param issueKey the JIRA issue key
+     * @return the issue or null if it doesn't exist
+     * @throws IssueKeyNotFoundException if the issue can't be fetched (connectivity, access, etc.)
+     */
+    JiraIssue getIssue(String issueKey) throws IssueKeyNotFoundException;
+
+    /**
+     * Forgets what the source may have cached about the issue, e.g when the issue is changed in JIRA
+     * @param issueKey the JIRA issue key
+     */
+    default void invalidate(String issueKey) {
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A local HTTP endpoint receiving the webhooks of JIRA, so a long-lived {@link CommitMessageValidator} (e.g of
+ * a validation service) forgets changed and deleted issues right away and may keep the other issues for long.<br>
+ * Register a JIRA webhook for the issue updated and issue deleted events posting to
+ * http://&lt;host&gt;:&lt;port&gt;/rest/webhooks/jira, using the secret of the listener. Each payload must be
+ * signed by the secret (the X-Hub-Signature header sha256=&lt;HMAC-SHA256 of the body in hex&gt; sent by JIRA),
+ * and nothing is invalidated unless the signature is valid. The payload is read as a stream, picking the event,
+ * the issue key and the previous key of a moved issue.<br>
+ * Usage: try (IssueWebhookListener listener = new IssueWebhookListener(validator, 8090, secret)) {
+ * listener.start(); ... }
+ */
+public final class IssueWebhookListener implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(IssueWebhookListener.class);
+
+    static final String PATH = "/rest/webhooks/jira";
+    static final String SIGNATURE_HEADER = "X-Hub-Signature";
+    static final String SIGNATURE_PREFIX = "sha256=";
+    static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final Set<String> INVALIDATING_EVENTS = ImmutableSet.of("jira:issue_updated", "jira:issue_deleted");
+    private static final String KEY_FIELD = "Key";
+    private static final long MAX_PAYLOAD_BYTES = 16 * 1024 * 1024;
+    private static final int HTTP_PAYLOAD_TOO_LARGE = 413;
+
+    private final CommitMessageValidator validator;
+    private final byte[] secret;
+    private final HttpServer server;
+
+    /**
+     * Creates the listener on the loopback interface
+     * @param validator the validator whose fetched issues are invalidated
+     * @param port the port or 0 to use any free port
+     * @param secret the secret shared with the JIRA webhook
+     * @throws IOException if the port can't be bound
+     */
+    public IssueWebhookListener(CommitMessageValidator validator, int port, String secret) throws IOException {
+        this(validator, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), secret);
+    }
+
+    /**
+     * Creates the listener
+     * @param validator the validator whose fetched issues are invalidated
+     * @param address the address to listen on
+     * @param secret the secret shared with the JIRA webhook
+     * @throws IOException if the address can't be bound
+     */
+    public IssueWebhookListener(CommitMessageValidator validator, InetSocketAddress address, String secret)
+            throws IOException {
+        if (Strings.isNullOrEmpty(secret)) {
+            throw new IllegalArgumentException("The webhooks must be signed by a secret");
+        }
+        this.validator = validator;
+        this.secret = secret.getBytes(Charsets.UTF_8);
+        server = HttpServer.create(address, 0);
+        server.createContext(PATH, this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Gets the port the listener is bound to, e.g when created using any free port
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            exchange.sendResponseHeaders(receive(exchange), -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private int receive(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            return HttpURLConnection.HTTP_BAD_METHOD;
+        }
+
+        String signature = exchange.getRequestHeaders().getFirst(SIGNATURE_HEADER);
+        if (signature == null || !signature.startsWith(SIGNATURE_PREFIX)) {
+            logger.debug("Rejected an unsigned webhook from {}", exchange.getRemoteAddress());
+            return HttpURLConnection.HTTP_UNAUTHORIZED;
+        }
+
+        Mac mac = createMac();
+        CountingInputStream counter = new CountingInputStream(
+                ByteStreams.limit(exchange.getRequestBody(), MAX_PAYLOAD_BYTES + 1));
+        Webhook webhook = null;
+        try (InputStream body = new MacInputStream(counter, mac)) {
+            try {
+                webhook = Webhook.read(new JsonStreamReader(new InputStreamReader(body, Charsets.UTF_8)));
+            } catch (IOException e) {
+                logger.debug("Unable to read the webhook", e);
+            }
+            // The signature covers the whole body
+            ByteStreams.exhaust(body);
+        }
+
+        if (counter.getCount() > MAX_PAYLOAD_BYTES) {
+            return HTTP_PAYLOAD_TOO_LARGE;
+        }
+        if (!isSignatureValid(signature.substring(SIGNATURE_PREFIX.length()), mac.doFinal())) {
+            logger.debug("Rejected a webhook with an invalid signature from {}", exchange.getRemoteAddress());
+            return HttpURLConnection.HTTP_UNAUTHORIZED;
+        }
+        if (webhook == null) {
+            return HttpURLConnection.HTTP_BAD_REQUEST;
+        }
+
+        if (INVALIDATING_EVENTS.contains(webhook.event)) {
+            logger.debug("Invalidating {} after {}", webhook.issueKeys, webhook.event);
+            webhook.issueKeys.forEach(validator::invalidate);
+        }
+        return HttpURLConnection.HTTP_NO_CONTENT;
+    }
+
+    private Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, HMAC_ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            // Every JVM supports HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isSignatureValid(String signature, byte[] expected) {
+        try {
+            // Compared in constant time so the signature can't be guessed byte by byte
+            return MessageDigest.isEqual(BaseEncoding.base16().lowerCase().decode(signature.toLowerCase()), expected);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The event of a webhook and the keys of the issue it's about
+     */
+    private static final class Webhook {
+        private String event;
+        private final Set<String> issueKeys = new LinkedHashSet<>();
+
+        private static Webhook read(JsonStreamReader reader) throws IOException {
+            Webhook webhook = new Webhook();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("webhookEvent".equals(name)) {
+                    webhook.event = reader.nextString();
+                } else if ("issue".equals(name) && reader.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+                    webhook.readIssue(reader);
+                } else if ("changelog".equals(name) && reader.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+                    webhook.readChangelog(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return webhook;
+        }
+
+        private void readIssue(JsonStreamReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("key".equals(reader.nextName())) {
+                    addIssueKey(reader.nextString());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        private void readChangelog(JsonStreamReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("items".equals(reader.nextName()) && reader.peek() == JsonStreamReader.Token.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readChangelogItem(reader);
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        private void readChangelogItem(JsonStreamReader reader) throws IOException {
+            // A moved issue is cached by its previous key
+            String field = null;
+            String previousValue = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("field".equals(name)) {
+                    field = reader.nextString();
+                } else if ("fromString".equals(name)) {
+                    previousValue = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (KEY_FIELD.equals(field)) {
+                addIssueKey(previousValue);
+            }
+        }
+
+        private void addIssueKey(String issueKey) {
+            if (!Strings.isNullOrEmpty(issueKey)) {
+                issueKeys.add(issueKey);
+            }
+        }
+    }
+
+    /**
+     * Updates the HMAC of the webhook while the body is read
+     */
+    private static final class MacInputStream extends FilterInputStream {
+        private final Mac mac;
+
+        private MacInputStream(InputStream stream, Mac mac) {
+            super(stream);
+            this.mac = mac;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                mac.update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int count = super.read(bytes, offset, length);
+            if (count > 0) {
+                mac.update(bytes, offset, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // Skipped bytes are signed as well
+            byte[] skipped = new byte[(int) Math.min(Math.max(count, 0), 8192)];
+            return Math.max(0, read(skipped, 0, skipped.length));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Throwables;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * This class is responsible for creating the JIRA connector in the background while the commit-msg hook loads
+ * the git repository, the commit policy and the caches. Creating the connector reads the JIRA configuration of
+ * git, loads the JRJC classes and builds its HTTP client, and the connection is warmed up afterwards
+ * (see {@link JiraConnector#warmUp()}). The warm-up runs in a daemon thread, so it never delays the exit of
+ * a hook run not contacting JIRA after all (e.g a cached issue).
+ */
+final class JiraConnectionWarmUp implements Supplier<JiraConnector> {
+    private static final String THREAD_NAME = "githook-jira-warmup";
+
+    private final CompletableFuture<JiraConnector> jiraConnector;
+
+    private JiraConnectionWarmUp(CompletableFuture<JiraConnector> jiraConnector) {
+        this.jiraConnector = jiraConnector;
+    }
+
+    /**
+     * Starts creating and warming up the JIRA connector
+     * @param jiraConnectorFactory creates the connected JIRA connector
+     * @return the warm-up
+     */
+    static JiraConnectionWarmUp start(Supplier<JiraConnector> jiraConnectorFactory) {
+        return new JiraConnectionWarmUp(CompletableFuture.supplyAsync(() -> {
+            JiraConnector connector = jiraConnectorFactory.get();
+            connector.warmUp();
+            return connector;
+        }, command -> {
+            Thread thread = new Thread(command, THREAD_NAME);
+            thread.setDaemon(true);
+            thread.start();
+        }));
+    }
+
+    /**
+     * Gets the JIRA connector, waiting for the warm-up if it's still running
+     * @return the JIRA connector
+     */
+    @Override
+    public JiraConnector get() {
+        try (PhaseTimer.Phase ignored = PhaseTimer.start("jira.warmup.wait")) {
+            return jiraConnector.join();
+        } catch (CompletionException e) {
+            // Fail as if the connector was created by the caller
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+}
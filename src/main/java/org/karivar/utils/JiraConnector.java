@@ -17,26 +17,83 @@ import com.atlassian.jira.rest.client.internal.async.AsynchronousJiraRestClientF
 import com.atlassian.util.concurrent.Promise;
 import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.io.CharStreams;
+import com.google.common.io.CountingInputStream;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 import org.karivar.utils.domain.*;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
 
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
 import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.net.UnknownHostException;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 class JiraConnector {
 
     private final Logger logger = LoggerFactory.getLogger(JiraConnector.class);
+    private static final String STATUSES_RESOURCE = "rest/api/2/project/{key}/statuses";
+    private static final String SEARCH_RESOURCE = "rest/api/2/search";
+    private static final int SEARCH_PAGE_SIZE = 500;
+    private static final int MOVED_ISSUES_BATCH_SIZE = 100;
+    private static final int CONNECTION_TIMEOUT_MILLIS = 10000;
+    private static final String HTTPS_SCHEME = "https";
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final long MAXIMUM_RELATED_ISSUES = 1000;
+    private static final long DEFAULT_RELATED_ISSUES_TIME_TO_LIVE_MINUTES = 15;
+    private JiraRestClient restClient;
     private IssueRestClient issueRestClient;
     private final ResourceBundle messages;
+    private final JiraRateLimiter rateLimiter;
+    // The connector may be shared by threads validating commit messages in-process, so the related issues
+    // are bounded and expire like the fetched issues
+    private final Cache<String, BasicJiraIssue> fetchedRelatedIssues;
+    private URI jiraAddressUri;
+    private String basicAuthorization;
 
     JiraConnector(ResourceBundle bundle) {
-       messages = bundle;
+        this(bundle, new JiraRateLimiter(JiraRateLimiter.DEFAULT_REQUESTS_PER_SECOND));
+    }
+
+    /**
+     * Creates the connector
+     * @param bundle the messages of the hook
+     * @param rateLimiter the limiter of the requests to JIRA, shared by the connectors of the JIRA instance
+     */
+    JiraConnector(ResourceBundle bundle, JiraRateLimiter rateLimiter) {
+        this(bundle, rateLimiter, DEFAULT_RELATED_ISSUES_TIME_TO_LIVE_MINUTES);
+    }
+
+    /**
+     * Creates the connector
+     * @param bundle the messages of the hook
+     * @param rateLimiter the limiter of the requests to JIRA, shared by the connectors of the JIRA instance
+     * @param relatedIssuesTimeToLiveMinutes the number of minutes a fetched related issue is reused
+     */
+    JiraConnector(ResourceBundle bundle, JiraRateLimiter rateLimiter, long relatedIssuesTimeToLiveMinutes) {
+        messages = bundle;
+        this.rateLimiter = rateLimiter;
+        fetchedRelatedIssues = CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_RELATED_ISSUES)
+                .expireAfterWrite(relatedIssuesTimeToLiveMinutes, TimeUnit.MINUTES)
+                .build();
     }
 
     /**
@@ -49,29 +106,69 @@ class JiraConnector {
                                  final String jiraEncodedPassword,
                                  final String jiraAddress) {
         if (jiraUsername != null && jiraEncodedPassword != null && jiraAddress != null) {
-            final AsynchronousJiraRestClientFactory factory = new AsynchronousJiraRestClientFactory();
+            try (PhaseTimer.Phase ignored = PhaseTimer.start("jira.connect")) {
+                final AsynchronousJiraRestClientFactory factory = new AsynchronousJiraRestClientFactory();
 
-            URI jiraAddressUri = getJiraAddressUri(jiraAddress);
-            String decodedPassword = getDecodedPassword(jiraEncodedPassword);
+                jiraAddressUri = getJiraAddressUri(jiraAddress);
+                String decodedPassword = getDecodedPassword(jiraEncodedPassword);
+                basicAuthorization = "Basic " + Base64.getEncoder().encodeToString(
+                        (jiraUsername + ":" + decodedPassword).getBytes(Charsets.UTF_8));
 
-            JiraRestClient restClient = factory.createWithBasicHttpAuthentication(
-                    jiraAddressUri, jiraUsername, decodedPassword);
+                restClient = factory.createWithBasicHttpAuthentication(jiraAddressUri, jiraUsername,
+                        decodedPassword);
 
-            issueRestClient = restClient.getIssueClient();
+                issueRestClient = restClient.getIssueClient();
+            }
 
         } else {
             logger.error(messages.getString("error.jira.connection"));
         }
     }
 
+    /**
+     * Prepares the connection to JIRA before the first request. The host name of JIRA is resolved (the address
+     * is cached by the JVM) and the default TLS context is initialized (loading the trust store) for an https
+     * address. Failures are left to the requests
+     */
+    void warmUp() {
+        if (jiraAddressUri == null || Strings.isNullOrEmpty(jiraAddressUri.getHost())) {
+            return;
+        }
+
+        try (PhaseTimer.Phase ignored = PhaseTimer.start("jira.warmup")) {
+            InetAddress.getAllByName(jiraAddressUri.getHost());
+            if (HTTPS_SCHEME.equalsIgnoreCase(jiraAddressUri.getScheme())) {
+                SSLContext.getDefault();
+            }
+        } catch (UnknownHostException | NoSuchAlgorithmException e) {
+            logger.debug("Unable to warm up the connection to {}", jiraAddressUri, e);
+        }
+    }
+
+    /**
+     * Closes the HTTP client of the JIRA connection (its connections and I/O threads), e.g before the JVM is
+     * checkpointed. The connector must be connected again to be used
+     */
+    void close() {
+        if (restClient != null) {
+            try {
+                restClient.close();
+            } catch (IOException e) {
+                logger.debug("Unable to close the JIRA client", e);
+            }
+            restClient = null;
+            issueRestClient = null;
+        }
+    }
+
     /**
      * Fetches the populated JIRA issue for the given issue key.
      * @param jiraIssueKey the given jira issue id
-     * @param issueLinks a list containing all names of JIRA issue link names
+     * @param issueLinks the names of the JIRA issue links connecting related issues (in lower case)
      * @return the fully populated JIRA issue
      * @throws IssueKeyNotFoundException in case of problems (connectivity, malformed messages, invalid argument, etc.)
      */
-    JiraIssue getJiraPopulatedIssue(Optional<String> jiraIssueKey, List<String> issueLinks)
+    JiraIssue getJiraPopulatedIssue(Optional<String> jiraIssueKey, Set<String> issueLinks)
             throws IssueKeyNotFoundException {
 
         String issueKey = null;
@@ -79,7 +176,247 @@ class JiraConnector {
         if (jiraIssueKey.isPresent()) {
             issueKey = jiraIssueKey.get();
         }
-        return mapJiraIssue(fetchBasicJiraIssue(issueKey), issueLinks);
+
+        JiraIssueHolder issueHolder = fetchBasicJiraIssue(issueKey);
+        if (issueHolder == null) {
+            // JIRA isn't connected or failed with an unexpected error (e.g 500), which is already logged
+            throw new IssueKeyNotFoundException(messages.getString("error.jira.unavailable") + issueKey);
+        }
+        return mapJiraIssue(issueHolder, issueLinks);
+    }
+
+    /**
+     * Fetches the populated JIRA issues for the given issue keys. All the issues allowed by the rate limiter are
+     * requested before waiting for any of them, so fetching several issues takes about as long as fetching one.
+     * @param jiraIssueKeys the given jira issue ids
+     * @param issueLinks the names of the JIRA issue links connecting related issues (in lower case)
+     * @param missingIssuesAllowed true if an issue which can't be fetched is returned as null, as long as one of
+     * the issues is fetched
+     * @return the fully populated JIRA issues in the order of the keys
+     * @throws IssueKeyNotFoundException in case of problems (connectivity, malformed messages, invalid argument, etc.)
+     */
+    List<JiraIssue> getJiraPopulatedIssues(List<String> jiraIssueKeys, Set<String> issueLinks,
+                                           boolean missingIssuesAllowed) throws IssueKeyNotFoundException {
+        if (jiraIssueKeys.size() == 1) {
+            return Collections.singletonList(getJiraPopulatedIssue(Optional.of(jiraIssueKeys.get(0)), issueLinks));
+        }
+
+        Map<String, IssueRequest> issueRequests = new LinkedHashMap<>();
+        if (issueRestClient != null) {
+            // The rest of the issues are requested one by one while claiming
+            for (String issueKey : jiraIssueKeys) {
+                Optional<JiraRateLimiter.Permit> permit = rateLimiter.tryAcquire();
+                if (!permit.isPresent()) {
+                    break;
+                }
+                issueRequests.put(issueKey, new IssueRequest(permit.get(), issueRestClient.getIssue(issueKey)));
+            }
+        }
+
+        List<JiraIssue> populatedIssues = new ArrayList<>();
+        IssueKeyNotFoundException firstException = null;
+        try {
+            for (String issueKey : jiraIssueKeys) {
+                try {
+                    JiraIssueHolder holder = claimBasicJiraIssue(issueKey, issueRequests.get(issueKey));
+                    populatedIssues.add(holder != null ? mapJiraIssue(holder, issueLinks) : null);
+                } catch (IssueKeyNotFoundException e) {
+                    if (!missingIssuesAllowed) {
+                        throw e;
+                    }
+                    logger.debug("Unable to fetch {}", issueKey, e);
+                    firstException = firstException != null ? firstException : e;
+                    populatedIssues.add(null);
+                }
+            }
+        } finally {
+            // The requests left unclaimed by an exception must give their permits back. The permits of the
+            // claimed requests are already released, so this does nothing for them
+            issueRequests.values().forEach(request -> request.permit.failed());
+        }
+
+        if (firstException != null && populatedIssues.stream().allMatch(Objects::isNull)) {
+            throw firstException;
+        }
+        return populatedIssues;
+    }
+
+    /**
+     * Forgets the issue if it's fetched as a related issue, so it's fetched again
+     * @param jiraIssueKey the JIRA issue key
+     */
+    void invalidate(String jiraIssueKey) {
+        fetchedRelatedIssues.invalidate(jiraIssueKey);
+    }
+
+    /**
+     * Fetches the statuses of the workflows of the given JIRA project. A throttled request is retried after
+     * the time of the Retry-After header of JIRA, unless JIRA asks to wait longer than the longest pause
+     * @param projectKey the JIRA project key
+     * @return the status catalog or empty if it can't be fetched
+     */
+    Optional<StatusCatalog> getStatusCatalog(String projectKey) {
+        if (Strings.isNullOrEmpty(projectKey)) {
+            return Optional.empty();
+        }
+
+        return getResource(STATUSES_RESOURCE.replace("{key}", projectKey), "getStatusCatalog", projectKey,
+                reader -> StatusCatalog.fromJson(projectKey, CharStreams.toString(reader),
+                        System.currentTimeMillis()));
+    }
+
+    /**
+     * Fetches all the issues found by the JQL query, one page at a time. Only the fields of the issue snapshot
+     * are fetched, and related issues aren't
+     * @param jql the JQL query
+     * @return the issues or empty if they can't all be fetched
+     */
+    Optional<List<JiraIssue>> searchIssues(String jql) {
+        String query;
+        try {
+            query = SEARCH_RESOURCE + "?jql=" + URLEncoder.encode(jql, Charsets.UTF_8.name())
+                    + "&fields=" + IssueSearchPage.FIELDS + "&maxResults=" + SEARCH_PAGE_SIZE + "&startAt=";
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+
+        List<JiraIssue> issues = new ArrayList<>();
+        while (true) {
+            // JIRA may return fewer issues than asked for, so the next page starts after the issues returned
+            Optional<IssueSearchPage> page = getResource(query + issues.size(), "searchIssues", jql,
+                    IssueSearchPage::fromJson);
+            if (!page.isPresent()) {
+                return Optional.empty();
+            }
+
+            issues.addAll(page.get().getIssues());
+            logger.debug("Fetched {} of {} issues", issues.size(), page.get().getTotal());
+            if (page.get().getIssues().isEmpty() || issues.size() >= page.get().getTotal()) {
+                return Optional.of(issues);
+            }
+        }
+    }
+
+    /**
+     * Finds the keys which are the old keys of issues moved to another project. JIRA still finds a moved issue by
+     * its old key, while deleted issues aren't found. The keys are counted in batches, as most batches have no
+     * moved issues, and a batch with moved issues is split until each old key is found
+     * @param issueKeys the keys to look for, e.g the keys of a project missing from the search of its issues
+     * @return the old keys of moved issues or empty if JIRA can't be searched
+     */
+    Optional<List<String>> findMovedIssueKeys(List<String> issueKeys) {
+        List<String> movedIssueKeys = new ArrayList<>();
+        Deque<List<String>> batches = new ArrayDeque<>(Lists.partition(issueKeys, MOVED_ISSUES_BATCH_SIZE));
+
+        while (!batches.isEmpty()) {
+            List<String> batch = batches.pop();
+            Optional<Integer> count = countIssues("key in (" + String.join(",", batch) + ")");
+            if (!count.isPresent()) {
+                return Optional.empty();
+            }
+
+            if (count.get() > 0 && batch.size() == 1) {
+                movedIssueKeys.add(batch.get(0));
+            } else if (count.get() > 0) {
+                batches.push(batch.subList(batch.size() / 2, batch.size()));
+                batches.push(batch.subList(0, batch.size() / 2));
+            }
+        }
+        logger.debug("Found {} moved issues of {} keys", movedIssueKeys.size(), issueKeys.size());
+        return Optional.of(movedIssueKeys);
+    }
+
+    private Optional<Integer> countIssues(String jql) {
+        String query;
+        try {
+            // The keys of deleted issues are ignored instead of failing the query
+            query = SEARCH_RESOURCE + "?jql=" + URLEncoder.encode(jql, Charsets.UTF_8.name())
+                    + "&validateQuery=false&fields=key&maxResults=0";
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return getResource(query, "countIssues", jql, IssueSearchPage::fromJson).map(IssueSearchPage::getTotal);
+    }
+
+    /**
+     * Fetches a REST resource of JIRA. A throttled request is retried after the time of the Retry-After header,
+     * unless JIRA asks to wait longer than the longest pause of the rate limiter
+     * @param resource the path and query of the resource relative to the JIRA address
+     * @param operation the name of the request in the hook events
+     * @param target the project or query of the request in the hook events
+     * @param responseReader reads the response
+     * @return the read response or empty if the resource can't be fetched
+     */
+    private <T> Optional<T> getResource(String resource, String operation, String target,
+                                        ResponseReader<T> responseReader) {
+        if (jiraAddressUri == null) {
+            return Optional.empty();
+        }
+
+        for (int attempt = 1; attempt <= JiraRateLimiter.MAX_ATTEMPTS; attempt++) {
+            JiraRateLimiter.Permit permit;
+            try {
+                permit = acquirePermit();
+            } catch (IssueKeyNotFoundException e) {
+                return Optional.empty();
+            }
+
+            HttpURLConnection connection = null;
+            try (HookEvent event = HookEvent.jiraRequest(operation, target)) {
+                String address = jiraAddressUri.toString();
+                URL url = new URL((address.endsWith("/") ? address : address + "/") + resource);
+                connection = (HttpURLConnection) url.openConnection();
+                connection.setRequestProperty("Authorization", basicAuthorization);
+                connection.setRequestProperty("Accept", "application/json");
+                connection.setConnectTimeout(CONNECTION_TIMEOUT_MILLIS);
+                connection.setReadTimeout(CONNECTION_TIMEOUT_MILLIS);
+
+                int statusCode = connection.getResponseCode();
+                event.setStatusCode(statusCode);
+                if (isThrottled(statusCode)) {
+                    long retryAfterMillis = JiraRateLimiter.parseRetryAfter(
+                            connection.getHeaderField(RETRY_AFTER_HEADER), System.currentTimeMillis());
+                    if (!permit.throttled(retryAfterMillis)) {
+                        // Don't keep the commit waiting until JIRA is available again
+                        logger.debug("JIRA asks to retry {} after {} ms", resource, retryAfterMillis);
+                        logger.error(messages.getString("error.jira.statuscode.429"));
+                        return Optional.empty();
+                    }
+                    logger.debug("JIRA is throttling the requests. Got status code {} for {}", statusCode,
+                            resource);
+                    if (attempt < JiraRateLimiter.MAX_ATTEMPTS) {
+                        HookMetrics.increment(HookMetrics.JIRA_RETRIES, "code", String.valueOf(statusCode));
+                    }
+                    continue;
+                }
+
+                permit.release();
+                if (statusCode != HttpURLConnection.HTTP_OK) {
+                    logger.debug("Unable to fetch {}. Got status code {}", resource, statusCode);
+                    return Optional.empty();
+                }
+
+                CountingInputStream stream = new CountingInputStream(connection.getInputStream());
+                try (Reader reader = new InputStreamReader(stream, Charsets.UTF_8)) {
+                    T response = responseReader.read(reader);
+                    event.setBytes(stream.getCount());
+                    return Optional.of(response);
+                }
+            } catch (ConnectException e) {
+                permit.failed();
+                logger.error(messages.getString("error.jira.connection.refused"));
+                return Optional.empty();
+            } catch (IOException | JSONException e) {
+                permit.failed();
+                logger.debug("Unable to fetch {}", resource, e);
+                return Optional.empty();
+            } finally {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+            }
+        }
+        return Optional.empty();
     }
 
     private String getDecodedPassword(String jiraEncodedPassword) {
@@ -103,7 +440,7 @@ class JiraConnector {
         return jiraAddressUri;
     }
 
-    private JiraIssue mapJiraIssue(JiraIssueHolder issueHolder, List<String> issueLinks)
+    private JiraIssue mapJiraIssue(JiraIssueHolder issueHolder, Set<String> issueLinks)
             throws IssueKeyNotFoundException {
         Issue issue = issueHolder.getIssue();
         JiraIssue jiraIssue = new JiraIssue(issueHolder.getJiraIssue().getKey(),
@@ -118,6 +455,9 @@ class JiraConnector {
 
             if (issue.getStatus() != null) {
                 jiraIssue.setStatus(issue.getStatus().getName());
+                if (issue.getStatus().getId() != null) {
+                    jiraIssue.setStatusId(String.valueOf(issue.getStatus().getId()));
+                }
             }
 
             if (issue.getIssueType() != null) {
@@ -146,7 +486,7 @@ class JiraConnector {
         return  jiraIssue;
     }
 
-    private List<BasicJiraIssue> getRelatedIssues(Issue issue, List<String> issuesLinkList) {
+    private List<BasicJiraIssue> getRelatedIssues(Issue issue, Set<String> issueLinks) {
         Iterator<IssueLink> issueLinkIterator;
         if (issue.getIssueLinks() != null ) {
             issueLinkIterator = issue.getIssueLinks().iterator();
@@ -156,12 +496,17 @@ class JiraConnector {
 
             while (issueLinkIterator.hasNext()) {
                 IssueLink issueLink = issueLinkIterator.next();
-                for (String issueLinkTypeName : issuesLinkList) {
-                    if (issueLink.getIssueLinkType().getName().equalsIgnoreCase(issueLinkTypeName)) {
-                        String relatedIssueKey = issueLink.getTargetIssueKey();
+                if (issueLinks.contains(issueLink.getIssueLinkType().getName().toLowerCase(Locale.ROOT))) {
+                    String relatedIssueKey = issueLink.getTargetIssueKey();
+
+                    // Related issues are often shared between issues. Only fetch them once
+                    BasicJiraIssue relatedIssue = fetchedRelatedIssues.getIfPresent(relatedIssueKey);
+                    if (relatedIssue == null) {
                         relatedIssueHolder = fetchBasicJiraIssue(relatedIssueKey);
-                        relatedJiraIssues.add(relatedIssueHolder.getJiraIssue());
+                        relatedIssue = relatedIssueHolder.getJiraIssue();
+                        fetchedRelatedIssues.put(relatedIssueKey, relatedIssue);
                     }
+                    relatedJiraIssues.add(relatedIssue);
                 }
             }
             return relatedJiraIssues;
@@ -170,26 +515,69 @@ class JiraConnector {
     }
 
     private JiraIssueHolder fetchBasicJiraIssue(String jiraIssueKey) throws IssueKeyNotFoundException {
-        JiraIssueHolder holder = null;
-
         if (issueRestClient != null && !Strings.isNullOrEmpty(jiraIssueKey)) {
-            try {
-                Promise<Issue> issuePromise = issueRestClient.getIssue(jiraIssueKey);
-                Issue issue = issuePromise.claim();
+            return claimBasicJiraIssue(jiraIssueKey, null);
+        }
+        return null;
+    }
+
+    /**
+     * Waits for the issue, retrying the request while JIRA is throttling
+     * @param jiraIssueKey the JIRA issue key
+     * @param issueRequest the request already sent or null to send it
+     * @return the issue or null if it can't be fetched
+     * @throws IssueKeyNotFoundException if the issue doesn't exist or JIRA can't be accessed
+     */
+    private JiraIssueHolder claimBasicJiraIssue(String jiraIssueKey, IssueRequest issueRequest)
+            throws IssueKeyNotFoundException {
+        IssueRequest request = issueRequest;
+
+        for (int attempt = 1; ; attempt++) {
+            if (request == null) {
+                if (issueRestClient == null) {
+                    return null;
+                }
+                request = new IssueRequest(acquirePermit(), issueRestClient.getIssue(jiraIssueKey));
+            }
+
+            HookEvent event = HookEvent.jiraRequest("getIssue", jiraIssueKey);
+            try (PhaseTimer.Phase ignored = PhaseTimer.start("jira.fetch " + jiraIssueKey)) {
+                Issue issue = request.promise.claim();
+                request.permit.release();
 
                 BasicJiraIssue basicJiraIssue = new BasicJiraIssue(issue.getKey(), issue.getSummary());
-                holder = new JiraIssueHolder(basicJiraIssue, issue);
+                HookMetrics.increment(HookMetrics.JIRA_RESPONSES, "code", "200");
+                event.setStatusCode(HttpURLConnection.HTTP_OK);
+                return new JiraIssueHolder(basicJiraIssue, issue);
 
             } catch (RestClientException e) {
-                if (e.getStatusCode().isPresent() && e.getStatusCode().get() == 401) {
+                int statusCode = e.getStatusCode().or(0);
+                HookMetrics.increment(HookMetrics.JIRA_RESPONSES, "code",
+                        e.getStatusCode().isPresent() ? String.valueOf(statusCode) : "unknown");
+                event.setStatusCode(statusCode);
+
+                if (isThrottled(statusCode)) {
+                    // The REST client doesn't expose the Retry-After header, so the limiter backs off
+                    request.permit.throttled(-1);
+                    if (attempt < JiraRateLimiter.MAX_ATTEMPTS) {
+                        logger.debug("JIRA is throttling the requests. Retrying {}", jiraIssueKey);
+                        HookMetrics.increment(HookMetrics.JIRA_RETRIES, "code", String.valueOf(statusCode));
+                        request = null;
+                        continue;
+                    }
+                    throw new IssueKeyNotFoundException(messages.getString("error.jira.statuscode.429"));
+                }
+
+                request.permit.release();
+                if (statusCode == 401) {
                     // Forbidden access
                     throw new IssueKeyNotFoundException(messages.getString("error.jira.statuscode.401"));
                 }
-                if (e.getStatusCode().isPresent() && e.getStatusCode().get() == 403) {
+                if (statusCode == 403) {
                     // Forbidden access
                     throw new IssueKeyNotFoundException(messages.getString("error.jira.statuscode.403"));
                 }
-                if (e.getStatusCode().isPresent() && e.getStatusCode().get() == 404) {
+                if (statusCode == 404) {
                     // The issue doesn't exist
                     throw new IssueKeyNotFoundException(messages.getString("error.jira.statuscode.404")
                             + jiraIssueKey);
@@ -198,14 +586,32 @@ class JiraConnector {
                     logger.error("Got unhandled RestClientException\n\t", e);
                 }
             } catch (Exception e) {
+                request.permit.failed();
                 if (e.getCause() instanceof ConnectException) {
+                    HookMetrics.increment(HookMetrics.JIRA_RESPONSES, "code", "connect_refused");
                     throw new IssueKeyNotFoundException(messages.getString("error.jira.connection.refused"));
                 } else {
+                    HookMetrics.increment(HookMetrics.JIRA_RESPONSES, "code", "error");
                     logger.error("Got unhandled Exception\n\t", e);
                 }
+            } finally {
+                event.close();
             }
+            return null;
+        }
+    }
+
+    private JiraRateLimiter.Permit acquirePermit() throws IssueKeyNotFoundException {
+        try (PhaseTimer.Phase ignored = PhaseTimer.start("jira.ratelimit")) {
+            return rateLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IssueKeyNotFoundException(messages.getString("error.jira.connection"), e);
         }
-        return holder;
+    }
+
+    private static boolean isThrottled(int statusCode) {
+        return statusCode == HTTP_TOO_MANY_REQUESTS || statusCode == HttpURLConnection.HTTP_UNAVAILABLE;
     }
 
     private BasicJiraIssue getParentIssueInfo(IssueField parentIssueField) throws IssueKeyNotFoundException {
@@ -223,4 +629,21 @@ class JiraConnector {
         return basicJiraIssue;
     }
 
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        T read(Reader reader) throws IOException, JSONException;
+    }
+
+    /**
+     * A request of an issue sent to JIRA, holding the permit of the rate limiter until the response is claimed
+     */
+    private static final class IssueRequest {
+        private final JiraRateLimiter.Permit permit;
+        private final Promise<Issue> promise;
+
+        private IssueRequest(JiraRateLimiter.Permit permit, Promise<Issue> promise) {
+            this.permit = permit;
+            this.promise = promise;
+        }
+    }
 }
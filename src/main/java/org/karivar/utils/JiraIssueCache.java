@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import org.karivar.utils.domain.BasicJiraIssue;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * This class is responsible for keeping a local copy of previously fetched JIRA issues in the
+ * git directory. The copy makes it possible to reuse issue data (e.g on git commit --amend)
+ * without contacting JIRA as long as the data is still fresh.
+ */
+class JiraIssueCache {
+    private final Logger logger = LoggerFactory.getLogger(JiraIssueCache.class);
+
+    private static final String CACHE_FILENAME = "issuecache.properties";
+    private static final String FETCHED = ".fetched";
+    private static final String SUMMARY = ".summary";
+    private static final String STATUS = ".status";
+    private static final String STATUS_ID = ".statusid";
+    private static final String STATUS_CATEGORY = ".statuscategory";
+    private static final String ISSUE_TYPE = ".issuetype";
+    private static final String SUBTASK = ".subtask";
+    private static final String RESOLUTION = ".resolution";
+    private static final String ASSIGNEE_NAME = ".assignee.name";
+    private static final String ASSIGNEE_DISPLAY_NAME = ".assignee.displayname";
+    private static final String PARENT_KEY = ".parent.key";
+    private static final String PARENT_SUMMARY = ".parent.summary";
+    private static final String RELATED_COUNT = ".related.count";
+    private static final String RELATED = ".related.";
+
+    private final File cacheFile;
+    private final long timeToLiveMillis;
+
+    /**
+     * Creates a cache stored in the given directory.
+     * @param cacheDirectory the directory containing the cache file (e.g .git/githook)
+     * @param timeToLiveMillis the number of milliseconds a cached issue is considered fresh
+     */
+    JiraIssueCache(File cacheDirectory, long timeToLiveMillis) {
+        this.cacheFile = new File(cacheDirectory, CACHE_FILENAME);
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    /**
+     * Gets a cached JIRA issue if it exists and is still fresh.
+     * @param issueKey the JIRA issue key
+     * @return the cached JIRA issue or empty if it's missing or expired
+     */
+    Optional<JiraIssue> getFreshIssue(String issueKey) {
+        if (Strings.isNullOrEmpty(issueKey)) {
+            return Optional.empty();
+        }
+        return getFreshIssue(loadCache(), issueKey);
+    }
+
+    /**
+     * Gets the cached JIRA issues that exist and are still fresh. The cache file is read once for all the keys
+     * @param issueKeys the JIRA issue keys (e.g of a commit with several issues)
+     * @return the fresh cached JIRA issues by key. Missing and expired issues are left out
+     */
+    Map<String, JiraIssue> getFreshIssues(Collection<String> issueKeys) {
+        Map<String, JiraIssue> freshIssues = new LinkedHashMap<>();
+        if (issueKeys.isEmpty()) {
+            return freshIssues;
+        }
+
+        Properties properties = loadCache();
+        for (String issueKey : issueKeys) {
+            if (!Strings.isNullOrEmpty(issueKey) && !freshIssues.containsKey(issueKey)) {
+                getFreshIssue(properties, issueKey).ifPresent(issue -> freshIssues.put(issueKey, issue));
+            }
+        }
+        return freshIssues;
+    }
+
+    private Optional<JiraIssue> getFreshIssue(Properties properties, String issueKey) {
+        Long fetched = parseFetched(properties.getProperty(issueKey + FETCHED));
+
+        if (fetched == null) {
+            logger.debug("The JIRA issue {} is not cached", issueKey);
+            HookMetrics.increment(HookMetrics.CACHE_REQUESTS, "cache", "issue", "result", "miss");
+            return Optional.empty();
+        }
+
+        long age = System.currentTimeMillis() - fetched;
+        if (age < 0 || age > timeToLiveMillis) {
+            logger.debug("The cached JIRA issue {} has expired", issueKey);
+            HookMetrics.increment(HookMetrics.CACHE_REQUESTS, "cache", "issue", "result", "expired");
+            return Optional.empty();
+        }
+
+        JiraIssue issue;
+        try {
+            issue = readIssue(properties, issueKey);
+        } catch (NumberFormatException e) {
+            logger.debug("The cached JIRA issue {} is damaged. Ignoring it", issueKey, e);
+            HookMetrics.increment(HookMetrics.CACHE_REQUESTS, "cache", "issue", "result", "miss");
+            return Optional.empty();
+        }
+
+        HookMetrics.increment(HookMetrics.CACHE_REQUESTS, "cache", "issue", "result", "hit");
+        return Optional.of(issue);
+    }
+
+    private Long parseFetched(String fetched) {
+        if (fetched == null) {
+            return null;
+        }
+
+        // A hand edited or damaged entry is treated as missing
+        try {
+            return Long.parseLong(fetched.trim());
+        } catch (NumberFormatException e) {
+            logger.debug("Unable to read the time {} of the cached JIRA issue. Ignoring it", fetched, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the given JIRA issue in the cache.
+     * @param issue the populated JIRA issue
+     */
+    void putIssue(JiraIssue issue) {
+        if (issue == null || Strings.isNullOrEmpty(issue.getKey()) || issue.getStatus() == null) {
+            // Only fully populated issues are worth keeping
+            return;
+        }
+
+        Properties properties = loadCache();
+        removeIssue(properties, issue.getKey());
+        writeIssue(properties, issue);
+        storeCache(properties);
+    }
+
+    private JiraIssue readIssue(Properties properties, String key) {
+        JiraIssue issue = new JiraIssue(key, properties.getProperty(key + SUMMARY));
+        issue.setStatus(properties.getProperty(key + STATUS));
+        issue.setStatusId(properties.getProperty(key + STATUS_ID));
+        issue.setStatusCategory(properties.getProperty(key + STATUS_CATEGORY));
+        issue.setIssueTypeName(properties.getProperty(key + ISSUE_TYPE));
+        issue.setSubtask(Boolean.parseBoolean(properties.getProperty(key + SUBTASK)));
+        issue.setResolution(Optional.ofNullable(properties.getProperty(key + RESOLUTION)));
+
+        String assigneeName = properties.getProperty(key + ASSIGNEE_NAME);
+        if (assigneeName != null) {
+            issue.setAssignee(Optional.of(new User(assigneeName,
+                    properties.getProperty(key + ASSIGNEE_DISPLAY_NAME))));
+        }
+
+        String parentKey = properties.getProperty(key + PARENT_KEY);
+        if (parentKey != null) {
+            issue.setParentIssue(Optional.of(new BasicJiraIssue(parentKey,
+                    properties.getProperty(key + PARENT_SUMMARY))));
+        }
+
+        String relatedCount = properties.getProperty(key + RELATED_COUNT);
+        if (relatedCount != null) {
+            List<BasicJiraIssue> relatedIssues = Lists.newArrayList();
+            for (int i = 0; i < Integer.parseInt(relatedCount); i++) {
+                relatedIssues.add(new BasicJiraIssue(
+                        properties.getProperty(key + RELATED + i + ".key"),
+                        properties.getProperty(key + RELATED + i + ".summary")));
+            }
+            issue.setRelatedIssues(relatedIssues);
+        }
+
+        return issue;
+    }
+
+    private void writeIssue(Properties properties, JiraIssue issue) {
+        String key = issue.getKey();
+        properties.setProperty(key + FETCHED, String.valueOf(System.currentTimeMillis()));
+        setIfPresent(properties, key + SUMMARY, issue.getSummary());
+        setIfPresent(properties, key + STATUS, issue.getStatus());
+        setIfPresent(properties, key + STATUS_ID, issue.getStatusId());
+        setIfPresent(properties, key + STATUS_CATEGORY, issue.getStatusCategory());
+        setIfPresent(properties, key + ISSUE_TYPE, issue.getIssueTypeName());
+        properties.setProperty(key + SUBTASK, String.valueOf(issue.isSubtask()));
+
+        if (issue.getResolution() != null && issue.getResolution().isPresent()) {
+            properties.setProperty(key + RESOLUTION, issue.getResolution().get());
+        }
+
+        if (issue.getAssignee() != null && issue.getAssignee().isPresent()) {
+            User assignee = issue.getAssignee().get();
+            setIfPresent(properties, key + ASSIGNEE_NAME, assignee.getName());
+            setIfPresent(properties, key + ASSIGNEE_DISPLAY_NAME, assignee.getDisplayName());
+        }
+
+        if (issue.getParentIssue() != null && issue.getParentIssue().isPresent()) {
+            BasicJiraIssue parent = issue.getParentIssue().get();
+            setIfPresent(properties, key + PARENT_KEY, parent.getKey());
+            setIfPresent(properties, key + PARENT_SUMMARY, parent.getSummary());
+        }
+
+        if (issue.getRelatedIssues() != null) {
+            List<BasicJiraIssue> relatedIssues = issue.getRelatedIssues();
+            properties.setProperty(key + RELATED_COUNT, String.valueOf(relatedIssues.size()));
+            for (int i = 0; i < relatedIssues.size(); i++) {
+                setIfPresent(properties, key + RELATED + i + ".key", relatedIssues.get(i).getKey());
+                setIfPresent(properties, key + RELATED + i + ".summary", relatedIssues.get(i).getSummary());
+            }
+        }
+    }
+
+    private void removeIssue(Properties properties, String key) {
+        properties.stringPropertyNames().stream()
+                .filter(name -> name.startsWith(key + "."))
+                .forEach(properties::remove);
+    }
+
+    private void setIfPresent(Properties properties, String name, String value) {
+        if (value != null) {
+            properties.setProperty(name, value);
+        }
+    }
+
+    private Properties loadCache() {
+        Properties properties = new Properties();
+
+        if (cacheFile.exists()) {
+            try (InputStream stream = new FileInputStream(cacheFile)) {
+                properties.load(stream);
+            } catch (IOException | IllegalArgumentException e) {
+                logger.debug("Unable to read the JIRA issue cache {}. Ignoring it", cacheFile, e);
+                properties.clear();
+            }
+        }
+        return properties;
+    }
+
+    private void storeCache(Properties properties) {
+        File directory = cacheFile.getParentFile();
+
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                logger.debug("Unable to create the cache directory {}", directory);
+                return;
+            }
+
+            // Write to a temporary file first to avoid leaving a half written cache behind
+            File temporaryFile = File.createTempFile(CACHE_FILENAME, ".tmp", directory);
+            try (OutputStream stream = new FileOutputStream(temporaryFile)) {
+                properties.store(stream, "git-jira-hook issue cache");
+            }
+            Files.move(temporaryFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.debug("Unable to write the JIRA issue cache {}", cacheFile, e);
+        }
+    }
+}
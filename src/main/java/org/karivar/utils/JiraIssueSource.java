@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Suppliers;
+import org.karivar.utils.domain.IssueKeyNotFoundException;
+import org.karivar.utils.domain.JiraIssue;
+
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Fetches the JIRA issues from JIRA using one JIRA client shared by all threads. The client is created by
+ * the first fetch. The status of each issue is resolved using the status catalogs of the hook directory.
+ */
+final class JiraIssueSource implements IssueSource {
+    private final Supplier<JiraConnector> jiraConnector;
+    private final StatusResolver statusResolver;
+    private final Supplier<Set<String>> issueLinks;
+
+    /**
+     * Creates the source
+     * @param configuration the configuration of JIRA
+     * @param messages the messages of the hook
+     * @param issueLinks the names of the JIRA issue links connecting related issues (in lower case) of the
+     * current commit policy
+     */
+    JiraIssueSource(HookConfiguration configuration, ResourceBundle messages, Supplier<Set<String>> issueLinks) {
+        this.jiraConnector = Suppliers.memoize(() -> {
+            JiraConnector connector = new JiraConnector(messages,
+                    new JiraRateLimiter(configuration.getJiraRequestRate()),
+                    configuration.getCacheTimeToLiveMinutes());
+            connector.connectToJira(configuration.getJiraUsername(), configuration.getJiraEncodedPassword(),
+                    configuration.getJiraAddress());
+            return connector;
+        });
+        this.statusResolver = new StatusResolver(new StatusCatalogCache(configuration.getHookDirectory()),
+                jiraConnector, TimeUnit.HOURS.toMillis(configuration.getStatusCatalogTimeToLiveHours()));
+        this.issueLinks = issueLinks;
+    }
+
+    @Override
+    public JiraIssue getIssue(String issueKey) throws IssueKeyNotFoundException {
+        JiraIssue issue = jiraConnector.get().getJiraPopulatedIssue(Optional.of(issueKey), issueLinks.get());
+
+        // The resolver fetches each catalog once per time to live and isn't thread-safe
+        synchronized (statusResolver) {
+            statusResolver.resolve(issue);
+        }
+        return issue;
+    }
+
+    @Override
+    public void invalidate(String issueKey) {
+        jiraConnector.get().invalidate(issueKey);
+    }
+}
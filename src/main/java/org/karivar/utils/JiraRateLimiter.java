@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Ticker;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for limiting the requests to JIRA, so bulk validation (e.g of a revision range)
+ * runs as fast as JIRA allows without being throttled. All JIRA requests of a connector take a permit first:<br>
+ * A token bucket limits the rate of requests (githook.jira.ratelimit requests per second, allowing a burst of
+ * one second).<br>
+ * The number of concurrent requests is adapted to JIRA (additive increase, multiplicative decrease). The limit
+ * grows by one for each limit of fast responses, and shrinks when a response is slow or JIRA is throttling
+ * (429 Too Many Requests or 503 Service Unavailable).<br>
+ * A throttled response pauses all requests for the time of its Retry-After header, or else an exponential
+ * backoff with jitter. The pause is at most 30 seconds, so a commit never waits long for JIRA. A request JIRA
+ * asks to retry later than that isn't retried. The limits are exposed as metrics.
+ */
+final class JiraRateLimiter {
+    static final double DEFAULT_REQUESTS_PER_SECOND = 10;
+    static final int MAX_ATTEMPTS = 4;
+
+    private static final int INITIAL_CONCURRENCY = 4;
+    private static final int MAX_CONCURRENCY = 32;
+    private static final double SLOW_DECREASE = 0.9;
+    private static final double THROTTLED_DECREASE = 0.5;
+    private static final long SLOW_RESPONSE_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long INITIAL_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    static final long MAX_PAUSE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(MAX_PAUSE_MILLIS);
+    // Waiting for a free slot is woken up by the release of a permit. This is a safety net only
+    private static final long MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Ticker ticker;
+    private final double requestsPerSecond;
+    private final double burst;
+    private double tokens;
+    private long refilledNanos;
+    private double concurrencyLimit = INITIAL_CONCURRENCY;
+    private int inFlight;
+    private long pausedUntilNanos;
+    private long decreasedNanos;
+    private int consecutiveThrottles;
+
+    /**
+     * Creates the limiter
+     * @param requestsPerSecond the maximum rate of requests
+     */
+    JiraRateLimiter(double requestsPerSecond) {
+        this(requestsPerSecond, Ticker.systemTicker());
+    }
+
+    JiraRateLimiter(double requestsPerSecond, Ticker ticker) {
+        this.ticker = ticker;
+        this.requestsPerSecond = requestsPerSecond > 0 ? requestsPerSecond : DEFAULT_REQUESTS_PER_SECOND;
+        burst = Math.max(1, this.requestsPerSecond);
+        tokens = burst;
+        refilledNanos = ticker.read();
+        decreasedNanos = refilledNanos;
+        HookMetrics.set(HookMetrics.JIRA_REQUEST_RATE, this.requestsPerSecond);
+        HookMetrics.set(HookMetrics.JIRA_CONCURRENCY_LIMIT, concurrencyLimit);
+    }
+
+    /**
+     * Takes a permit for a request, waiting for a token, a free slot and the end of a pause
+     * @return the permit, which must be released when the response is received
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    synchronized Permit acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = getWaitNanos()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+        }
+        return take();
+    }
+
+    /**
+     * Takes a permit for a request if it can be sent right away
+     * @return the permit or empty if the request must wait
+     */
+    synchronized Optional<Permit> tryAcquire() {
+        return getWaitNanos() == 0 ? Optional.of(take()) : Optional.empty();
+    }
+
+    /**
+     * Gets the current number of concurrent requests allowed
+     * @return the concurrency limit (at least one)
+     */
+    synchronized int getConcurrencyLimit() {
+        return (int) concurrencyLimit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Parses the Retry-After header of a response
+     * @param value the value of the header, i.e a number of seconds or an HTTP date
+     * @param nowMillis the current time
+     * @return the milliseconds to wait or -1 if the header is missing or invalid
+     */
+    static long parseRetryAfter(String value, long nowMillis) {
+        if (Strings.isNullOrEmpty(value)) {
+            return -1;
+        }
+
+        String trimmed = value.trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(trimmed)));
+        } catch (NumberFormatException e) {
+            try {
+                Instant retryAt = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return Math.max(0, retryAt.toEpochMilli() - nowMillis);
+            } catch (DateTimeParseException invalidDate) {
+                return -1;
+            }
+        }
+    }
+
+    private long getWaitNanos() {
+        long now = ticker.read();
+        refill(now);
+
+        if (now < pausedUntilNanos) {
+            return pausedUntilNanos - now;
+        }
+        if (inFlight >= (int) concurrencyLimit) {
+            return MAX_WAIT_NANOS;
+        }
+        if (tokens < 1) {
+            return Math.max(1, (long) ((1 - tokens) / requestsPerSecond * TimeUnit.SECONDS.toNanos(1)));
+        }
+        return 0;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - refilledNanos) * requestsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        refilledNanos = now;
+    }
+
+    private Permit take() {
+        tokens--;
+        inFlight++;
+        return new Permit(ticker.read());
+    }
+
+    private synchronized void release(Permit permit, Outcome outcome, long retryAfterMillis) {
+        long now = ticker.read();
+        inFlight--;
+
+        // The responses of requests sent before the last decrease reflect the old limit, so they don't count
+        boolean current = permit.startNanos >= decreasedNanos;
+        if (outcome == Outcome.THROTTLED) {
+            long pauseNanos = retryAfterMillis >= 0
+                    ? TimeUnit.MILLISECONDS.toNanos(Math.min(retryAfterMillis, MAX_PAUSE_MILLIS))
+                    : getBackoffNanos(consecutiveThrottles);
+            consecutiveThrottles++;
+            pausedUntilNanos = Math.max(pausedUntilNanos, now + pauseNanos);
+            // Don't send a burst when the pause ends
+            tokens = Math.min(tokens, 0);
+            if (current) {
+                decrease(THROTTLED_DECREASE, now);
+            }
+        } else if (outcome == Outcome.RESPONDED) {
+            consecutiveThrottles = 0;
+            if (now - permit.startNanos > SLOW_RESPONSE_NANOS) {
+                if (current) {
+                    decrease(SLOW_DECREASE, now);
+                }
+            } else if ((inFlight + 1) * 2 >= concurrencyLimit) {
+                // Only grow the limit when at least half of it is used
+                concurrencyLimit = Math.min(MAX_CONCURRENCY, concurrencyLimit + 1 / concurrencyLimit);
+                HookMetrics.set(HookMetrics.JIRA_CONCURRENCY_LIMIT, (int) concurrencyLimit);
+            }
+        }
+        notifyAll();
+    }
+
+    private void decrease(double factor, long now) {
+        concurrencyLimit = Math.max(1, concurrencyLimit * factor);
+        decreasedNanos = now;
+        HookMetrics.set(HookMetrics.JIRA_CONCURRENCY_LIMIT, (int) concurrencyLimit);
+    }
+
+    private static long getBackoffNanos(int consecutiveThrottles) {
+        long backoff = Math.min(MAX_BACKOFF_NANOS, INITIAL_BACKOFF_NANOS << Math.min(consecutiveThrottles, 16));
+        // Wait between half and all of the backoff, so the clients don't retry at the same time
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private enum Outcome { RESPONDED, THROTTLED, FAILED }
+
+    /**
+     * The permit of a request. Exactly one of the release methods must be called when the request completes
+     */
+    final class Permit {
+        private final long startNanos;
+        private boolean released;
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Releases the permit of a request JIRA responded to (successfully or not)
+         */
+        void release() {
+            release(Outcome.RESPONDED, -1);
+        }
+
+        /**
+         * Releases the permit of a request throttled by JIRA, pausing all requests (at most 30 seconds)
+         * @param retryAfterMillis the milliseconds of the Retry-After header or -1 to back off
+         * @return true if the request may be retried after the pause, false if JIRA asks to wait longer
+         * than the longest pause
+         */
+        boolean throttled(long retryAfterMillis) {
+            release(Outcome.THROTTLED, retryAfterMillis);
+            return retryAfterMillis <= MAX_PAUSE_MILLIS;
+        }
+
+        /**
+         * Releases the permit of a request JIRA didn't respond to (e.g connection refused)
+         */
+        void failed() {
+            release(Outcome.FAILED, -1);
+        }
+
+        private void release(Outcome outcome, long retryAfterMillis) {
+            synchronized (JiraRateLimiter.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            JiraRateLimiter.this.release(this, outcome, retryAfterMillis);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reads a JSON document one token at a time, so only the values asked for are decoded and the rest of
+ * the document (e.g the fields, changelog and comments of a webhook payload) is skipped without being kept
+ * in memory. Usage follows the structure of the document: beginObject(), then nextName() and the value while
+ * hasNext(), then endObject().<br>
+ * Malformed documents throw an IOException.
+ */
+final class JsonStreamReader {
+
+    enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT }
+
+    private enum Scope { DOCUMENT, OBJECT, ARRAY }
+
+    private final Reader reader;
+    private final Deque<Scope> scopes = new ArrayDeque<>();
+    private final StringBuilder buffer = new StringBuilder();
+    // Whether the current scope has a value and whether the next token of an object is a value
+    private boolean first = true;
+    private boolean expectingValue;
+    private Token peeked;
+    private int pushedBack = -1;
+
+    JsonStreamReader(Reader reader) {
+        this.reader = reader;
+        scopes.push(Scope.DOCUMENT);
+    }
+
+    /**
+     * Gets the type of the next token without consuming it
+     * @return the type of the next token
+     * @throws IOException if the document can't be read or is malformed
+     */
+    Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+
+        int c = nextNonWhitespace();
+        Scope scope = scopes.peek();
+        if (scope == Scope.OBJECT && !expectingValue) {
+            if (c == '}') {
+                return peeked = Token.END_OBJECT;
+            }
+            if (!first && (c != ',' || (c = nextNonWhitespace()) < 0)) {
+                throw syntaxError("Expected , or }");
+            }
+            if (c != '"') {
+                throw syntaxError("Expected a name");
+            }
+            return peeked = Token.NAME;
+        }
+
+        if (scope == Scope.ARRAY) {
+            if (c == ']') {
+                return peeked = Token.END_ARRAY;
+            }
+            if (!first && (c != ',' || (c = nextNonWhitespace()) < 0)) {
+                throw syntaxError("Expected , or ]");
+            }
+        } else if (scope == Scope.DOCUMENT && !first) {
+            if (c >= 0) {
+                throw syntaxError("Expected the end of the document");
+            }
+            return peeked = Token.END_DOCUMENT;
+        }
+
+        return peeked = peekValue(c);
+    }
+
+    void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        scopes.push(Scope.OBJECT);
+        first = true;
+        expectingValue = false;
+    }
+
+    void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        endScope();
+    }
+
+    void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        scopes.push(Scope.ARRAY);
+        first = true;
+        expectingValue = false;
+    }
+
+    void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        endScope();
+    }
+
+    /**
+     * Checks whether the current object or array has more elements
+     * @return true if there's another name of the object or value of the array
+     * @throws IOException if the document can't be read or is malformed
+     */
+    boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    String nextName() throws IOException {
+        expect(Token.NAME);
+        String name = readString();
+        if (nextNonWhitespace() != ':') {
+            throw syntaxError("Expected :");
+        }
+        expectingValue = true;
+        return name;
+    }
+
+    /**
+     * Reads the next value as text. Numbers and booleans are returned as written, and null as null
+     * @return the value
+     * @throws IOException if the next token isn't a value or the document is malformed
+     */
+    String nextString() throws IOException {
+        Token token = peek();
+        String value;
+        if (token == Token.STRING) {
+            value = readString();
+        } else if (token == Token.NUMBER || token == Token.BOOLEAN || token == Token.NULL) {
+            value = readLiteral();
+            if (token == Token.NULL) {
+                value = null;
+            }
+        } else {
+            throw syntaxError("Expected a value but was " + token);
+        }
+        consumeValue();
+        return value;
+    }
+
+    /**
+     * Skips the next value, including all the values of an object or array
+     * @throws IOException if the document can't be read or is malformed
+     */
+    void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            Token token = peek();
+            switch (token) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case NAME:
+                    nextName();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of the document");
+                default:
+                    nextString();
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    private Token peekValue(int c) throws IOException {
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                pushedBack = c;
+                return Token.BOOLEAN;
+            case 'n':
+                pushedBack = c;
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pushedBack = c;
+                    return Token.NUMBER;
+                }
+                throw syntaxError(c < 0 ? "Unexpected end of the document" : "Unexpected character " + (char) c);
+        }
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+    }
+
+    private void endScope() {
+        scopes.pop();
+        consumeValue();
+    }
+
+    private void consumeValue() {
+        peeked = null;
+        first = false;
+        expectingValue = false;
+    }
+
+    private String readString() throws IOException {
+        buffer.setLength(0);
+        peeked = null;
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return buffer.toString();
+            } else if (c == '\\') {
+                int escaped = read();
+                switch (escaped) {
+                    case 'b':
+                        buffer.append('\b');
+                        break;
+                    case 'f':
+                        buffer.append('\f');
+                        break;
+                    case 'n':
+                        buffer.append('\n');
+                        break;
+                    case 'r':
+                        buffer.append('\r');
+                        break;
+                    case 't':
+                        buffer.append('\t');
+                        break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < hex.length; i++) {
+                            hex[i] = (char) read();
+                        }
+                        try {
+                            buffer.append((char) Integer.parseInt(new String(hex), 16));
+                        } catch (NumberFormatException e) {
+                            throw syntaxError("Invalid escape \\u" + new String(hex));
+                        }
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        buffer.append((char) escaped);
+                        break;
+                    default:
+                        throw syntaxError("Invalid escape \\" + (char) escaped);
+                }
+            } else if (c < 0x20) {
+                throw syntaxError("Unterminated string");
+            } else {
+                buffer.append((char) c);
+            }
+        }
+    }
+
+    private String readLiteral() throws IOException {
+        buffer.setLength(0);
+        int c = pushedBack;
+        pushedBack = -1;
+        while (c >= 0 && c != ',' && c != '}' && c != ']' && c != ':' && !Character.isWhitespace(c)) {
+            buffer.append((char) c);
+            c = reader.read();
+        }
+        pushedBack = c;
+
+        String literal = buffer.toString();
+        if (peeked == Token.BOOLEAN && !"true".equals(literal) && !"false".equals(literal)
+                || peeked == Token.NULL && !"null".equals(literal)) {
+            throw syntaxError("Invalid literal " + literal);
+        }
+        if (peeked == Token.NUMBER && !literal.matches("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?")) {
+            throw syntaxError("Invalid number " + literal);
+        }
+        return literal;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = pushedBack >= 0 ? pushedBack : reader.read();
+        pushedBack = -1;
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            c = reader.read();
+        }
+        return c;
+    }
+
+    private int read() throws IOException {
+        int c = reader.read();
+        if (c < 0) {
+            throw syntaxError("Unexpected end of the document");
+        }
+        return c;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON: " + message);
+    }
+}
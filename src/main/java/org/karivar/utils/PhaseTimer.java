@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures the time spent in each phase of the hook (e.g reading the git configuration or
+ * fetching the JIRA issue) using the monotonic clock. Tracing is enabled by the --trace argument or the
+ * GITHOOK_TRACE environment variable, and the phases are printed as a waterfall when the hook exits.
+ * When tracing is disabled, starting a phase only costs a check of a flag.<br>
+ * Usage: try (PhaseTimer.Phase ignored = PhaseTimer.start("jira.fetch")) { ... }
+ */
+final class PhaseTimer {
+    private static final Logger logger = LoggerFactory.getLogger(PhaseTimer.class);
+
+    static final String TRACE_ARGUMENT = "--trace";
+    private static final String TRACE_ENVIRONMENT_VARIABLE = "GITHOOK_TRACE";
+    private static final String JVM_STARTUP = "jvm.startup";
+    private static final int WATERFALL_WIDTH = 40;
+    private static final Phase DISABLED_PHASE = new Phase(null, 0, 0);
+
+    private static volatile boolean enabled;
+    private static boolean restored;
+    private static long originNanos;
+    private static final ConcurrentLinkedQueue<Phase> phases = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<Integer> depth = ThreadLocal.withInitial(() -> 0);
+
+    private PhaseTimer() {
+    }
+
+    /**
+     * Enables tracing if requested by the arguments or the environment. The waterfall is printed when the
+     * JVM exits.
+     * @param args the arguments of the hook
+     * @return the arguments without the trace argument
+     */
+    static String[] configure(String[] args) {
+        boolean requested = !Strings.isNullOrEmpty(System.getenv(TRACE_ENVIRONMENT_VARIABLE));
+        List<String> remainingArgs = new ArrayList<>();
+
+        if (args != null) {
+            for (String arg : args) {
+                if (TRACE_ARGUMENT.equals(arg)) {
+                    requested = true;
+                } else {
+                    remainingArgs.add(arg);
+                }
+            }
+        }
+
+        if (requested) {
+            startRecording();
+            Runtime.getRuntime().addShutdownHook(new Thread(PhaseTimer::printWaterfall));
+        }
+        return args != null ? remainingArgs.toArray(new String[remainingArgs.size()]) : null;
+    }
+
+    /**
+     * Starts recording the phases unless they're already recorded. The time spent by the JVM before
+     * the hook started is recorded as the first phase, unless the JVM is restored from a checkpoint.
+     */
+    static synchronized void startRecording() {
+        if (!enabled) {
+            enable();
+            if (restored) {
+                return;
+            }
+            long uptimeNanos = TimeUnit.MILLISECONDS.toNanos(ManagementFactory.getRuntimeMXBean().getUptime());
+            originNanos -= uptimeNanos;
+            phases.add(new Phase(JVM_STARTUP, 0, 0).finishedAt(uptimeNanos));
+        }
+    }
+
+    /**
+     * Marks the JVM as restored from a checkpoint. The uptime of the JVM includes the time before the
+     * checkpoint, so the recorded phases start at the restore
+     */
+    static synchronized void markRestored() {
+        restored = true;
+    }
+
+    /**
+     * Enables tracing. The phases are measured relative to the time of this call
+     */
+    static void enable() {
+        originNanos = System.nanoTime();
+        phases.clear();
+        enabled = true;
+    }
+
+    static void disable() {
+        enabled = false;
+    }
+
+    /**
+     * Disables tracing and removes all recorded phases, e.g the phases of the warm-up runs before a checkpoint
+     */
+    static synchronized void reset() {
+        enabled = false;
+        phases.clear();
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts a phase. The phase ends when it's closed
+     * @param name the name of the phase
+     * @return the started phase
+     */
+    static Phase start(String name) {
+        if (!enabled) {
+            return DISABLED_PHASE;
+        }
+
+        int currentDepth = depth.get();
+        depth.set(currentDepth + 1);
+        return new Phase(name, System.nanoTime() - originNanos, currentDepth);
+    }
+
+    /**
+     * Gets the time elapsed since the origin of the phases
+     * @return the elapsed time in nanoseconds
+     */
+    static long getElapsedNanos() {
+        return System.nanoTime() - originNanos;
+    }
+
+    /**
+     * Gets all finished phases in the order they finished
+     * @return the finished phases
+     */
+    static List<Phase> getPhases() {
+        return new ArrayList<>(phases);
+    }
+
+    /**
+     * Prints all finished phases as a waterfall ordered by their start
+     */
+    static void printWaterfall() {
+        List<Phase> finishedPhases = getPhases();
+        if (finishedPhases.isEmpty()) {
+            return;
+        }
+
+        finishedPhases.sort((first, second) -> Long.compare(first.startNanos, second.startNanos));
+        long totalNanos = 1;
+        int nameWidth = 0;
+        for (Phase phase : finishedPhases) {
+            totalNanos = Math.max(totalNanos, phase.startNanos + phase.durationNanos);
+            nameWidth = Math.max(nameWidth, phase.name.length() + 2 * phase.depth);
+        }
+
+        logger.info(String.format("%-" + nameWidth + "s %10s %10s", "Phase", "Start ms", "Time ms"));
+        for (Phase phase : finishedPhases) {
+            int offset = (int) (phase.startNanos * WATERFALL_WIDTH / totalNanos);
+            int length = Math.max(1, (int) (phase.durationNanos * WATERFALL_WIDTH / totalNanos));
+            char[] bar = new char[Math.min(WATERFALL_WIDTH, offset + length)];
+            Arrays.fill(bar, 0, offset, ' ');
+            Arrays.fill(bar, offset, bar.length, '#');
+
+            logger.info(String.format("%-" + nameWidth + "s %10.1f %10.1f |%s",
+                    Strings.repeat("  ", phase.depth) + phase.name, toMillis(phase.startNanos),
+                    toMillis(phase.durationNanos), new String(bar)));
+        }
+        logger.info(String.format("%-" + nameWidth + "s %10s %10.1f", "Total", "", toMillis(totalNanos)));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * A phase of the hook. Closing the phase records its duration
+     */
+    static final class Phase implements AutoCloseable {
+        private final String name;
+        private final long startNanos;
+        private final int depth;
+        private long durationNanos;
+
+        private Phase(String name, long startNanos, int depth) {
+            this.name = name;
+            this.startNanos = startNanos;
+            this.depth = depth;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getDurationNanos() {
+            return durationNanos;
+        }
+
+        private Phase finishedAt(long endNanos) {
+            durationNanos = endNanos - startNanos;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (name != null) {
+                finishedAt(System.nanoTime() - originNanos);
+                PhaseTimer.depth.set(depth);
+                phases.add(this);
+            }
+        }
+    }
+}
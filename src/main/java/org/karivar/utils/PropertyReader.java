@@ -7,24 +7,43 @@
  */
 package org.karivar.utils;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Splitter;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.TreeSet;
 
 class PropertyReader {
 
+    private static final String ISSUE_TYPES_FILENAME = "issuetypes.properties";
+    private static final String ISSUE_LINKS_FILENAME = "issuelinks.properties";
+    private static final String COMMIT_RULES_FILENAME = "commitrules";
+    private static final String ISSUE_LINKS_PROPERTY = "issuelinks";
+    private static final String GROUP_PREFIX = "group ";
+    private static final Splitter VALUE_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
     private final ResourceBundle messages;
-    private Map<String, List<String>> issueTypesAndStatuses;
-    private List<String> issueLinks;
     private final Logger logger = LoggerFactory.getLogger(PropertyReader.class);
 
      PropertyReader(ResourceBundle bundle) {
@@ -32,64 +51,156 @@ class PropertyReader {
     }
 
     /**
-     * Loads a property file containing all JIRA issue types and their corresponding statuses
-     * which allows code check-in.
-     * @return a map containing issue types and their statuses.
+     * Loads the files containing the commit rules, all JIRA issue types with their corresponding statuses
+     * which allows code check-in and the names of the JIRA issue links used to connect relevant issues together.
+     * The files of the hook may be overridden by files with the same name in the override directory of the
+     * repository. Properties in the override files replace the properties with the same key, while the
+     * commit rules of the override file take precedence over the commit rules of the hook.
+     * The issue types and statuses are added as allow rules after all other commit rules.
+     * @param overrideDirectory the directory containing the override files or null if none
+     * @return the compiled commit policy
      */
-    Map<String, List<String>> getIssueTypesAndStatuses() {
-        loadIssueTypesAndStatuses();
-        return issueTypesAndStatuses;
-    }
+    CommitPolicy getCommitPolicy(File overrideDirectory) {
+        Properties issueTypes = loadPropertiesFile(ISSUE_TYPES_FILENAME);
+        Properties issueLinks = loadPropertiesFile(ISSUE_LINKS_FILENAME);
+        Map<String, List<String>> ruleFiles = new LinkedHashMap<>();
+        ImmutableMap.Builder<File, Long> overrideFilesLastModified = ImmutableMap.builder();
+
+        if (overrideDirectory != null) {
+            File issueTypesOverride = new File(overrideDirectory, ISSUE_TYPES_FILENAME);
+            File issueLinksOverride = new File(overrideDirectory, ISSUE_LINKS_FILENAME);
+            File commitRulesOverride = new File(overrideDirectory, COMMIT_RULES_FILENAME);
+
+            // A missing file has 0 as last modified. Adding the file later is detected as a modification
+            overrideFilesLastModified.put(issueTypesOverride, issueTypesOverride.lastModified());
+            overrideFilesLastModified.put(issueLinksOverride, issueLinksOverride.lastModified());
+            overrideFilesLastModified.put(commitRulesOverride, commitRulesOverride.lastModified());
+            issueTypes.putAll(loadOverrideFile(issueTypesOverride));
+            issueLinks.putAll(loadOverrideFile(issueLinksOverride));
+            ruleFiles.put(commitRulesOverride.getPath(), loadOverrideLines(commitRulesOverride));
+        }
+        ruleFiles.put(COMMIT_RULES_FILENAME, loadLines(COMMIT_RULES_FILENAME));
 
-    /**
-     * Loads a property file containing names of the JIRA link names which will be used to connect relevant issues
-     * together to increase the level of traceability.
-     * @return a list containing all JIRA link names.
-     */
-    List<String> getIssueLinks() {
-        loadIssueLinks();
-        return issueLinks;
+        List<CommitRule> rules = compileCommitRules(ruleFiles);
+        rules.addAll(compileIssueTypes(issueTypes));
+
+        return new CommitPolicy(DecisionTable.compile(rules), compileIssueLinks(issueLinks),
+                overrideDirectory, overrideFilesLastModified.build());
     }
 
+    private List<CommitRule> compileCommitRules(Map<String, List<String>> ruleFiles) {
+        // Groups may be used by the rules of all files. Collect them first
+        Map<String, List<String>> groups = new HashMap<>();
+        for (List<String> lines : ruleFiles.values()) {
+            for (String line : lines) {
+                String trimmedLine = line.trim();
+                if (trimmedLine.startsWith(GROUP_PREFIX) && trimmedLine.indexOf('=') > 0) {
+                    String name = trimmedLine.substring(GROUP_PREFIX.length(), trimmedLine.indexOf('=')).trim();
+                    groups.putIfAbsent(name, VALUE_SPLITTER.splitToList(
+                            trimmedLine.substring(trimmedLine.indexOf('=') + 1)));
+                }
+            }
+        }
+
+        List<CommitRule> rules = new ArrayList<>();
+        for (Map.Entry<String, List<String>> ruleFile : ruleFiles.entrySet()) {
+            List<String> lines = ruleFile.getValue();
+            for (int i = 0; i < lines.size(); i++) {
+                String trimmedLine = lines.get(i).trim();
+                if (trimmedLine.isEmpty() || trimmedLine.startsWith("#") || trimmedLine.startsWith(GROUP_PREFIX)) {
+                    continue;
+                }
 
-     private void loadIssueLinks() {
-         issueLinks = Lists.newArrayList();
+                try {
+                    rules.add(CommitRule.parse(trimmedLine, groups));
+                } catch (IllegalArgumentException e) {
+                    logger.error(messages.getString("error.loadfile.rule"), ruleFile.getKey(), i + 1,
+                            e.getMessage());
+                }
+            }
+        }
+        return rules;
+    }
 
-        Properties properties = loadPropertiesFile("issuelinks.properties");
+    private List<CommitRule> compileIssueTypes(Properties properties) {
+        List<CommitRule> rules = new ArrayList<>();
 
-        if (!properties.isEmpty()) {
-            String values = properties.getProperty("issuelinks");
-            issueLinks = Lists.newArrayList(Splitter.on(", ").split(values));
+        for (String key : new TreeSet<>(properties.stringPropertyNames())) {
+            Set<String> statuses = new LinkedHashSet<>(VALUE_SPLITTER.splitToList(properties.getProperty(key)));
+
+            // Underscore is used as separator if the issue type contains more than one word
+            rules.add(new CommitRule(CommitRule.Action.ALLOW, Collections.singleton(key.replace('_', ' ')),
+                    statuses, Collections.emptySet(), Collections.emptySet(), Collections.emptySet(),
+                    Collections.emptySet()));
         }
+        return rules;
     }
 
-    private void loadIssueTypesAndStatuses() {
-        issueTypesAndStatuses = Maps.newHashMap();
+    private ImmutableSet<String> compileIssueLinks(Properties properties) {
+        ImmutableSet.Builder<String> issueLinks = ImmutableSet.builder();
+        String values = properties.getProperty(ISSUE_LINKS_PROPERTY);
 
-        Properties properties = loadPropertiesFile("issuetypes.properties");
+        if (values != null) {
+            for (String issueLink : VALUE_SPLITTER.split(values)) {
+                issueLinks.add(issueLink.toLowerCase(Locale.ROOT));
+            }
+        }
+        return issueLinks.build();
+    }
 
-        if (!properties.isEmpty()) {
-            for (Object property : properties.keySet()) {
-                String key = (String) property;
+    private Properties loadOverrideFile(File file) {
+        Properties properties = new Properties();
+
+        if (file.isFile()) {
+            try (HookEvent event = HookEvent.configLoad(file.getPath());
+                 InputStream reader = new FileInputStream(file)) {
+                properties.load(reader);
+                event.setEntries(properties.size());
+                logger.debug("Loaded the override file {}", file);
+            } catch (IOException e) {
+                logger.error(messages.getString("error.loadfile.io"), file);
+            } catch (IllegalArgumentException e) {
+                logger.error(messages.getString("error.loadfile.malformed"), file);
+            }
+        }
+        return properties;
+    }
 
-                String values = properties.getProperty(key);
+    private List<String> loadOverrideLines(File file) {
+        if (file.isFile()) {
+            try (HookEvent event = HookEvent.configLoad(file.getPath())) {
+                List<String> lines = Files.readLines(file, Charsets.UTF_8);
+                event.setEntries(lines.size());
+                return lines;
+            } catch (IOException e) {
+                logger.error(messages.getString("error.loadfile.io"), file);
+            }
+        }
+        return Collections.emptyList();
+    }
 
-                if (key.contains("_")) {
-                    key = key.replaceAll("_", " ");
-                }
+    private List<String> loadLines(String filename) {
+        URL resource = getClass().getClassLoader().getResource(filename);
 
-                List<String> items = Lists.newArrayList(Splitter.on(", ").split(values));
-                issueTypesAndStatuses.put(key, items);
+        if (resource != null) {
+            try (HookEvent event = HookEvent.configLoad(filename)) {
+                List<String> lines = Resources.readLines(resource, Charsets.UTF_8);
+                event.setEntries(lines.size());
+                return lines;
+            } catch (IOException e) {
+                logger.error(messages.getString("error.loadfile.io"), filename);
             }
         }
+        return Collections.emptyList();
     }
 
     private Properties loadPropertiesFile(String filename) {
         Properties properties = new Properties();
 
-        try {
-            InputStream reader = getClass().getClassLoader().getResourceAsStream(filename);
+        try (HookEvent event = HookEvent.configLoad(filename);
+             InputStream reader = getClass().getClassLoader().getResourceAsStream(filename)) {
             properties.load(reader);
+            event.setEntries(properties.size());
 
         } catch (IOException e) {
             logger.error(messages.getString("error.loadfile.io"), filename);
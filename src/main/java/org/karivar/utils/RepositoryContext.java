@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import java.util.Optional;
+
+/**
+ * The repository state a commit message is validated in. Immutable.
+ */
+public final class RepositoryContext {
+    private final String branch;
+    private final String jiraUsername;
+
+    /**
+     * Creates the context
+     * @param branch the branch committed to (used by the commit rules) or null if unknown
+     * @param jiraUsername the JIRA username of the committer (used to check the assignee) or null to use the
+     * username of the {@link HookConfiguration}
+     */
+    public RepositoryContext(String branch, String jiraUsername) {
+        this.branch = branch;
+        this.jiraUsername = jiraUsername;
+    }
+
+    public Optional<String> getBranch() {
+        return Optional.ofNullable(branch);
+    }
+
+    public Optional<String> getJiraUsername() {
+        return Optional.ofNullable(jiraUsername);
+    }
+}
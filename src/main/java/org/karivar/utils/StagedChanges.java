@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * This class is responsible for finding the paths changed by the commit, i.e the differences between the git
+ * index and the tree of HEAD (like git diff --cached --name-only), without running git. Directories whose cached
+ * tree in the index equals the tree of HEAD are skipped, so only the trees of the changed directories are read.
+ */
+final class StagedChanges {
+    private static final String TREE_MODE = "40000";
+    private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+    private final GitRepository gitRepository;
+    private final GitIndex index;
+
+    /**
+     * Creates the changes of the index being committed
+     * @param gitRepository the repository
+     * @throws IOException if the index can't be read or the repository doesn't use SHA-1 object ids
+     */
+    StagedChanges(GitRepository gitRepository) throws IOException {
+        this(gitRepository, GitIndex.read(checkObjectFormat(gitRepository).getIndexFile()));
+    }
+
+    StagedChanges(GitRepository gitRepository, GitIndex index) {
+        this.gitRepository = gitRepository;
+        this.index = index;
+    }
+
+    private static GitRepository checkObjectFormat(GitRepository gitRepository) throws IOException {
+        // The index, trees and commits of a SHA-256 repository have 32 byte object ids
+        String objectFormat = gitRepository.getObjectFormat();
+        if (!GitRepository.SHA1_OBJECT_FORMAT.equals(objectFormat)) {
+            throw new IOException("The object format " + objectFormat + " isn't supported");
+        }
+        return gitRepository;
+    }
+
+    /**
+     * Checks whether all the changed paths (added, modified and deleted) match the predicate. The comparison stops
+     * at the first path not matching
+     * @param predicate the predicate of the paths
+     * @return true if at least one path is changed and all of them match
+     * @throws IOException if HEAD or one of its trees can't be read
+     */
+    boolean allMatch(Predicate<String> predicate) throws IOException {
+        boolean[] changed = { false };
+        Optional<String> headTree = gitRepository.getHeadTree();
+        boolean allMatching = compare("", 0, index.size(), headTree.orElse(null),
+                index.getCacheTree().orElse(null), path -> {
+                    changed[0] = true;
+                    return predicate.test(path);
+                });
+        return changed[0] && allMatching;
+    }
+
+    /**
+     * Compares the index entries of a directory with its tree in HEAD
+     * @param prefix the path of the directory followed by a slash (empty for the top directory)
+     * @param from the first index entry of the directory
+     * @param to the index entry following the last entry of the directory
+     * @param headTree the SHA-1 of the tree in HEAD or null if the directory is added
+     * @param cacheTree the cached tree of the directory or null if not cached
+     * @param visitor the visitor of the changed paths. Returns false to stop the comparison
+     * @return false if the comparison is stopped
+     * @throws IOException if a tree of HEAD can't be read
+     */
+    private boolean compare(String prefix, int from, int to, String headTree, GitIndex.CacheTree cacheTree,
+                            Predicate<String> visitor) throws IOException {
+        if (cacheTree != null && cacheTree.isValid() && cacheTree.getObjectId().equals(headTree)) {
+            return true;
+        }
+
+        List<TreeEntry> headEntries = headTree != null ? readTree(headTree) : Collections.emptyList();
+        int head = 0;
+        int entry = from;
+
+        while (entry < to) {
+            String path = index.getPath(entry);
+            int separator = path.indexOf('/', prefix.length());
+
+            if (separator < 0) {
+                String name = path.substring(prefix.length());
+                for (; head < headEntries.size() && compareNames(headEntries.get(head).key, name) < 0; head++) {
+                    if (!visitDeleted(prefix, headEntries.get(head), visitor)) {
+                        return false;
+                    }
+                }
+
+                TreeEntry headEntry = head < headEntries.size() && headEntries.get(head).key.equals(name)
+                        ? headEntries.get(head++) : null;
+                boolean changed = headEntry == null || index.getStage(entry) != 0
+                        || !headEntry.objectId.equals(index.getObjectId(entry))
+                        || Integer.parseInt(headEntry.mode, 8) != index.getMode(entry);
+                if (changed && !visitor.test(path)) {
+                    return false;
+                }
+
+                // A path in conflict has an entry for each stage
+                do {
+                    entry++;
+                } while (entry < to && index.getPath(entry).equals(path));
+            } else {
+                String name = path.substring(prefix.length(), separator);
+                String directoryPrefix = path.substring(0, separator + 1);
+                GitIndex.CacheTree subtree = cacheTree != null ? cacheTree.getSubtree(name) : null;
+                int end = getDirectoryEnd(directoryPrefix, entry, to, subtree);
+
+                for (; head < headEntries.size() && compareNames(headEntries.get(head).key, name + "/") < 0;
+                     head++) {
+                    if (!visitDeleted(prefix, headEntries.get(head), visitor)) {
+                        return false;
+                    }
+                }
+
+                TreeEntry headEntry = head < headEntries.size() && headEntries.get(head).key.equals(name + "/")
+                        ? headEntries.get(head++) : null;
+                if (!compare(directoryPrefix, entry, end, headEntry != null ? headEntry.objectId : null, subtree,
+                        visitor)) {
+                    return false;
+                }
+                entry = end;
+            }
+        }
+
+        for (; head < headEntries.size(); head++) {
+            if (!visitDeleted(prefix, headEntries.get(head), visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int getDirectoryEnd(String directoryPrefix, int from, int to, GitIndex.CacheTree cacheTree) {
+        // A valid cached tree knows the number of entries of the directory
+        if (cacheTree != null && cacheTree.isValid()) {
+            int end = from + cacheTree.getEntryCount();
+            if (end > from && end <= to && index.getPath(end - 1).startsWith(directoryPrefix)
+                    && (end == to || !index.getPath(end).startsWith(directoryPrefix))) {
+                return end;
+            }
+        }
+
+        int end = from + 1;
+        while (end < to && index.getPath(end).startsWith(directoryPrefix)) {
+            end++;
+        }
+        return end;
+    }
+
+    private boolean visitDeleted(String prefix, TreeEntry headEntry, Predicate<String> visitor) throws IOException {
+        if (!headEntry.isTree()) {
+            return visitor.test(prefix + headEntry.key);
+        }
+
+        for (TreeEntry entry : readTree(headEntry.objectId)) {
+            if (!visitDeleted(prefix + headEntry.key, entry, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<TreeEntry> readTree(String sha) throws IOException {
+        Optional<byte[]> tree = gitRepository.readTree(sha);
+        if (!tree.isPresent()) {
+            throw new IOException("Unable to read the tree " + sha);
+        }
+
+        // Each entry consists of <mode> <name>\0<20 byte object id>
+        byte[] contents = tree.get();
+        List<TreeEntry> entries = new ArrayList<>();
+        int offset = 0;
+        while (offset < contents.length) {
+            int separator = indexOf(contents, (byte) ' ', offset);
+            int nameEnd = indexOf(contents, (byte) 0, separator);
+            if (separator < 0 || nameEnd < 0 || nameEnd + 21 > contents.length) {
+                throw new IOException("The tree " + sha + " is corrupt");
+            }
+
+            String mode = new String(contents, offset, separator - offset, Charsets.US_ASCII);
+            String name = new String(contents, separator + 1, nameEnd - separator - 1, Charsets.UTF_8);
+            String objectId = HEX.encode(contents, nameEnd + 1, 20);
+            entries.add(new TreeEntry(mode, TREE_MODE.equals(mode) ? name + "/" : name, objectId));
+            offset = nameEnd + 21;
+        }
+        return entries;
+    }
+
+    private static int indexOf(byte[] contents, byte value, int from) {
+        for (int i = Math.max(from, 0); i < contents.length; i++) {
+            if (contents[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares names the way git sorts them, i.e by their UTF-8 bytes (the same order as the code points)
+     */
+    private static int compareNames(String first, String second) {
+        int i = 0;
+        int j = 0;
+        while (i < first.length() && j < second.length()) {
+            int firstCodePoint = first.codePointAt(i);
+            int secondCodePoint = second.codePointAt(j);
+            if (firstCodePoint != secondCodePoint) {
+                return Integer.compare(firstCodePoint, secondCodePoint);
+            }
+            i += Character.charCount(firstCodePoint);
+            j += Character.charCount(secondCodePoint);
+        }
+        return Integer.compare(first.length() - i, second.length() - j);
+    }
+
+    private static final class TreeEntry {
+        private final String mode;
+        // The name of a tree ends with a slash, as trees are sorted that way
+        private final String key;
+        private final String objectId;
+
+        private TreeEntry(String mode, String key, String objectId) {
+            this.mode = mode;
+            this.key = key;
+            this.objectId = objectId;
+        }
+
+        private boolean isTree() {
+            return TREE_MODE.equals(mode);
+        }
+    }
+}
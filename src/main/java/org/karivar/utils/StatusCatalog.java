@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.karivar.utils.domain.WorkflowStatus;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * This class holds the statuses of the workflows of a JIRA project, i.e the statuses of each issue type
+ * as returned by the /rest/api/2/project/{key}/statuses resource. The catalog is immutable.
+ */
+final class StatusCatalog {
+    private final String projectKey;
+    private final long fetched;
+    private final ImmutableMap<String, WorkflowStatus> statuses;
+    private final ImmutableMap<String, ImmutableSet<String>> issueTypeStatuses;
+
+    StatusCatalog(String projectKey, long fetched, Map<String, WorkflowStatus> statuses,
+                  Map<String, ? extends Set<String>> issueTypeStatuses) {
+        this.projectKey = projectKey;
+        this.fetched = fetched;
+        this.statuses = ImmutableMap.copyOf(statuses);
+
+        ImmutableMap.Builder<String, ImmutableSet<String>> builder = ImmutableMap.builder();
+        for (Map.Entry<String, ? extends Set<String>> entry : issueTypeStatuses.entrySet()) {
+            builder.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue()));
+        }
+        this.issueTypeStatuses = builder.build();
+    }
+
+    /**
+     * Creates a catalog from the response of the /rest/api/2/project/{key}/statuses resource
+     * @param projectKey the JIRA project key
+     * @param json the response
+     * @param fetched the time the response was fetched (in milliseconds)
+     * @return the catalog
+     * @throws JSONException if the response is malformed
+     */
+    static StatusCatalog fromJson(String projectKey, String json, long fetched) throws JSONException {
+        Map<String, WorkflowStatus> statuses = new HashMap<>();
+        Map<String, Set<String>> issueTypeStatuses = new HashMap<>();
+        JSONArray issueTypes = new JSONArray(json);
+
+        for (int i = 0; i < issueTypes.length(); i++) {
+            JSONObject issueType = issueTypes.getJSONObject(i);
+            JSONArray issueTypeStatusArray = issueType.getJSONArray("statuses");
+            ImmutableSet.Builder<String> statusIds = ImmutableSet.builder();
+
+            for (int j = 0; j < issueTypeStatusArray.length(); j++) {
+                JSONObject status = issueTypeStatusArray.getJSONObject(j);
+                JSONObject statusCategory = status.optJSONObject("statusCategory");
+                String id = status.getString("id");
+
+                statuses.put(id, new WorkflowStatus(id, status.getString("name"),
+                        statusCategory != null ? statusCategory.optString("key", null) : null));
+                statusIds.add(id);
+            }
+            issueTypeStatuses.put(issueType.getString("name"), statusIds.build());
+        }
+        return new StatusCatalog(projectKey, fetched, statuses, issueTypeStatuses);
+    }
+
+    String getProjectKey() {
+        return projectKey;
+    }
+
+    /**
+     * Gets the time the catalog was fetched from JIRA
+     * @return the time in milliseconds
+     */
+    long getFetched() {
+        return fetched;
+    }
+
+    Map<String, WorkflowStatus> getStatuses() {
+        return statuses;
+    }
+
+    Map<String, ImmutableSet<String>> getIssueTypeStatuses() {
+        return issueTypeStatuses;
+    }
+
+    /**
+     * Gets the status with the given id in the workflow of the given issue type
+     * @param issueTypeName the name of the JIRA issue type or null if unknown
+     * @param statusId the id of the status
+     * @return the status or empty if the workflow of the issue type doesn't contain the status
+     */
+    Optional<WorkflowStatus> getStatus(String issueTypeName, String statusId) {
+        Set<String> statusIds = issueTypeName != null ? issueTypeStatuses.get(issueTypeName) : null;
+
+        if (statusIds != null && !statusIds.contains(statusId)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(statuses.get(statusId));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import org.karivar.utils.domain.WorkflowStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * This class is responsible for keeping the status catalogs of the JIRA projects in the git directory.
+ * Each project has its own file, so the catalogs are refreshed one project at a time.
+ */
+class StatusCatalogCache {
+    private final Logger logger = LoggerFactory.getLogger(StatusCatalogCache.class);
+
+    private static final String CATALOG_DIRECTORY = "statuscatalogs";
+    private static final String CATALOG_SUFFIX = ".properties";
+    private static final String FETCHED = "fetched";
+    private static final String STATUS = "status.";
+    private static final String NAME = ".name";
+    private static final String CATEGORY = ".category";
+    private static final String ISSUE_TYPE = "issuetype.";
+
+    private final File catalogDirectory;
+
+    StatusCatalogCache(File hookDirectory) {
+        this.catalogDirectory = new File(hookDirectory, CATALOG_DIRECTORY);
+    }
+
+    /**
+     * Gets the cached catalog of the given project regardless of its age
+     * @param projectKey the JIRA project key
+     * @return the catalog or empty if the project isn't cached
+     */
+    Optional<StatusCatalog> getCatalog(String projectKey) {
+        File catalogFile = getCatalogFile(projectKey);
+        if (!catalogFile.isFile()) {
+            return Optional.empty();
+        }
+
+        Properties properties = new Properties();
+        try (InputStream stream = new FileInputStream(catalogFile)) {
+            properties.load(stream);
+
+            Map<String, WorkflowStatus> statuses = new HashMap<>();
+            Map<String, Set<String>> issueTypeStatuses = new HashMap<>();
+
+            for (String name : properties.stringPropertyNames()) {
+                if (name.startsWith(STATUS) && name.endsWith(NAME)) {
+                    String id = name.substring(STATUS.length(), name.length() - NAME.length());
+                    statuses.put(id, new WorkflowStatus(id, properties.getProperty(name),
+                            properties.getProperty(STATUS + id + CATEGORY)));
+                } else if (name.startsWith(ISSUE_TYPE)) {
+                    issueTypeStatuses.put(name.substring(ISSUE_TYPE.length()),
+                            new LinkedHashSet<>(Splitter.on(',').omitEmptyStrings()
+                                    .splitToList(properties.getProperty(name))));
+                }
+            }
+
+            return Optional.of(new StatusCatalog(projectKey, Long.parseLong(properties.getProperty(FETCHED, "0")),
+                    statuses, issueTypeStatuses));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.debug("Unable to read the status catalog {}. Ignoring it", catalogFile, e);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Stores the given catalog and replaces the previous catalog of the project
+     * @param catalog the catalog
+     */
+    void putCatalog(StatusCatalog catalog) {
+        Properties properties = new Properties();
+        properties.setProperty(FETCHED, String.valueOf(catalog.getFetched()));
+
+        for (WorkflowStatus status : catalog.getStatuses().values()) {
+            properties.setProperty(STATUS + status.getId() + NAME, status.getName());
+            if (status.getCategoryKey() != null) {
+                properties.setProperty(STATUS + status.getId() + CATEGORY, status.getCategoryKey());
+            }
+        }
+
+        for (Map.Entry<String, ? extends Set<String>> entry : catalog.getIssueTypeStatuses().entrySet()) {
+            properties.setProperty(ISSUE_TYPE + entry.getKey(), Joiner.on(',').join(entry.getValue()));
+        }
+
+        File catalogFile = getCatalogFile(catalog.getProjectKey());
+        try {
+            if (!catalogDirectory.exists() && !catalogDirectory.mkdirs()) {
+                logger.debug("Unable to create the catalog directory {}", catalogDirectory);
+                return;
+            }
+
+            // Write to a temporary file first to avoid leaving a half written catalog behind
+            File temporaryFile = File.createTempFile(catalog.getProjectKey(), ".tmp", catalogDirectory);
+            try (OutputStream stream = new FileOutputStream(temporaryFile)) {
+                properties.store(stream, "git-jira-hook status catalog of " + catalog.getProjectKey());
+            }
+            Files.move(temporaryFile.toPath(), catalogFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.debug("Unable to write the status catalog {}", catalogFile, e);
+        }
+    }
+
+    private File getCatalogFile(String projectKey) {
+        return new File(catalogDirectory, projectKey.toUpperCase() + CATALOG_SUFFIX);
+    }
+}
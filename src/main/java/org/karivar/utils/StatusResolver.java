@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.WorkflowStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * This class is responsible for resolving the status of JIRA issues using the status catalogs of their
+ * projects. The status is resolved by its id, so the policy sees the status name and status category
+ * of the current workflow. A catalog is only fetched from JIRA when it's missing, expired or doesn't
+ * contain the status of the issue, and at most once per project within the time to live of the catalogs.
+ * The catalogs held in memory expire as well, so a long-lived resolver (e.g shared by the in-process validator)
+ * sees workflow changes.
+ */
+class StatusResolver {
+    private final Logger logger = LoggerFactory.getLogger(StatusResolver.class);
+
+    private final StatusCatalogCache cache;
+    private final Supplier<JiraConnector> jiraConnectorSupplier;
+    private final long timeToLiveMillis;
+    private final Map<String, LoadedCatalog> catalogs = new HashMap<>();
+    // The time of the latest refresh of each project
+    private final Map<String, Long> refreshedProjects = new HashMap<>();
+    private JiraConnector jiraConnector;
+
+    StatusResolver(StatusCatalogCache cache, Supplier<JiraConnector> jiraConnectorSupplier, long timeToLiveMillis) {
+        this.cache = cache;
+        this.jiraConnectorSupplier = jiraConnectorSupplier;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    /**
+     * Sets the status name and status category of the JIRA issue from the catalog of its project.
+     * The issue is left unchanged if the status can't be resolved.
+     * @param issue the populated JIRA issue
+     */
+    void resolve(JiraIssue issue) {
+        if (issue == null || issue.getStatusId() == null || issue.getKey() == null
+                || issue.getKey().indexOf('-') <= 0) {
+            return;
+        }
+
+        String projectKey = issue.getKey().substring(0, issue.getKey().indexOf('-')).toUpperCase();
+        Optional<StatusCatalog> catalog = getCatalog(projectKey);
+
+        Optional<WorkflowStatus> status = catalog.flatMap(
+                c -> c.getStatus(issue.getIssueTypeName(), issue.getStatusId()));
+        if (!status.isPresent() && catalog.isPresent() && startRefresh(projectKey)) {
+            // The workflow may have changed since the catalog was fetched
+            logger.debug("The status {} is not found in the catalog of {}", issue.getStatusId(), projectKey);
+            status = refresh(projectKey).flatMap(c -> c.getStatus(issue.getIssueTypeName(), issue.getStatusId()));
+        }
+
+        if (status.isPresent()) {
+            issue.setStatus(status.get().getName());
+            issue.setStatusCategory(status.get().getCategoryKey());
+        }
+    }
+
+    /**
+     * Fetches the catalogs of the given projects from JIRA
+     * @param projectKeys the JIRA project keys
+     * @return the number of catalogs fetched
+     */
+    int refreshAll(Iterable<String> projectKeys) {
+        int refreshedCatalogs = 0;
+        for (String projectKey : projectKeys) {
+            if (refresh(projectKey.toUpperCase()).isPresent()) {
+                refreshedCatalogs++;
+            }
+        }
+        return refreshedCatalogs;
+    }
+
+    private Optional<StatusCatalog> getCatalog(String projectKey) {
+        LoadedCatalog loadedCatalog = catalogs.get(projectKey);
+        if (loadedCatalog != null && !isExpired(loadedCatalog.loaded)) {
+            return loadedCatalog.catalog;
+        }
+
+        Optional<StatusCatalog> catalog = cache.getCatalog(projectKey);
+        long age = catalog.isPresent() ? System.currentTimeMillis() - catalog.get().getFetched() : -1;
+
+        boolean fresh = catalog.isPresent() && age >= 0 && age <= timeToLiveMillis;
+        HookMetrics.increment(HookMetrics.CACHE_REQUESTS, "cache", "statuscatalog", "result",
+                fresh ? "hit" : catalog.isPresent() ? "expired" : "miss");
+
+        if (!fresh && startRefresh(projectKey)) {
+            Optional<StatusCatalog> refreshedCatalog = refresh(projectKey);
+            if (refreshedCatalog.isPresent()) {
+                catalog = refreshedCatalog;
+            }
+        }
+        catalogs.put(projectKey, new LoadedCatalog(catalog));
+        return catalog;
+    }
+
+    private boolean startRefresh(String projectKey) {
+        Long refreshed = refreshedProjects.get(projectKey);
+        if (refreshed != null && !isExpired(refreshed)) {
+            return false;
+        }
+        refreshedProjects.put(projectKey, System.currentTimeMillis());
+        return true;
+    }
+
+    private boolean isExpired(long time) {
+        long age = System.currentTimeMillis() - time;
+        return age < 0 || age > timeToLiveMillis;
+    }
+
+    private Optional<StatusCatalog> refresh(String projectKey) {
+        if (jiraConnector == null) {
+            jiraConnector = jiraConnectorSupplier.get();
+        }
+
+        Optional<StatusCatalog> catalog = jiraConnector.getStatusCatalog(projectKey);
+        if (catalog.isPresent()) {
+            logger.debug("Fetched the status catalog of {}", projectKey);
+            cache.putCatalog(catalog.get());
+            catalogs.put(projectKey, new LoadedCatalog(catalog));
+        }
+        return catalog;
+    }
+
+    private static class LoadedCatalog {
+        private final Optional<StatusCatalog> catalog;
+        private final long loaded;
+
+        LoadedCatalog(Optional<StatusCatalog> catalog) {
+            this.catalog = catalog;
+            this.loaded = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.karivar.utils.domain.IssueKeyNotFoundException;
+import org.karivar.utils.domain.JiraIssue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * This class is responsible for adding the JIRA issue information (summary, parent and related issues)
+ * as git notes to commits after they are made. This keeps the commit-msg hook down to a single
+ * lookup of the JIRA issue.
+ */
+class TraceabilityNotes {
+    private final Logger logger = LoggerFactory.getLogger(TraceabilityNotes.class);
+
+    static final String NOTES_REF = "refs/notes/githook";
+
+    private final GitRepository gitRepository;
+    private final CommitMessageManipulator manipulator;
+    private final JiraConnector jiraConnector;
+    private final Set<String> issueLinks;
+    private final String jiraProjects;
+    private final String hookVersion;
+    private final Map<String, Optional<JiraIssue>> fetchedIssues = new HashMap<>();
+
+    TraceabilityNotes(GitRepository gitRepository, CommitMessageManipulator manipulator,
+                      JiraConnector jiraConnector, Set<String> issueLinks, String jiraProjects,
+                      String hookVersion) {
+        this.gitRepository = gitRepository;
+        this.manipulator = manipulator;
+        this.jiraConnector = jiraConnector;
+        this.issueLinks = issueLinks;
+        this.jiraProjects = jiraProjects;
+        this.hookVersion = hookVersion;
+    }
+
+    /**
+     * Adds the JIRA issue information as a note to the given commit
+     * @param sha the SHA-1 of the commit
+     * @return true if the note is added
+     */
+    boolean addNote(String sha) {
+        Optional<List<String>> commitMessage = gitRepository.getCommitMessage(sha);
+        if (!commitMessage.isPresent() || commitMessage.get().isEmpty()) {
+            logger.debug("Unable to read the commit message of {}", sha);
+            return false;
+        }
+
+        Optional<String> issueKey = manipulator.findJiraIssueKey(commitMessage.get().get(0), jiraProjects);
+        if (!issueKey.isPresent()) {
+            logger.debug("The commit {} doesn't refer to any JIRA issue", sha);
+            return false;
+        }
+
+        Optional<JiraIssue> issue = getIssue(issueKey.get());
+        if (!issue.isPresent()) {
+            return false;
+        }
+
+        return gitRepository.addNote(NOTES_REF, sha, manipulator.getTraceabilityNote(issue.get(), hookVersion));
+    }
+
+    /**
+     * Adds the JIRA issue information as notes to all commits in the given revision range which don't
+     * have a note already. Each JIRA issue is only fetched once.
+     * @param revisionRange the revision range (e.g origin/master..HEAD)
+     * @return the number of notes added
+     */
+    int addNotes(String revisionRange) {
+        Set<String> annotatedCommits = gitRepository.getAnnotatedCommits(NOTES_REF);
+        int addedNotes = 0;
+
+        for (String sha : gitRepository.listCommits(revisionRange)) {
+            if (!annotatedCommits.contains(sha) && addNote(sha)) {
+                addedNotes++;
+            }
+        }
+
+        logger.debug("Added {} notes for {} distinct JIRA issues", addedNotes, fetchedIssues.size());
+        return addedNotes;
+    }
+
+    private Optional<JiraIssue> getIssue(String issueKey) {
+        Optional<JiraIssue> issue = fetchedIssues.get(issueKey);
+
+        if (issue == null) {
+            try {
+                issue = Optional.ofNullable(jiraConnector.getJiraPopulatedIssue(Optional.of(issueKey), issueLinks));
+            } catch (IssueKeyNotFoundException e) {
+                logger.error(e.getLocalizedMessage());
+                issue = Optional.empty();
+            } catch (RuntimeException e) {
+                logger.debug("Unable to fetch the JIRA issue {}", issueKey, e);
+                issue = Optional.empty();
+            }
+            fetchedIssues.put(issueKey, issue);
+        }
+        return issue;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import org.karivar.utils.domain.Verdict;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The result of validating a commit message with a {@link CommitMessageValidator}: the decision of the hook
+ * and the commit message as the hook would have written it. Immutable.
+ */
+public final class ValidationResult {
+    private final Verdict verdict;
+    private final String reason;
+    private final ImmutableList<String> issueKeys;
+    private final ImmutableList<String> commitMessage;
+    private final boolean commitMessageChanged;
+
+    ValidationResult(Verdict verdict, String reason, List<String> issueKeys, List<String> commitMessage,
+                     boolean commitMessageChanged) {
+        this.verdict = verdict;
+        this.reason = reason;
+        this.issueKeys = ImmutableList.copyOf(issueKeys);
+        this.commitMessage = ImmutableList.copyOf(commitMessage);
+        this.commitMessageChanged = commitMessageChanged;
+    }
+
+    public Verdict getVerdict() {
+        return verdict;
+    }
+
+    /**
+     * Gets the reason of the verdict, using the reasons of the decision log (e.g allowed, status or assignee)
+     * @return the reason
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    public Optional<String> getIssueKey() {
+        return issueKeys.stream().findFirst();
+    }
+
+    /**
+     * Gets the JIRA issue keys of the commit message, i.e the keys of the first line followed by the keys of the
+     * trailers of the {@link HookConfiguration}
+     * @return the issue keys or an empty list if none are checked (e.g overridden commits)
+     */
+    public List<String> getIssueKeys() {
+        return issueKeys;
+    }
+
+    /**
+     * Gets the lines of the commit message. An accepted message contains the traceability information
+     * added by the hook, while a rejected message is left as it is
+     * @return the lines of the commit message
+     */
+    public List<String> getCommitMessageLines() {
+        return commitMessage;
+    }
+
+    /**
+     * Gets the commit message
+     * @return the lines of the commit message separated by a newline
+     */
+    public String getCommitMessage() {
+        return Joiner.on('\n').join(commitMessage);
+    }
+
+    public boolean isCommitMessageChanged() {
+        return commitMessageChanged;
+    }
+
+    @Override
+    public String toString() {
+        return verdict + " (" + reason + ")" + (!issueKeys.isEmpty() ? " " + Joiner.on(' ').join(issueKeys) : "");
+    }
+}
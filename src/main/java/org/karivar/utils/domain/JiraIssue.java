@@ -14,6 +14,8 @@ import com.google.common.base.Objects;
 public class JiraIssue extends BasicJiraIssue {
 
     private String status;
+    private String statusId;
+    private String statusCategory;
     private List<BasicJiraIssue> relatedIssues;
     private Optional<BasicJiraIssue> parentIssue;
     private boolean subtask;
@@ -33,6 +35,22 @@ public class JiraIssue extends BasicJiraIssue {
         this.status = status;
     }
 
+    public String getStatusId() {
+        return statusId;
+    }
+
+    public void setStatusId(String statusId) {
+        this.statusId = statusId;
+    }
+
+    public String getStatusCategory() {
+        return statusCategory;
+    }
+
+    public void setStatusCategory(String statusCategory) {
+        this.statusCategory = statusCategory;
+    }
+
     public List<BasicJiraIssue> getRelatedIssues() {
         return relatedIssues;
     }
@@ -73,6 +91,10 @@ public class JiraIssue extends BasicJiraIssue {
         this.assignee = assignee;
     }
 
+    public Optional<String> getResolution() {
+        return resolution;
+    }
+
     public void setResolution(Optional<String> resolution) {
         this.resolution = resolution;
     }
@@ -81,6 +103,8 @@ public class JiraIssue extends BasicJiraIssue {
     public String toString() {
         return super.getToStringHelper().
                 add("Status", status).
+                add("Status id", statusId).
+                add("Status category", statusCategory).
                 add("Assignee", assignee).
                 add("Resolution", resolution).
                 add("Subtask", subtask).
@@ -95,6 +119,8 @@ public class JiraIssue extends BasicJiraIssue {
         if (obj instanceof JiraIssue) {
             JiraIssue that = (JiraIssue) obj;
             return Objects.equal(this.status, that.status)
+                    && Objects.equal(this.statusId, that.statusId)
+                    && Objects.equal(this.statusCategory, that.statusCategory)
                     && Objects.equal(this.assignee, that.assignee)
                     && Objects.equal(this.resolution, that.resolution)
                     && Objects.equal(this.subtask, that.subtask)
@@ -107,6 +133,6 @@ public class JiraIssue extends BasicJiraIssue {
 
     @Override
     public int hashCode() {
-        return Objects.hashCode( status, assignee, resolution, subtask, parentIssue, relatedIssues);
+        return Objects.hashCode( status, statusId, statusCategory, assignee, resolution, subtask, parentIssue, relatedIssues);
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils.domain;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+
+/**
+ * A status of a JIRA workflow together with its status category (e.g new, indeterminate or done)
+ */
+public class WorkflowStatus {
+    private final String id;
+    private final String name;
+    private final String categoryKey;
+
+    public WorkflowStatus(String id, String name, String categoryKey) {
+        this.id = id;
+        this.name = name;
+        this.categoryKey = categoryKey;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCategoryKey() {
+        return categoryKey;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).
+                add("Id", id).
+                add("Name", name).
+                add("Category", categoryKey)
+                .toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof WorkflowStatus) {
+            WorkflowStatus that = (WorkflowStatus) obj;
+            return Objects.equal(this.id, that.id)
+                    && Objects.equal(this.name, that.name)
+                    && Objects.equal(this.categoryKey, that.categoryKey);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id, name, categoryKey);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CheckpointRestoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        HookMetrics.reset();
+        PhaseTimer.disable();
+    }
+
+    @Test
+    public void clearWarmUpRuns() throws Exception {
+        // A warm-up run before the checkpoint
+        PhaseTimer.startRecording();
+        try (PhaseTimer.Phase ignored = PhaseTimer.start("jira.fetch EXAMPLE-1")) {
+            HookMetrics.increment(HookMetrics.JIRA_RESPONSES, "code", "200");
+            HookMetrics.increment(HookMetrics.CACHE_REQUESTS, "cache", "issue", "result", "miss");
+            HookMetrics.set(HookMetrics.JIRA_CONCURRENCY_LIMIT, 8);
+        }
+
+        CheckpointRestore.clearWarmUpRuns();
+
+        assertFalse(PhaseTimer.isEnabled());
+        assertTrue(PhaseTimer.getPhases().isEmpty());
+
+        // The first hook run after the restore only reports its own metrics
+        File metricsFile = new File(temporaryFolder.newFolder(), HookMetrics.METRICS_FILE);
+        HookMetrics.increment(HookMetrics.OVERRIDES, "option", "-O");
+        HookMetrics.write(metricsFile);
+
+        List<String> lines = Files.readLines(metricsFile, Charsets.UTF_8);
+        assertTrue(lines.contains("githook_overrides_total{option=\"-O\"} 1"));
+        assertFalse(lines.stream().anyMatch(line -> line.startsWith(HookMetrics.JIRA_RESPONSES)));
+        assertFalse(lines.stream().anyMatch(line -> line.startsWith(HookMetrics.CACHE_REQUESTS)));
+        assertFalse(lines.stream().anyMatch(line -> line.startsWith(HookMetrics.JIRA_CONCURRENCY_LIMIT)));
+        assertFalse(lines.stream().anyMatch(line -> line.startsWith(HookMetrics.PHASE_DURATION)));
+    }
+}
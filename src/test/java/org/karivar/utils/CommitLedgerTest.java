@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.karivar.utils.domain.Verdict;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class CommitLedgerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void getVerdictEmptyLedger() throws Exception {
+        CommitLedger ledger = new CommitLedger(temporaryFolder.newFolder());
+        assertFalse(ledger.getVerdict("aaaa", "1").isPresent());
+    }
+
+    @Test
+    public void getVerdictRecordedCommit() throws Exception {
+        File hookDirectory = temporaryFolder.newFolder();
+        CommitLedger ledger = new CommitLedger(hookDirectory);
+        ledger.record("aaaa", Verdict.ACCEPTED, "EXAMPLE-1", "1");
+        ledger.record("bbbb", Verdict.OVERRIDDEN, null, "1");
+
+        // A new ledger reads the recorded verdicts from the file
+        CommitLedger reloadedLedger = new CommitLedger(hookDirectory);
+        assertEquals(Optional.of(Verdict.ACCEPTED), reloadedLedger.getVerdict("aaaa", "1"));
+        assertEquals(Optional.of(Verdict.OVERRIDDEN), reloadedLedger.getVerdict("bbbb", "1"));
+    }
+
+    @Test
+    public void getVerdictChangedPolicyVersion() throws Exception {
+        CommitLedger ledger = new CommitLedger(temporaryFolder.newFolder());
+        ledger.record("aaaa", Verdict.ACCEPTED, "EXAMPLE-1", "1");
+
+        assertFalse(ledger.getVerdict("aaaa", "2").isPresent());
+    }
+
+    @Test
+    public void getVerdictLatestRecordWins() throws Exception {
+        File hookDirectory = temporaryFolder.newFolder();
+        CommitLedger ledger = new CommitLedger(hookDirectory);
+        ledger.record("aaaa", Verdict.REJECTED, "EXAMPLE-1", "1");
+        assertEquals(Optional.of(Verdict.REJECTED), ledger.getVerdict("aaaa", "1"));
+
+        ledger.record("aaaa", Verdict.ACCEPTED, "EXAMPLE-1", "1");
+        assertEquals(Optional.of(Verdict.ACCEPTED), ledger.getVerdict("aaaa", "1"));
+        assertEquals(Optional.of(Verdict.ACCEPTED), new CommitLedger(hookDirectory).getVerdict("aaaa", "1"));
+    }
+
+    @Test
+    public void recordMarkedVerdict() throws Exception {
+        File hookDirectory = temporaryFolder.newFolder();
+        CommitLedger ledger = new CommitLedger(hookDirectory);
+        List<String> hookMessage = Arrays.asList("EXAMPLE-1 Fix the invoice totals  ", "",
+                "# Please enter the commit message for your changes.", "Summary: Accounting", "",
+                "# ------------------------ >8 ------------------------", "diff --git a/Invoice.java b/Invoice.java");
+        ledger.markVerdict(hookMessage, Verdict.ACCEPTED, "EXAMPLE-1", "1");
+
+        // git strips the comments, the diff and the trailing whitespace of the message
+        assertTrue(ledger.recordMarkedVerdict("aaaa",
+                Arrays.asList("EXAMPLE-1 Fix the invoice totals", "", "Summary: Accounting")));
+        assertEquals(Optional.of(Verdict.ACCEPTED), new CommitLedger(hookDirectory).getVerdict("aaaa", "1"));
+
+        // The marker is used only once, e.g not by a later git commit --no-verify --amend
+        assertFalse(ledger.recordMarkedVerdict("bbbb",
+                Arrays.asList("EXAMPLE-1 Fix the invoice totals", "", "Summary: Accounting")));
+        assertFalse(ledger.getVerdict("bbbb", "1").isPresent());
+    }
+
+    @Test
+    public void recordMarkedVerdictOtherMessage() throws Exception {
+        CommitLedger ledger = new CommitLedger(temporaryFolder.newFolder());
+        ledger.markVerdict(Arrays.asList("EXAMPLE-1 Fix the invoice totals"), Verdict.ACCEPTED, "EXAMPLE-1", "1");
+
+        // E.g a cherry-pick copying the hook information of an old commit
+        assertFalse(ledger.recordMarkedVerdict("aaaa", Arrays.asList("EXAMPLE-2 Round the invoice totals")));
+        assertFalse(ledger.getVerdict("aaaa", "1").isPresent());
+    }
+
+    @Test
+    public void recordMarkedVerdictRejectedCommit() throws Exception {
+        CommitLedger ledger = new CommitLedger(temporaryFolder.newFolder());
+        List<String> message = Arrays.asList("EXAMPLE-1 Fix the invoice totals");
+        ledger.markVerdict(message, Verdict.ACCEPTED, "EXAMPLE-1", "1");
+        ledger.markVerdict(message, Verdict.REJECTED, "EXAMPLE-1", "1");
+
+        assertFalse(ledger.recordMarkedVerdict("aaaa", message));
+    }
+
+    @Test
+    public void recordWithoutMarkedVerdict() throws Exception {
+        CommitLedger ledger = new CommitLedger(temporaryFolder.newFolder());
+
+        assertFalse(ledger.recordMarkedVerdict("aaaa", Arrays.asList("EXAMPLE-1 Fix the invoice totals")));
+    }
+}
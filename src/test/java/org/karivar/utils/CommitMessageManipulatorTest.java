@@ -12,7 +12,9 @@ import com.google.common.io.Files;
 import mockit.Expectations;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.karivar.utils.domain.BasicJiraIssue;
 import org.karivar.utils.domain.JiraIssue;
 import org.karivar.utils.domain.User;
@@ -32,6 +34,9 @@ public class CommitMessageManipulatorTest {
     private static final String PROCESSED_COMMIT_PATH = "src/test/resources/output.txt";
     private JiraIssue issue;
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @BeforeClass
     public static void setUpClass() {
         resourceBundle = ResourceBundle.getBundle("messages", Locale.forLanguageTag("en"),
@@ -602,4 +607,263 @@ public class CommitMessageManipulatorTest {
         String key = manipulator.getJiraIssueKeyFromPattern("BUG");
         assertNull(key);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void hasTraceabilityInformation() {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.loadCommitMessage("src/test/resources/multilinetraceabilitycommit.txt");
+        assertTrue("The commit message contains traceability information", manipulator.hasTraceabilityInformation());
+    }
+
+    @Test
+    public void hasTraceabilityInformationNotFound() {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.loadCommitMessage("src/test/resources/multilinenormalcommit.txt");
+        assertFalse("The commit message has no traceability information", manipulator.hasTraceabilityInformation());
+    }
+
+    @Test
+    public void manipulateCommitMessageAmendedUnchanged() throws Exception {
+        File amendedCommit = temporaryFolder.newFile("amended.txt");
+        Files.copy(new File("src/test/resources/multilinetraceabilitycommit.txt"), amendedCommit);
+        assertTrue(amendedCommit.setLastModified(0));
+
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.loadCommitMessage(amendedCommit.getPath());
+
+        issue = new JiraIssueBuilder("EXAMPLE-1", "Add functionality for accounting")
+                .setStatus("In Progress")
+                .setIssueTypeName("Improvement")
+                .setSubtask(false)
+                .build();
+
+        manipulator.manipulateCommitMessage(issue, "Committed using hook v. 0.9.5", null, false, false);
+
+        List<String> commitFileContents = Files.readLines(amendedCommit, Charsets.UTF_8);
+        assertEquals("The commit message is left as it is", 0, amendedCommit.lastModified());
+        assertEquals(6, commitFileContents.size());
+        assertEquals("Summary: Add functionality for accounting", commitFileContents.get(4));
+        assertEquals("Committed using hook v. 0.9.5", commitFileContents.get(5));
+    }
+
+    @Test
+    public void manipulateCommitMessageAmendedChangedIssue() throws Exception {
+        File amendedCommit = temporaryFolder.newFile("amended.txt");
+        Files.copy(new File("src/test/resources/multilinetraceabilitycommit.txt"), amendedCommit);
+
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.loadCommitMessage(amendedCommit.getPath());
+
+        List<BasicJiraIssue> relatedIssues = new ArrayList<>();
+        relatedIssues.add(new BasicJiraIssue("EXAMPLE-5", "Listing of accounts are missing"));
+
+        issue = new JiraIssueBuilder("EXAMPLE-1", "Add functionality for accounting and billing")
+                .setStatus("In Progress")
+                .setIssueTypeName("Improvement")
+                .setRelatedIssues(relatedIssues)
+                .setSubtask(false)
+                .build();
+
+        manipulator.manipulateCommitMessage(issue, "Committed using hook v. 0.9.5", null, false, false);
+
+        List<String> commitFileContents = Files.readLines(amendedCommit, Charsets.UTF_8);
+        assertEquals(7, commitFileContents.size());
+        assertEquals("EXAMPLE-1 Added som files for this issue", commitFileContents.get(0));
+        assertEquals("This commit consists of the following changed files", commitFileContents.get(2));
+        assertEquals("", commitFileContents.get(3));
+        assertEquals("Summary: Add functionality for accounting and billing", commitFileContents.get(4));
+        assertEquals("Related to: EXAMPLE-5 Listing of accounts are missing", commitFileContents.get(5));
+        assertEquals("Committed using hook v. 0.9.5", commitFileContents.get(6));
+    }
+
+    @Test
+    public void reuseTraceabilityInformationMergeCommit() throws Exception {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.loadCommitMessage("src/test/resources/multilinemergecommit.txt");
+
+        List<String> sourceMessage = Files.readLines(new File("src/test/resources/multilinetraceabilitycommit.txt"),
+                Charsets.UTF_8);
+        Optional<String> issueKey = manipulator.reuseTraceabilityInformation(sourceMessage, JIRA_ISSUE_PATTERNS);
+        assertTrue("The traceability information is reused", issueKey.isPresent());
+        assertEquals("EXAMPLE-1", issueKey.get());
+        assertTrue(manipulator.hasTraceabilityInformation());
+
+        List<String> message = manipulator.getStrippedCommitMessage();
+        assertEquals(7, message.size());
+        assertEquals("", message.get(1));
+        assertEquals("Summary: Add functionality for accounting", message.get(2));
+        assertEquals("Committed using hook v. 0.9.5", message.get(3));
+        assertTrue(message.get(5).startsWith("#"));
+    }
+
+    @Test
+    public void reuseTraceabilityInformationCherryPickedCommit() throws Exception {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.loadCommitMessage("src/test/resources/multilinetraceabilitycommit.txt");
+
+        List<String> sourceMessage = Files.readLines(new File("src/test/resources/multilinetraceabilitycommit.txt"),
+                Charsets.UTF_8);
+        Optional<String> issueKey = manipulator.reuseTraceabilityInformation(sourceMessage, JIRA_ISSUE_PATTERNS);
+        assertTrue("The traceability information is reused", issueKey.isPresent());
+        assertEquals(6, manipulator.getStrippedCommitMessage().size());
+    }
+
+    @Test
+    public void reuseTraceabilityInformationOtherIssue() throws Exception {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.loadCommitMessage("src/test/resources/onelineunregisteredjirapattern.txt");
+
+        List<String> sourceMessage = Files.readLines(new File("src/test/resources/multilinetraceabilitycommit.txt"),
+                Charsets.UTF_8);
+        Optional<String> issueKey = manipulator.reuseTraceabilityInformation(sourceMessage,
+                JIRA_ISSUE_PATTERNS + " FLYAWAY");
+        assertFalse("The commit refers to another JIRA issue", issueKey.isPresent());
+        assertFalse(manipulator.hasTraceabilityInformation());
+    }
+
+    @Test
+    public void reuseTraceabilityInformationSourceWithoutInformation() throws Exception {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.loadCommitMessage("src/test/resources/multilinemergecommit.txt");
+
+        List<String> sourceMessage = Files.readLines(new File("src/test/resources/multilinenormalcommit.txt"),
+                Charsets.UTF_8);
+        assertFalse(manipulator.reuseTraceabilityInformation(sourceMessage, JIRA_ISSUE_PATTERNS).isPresent());
+    }
+
+    @Test
+    public void manipulateCommitMessageTraceabilityInformationInNotes() throws Exception {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.loadCommitMessage("src/test/resources/onelineassigneeoverridden.txt");
+        manipulator.setTraceabilityInformationInNotes(true);
+
+        issue = new JiraIssueBuilder("EXAMPLE-1", "Add functionality for accounting")
+                .setStatus("In Progress")
+                .setIssueTypeName("Improvement")
+                .setSubtask(false)
+                .build();
+
+        manipulator.manipulateCommitMessage(issue, "Hook v 1.0", PROCESSED_COMMIT_PATH, false, true);
+
+        File output = new File(PROCESSED_COMMIT_PATH);
+        List<String> commitFileContents = Files.readLines(output, Charsets.UTF_8);
+        assertEquals(4, commitFileContents.size());
+        assertEquals("EXAMPLE-1 even more functionality added for wrong assignee", commitFileContents.get(0));
+        assertEquals("", commitFileContents.get(1));
+        assertEquals("Assigned user is overridden", commitFileContents.get(2));
+        assertEquals("Hook v 1.0", commitFileContents.get(3));
+    }
+
+    @Test
+    public void getTraceabilityNote() {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+
+        List<BasicJiraIssue> relatedIssues = new ArrayList<>();
+        relatedIssues.add(new BasicJiraIssue("ERROR-123", "Found an error in listing of accounts"));
+
+        issue = new JiraIssueBuilder("EXAMPLE-1", "Add functionality for accounting")
+                .setStatus("In Progress")
+                .setIssueTypeName("Sub-task")
+                .setParentIssue(Optional.of(new BasicJiraIssue("EXAMPLE-4", "Accounting doesn't work properly")))
+                .setRelatedIssues(relatedIssues)
+                .setSubtask(true)
+                .build();
+
+        List<String> note = manipulator.getTraceabilityNote(issue, "1.0");
+        assertEquals(4, note.size());
+        assertEquals("Summary: Add functionality for accounting", note.get(0));
+        assertEquals("Sub-task of: EXAMPLE-4 Accounting doesn't work properly", note.get(1));
+        assertEquals("Related to: ERROR-123 Found an error in listing of accounts", note.get(2));
+        assertEquals("Committed using hook v. 1.0", note.get(3));
+    }
+
+    @Test
+    public void getJiraIssueKeysFromCommitMessage() {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.setCommitMessage(Arrays.asList("example-1, PR-2 Fix the shared bug EXAMPLE-1", "",
+                "The accounts are listed", "", "Refs: ERROR-3,PR-2 ERROR-4", "# Refs: ERROR-5"));
+
+        List<String> keys = manipulator.getJiraIssueKeysFromCommitMessage(JIRA_ISSUE_PATTERNS,
+                Collections.singletonList("refs"));
+        assertEquals(Arrays.asList("EXAMPLE-1", "PR-2", "ERROR-3", "ERROR-4"), keys);
+        assertEquals("EXAMPLE-1, PR-2 Fix the shared bug EXAMPLE-1", manipulator.getStrippedCommitMessage().get(0));
+    }
+
+    @Test
+    public void getJiraIssueKeysFromCommitMessageWithoutTrailers() {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.setCommitMessage(Arrays.asList("EXAMPLE-1 Fix the shared bug", "", "Refs: ERROR-3"));
+
+        assertEquals(Collections.singletonList("EXAMPLE-1"),
+                manipulator.getJiraIssueKeysFromCommitMessage(JIRA_ISSUE_PATTERNS, Collections.emptyList()));
+    }
+
+    @Test
+    public void checkStateAndManipulateCommitMessageMultipleIssuesAllAllowed() {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.setCommitMessage(Arrays.asList("EXAMPLE-1 PR-2 Fix the shared bug"));
+        manipulator.setJiraUsername("alice");
+
+        List<BasicJiraIssue> relatedIssues = new ArrayList<>();
+        relatedIssues.add(new BasicJiraIssue("ERROR-123", "Found an error in listing of accounts"));
+
+        List<JiraIssue> issues = Arrays.asList(
+                new JiraIssueBuilder("EXAMPLE-1", "Add functionality for accounting")
+                        .setStatus("In Progress")
+                        .setIssueTypeName("Improvement")
+                        .setRelatedIssues(relatedIssues)
+                        .setSubtask(false)
+                        .build(),
+                new JiraIssueBuilder("PR-2", "List the accounts")
+                        .setStatus("In Progress")
+                        .setIssueTypeName("Improvement")
+                        .setRelatedIssues(relatedIssues)
+                        .setSubtask(false)
+                        .build());
+
+        assertTrue(manipulator.checkStateAndManipulateCommitMessage(issues, false, false, null, "1.0"));
+        assertEquals(Arrays.asList("EXAMPLE-1 PR-2 Fix the shared bug", "",
+                "Summary: EXAMPLE-1 Add functionality for accounting",
+                "Summary: PR-2 List the accounts",
+                "Related to: ERROR-123 Found an error in listing of accounts",
+                "Committed using hook v. 1.0"), manipulator.getCommitMessage());
+        assertEquals(Decision.REASON_ALLOWED, manipulator.getDecisionReason());
+    }
+
+    @Test
+    public void checkStateAndManipulateCommitMessageMultipleIssuesOneRejected() {
+        List<JiraIssue> issues = Arrays.asList(
+                new JiraIssueBuilder("EXAMPLE-1", "Add functionality for accounting")
+                        .setStatus("In Progress")
+                        .setIssueTypeName("Improvement")
+                        .setSubtask(false)
+                        .build(),
+                new JiraIssueBuilder("PR-2", "List the accounts")
+                        .setStatus("To-Do")
+                        .setIssueTypeName("Improvement")
+                        .setSubtask(false)
+                        .build(),
+                null);
+
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.setCommitMessage(Arrays.asList("EXAMPLE-1 PR-2 PR-3 Fix the shared bug"));
+        assertFalse(manipulator.checkStateAndManipulateCommitMessage(issues, false, false, null, "1.0"));
+        assertEquals(Decision.REASON_STATUS, manipulator.getDecisionReason());
+        assertEquals(1, manipulator.getCommitMessage().size());
+
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.setCommitMessage(Arrays.asList("EXAMPLE-1 PR-2 PR-3 Fix the shared bug"));
+        assertTrue(manipulator.checkStateAndManipulateCommitMessage(issues, true, false, null, "1.0"));
+        assertTrue(manipulator.getCommitMessage().contains("Summary: PR-2 List the accounts"));
+    }
+
+    @Test
+    public void checkStateAndManipulateCommitMessageNoIssues() {
+        manipulator = new CommitMessageManipulator(resourceBundle);
+        manipulator.setCommitMessage(Arrays.asList("Fix the shared bug"));
+
+        assertFalse(manipulator.checkStateAndManipulateCommitMessage(Collections.emptyList(), true, false,
+                null, "1.0"));
+        assertEquals(Decision.REASON_ISSUE_NOT_FOUND, manipulator.getDecisionReason());
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.karivar.utils.domain.IssueKeyNotFoundException;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.User;
+import org.karivar.utils.domain.Verdict;
+import org.karivar.utils.utils.JiraIssueBuilder;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CommitMessageValidatorTest {
+
+    private static final RepositoryContext MASTER = new RepositoryContext("master", null);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HookConfiguration configuration;
+    private final AtomicInteger fetchedIssues = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        configuration = new TestConfiguration(temporaryFolder.newFolder());
+    }
+
+    @Test
+    public void validateAcceptedMessage() {
+        CommitMessageValidator validator = new CommitMessageValidator(configuration, this::getIssue);
+
+        ValidationResult result = validator.validate("example-1 Add accounts\n\nThe accounts are listed\n", MASTER);
+
+        assertEquals(Verdict.ACCEPTED, result.getVerdict());
+        assertEquals(Decision.REASON_ALLOWED, result.getReason());
+        assertEquals(Optional.of("EXAMPLE-1"), result.getIssueKey());
+        assertTrue(result.isCommitMessageChanged());
+        List<String> lines = result.getCommitMessageLines();
+        assertEquals("EXAMPLE-1 Add accounts", lines.get(0));
+        assertEquals("The accounts are listed", lines.get(2));
+        assertEquals("", lines.get(3));
+        assertEquals("Summary: Add functionality for accounting", lines.get(4));
+        assertTrue(lines.get(lines.size() - 1).endsWith(GitHook.HOOK_VERSION));
+    }
+
+    @Test
+    public void validateRejectedStatus() {
+        CommitMessageValidator validator = new CommitMessageValidator(configuration,
+                issueKey -> createIssue(issueKey, "To-Do", "alice"));
+
+        ValidationResult result = validator.validate("EXAMPLE-1 Add accounts", MASTER);
+
+        assertEquals(Verdict.REJECTED, result.getVerdict());
+        assertEquals(Decision.REASON_STATUS, result.getReason());
+        assertFalse(result.isCommitMessageChanged());
+        assertEquals("EXAMPLE-1 Add accounts", result.getCommitMessage());
+    }
+
+    @Test
+    public void validateRejectedAssigneeOfContext() {
+        CommitMessageValidator validator = new CommitMessageValidator(configuration, this::getIssue);
+
+        ValidationResult result = validator.validate("EXAMPLE-1 Add accounts",
+                new RepositoryContext("master", "bob"));
+
+        assertEquals(Verdict.REJECTED, result.getVerdict());
+        assertEquals(Decision.REASON_ASSIGNEE, result.getReason());
+    }
+
+    @Test
+    public void validateOverriddenWithoutIssueSource() {
+        CommitMessageValidator validator = new CommitMessageValidator(configuration, this::getIssue);
+
+        ValidationResult communicationOverridden = validator.validate("EXAMPLE-1 Add accounts -O", MASTER);
+        ValidationResult commitOverridden = validator.validate("NONE Fix the build", MASTER);
+
+        assertEquals(Verdict.OVERRIDDEN, communicationOverridden.getVerdict());
+        assertEquals("EXAMPLE-1 Add accounts", communicationOverridden.getCommitMessageLines().get(0));
+        assertEquals(Verdict.OVERRIDDEN, commitOverridden.getVerdict());
+        assertEquals(0, fetchedIssues.get());
+    }
+
+    @Test
+    public void validateMissingIssue() {
+        CommitMessageValidator validator = new CommitMessageValidator(configuration, issueKey -> null);
+
+        ValidationResult result = validator.validate("EXAMPLE-404 Add accounts", MASTER);
+
+        assertEquals(Verdict.REJECTED, result.getVerdict());
+        assertEquals(Decision.REASON_ISSUE_NOT_FOUND, result.getReason());
+    }
+
+    @Test
+    public void validateFailingIssueSource() {
+        CommitMessageValidator validator = new CommitMessageValidator(configuration, issueKey -> {
+            throw new IssueKeyNotFoundException("JIRA is unavailable");
+        });
+
+        ValidationResult result = validator.validate("EXAMPLE-1 Add accounts", MASTER);
+
+        assertEquals(Verdict.REJECTED, result.getVerdict());
+        assertEquals(Decision.REASON_JIRA_ERROR, result.getReason());
+        assertEquals(Optional.of("EXAMPLE-1"), result.getIssueKey());
+    }
+
+    @Test
+    public void validateJiraServerError() throws Exception {
+        StubJiraServer jira = new StubJiraServer();
+        jira.start();
+        try {
+            jira.setResponse("/rest/api/latest/issue/EXAMPLE-1", HttpURLConnection.HTTP_INTERNAL_ERROR,
+                    "{\"errorMessages\":[\"Internal server error\"],\"errors\":{}}");
+            CommitMessageValidator validator = new CommitMessageValidator(
+                    new TestConfiguration(temporaryFolder.newFolder(), false, null, jira.getAddress()));
+
+            ValidationResult result = validator.validate("EXAMPLE-1 Add accounts", MASTER);
+
+            assertEquals(Verdict.REJECTED, result.getVerdict());
+            assertEquals(Decision.REASON_JIRA_ERROR, result.getReason());
+        } finally {
+            jira.stop();
+        }
+    }
+
+    @Test
+    public void validateWithoutJira() throws Exception {
+        // The JIRA address isn't configured
+        CommitMessageValidator validator = new CommitMessageValidator(configuration);
+
+        ValidationResult result = validator.validate("EXAMPLE-1 Add accounts", MASTER);
+
+        assertEquals(Verdict.REJECTED, result.getVerdict());
+        assertEquals(Decision.REASON_JIRA_ERROR, result.getReason());
+    }
+
+    @Test
+    public void validateMultipleIssues() {
+        CommitMessageValidator validator = new CommitMessageValidator(configuration,
+                issueKey -> createIssue(issueKey, "PR-2".equals(issueKey) ? "To-Do" : "In Progress", "alice"));
+        String commitMessage = "EXAMPLE-1 Fix the shared bug\n\nRefs: PR-2";
+
+        ValidationResult all = validator.validate(commitMessage, MASTER);
+        configuration = new TestConfiguration(configuration.getHookDirectory(), true);
+        ValidationResult any = new CommitMessageValidator(configuration,
+                issueKey -> createIssue(issueKey, "PR-2".equals(issueKey) ? "To-Do" : "In Progress", "alice"))
+                .validate(commitMessage, MASTER);
+
+        assertEquals(Verdict.REJECTED, all.getVerdict());
+        assertEquals(Arrays.asList("EXAMPLE-1", "PR-2"), all.getIssueKeys());
+        assertEquals(Verdict.ACCEPTED, any.getVerdict());
+        assertTrue(any.getCommitMessageLines().contains("Summary: PR-2 Add functionality for accounting"));
+    }
+
+    @Test
+    public void validateConcurrentlySharingIssues() throws Exception {
+        CommitMessageValidator validator = new CommitMessageValidator(configuration, this::getIssue);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Callable<ValidationResult>> validations = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                String message = "EXAMPLE-" + (i % 4 + 1) + " Change " + i;
+                validations.add(() -> validator.validate(message, MASTER));
+            }
+
+            for (Future<ValidationResult> result : executor.invokeAll(validations)) {
+                assertEquals(Verdict.ACCEPTED, result.get().getVerdict());
+                assertTrue(result.get().getCommitMessage().contains("Summary: Add functionality for accounting"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(4, fetchedIssues.get());
+    }
+
+    @Test
+    public void validateReloadsModifiedPolicy() throws Exception {
+        File policyDirectory = temporaryFolder.newFolder();
+        CommitMessageValidator validator = new CommitMessageValidator(
+                new TestConfiguration(temporaryFolder.newFolder(), false, policyDirectory),
+                issueKey -> new JiraIssueBuilder(issueKey, "Investigate accounting")
+                        .setStatus("Open")
+                        .setAssignee(Optional.of(new User("alice", "alice")))
+                        .setIssueTypeName("Spike")
+                        .setSubtask(false)
+                        .build());
+        assertEquals(Verdict.REJECTED, validator.validate("EXAMPLE-1 Investigate accounts", MASTER).getVerdict());
+
+        Files.asCharSink(new File(policyDirectory, "issuetypes.properties"), Charsets.ISO_8859_1)
+                .write("Spike=Open\n");
+
+        assertEquals(Verdict.ACCEPTED, validator.validate("EXAMPLE-1 Investigate accounts", MASTER).getVerdict());
+    }
+
+    private JiraIssue getIssue(String issueKey) {
+        fetchedIssues.incrementAndGet();
+        return createIssue(issueKey, "In Progress", "alice");
+    }
+
+    private static JiraIssue createIssue(String issueKey, String status, String assignee) {
+        return new JiraIssueBuilder(issueKey, "Add functionality for accounting")
+                .setStatus(status)
+                .setAssignee(Optional.of(new User(assignee, assignee)))
+                .setIssueTypeName("Improvement")
+                .setSubtask(false)
+                .build();
+    }
+
+    static final class TestConfiguration implements HookConfiguration {
+        private final File hookDirectory;
+        private final boolean anyIssueKeyAllowed;
+        private final File policyDirectory;
+        private final String jiraAddress;
+
+        TestConfiguration(File hookDirectory) {
+            this(hookDirectory, false);
+        }
+
+        TestConfiguration(File hookDirectory, boolean anyIssueKeyAllowed) {
+            this(hookDirectory, anyIssueKeyAllowed, null);
+        }
+
+        TestConfiguration(File hookDirectory, boolean anyIssueKeyAllowed, File policyDirectory) {
+            this(hookDirectory, anyIssueKeyAllowed, policyDirectory, null);
+        }
+
+        TestConfiguration(File hookDirectory, boolean anyIssueKeyAllowed, File policyDirectory,
+                          String jiraAddress) {
+            this.hookDirectory = hookDirectory;
+            this.anyIssueKeyAllowed = anyIssueKeyAllowed;
+            this.policyDirectory = policyDirectory;
+            this.jiraAddress = jiraAddress;
+        }
+
+        @Override
+        public String getJiraAddress() {
+            return jiraAddress;
+        }
+
+        @Override
+        public String getJiraUsername() {
+            return "alice";
+        }
+
+        @Override
+        public String getJiraEncodedPassword() {
+            return jiraAddress != null ? "c3R1Yg==" : null;
+        }
+
+        @Override
+        public String getJiraProjects() {
+            return "EXAMPLE PR";
+        }
+
+        @Override
+        public String getLanguage() {
+            return "en";
+        }
+
+        @Override
+        public long getCacheTimeToLiveMinutes() {
+            return 15;
+        }
+
+        @Override
+        public long getStatusCatalogTimeToLiveHours() {
+            return 168;
+        }
+
+        @Override
+        public File getHookDirectory() {
+            return hookDirectory;
+        }
+
+        @Override
+        public File getPolicyDirectory() {
+            return policyDirectory;
+        }
+
+        @Override
+        public List<String> getIssueKeyTrailers() {
+            return Collections.singletonList("Refs");
+        }
+
+        @Override
+        public boolean isAnyIssueKeyAllowed() {
+            return anyIssueKeyAllowed;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.User;
+import org.karivar.utils.other.UTF8Control;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.ResourceBundle;
+
+import static org.junit.Assert.*;
+
+public class CommitPolicyTest {
+
+    private static ResourceBundle resourceBundle;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() {
+        resourceBundle = ResourceBundle.getBundle("messages", Locale.forLanguageTag("en"),
+                new UTF8Control());
+    }
+
+    @Test
+    public void isCommitAllowedDefaultPolicy() throws Exception {
+        CommitPolicy policy = new PropertyReader(resourceBundle).getCommitPolicy(null);
+
+        assertTrue(isCommitAllowed(policy, "Story", "In Progress"));
+        assertTrue(isCommitAllowed(policy, "New Feature", "In Review"));
+        assertFalse(isCommitAllowed(policy, "Task", "In Review"));
+        assertFalse(isCommitAllowed(policy, "Story", "Closed"));
+        assertFalse(isCommitAllowed(policy, "Unknown", "In Progress"));
+        assertFalse(isCommitAllowed(policy, null, null));
+    }
+
+    @Test
+    public void isIssueLinkIgnoresCase() throws Exception {
+        CommitPolicy policy = new PropertyReader(resourceBundle).getCommitPolicy(null);
+
+        assertTrue(policy.isIssueLink("Relates"));
+        assertTrue(policy.isIssueLink("BLOCKS"));
+        assertTrue(policy.getIssueLinks().contains("duplicate"));
+        assertFalse(policy.isIssueLink("Causes"));
+    }
+
+    @Test
+    public void getCommitPolicyWithOverride() throws Exception {
+        File overrideDirectory = temporaryFolder.newFolder();
+        Files.asCharSink(new File(overrideDirectory, "issuetypes.properties"), Charsets.ISO_8859_1)
+                .write("Task=In Progress, In Review\nSpike=Open\n");
+        Files.asCharSink(new File(overrideDirectory, "issuelinks.properties"), Charsets.ISO_8859_1)
+                .write("issuelinks=Causes\n");
+
+        PropertyReader propertyReader = new PropertyReader(resourceBundle);
+        CommitPolicy policy = propertyReader.getCommitPolicy(overrideDirectory);
+
+        assertTrue(isCommitAllowed(policy, "Task", "In Review"));
+        assertTrue(isCommitAllowed(policy, "Spike", "Open"));
+        assertTrue(isCommitAllowed(policy, "Story", "In Progress"));
+        assertTrue(policy.isIssueLink("causes"));
+        assertFalse(policy.isIssueLink("Relates"));
+        assertNotEquals(propertyReader.getCommitPolicy(null).getVersion(), policy.getVersion());
+    }
+
+    @Test
+    public void getCommitPolicyWithOverrideRules() throws Exception {
+        File overrideDirectory = temporaryFolder.newFolder();
+        Files.asCharSink(new File(overrideDirectory, "commitrules"), Charsets.UTF_8)
+                .write("group release-managers=alice\n"
+                        + "allow branch=release/* assignee=@release-managers\n"
+                        + "deny branch=release/*\n"
+                        + "invalid rule\n");
+
+        CommitPolicy policy = new PropertyReader(resourceBundle).getCommitPolicy(overrideDirectory);
+        JiraIssue issue = new JiraIssue("EXAMPLE-1", "Summary");
+        issue.setIssueTypeName("Story");
+        issue.setStatus("In Progress");
+
+        assertTrue(policy.isCommitAllowed(issue, "master"));
+        assertFalse(policy.isCommitAllowed(issue, "release/1.0"));
+
+        issue.setAssignee(Optional.of(new User("alice", "Alice")));
+        assertTrue(policy.isCommitAllowed(issue, "release/1.0"));
+    }
+
+    @Test
+    public void getVersionIgnoresFormatting() throws Exception {
+        File overrideDirectory = temporaryFolder.newFolder();
+        Files.asCharSink(new File(overrideDirectory, "issuetypes.properties"), Charsets.ISO_8859_1)
+                .write("# Same statuses in another order\nBug=In Review,In Progress\n");
+
+        PropertyReader propertyReader = new PropertyReader(resourceBundle);
+        assertEquals(propertyReader.getCommitPolicy(null).getVersion(),
+                propertyReader.getCommitPolicy(overrideDirectory).getVersion());
+    }
+
+    @Test
+    public void reloadIfModified() throws Exception {
+        File overrideDirectory = temporaryFolder.newFolder();
+        CommitPolicy policy = CommitPolicy.get(resourceBundle, overrideDirectory);
+        assertSame(policy, CommitPolicy.get(resourceBundle, overrideDirectory));
+        assertSame(policy, CommitPolicy.reloadIfModified(resourceBundle, overrideDirectory));
+        assertFalse(isCommitAllowed(policy, "Spike", "Open"));
+
+        Files.asCharSink(new File(overrideDirectory, "issuetypes.properties"), Charsets.ISO_8859_1)
+                .write("Spike=Open\n");
+
+        CommitPolicy reloadedPolicy = CommitPolicy.reloadIfModified(resourceBundle, overrideDirectory);
+        assertNotSame(policy, reloadedPolicy);
+        assertTrue(isCommitAllowed(reloadedPolicy, "Spike", "Open"));
+        assertSame(reloadedPolicy, CommitPolicy.get(resourceBundle, overrideDirectory));
+    }
+
+    @Test
+    public void getByOverrideDirectory() throws Exception {
+        File overrideDirectory = temporaryFolder.newFolder();
+        File otherOverrideDirectory = temporaryFolder.newFolder();
+        Files.asCharSink(new File(overrideDirectory, "issuetypes.properties"), Charsets.ISO_8859_1)
+                .write("Spike=Open\n");
+
+        CommitPolicy policy = CommitPolicy.reloadIfModified(resourceBundle, overrideDirectory);
+        CommitPolicy otherPolicy = CommitPolicy.reloadIfModified(resourceBundle, otherOverrideDirectory);
+        assertTrue(isCommitAllowed(policy, "Spike", "Open"));
+        assertFalse(isCommitAllowed(otherPolicy, "Spike", "Open"));
+
+        // The policies of the two directories don't replace each other
+        assertSame(policy, CommitPolicy.reloadIfModified(resourceBundle, overrideDirectory));
+        assertSame(otherPolicy, CommitPolicy.reloadIfModified(resourceBundle, otherOverrideDirectory));
+    }
+
+    private static boolean isCommitAllowed(CommitPolicy policy, String issueTypeName, String status) {
+        JiraIssue issue = new JiraIssue("EXAMPLE-1", "Summary");
+        issue.setIssueTypeName(issueTypeName);
+        issue.setStatus(status);
+        return policy.isCommitAllowed(issue, "master");
+    }
+}
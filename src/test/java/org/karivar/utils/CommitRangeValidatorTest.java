@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.karivar.utils.domain.Verdict;
+import org.karivar.utils.other.UTF8Control;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class CommitRangeValidatorTest {
+    private static final String POLICY_VERSION = "1";
+
+    private static ResourceBundle resourceBundle;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File repository;
+    private File hookDirectory;
+    private CommitLedger ledger;
+
+    @BeforeClass
+    public static void setUpClass() {
+        resourceBundle = ResourceBundle.getBundle("messages", Locale.forLanguageTag("en"), new UTF8Control());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        repository = temporaryFolder.newFolder("repository");
+        hookDirectory = new File(repository, ".git/githook");
+        git("init", "-q");
+        git("config", "user.name", "Alice Developer");
+        git("config", "user.email", "alice@example.com");
+        ledger = new CommitLedger(hookDirectory);
+    }
+
+    @Test
+    public void validateCommunicationOverridden() throws Exception {
+        String sha = commit("EXAMPLE-1 Added som files for this issue\n"
+                + "\n"
+                + "Communication with JIRA is overridden\n"
+                + "Committed using hook v. 0.9.5\n", "README.md");
+
+        // JIRA isn't asked
+        assertTrue(createValidator().validate("HEAD"));
+        assertEquals(Optional.of(Verdict.OVERRIDDEN), ledger.getVerdict(sha, POLICY_VERSION));
+    }
+
+    @Test
+    public void validateCommitOverridden() throws Exception {
+        String sha = commit("NONE Added som files\n", "README.md");
+
+        assertTrue(createValidator().validate("HEAD"));
+        assertEquals(Optional.of(Verdict.OVERRIDDEN), ledger.getVerdict(sha, POLICY_VERSION));
+    }
+
+    @Test
+    public void validateNoIssueKey() throws Exception {
+        String sha = commit("Added som files\n", "src/Main.java");
+
+        assertFalse(createValidator().validate("HEAD"));
+        assertEquals(Optional.of(Verdict.REJECTED), ledger.getVerdict(sha, POLICY_VERSION));
+    }
+
+    @Test
+    public void validateExemptPaths() throws Exception {
+        commit("EXAMPLE-1 Added som files for this issue\n", "src/Main.java");
+        String sha = commit("Updated the guide\n", "docs/guide.md", "README.md");
+
+        assertTrue(createValidator("docs/", "*.md").validate("HEAD~1..HEAD"));
+        assertEquals(Optional.of(Verdict.ACCEPTED), ledger.getVerdict(sha, POLICY_VERSION));
+    }
+
+    @Test
+    public void validateNotOnlyExemptPaths() throws Exception {
+        String sha = commit("Updated the guide\n", "docs/guide.md", "src/Main.java");
+
+        assertFalse(createValidator("docs/").validate("HEAD"));
+        assertEquals(Optional.of(Verdict.REJECTED), ledger.getVerdict(sha, POLICY_VERSION));
+    }
+
+    private CommitRangeValidator createValidator(String... exemptPaths) {
+        Supplier<JiraConnector> jiraConnectorSupplier = () -> {
+            throw new AssertionError("JIRA isn't needed");
+        };
+        return new CommitRangeValidator(new GitRepository(new File(repository, ".git")),
+                new CommitMessageManipulator(resourceBundle), ledger, new DecisionLog(hookDirectory),
+                new JiraIssueCache(hookDirectory, TimeUnit.MINUTES.toMillis(15)),
+                new StatusResolver(new StatusCatalogCache(hookDirectory), jiraConnectorSupplier, 0),
+                jiraConnectorSupplier, resourceBundle, "EXAMPLE", new ExemptPaths(Arrays.asList(exemptPaths)),
+                POLICY_VERSION);
+    }
+
+    private String commit(String message, String... paths) throws Exception {
+        for (String path : paths) {
+            File file = new File(repository, path);
+            Files.createParentDirs(file);
+            Files.asCharSink(file, Charsets.UTF_8).write(message);
+            git("add", path);
+        }
+
+        File messageFile = temporaryFolder.newFile("message" + System.nanoTime());
+        Files.asCharSink(messageFile, Charsets.UTF_8).write(message);
+        git("commit", "-q", "--no-verify", "--cleanup=verbatim", "-F", messageFile.getAbsolutePath());
+        return git("rev-parse", "HEAD").trim();
+    }
+
+    private String git(String... arguments) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(arguments));
+        Process process = new ProcessBuilder(command).directory(repository).redirectErrorStream(true).start();
+        String output = new String(ByteStreams.toByteArray(process.getInputStream()), Charsets.UTF_8);
+        if (process.waitFor() != 0) {
+            throw new IOException("Failed to run " + command + ": " + output);
+        }
+        return output;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.karivar.utils.domain.Verdict;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DecisionLogTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void decisionToJsonAndBack() throws Exception {
+        Decision decision = new Decision("commit-msg", Verdict.REJECTED, Decision.REASON_STATUS);
+        decision.setIssueKey("EXAMPLE-1");
+        decision.addOverride("-A");
+        decision.setCached(true);
+        decision.setBranch("feature/example");
+        decision.setDurationMillis(12.5);
+
+        Decision parsedDecision = Decision.fromJson(decision.toJson());
+        assertEquals("commit-msg", parsedDecision.getCommand());
+        assertEquals(Verdict.REJECTED, parsedDecision.getVerdict());
+        assertEquals(Decision.REASON_STATUS, parsedDecision.getReason());
+        assertEquals("EXAMPLE-1", parsedDecision.getIssueKey());
+        assertEquals(Arrays.asList("-A"), parsedDecision.getOverrides());
+        assertTrue(parsedDecision.isCached());
+        assertEquals("feature/example", parsedDecision.getBranch());
+        assertEquals(12.5, parsedDecision.getDurationMillis(), 0.001);
+        assertEquals(decision.getTime(), parsedDecision.getTime());
+    }
+
+    @Test
+    public void recordAndReadAll() throws Exception {
+        DecisionLog decisionLog = new DecisionLog(temporaryFolder.newFolder());
+        decisionLog.record(new Decision("commit-msg", Verdict.ACCEPTED, Decision.REASON_ALLOWED));
+        decisionLog.record(new Decision("commit-msg", Verdict.OVERRIDDEN, Decision.REASON_OVERRIDE));
+        decisionLog.close(5000);
+
+        List<Decision> decisions = decisionLog.readAll();
+        assertEquals(2, decisions.size());
+        assertEquals(Verdict.ACCEPTED, decisions.get(0).getVerdict());
+        assertEquals(Verdict.OVERRIDDEN, decisions.get(1).getVerdict());
+    }
+
+    @Test
+    public void recordRotatesFullLog() throws Exception {
+        // Each decision is larger than the maximum size, so each hook run rotates the log
+        File hookDirectory = temporaryFolder.newFolder();
+        DecisionLog decisionLog = null;
+        for (int i = 0; i < 4; i++) {
+            decisionLog = new DecisionLog(hookDirectory, 10, 2, 16);
+            Decision decision = new Decision("commit-msg", Verdict.ACCEPTED, Decision.REASON_ALLOWED);
+            decision.setIssueKey("EXAMPLE-" + i);
+            decisionLog.record(decision);
+            decisionLog.close(5000);
+        }
+
+        assertEquals(3, decisionLog.getLogFiles().size());
+        List<Decision> decisions = decisionLog.readAll();
+        assertEquals(3, decisions.size());
+        assertEquals("EXAMPLE-1", decisions.get(0).getIssueKey());
+        assertEquals("EXAMPLE-3", decisions.get(2).getIssueKey());
+    }
+
+    @Test
+    public void recordDropsDecisionsWhenQueueIsFull() throws Exception {
+        DecisionLog decisionLog = new DecisionLog(temporaryFolder.newFolder(), 1024, 1, 1);
+        int queuedDecisions = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (decisionLog.record(new Decision("commit-msg", Verdict.ACCEPTED, Decision.REASON_ALLOWED))) {
+                queuedDecisions++;
+            }
+        }
+        decisionLog.close(5000);
+
+        assertTrue(queuedDecisions > 0);
+        assertTrue(decisionLog.readAll().size() <= queuedDecisions);
+    }
+
+    @Test
+    public void statistics() {
+        Decision rejected = new Decision("commit-msg", Verdict.REJECTED, Decision.REASON_STATUS);
+        rejected.setDurationMillis(300);
+        Decision accepted = new Decision("commit-msg", Verdict.ACCEPTED, Decision.REASON_ALLOWED);
+        accepted.setDurationMillis(100);
+        Decision cached = new Decision("commit-msg", Verdict.ACCEPTED, Decision.REASON_ALLOWED);
+        cached.setDurationMillis(20);
+        cached.setCached(true);
+        Decision overridden = new Decision("commit-msg", Verdict.OVERRIDDEN, Decision.REASON_OVERRIDE);
+        overridden.setDurationMillis(10);
+
+        DecisionStatistics statistics = new DecisionStatistics(Arrays.asList(rejected, accepted, cached,
+                overridden));
+        assertEquals(4, statistics.getDecisionCount());
+        assertEquals(0.25, statistics.getRejectionRate(), 0.001);
+        assertEquals(20, statistics.getDurationPercentile(50), 0.001);
+        assertEquals(300, statistics.getDurationPercentile(99), 0.001);
+        assertFalse(statistics.format().isEmpty());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DecisionTableTest {
+
+    private static final Map<String, List<String>> NO_GROUPS = Collections.emptyMap();
+
+    @Test
+    public void isAllowedFirstMatchingRuleDecides() throws Exception {
+        DecisionTable table = compile(
+                "deny branch=release/* status=In_Review",
+                "allow type=Story,Bug status=In_Progress,In_Review",
+                "allow type=Task status=In_Progress");
+
+        assertTrue(table.isAllowed("Story", "In Review", null, "EXAMPLE", "master", null));
+        assertFalse(table.isAllowed("Story", "In Review", null, "EXAMPLE", "release/1.0", null));
+        assertTrue(table.isAllowed("Story", "In Progress", null, "EXAMPLE", "release/1.0", null));
+        assertTrue(table.isAllowed("Task", "In Progress", null, "EXAMPLE", "release/1.0", null));
+        assertFalse(table.isAllowed("Task", "In Review", null, "EXAMPLE", "master", null));
+    }
+
+    @Test
+    public void isAllowedNoMatchingRule() throws Exception {
+        DecisionTable table = compile("allow type=Story status=In_Progress");
+
+        assertFalse(table.isAllowed("Epic", "In Progress", null, "EXAMPLE", "master", null));
+        assertFalse(table.isAllowed("Story", "Closed", null, "EXAMPLE", "master", null));
+        assertFalse(table.isAllowed(null, null, null, null, null, null));
+    }
+
+    @Test
+    public void isAllowedProjectAndAssignee() throws Exception {
+        Map<String, List<String>> groups = new HashMap<>();
+        groups.put("release-managers", Arrays.asList("alice", "bob"));
+
+        List<CommitRule> rules = new ArrayList<>();
+        rules.add(CommitRule.parse("allow project=pr branch=release/* assignee=@release-managers", groups));
+        rules.add(CommitRule.parse("deny branch=release/*", groups));
+        rules.add(CommitRule.parse("allow status=In_Progress", groups));
+        DecisionTable table = DecisionTable.compile(rules);
+
+        assertTrue(table.isAllowed("Bug", "Closed", null, "PR", "release/2.0", "alice"));
+        assertFalse(table.isAllowed("Bug", "In Progress", null, "PR", "release/2.0", "carol"));
+        assertFalse(table.isAllowed("Bug", "In Progress", null, "EXAMPLE", "release/2.0", "alice"));
+        assertFalse(table.isAllowed("Bug", "In Progress", null, "PR", "release/2.0", null));
+        assertTrue(table.isAllowed("Bug", "In Progress", null, "EXAMPLE", "feature/1", null));
+    }
+
+    @Test
+    public void isAllowedBranchPatterns() throws Exception {
+        DecisionTable table = compile("allow branch=release/?.*,hotfix-*");
+
+        assertTrue(table.isAllowed("Bug", "Open", null, "EXAMPLE", "release/1.0", null));
+        assertFalse(table.isAllowed("Bug", "Open", null, "EXAMPLE", "release/10.0", null));
+        assertTrue(table.isAllowed("Bug", "Open", null, "EXAMPLE", "hotfix-", null));
+        assertFalse(table.isAllowed("Bug", "Open", null, "EXAMPLE", "master", null));
+        assertFalse(table.isAllowed("Bug", "Open", null, "EXAMPLE", null, null));
+    }
+
+    @Test
+    public void toStringIsCanonical() throws Exception {
+        assertEquals("allow type=Bug,New_Feature status=In_Progress",
+                CommitRule.parse("ALLOW   status=In_Progress type=New_Feature,Bug", NO_GROUPS).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseUnknownAction() throws Exception {
+        CommitRule.parse("permit type=Bug", NO_GROUPS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseUnknownCondition() throws Exception {
+        CommitRule.parse("allow component=Core", NO_GROUPS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseUnknownGroup() throws Exception {
+        CommitRule.parse("allow assignee=@developers", NO_GROUPS);
+    }
+
+    private DecisionTable compile(String... definitions) {
+        List<CommitRule> rules = new ArrayList<>();
+        for (String definition : definitions) {
+            rules.add(CommitRule.parse(definition, NO_GROUPS));
+        }
+        return DecisionTable.compile(rules);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ExemptPathsTest {
+
+    @Test
+    public void globWithoutSlashMatchesAnyDepth() {
+        ExemptPaths exemptPaths = new ExemptPaths(Collections.singletonList("*.md"));
+
+        assertTrue(exemptPaths.isExempt("README.md"));
+        assertTrue(exemptPaths.isExempt("docs/guide/install.md"));
+        assertFalse(exemptPaths.isExempt("README.md.java"));
+        assertFalse(exemptPaths.isExempt("src/Main.java"));
+    }
+
+    @Test
+    public void globWithSlashMatchesFromTop() {
+        ExemptPaths exemptPaths = new ExemptPaths(Arrays.asList("/CHANGELOG", "src/generated"));
+
+        assertTrue(exemptPaths.isExempt("CHANGELOG"));
+        assertFalse(exemptPaths.isExempt("docs/CHANGELOG"));
+        assertTrue(exemptPaths.isExempt("src/generated/Messages.java"));
+        assertFalse(exemptPaths.isExempt("module/src/generated/Messages.java"));
+    }
+
+    @Test
+    public void directoryExemptsEverythingBelow() {
+        ExemptPaths exemptPaths = new ExemptPaths(Collections.singletonList("docs/"));
+
+        assertTrue(exemptPaths.isExempt("docs/guide.md"));
+        assertTrue(exemptPaths.isExempt("module/docs/images/logo.png"));
+        assertFalse(exemptPaths.isExempt("docs"));
+    }
+
+    @Test
+    public void doubleAsteriskMatchesDirectories() {
+        ExemptPaths exemptPaths = new ExemptPaths(Arrays.asList("**/ci/*.yml", ".github/**"));
+
+        assertTrue(exemptPaths.isExempt("ci/build.yml"));
+        assertTrue(exemptPaths.isExempt("tools/ci/build.yml"));
+        assertFalse(exemptPaths.isExempt("tools/ci/scripts/build.yml"));
+        assertTrue(exemptPaths.isExempt(".github/workflows/build.yml"));
+    }
+
+    @Test
+    public void commentsAndBlankGlobsAreIgnored() {
+        ExemptPaths exemptPaths = new ExemptPaths(Arrays.asList("# documentation", " ", "LICENSE?"));
+
+        assertFalse(exemptPaths.isEmpty());
+        assertTrue(exemptPaths.isExempt("LICENSE2"));
+        assertFalse(exemptPaths.isExempt("LICENSE"));
+        assertTrue(new ExemptPaths(Collections.singletonList("#*.md")).isEmpty());
+    }
+}
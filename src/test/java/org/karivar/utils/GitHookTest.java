@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the commit-msg hook on the JVM against a {@link StubJiraServer} while git is merging
+ */
+public class GitHookTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubJiraServer jira;
+    private HookRepository repository;
+    private List<String> command;
+
+    @Before
+    public void setUp() throws Exception {
+        jira = new StubJiraServer();
+        jira.start();
+        // The issue is closed after the tip of the feature branch was validated
+        jira.addIssue("EXAMPLE-1", "Example issue", "Closed", null);
+
+        repository = new HookRepository(temporaryFolder.newFolder(), jira.getAddress(), "stub", "stub",
+                Arrays.asList("EXAMPLE"));
+        repository.git("config", "user.name", "Alice Developer");
+        repository.git("config", "user.email", "alice@example.com");
+        command = Arrays.asList(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", getAbsoluteClassPath(), "org.karivar.utils.GitHook");
+
+        File tipMessage = temporaryFolder.newFile("tip.txt");
+        Files.asCharSink(tipMessage, Charsets.UTF_8).write(Resources.toString(
+                Resources.getResource("multilinetraceabilitycommit.txt"), Charsets.UTF_8));
+        repository.git("commit", "-q", "--allow-empty", "-m", "Initial commit");
+        repository.git("checkout", "-q", "-b", "feature");
+        repository.git("commit", "-q", "--allow-empty", "--no-verify", "--cleanup=verbatim",
+                "-F", tipMessage.getAbsolutePath());
+
+        repository.git("checkout", "-q", "-");
+        repository.git("commit", "-q", "--allow-empty", "-m", "Another commit");
+        repository.git("merge", "-q", "--no-ff", "--no-commit", "feature");
+    }
+
+    @After
+    public void tearDown() {
+        jira.stop();
+    }
+
+    @Test
+    public void mergeWithoutIssueKeyIsValidated() throws Exception {
+        HookRepository.Run run = repository.run(command, "Merge branch 'feature'\n");
+
+        assertEquals(1, run.getExitCode());
+        assertNotEquals(Decision.REASON_REUSED, getLastDecision().getReason());
+    }
+
+    @Test
+    public void mergeNamingIssueKeyReusesInformation() throws Exception {
+        HookRepository.Run run = repository.run(command, "EXAMPLE-1 Merge branch 'feature'\n");
+
+        assertEquals(0, run.getExitCode());
+        assertEquals(Decision.REASON_REUSED, getLastDecision().getReason());
+    }
+
+    private Decision getLastDecision() {
+        List<Decision> decisions = new DecisionLog(repository.getHookDirectory()).readAll();
+        assertFalse(decisions.isEmpty());
+        return decisions.get(decisions.size() - 1);
+    }
+
+    /**
+     * Gets the class path of the test with absolute paths, as the hook runs in the directory of the repository
+     * @return the class path
+     */
+    private static String getAbsoluteClassPath() {
+        List<String> classPath = new ArrayList<>();
+        for (String entry : Splitter.on(File.pathSeparatorChar).omitEmptyStrings()
+                .split(System.getProperty("java.class.path"))) {
+            classPath.add(new File(entry).getAbsolutePath());
+        }
+        return Joiner.on(File.pathSeparatorChar).join(classPath);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class GitIndexTest {
+    private static final String LONG_PATH = "src/" + Strings.repeat("a", 5000) + ".txt";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File gitDirectory;
+    private final Map<String, String> files = new TreeMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        gitDirectory = temporaryFolder.newFolder();
+        files.put("README.md", GitIndexWriter.blobId("readme"));
+        files.put("docs/guide.md", GitIndexWriter.blobId("guide"));
+        files.put("src/Main.java", GitIndexWriter.blobId("main"));
+        files.put("src/Util.java", GitIndexWriter.blobId("util"));
+        files.put(LONG_PATH, GitIndexWriter.blobId("long"));
+    }
+
+    @Test
+    public void readVersion2() throws Exception {
+        new GitIndexWriter(gitDirectory).writeIndex(files, 2, Collections.emptySet());
+
+        assertEntries(GitIndex.read(new File(gitDirectory, "index")));
+    }
+
+    @Test
+    public void readVersion4() throws Exception {
+        new GitIndexWriter(gitDirectory).writeIndex(files, 4, Collections.emptySet());
+
+        assertEntries(GitIndex.read(new File(gitDirectory, "index")));
+    }
+
+    @Test
+    public void readVersion4OutOfOrder() throws Exception {
+        files.put("src/Main2.java", GitIndexWriter.blobId("main 2"));
+        new GitIndexWriter(gitDirectory).writeIndex(files, 4, Collections.emptySet());
+
+        // The paths are decoded when asked for, using the suffixes of the previous entries
+        GitIndex index = GitIndex.read(new File(gitDirectory, "index"));
+        assertEquals("src/Util.java", index.getPath(4));
+        assertEquals("src/Main2.java", index.getPath(3));
+        assertEquals("src/Main2.java", index.getPath(3));
+        assertEquals("src/Main.java", index.getPath(2));
+        assertEquals("README.md", index.getPath(0));
+        assertEquals(LONG_PATH, index.getPath(5));
+        assertEquals("docs/guide.md", index.getPath(1));
+    }
+
+    @Test
+    public void readCacheTree() throws Exception {
+        new GitIndexWriter(gitDirectory).writeIndex(files, 2, Collections.singleton(""));
+
+        GitIndex.CacheTree top = GitIndex.read(new File(gitDirectory, "index")).getCacheTree().get();
+        GitIndex.CacheTree src = top.getSubtree("src");
+
+        assertFalse(top.isValid());
+        assertNull(top.getObjectId());
+        assertTrue(src.isValid());
+        assertEquals(3, src.getEntryCount());
+        assertEquals(40, src.getObjectId().length());
+        assertNull(top.getSubtree("README.md"));
+    }
+
+    @Test
+    public void readWithoutCacheTree() throws Exception {
+        new GitIndexWriter(gitDirectory).writeIndex(files, 2, null);
+
+        assertFalse(GitIndex.read(new File(gitDirectory, "index")).getCacheTree().isPresent());
+    }
+
+    @Test(expected = IOException.class)
+    public void readNoIndex() throws Exception {
+        File indexFile = new File(gitDirectory, "index");
+        Files.asCharSink(indexFile, Charsets.UTF_8).write(Strings.repeat("not an index\n", 10));
+
+        GitIndex.read(indexFile);
+    }
+
+    private void assertEntries(GitIndex index) {
+        assertEquals(5, index.size());
+        assertEquals("README.md", index.getPath(0));
+        assertEquals("docs/guide.md", index.getPath(1));
+        assertEquals("src/Main.java", index.getPath(2));
+        assertEquals(LONG_PATH, index.getPath(4));
+        assertEquals(GitIndexWriter.blobId("main"), index.getObjectId(2));
+        assertEquals(GitIndexWriter.blobId("long"), index.getObjectId(4));
+        assertEquals(0100644, index.getMode(3));
+        assertEquals(0, index.getStage(3));
+    }
+}
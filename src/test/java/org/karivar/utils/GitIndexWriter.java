@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes git indexes, trees and the HEAD commit directly to a git directory (like git add, git write-tree and
+ * git commit), used by the tests and benchmarks of {@link GitIndex} and {@link StagedChanges} without running git.
+ * The files are given as a map from path to the object id of the contents.
+ */
+final class GitIndexWriter {
+    private static final int FILE_MODE = 0100644;
+    private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+    private final File gitDirectory;
+
+    GitIndexWriter(File gitDirectory) {
+        this.gitDirectory = gitDirectory;
+    }
+
+    /**
+     * Creates the object id of the contents of a file. The blob itself isn't written
+     * @param contents the contents of the file
+     * @return the object id
+     */
+    static String blobId(String contents) {
+        return hash("blob", contents.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Writes the trees of the files as loose objects and commits the top tree as HEAD of the master branch
+     * @param files the files of the commit
+     * @return the object id of the top tree
+     * @throws IOException if the objects can't be written
+     */
+    String commit(Map<String, String> files) throws IOException {
+        String tree = writeTrees(files, true).objectId;
+        String commit = "tree " + tree + "\n" +
+                "author Alice Developer <alice@example.com> 1500000000 +0200\n" +
+                "committer Alice Developer <alice@example.com> 1500000000 +0200\n" +
+                "\n" +
+                "EXAMPLE-1 Add files for this issue\n";
+        String commitId = writeObject("commit", commit.getBytes(Charsets.UTF_8));
+
+        Files.createParentDirs(new File(gitDirectory, "refs/heads/master"));
+        Files.asCharSink(new File(gitDirectory, "refs/heads/master"), Charsets.UTF_8).write(commitId + "\n");
+        Files.asCharSink(new File(gitDirectory, "HEAD"), Charsets.UTF_8).write("ref: refs/heads/master\n");
+        return tree;
+    }
+
+    /**
+     * Writes the index of the files with the cached trees of all directories except the given ones
+     * @param files the staged files
+     * @param version the version of the index (2, 3 or 4)
+     * @param invalidDirectories the directories changed since the trees were cached (e.g "" and docs) or null to
+     * leave out the cached trees altogether
+     * @throws IOException if the index can't be written
+     */
+    void writeIndex(Map<String, String> files, int version, Collection<String> invalidDirectories)
+            throws IOException {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        DataOutputStream stream = new DataOutputStream(contents);
+        stream.writeInt(0x44495243);
+        stream.writeInt(version);
+        stream.writeInt(files.size());
+
+        byte[] previousPath = new byte[0];
+        for (Map.Entry<String, String> file : new TreeMap<>(files).entrySet()) {
+            byte[] path = file.getKey().getBytes(Charsets.UTF_8);
+            for (int i = 0; i < 6; i++) {
+                stream.writeInt(i);
+            }
+            stream.writeInt(FILE_MODE);
+            stream.writeInt(1000);
+            stream.writeInt(1000);
+            stream.writeInt(path.length);
+            stream.write(HEX.decode(file.getValue()));
+            stream.writeShort(Math.min(path.length, 0x0fff));
+
+            if (version == 4) {
+                int common = 0;
+                while (common < Math.min(path.length, previousPath.length) && path[common] == previousPath[common]) {
+                    common++;
+                }
+                stream.write(encodeVarint(previousPath.length - common));
+                stream.write(path, common, path.length - common);
+                stream.write(0);
+                previousPath = path;
+            } else {
+                stream.write(path);
+                int padding = 8 - (62 + path.length) % 8;
+                stream.write(new byte[padding]);
+            }
+        }
+
+        if (invalidDirectories != null) {
+            ByteArrayOutputStream cacheTree = new ByteArrayOutputStream();
+            writeCacheTree(cacheTree, "", writeTrees(files, false), invalidDirectories);
+            stream.writeInt(0x54524545);
+            stream.writeInt(cacheTree.size());
+            cacheTree.writeTo(stream);
+        }
+
+        stream.write(digest(contents.toByteArray()));
+        Files.write(contents.toByteArray(), new File(gitDirectory, "index"));
+    }
+
+    private void writeCacheTree(ByteArrayOutputStream stream, String name, Tree tree,
+                                Collection<String> invalidDirectories) throws IOException {
+        boolean valid = !invalidDirectories.contains(tree.path);
+        String header = name + "\0" + (valid ? tree.entryCount : -1) + " " + tree.subtrees.size() + "\n";
+        stream.write(header.getBytes(Charsets.UTF_8));
+        if (valid) {
+            stream.write(HEX.decode(tree.objectId));
+        }
+
+        for (Map.Entry<String, Tree> subtree : tree.subtrees.entrySet()) {
+            writeCacheTree(stream, subtree.getKey(), subtree.getValue(), invalidDirectories);
+        }
+    }
+
+    private Tree writeTrees(Map<String, String> files, boolean write) throws IOException {
+        return writeTree("", new TreeMap<>(files), write);
+    }
+
+    private Tree writeTree(String path, SortedMap<String, String> files, boolean write) throws IOException {
+        Tree tree = new Tree(path);
+        // The entries of a tree are sorted as if the names of the subtrees end with a slash
+        SortedMap<String, byte[]> entries = new TreeMap<>();
+        String prefix = path.isEmpty() ? "" : path + "/";
+
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            String name = file.getKey().substring(prefix.length());
+            int separator = name.indexOf('/');
+
+            if (separator < 0) {
+                entries.put(name, entry("100644", name, file.getValue()));
+                tree.entryCount++;
+            } else {
+                String subtreeName = name.substring(0, separator);
+                if (!tree.subtrees.containsKey(subtreeName)) {
+                    String subtreePrefix = prefix + subtreeName + "/";
+                    Tree subtree = writeTree(prefix + subtreeName,
+                            files.subMap(subtreePrefix, subtreePrefix + Character.MAX_VALUE), write);
+                    tree.subtrees.put(subtreeName, subtree);
+                    tree.entryCount += subtree.entryCount;
+                    entries.put(subtreeName + "/", entry("40000", subtreeName, subtree.objectId));
+                }
+            }
+        }
+
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        for (byte[] entry : entries.values()) {
+            contents.write(entry);
+        }
+        tree.objectId = write ? writeObject("tree", contents.toByteArray()) : hash("tree", contents.toByteArray());
+        return tree;
+    }
+
+    private static byte[] entry(String mode, String name, String objectId) throws IOException {
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        entry.write((mode + " " + name + "\0").getBytes(Charsets.UTF_8));
+        entry.write(HEX.decode(objectId));
+        return entry.toByteArray();
+    }
+
+    private String writeObject(String type, byte[] contents) throws IOException {
+        String objectId = hash(type, contents);
+        File objectFile = new File(gitDirectory, "objects/" + objectId.substring(0, 2) + "/" + objectId.substring(2));
+        Files.createParentDirs(objectFile);
+        try (OutputStream stream = new DeflaterOutputStream(new FileOutputStream(objectFile))) {
+            stream.write((type + " " + contents.length + "\0").getBytes(Charsets.UTF_8));
+            stream.write(contents);
+        }
+        return objectId;
+    }
+
+    private static String hash(String type, byte[] contents) {
+        ByteArrayOutputStream object = new ByteArrayOutputStream();
+        byte[] header = (type + " " + contents.length + "\0").getBytes(Charsets.UTF_8);
+        object.write(header, 0, header.length);
+        object.write(contents, 0, contents.length);
+        return HEX.encode(digest(object.toByteArray()));
+    }
+
+    private static byte[] digest(byte[] contents) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(contents);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] encodeVarint(int value) {
+        // The offset encoding of git: each byte but the last has the high bit set, and adds one before shifting
+        byte[] varint = new byte[16];
+        int position = varint.length - 1;
+        varint[position] = (byte) (value & 0x7f);
+        while ((value >>= 7) != 0) {
+            varint[--position] = (byte) (0x80 | (--value & 0x7f));
+        }
+        byte[] encoded = new byte[varint.length - position];
+        System.arraycopy(varint, position, encoded, 0, encoded.length);
+        return encoded;
+    }
+
+    private static final class Tree {
+        private final String path;
+        private final SortedMap<String, Tree> subtrees = new TreeMap<>();
+        private int entryCount;
+        private String objectId;
+
+        private Tree(String path) {
+            this.path = path;
+        }
+    }
+}
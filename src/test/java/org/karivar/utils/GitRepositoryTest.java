@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.*;
+
+public class GitRepositoryTest {
+    private static final String SHA = "3f786850e387550fdab836ed7e6dc881de23001b";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void getSourceCommitNoOperationInProgress() throws Exception {
+        GitRepository repository = new GitRepository(temporaryFolder.newFolder());
+        assertFalse(repository.getSourceCommit().isPresent());
+    }
+
+    @Test
+    public void getSourceCommitCherryPick() throws Exception {
+        File gitDirectory = temporaryFolder.newFolder();
+        Files.asCharSink(new File(gitDirectory, "CHERRY_PICK_HEAD"), Charsets.UTF_8).write(SHA + "\n");
+
+        GitRepository repository = new GitRepository(gitDirectory);
+        assertEquals(Optional.of(SHA), repository.getSourceCommit());
+    }
+
+    @Test
+    public void getObjectFormatDefault() throws Exception {
+        GitRepository repository = new GitRepository(temporaryFolder.newFolder());
+        assertEquals("sha1", repository.getObjectFormat());
+    }
+
+    @Test
+    public void getObjectFormatSha256() throws Exception {
+        File gitDirectory = temporaryFolder.newFolder();
+        Files.asCharSink(new File(gitDirectory, "config"), Charsets.UTF_8)
+                .write("[core]\n\tbare = false\n[extensions]\n\tobjectformat = sha256\n");
+
+        GitRepository repository = new GitRepository(gitDirectory);
+        assertEquals("sha256", repository.getObjectFormat());
+    }
+
+    @Test
+    public void getCommitMessageLooseObject() throws Exception {
+        File gitDirectory = temporaryFolder.newFolder();
+        String commit = "tree 4b825dc642cb6eb9a060e54bf8d69288fbee4904\n" +
+                "author Alice Developer <alice@example.com> 1500000000 +0200\n" +
+                "committer Alice Developer <alice@example.com> 1500000000 +0200\n" +
+                "\n" +
+                "EXAMPLE-1 Added som files for this issue\n" +
+                "\n" +
+                "Summary: Add functionality for accounting\n" +
+                "Committed using hook v. 0.9.5\n";
+        byte[] contents = commit.getBytes(Charsets.UTF_8);
+
+        File objectFile = new File(gitDirectory, "objects/" + SHA.substring(0, 2) + "/" + SHA.substring(2));
+        Files.createParentDirs(objectFile);
+        try (OutputStream stream = new DeflaterOutputStream(new FileOutputStream(objectFile))) {
+            stream.write(("commit " + contents.length + "\0").getBytes(Charsets.UTF_8));
+            stream.write(contents);
+        }
+
+        GitRepository repository = new GitRepository(gitDirectory);
+        Optional<List<String>> message = repository.getCommitMessage(SHA);
+        assertTrue(message.isPresent());
+        assertEquals(4, message.get().size());
+        assertEquals("EXAMPLE-1 Added som files for this issue", message.get().get(0));
+        assertEquals("Committed using hook v. 0.9.5", message.get().get(3));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HookEventTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void eventNotRecorded() {
+        try (HookEvent event = HookEvent.configLoad("issuetypes.properties")) {
+            assertFalse(event.isRecorded());
+        }
+    }
+
+    @Test
+    public void eventRecorded() throws Exception {
+        File recordingFile = temporaryFolder.newFile("hook.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable("org.karivar.githook.JiraRequest");
+            recording.start();
+
+            try (HookEvent event = HookEvent.jiraRequest("getIssue", "EXAMPLE-1")) {
+                assertTrue(event.isRecorded());
+                event.setStatusCode(404);
+            }
+
+            recording.stop();
+            recording.dump(recordingFile.toPath());
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile.toPath());
+        assertEquals(1, events.size());
+        assertEquals("getIssue", events.get(0).getString("operation"));
+        assertEquals("EXAMPLE-1", events.get(0).getString("issueKey"));
+        assertEquals(404, events.get(0).getInt("statusCode"));
+        assertEquals(-1, events.get(0).getLong("bytes"));
+    }
+}
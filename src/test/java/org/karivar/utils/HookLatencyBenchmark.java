@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.io.Files;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measures the wall time of the shaded hook jar against the embedded {@link StubJiraServer}, so performance
+ * changes can be compared without a live JIRA. Each scenario runs in a fresh JVM, cold (without the caches
+ * of .git/githook) and warm (with the caches of a previous run), and the p50/p95/p99 wall time is reported.
+ * The JVM of the hook is started as a plain JVM, with a class data sharing archive or restored from a CRaC
+ * checkpoint.
+ * Run the main method from the test classpath after mvn package, e.g<br>
+ * java -cp target/test-classes:&lt;test classpath&gt; org.karivar.utils.HookLatencyBenchmark --runs 20<br>
+ * Options:<br>
+ * --jar &lt;file&gt; : the hook jar (defaults to the shaded jar of target)<br>
+ * --runs &lt;n&gt; : the number of runs of each scenario and mode (default 20)<br>
+ * --latency &lt;ms&gt; / --jitter &lt;ms&gt; : the delay of each JIRA response (default 50 / 20)<br>
+ * --error-rate &lt;0-1&gt; : the share of JIRA responses answered with 503 (default 0)<br>
+ * --stall &lt;ms&gt; : the delay of the responses of the timeout scenario (default 30000)<br>
+ * --scenario &lt;name&gt; : runs only the given scenarios (no-links, many-links, subtask, not-found, timeout)<br>
+ * --issue &lt;key&gt; : adds a scenario committing to the given issue (e.g a recorded or replayed issue)<br>
+ * --record &lt;JIRA address&gt; &lt;directory&gt; : forwards to a real JIRA and records the responses. The credentials
+ * are read from the JIRA_USERNAME and JIRA_PASSWORD environment variables<br>
+ * --replay &lt;directory&gt; : serves the recorded responses<br>
+ * --jvm-arg &lt;argument&gt; : adds an argument to the JVM of the hook (e.g -Xshare:off)<br>
+ * --start &lt;jvm|cds|crac&gt; : compares the given ways of starting the hook (default jvm). The archive and the
+ * checkpoint are created before the runs. crac requires a JDK supporting CRaC
+ */
+public class HookLatencyBenchmark {
+    private static final String PROJECT_KEY = "GJH";
+    private static final String TIMEOUT_SCENARIO = "timeout";
+    private static final String JVM_START = "jvm";
+    private static final String CDS_START = "cds";
+    private static final String CRAC_START = "crac";
+    private static final double[] PERCENTILES = { 50, 95, 99 };
+
+    private final StubJiraServer jira = new StubJiraServer();
+    private final Map<String, String> scenarios = new LinkedHashMap<>();
+    private final List<String> jvmArguments = new ArrayList<>();
+    private final Set<String> starts = new LinkedHashSet<>();
+    private File jar;
+    private int runs = 20;
+    private long latencyMillis = 50;
+    private long jitterMillis = 20;
+    private long stallMillis = 30000;
+    private String username = "stub";
+    private String password = "stub";
+
+    public static void main(String[] args) throws Exception {
+        HookLatencyBenchmark benchmark = new HookLatencyBenchmark();
+        benchmark.jira.start();
+        try {
+            benchmark.configure(args);
+            benchmark.run();
+        } finally {
+            benchmark.jira.stop();
+        }
+    }
+
+    private void configure(String[] args) throws IOException {
+        Map<String, String> builtInScenarios = new LinkedHashMap<>();
+        builtInScenarios.put("no-links", PROJECT_KEY + "-1");
+        builtInScenarios.put("many-links", PROJECT_KEY + "-2");
+        builtInScenarios.put("subtask", PROJECT_KEY + "-3");
+        builtInScenarios.put("not-found", PROJECT_KEY + "-404");
+        builtInScenarios.put(TIMEOUT_SCENARIO, PROJECT_KEY + "-5");
+        List<String> selectedScenarios = new ArrayList<>();
+        double errorRate = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--jar":
+                    jar = new File(args[++i]);
+                    break;
+                case "--runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                case "--latency":
+                    latencyMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--jitter":
+                    jitterMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--error-rate":
+                    errorRate = Double.parseDouble(args[++i]);
+                    break;
+                case "--stall":
+                    stallMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--scenario":
+                    selectedScenarios.add(args[++i]);
+                    break;
+                case "--issue":
+                    String issueKey = args[++i];
+                    scenarios.put(issueKey, issueKey);
+                    break;
+                case "--record":
+                    jira.record(args[++i], new File(args[++i]));
+                    username = System.getenv("JIRA_USERNAME");
+                    password = System.getenv("JIRA_PASSWORD");
+                    break;
+                case "--replay":
+                    System.out.printf("Replaying %d responses%n", jira.replay(new File(args[++i])));
+                    break;
+                case "--jvm-arg":
+                    jvmArguments.add(args[++i]);
+                    break;
+                case "--start":
+                    starts.add(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        if (jar == null) {
+            jar = findShadedJar();
+        }
+        if (starts.isEmpty()) {
+            starts.add(JVM_START);
+        }
+        if (scenarios.isEmpty() || !selectedScenarios.isEmpty()) {
+            for (Map.Entry<String, String> scenario : builtInScenarios.entrySet()) {
+                if (selectedScenarios.isEmpty() || selectedScenarios.contains(scenario.getKey())) {
+                    scenarios.put(scenario.getKey(), scenario.getValue());
+                }
+            }
+        }
+
+        jira.setLatency(latencyMillis, jitterMillis);
+        jira.setErrorRate(errorRate);
+        jira.addIssue(PROJECT_KEY + "-1", "Issue without links", "In Progress", null);
+        String[] linkedKeys = new String[50];
+        for (int i = 0; i < linkedKeys.length; i++) {
+            linkedKeys[i] = PROJECT_KEY + "-" + (100 + i);
+        }
+        jira.addIssue(PROJECT_KEY + "-2", "Issue with many links", "In Progress", null, linkedKeys);
+        jira.addIssue(PROJECT_KEY + "-3", "Sub-task with parent", "In Progress", PROJECT_KEY + "-4");
+        jira.addIssue(PROJECT_KEY + "-5", "Issue of an unresponsive JIRA", "In Progress", null);
+    }
+
+    private void run() throws IOException, InterruptedException {
+        File workDirectory = Files.createTempDir();
+        try {
+            Set<String> projectKeys = new LinkedHashSet<>();
+            projectKeys.add(PROJECT_KEY);
+            for (String issueKey : scenarios.values()) {
+                projectKeys.add(issueKey.substring(0, issueKey.indexOf('-')));
+            }
+            HookRepository repository = new HookRepository(workDirectory, jira.getAddress(), username, password,
+                    projectKeys);
+
+            Map<String, List<String>> commands = new LinkedHashMap<>();
+            for (String start : starts) {
+                commands.put(start, createCommand(start, workDirectory, repository));
+            }
+
+            System.out.printf("%s against %s, %d runs, latency %d ms, jitter %d ms%n", jar, jira.getAddress(), runs,
+                    latencyMillis, jitterMillis);
+            System.out.printf("%-16s %-5s %-5s %8s %10s %10s %10s %10s %10s%n", "Scenario", "Start", "Mode", "runs",
+                    "p50 (ms)", "p95 (ms)", "p99 (ms)", "max (ms)", "requests");
+            for (Map.Entry<String, String> scenario : scenarios.entrySet()) {
+                jira.setStall(TIMEOUT_SCENARIO.equals(scenario.getKey()) ? stallMillis : 0);
+                for (Map.Entry<String, List<String>> command : commands.entrySet()) {
+                    for (boolean warm : new boolean[] { false, true }) {
+                        runScenario(scenario.getKey(), command.getKey(), scenario.getValue(), warm, repository,
+                                command.getValue());
+                    }
+                }
+            }
+        } finally {
+            MoreFiles.deleteRecursively(workDirectory.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+    }
+
+    private List<String> createCommand(String start, File workDirectory, HookRepository repository)
+            throws IOException, InterruptedException {
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(jvmArguments);
+
+        switch (start) {
+            case JVM_START:
+                break;
+            case CDS_START:
+                File archive = new File(workDirectory, "githook.jsa");
+                repository.execute(Arrays.asList(java, "-XX:ArchiveClassesAtExit=" + archive, "-jar",
+                        jar.getAbsolutePath(), "--cds-training"));
+                if (!archive.isFile()) {
+                    throw new IOException("Unable to create the class data sharing archive. JDK 13 is required");
+                }
+                command.addAll(Arrays.asList("-XX:SharedArchiveFile=" + archive, "-Xshare:auto"));
+                break;
+            case CRAC_START:
+                // The JVM is restored in the repository, where the checkpoint is taken
+                File checkpoint = new File(workDirectory, "githook.crac");
+                repository.execute(Arrays.asList(java, "-XX:CRaCCheckpointTo=" + checkpoint, "-jar",
+                        jar.getAbsolutePath(), "--checkpoint"));
+                if (!checkpoint.isDirectory()) {
+                    throw new IOException("Unable to checkpoint the hook. A JDK supporting CRaC is required");
+                }
+                return Arrays.asList(java, "-XX:CRaCRestoreFrom=" + checkpoint,
+                        "-D" + CheckpointRestore.RESTORE_ARGUMENTS_PROPERTY + "=" + HookRepository.COMMIT_MESSAGE_FILE);
+            default:
+                throw new IllegalArgumentException("Unknown start " + start);
+        }
+
+        command.addAll(Arrays.asList("-jar", jar.getAbsolutePath()));
+        return command;
+    }
+
+    private void runScenario(String name, String start, String issueKey, boolean warm, HookRepository repository,
+                             List<String> command) throws IOException, InterruptedException {
+        String commitMessage = issueKey + " Measure the latency of the hook\n";
+        repository.clearHookDirectory();
+        if (warm) {
+            repository.run(command, commitMessage);
+        }
+
+        jira.resetRequestCount();
+        List<Double> wallTimes = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            if (!warm) {
+                repository.clearHookDirectory();
+            }
+            wallTimes.add(repository.run(command, commitMessage).getWallMillis());
+        }
+        Collections.sort(wallTimes);
+
+        StringBuilder line = new StringBuilder(String.format("%-16s %-5s %-5s %8d", name, start,
+                warm ? "warm" : "cold", runs));
+        for (double percentile : PERCENTILES) {
+            line.append(String.format(" %10.1f", DecisionStatistics.percentile(wallTimes, percentile)));
+        }
+        line.append(String.format(" %10.1f %10.1f", DecisionStatistics.percentile(wallTimes, 100),
+                jira.getRequestCount() / (double) runs));
+        System.out.println(line);
+    }
+
+    private static File findShadedJar() throws IOException {
+        File[] jars = new File("target").listFiles((dir, name) -> name.startsWith("git-jira-hook-")
+                && name.endsWith(".jar") && !name.endsWith("-sources.jar") && !name.endsWith("-javadoc.jar")
+                && !name.startsWith("original-"));
+        if (jars == null || jars.length == 0) {
+            throw new IOException("Unable to find the hook jar in target. Run mvn package or use --jar");
+        }
+        return jars[0];
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HookMetricsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        HookMetrics.reset();
+        PhaseTimer.disable();
+    }
+
+    @Test
+    public void writeAddsToExistingTotals() throws Exception {
+        File metricsFile = new File(temporaryFolder.newFolder(), HookMetrics.METRICS_FILE);
+        HookMetrics.increment(HookMetrics.JIRA_RESPONSES, "code", "404");
+        HookMetrics.increment(HookMetrics.OVERRIDES, "option", "-O");
+        HookMetrics.increment(HookMetrics.OVERRIDES, "option", "-O");
+
+        HookMetrics.write(metricsFile);
+        HookMetrics.write(metricsFile);
+
+        List<String> lines = Files.readLines(metricsFile, Charsets.UTF_8);
+        assertTrue(lines.contains("# TYPE githook_jira_responses_total counter"));
+        assertTrue(lines.contains("githook_jira_responses_total{code=\"404\"} 2"));
+        assertTrue(lines.contains("githook_overrides_total{option=\"-O\"} 4"));
+        // Only the metrics file and its lock file are left behind
+        assertEquals(2, metricsFile.getParentFile().list().length);
+    }
+
+    @Test
+    public void writePhaseHistogram() throws Exception {
+        File metricsFile = new File(temporaryFolder.newFolder(), HookMetrics.METRICS_FILE);
+        PhaseTimer.enable();
+        try (PhaseTimer.Phase ignored = PhaseTimer.start("jira.fetch EXAMPLE-1")) {
+            Thread.sleep(1);
+        }
+
+        HookMetrics.write(metricsFile);
+
+        List<String> lines = Files.readLines(metricsFile, Charsets.UTF_8);
+        assertTrue(lines.contains("# TYPE githook_phase_duration_seconds histogram"));
+        assertTrue(lines.contains("githook_phase_duration_seconds_bucket{phase=\"jira.fetch\",le=\"+Inf\"} 1"));
+        assertTrue(lines.contains("githook_phase_duration_seconds_count{phase=\"jira.fetch\"} 1"));
+        assertTrue(lines.contains("githook_phase_duration_seconds_count{phase=\"total\"} 1"));
+    }
+
+    @Test
+    public void writeReplacesGauges() throws Exception {
+        File metricsFile = new File(temporaryFolder.newFolder(), HookMetrics.METRICS_FILE);
+        HookMetrics.set(HookMetrics.JIRA_CONCURRENCY_LIMIT, 8);
+        HookMetrics.write(metricsFile);
+        HookMetrics.set(HookMetrics.JIRA_CONCURRENCY_LIMIT, 2);
+
+        HookMetrics.write(metricsFile);
+
+        List<String> lines = Files.readLines(metricsFile, Charsets.UTF_8);
+        assertTrue(lines.contains("# TYPE githook_jira_concurrency_limit gauge"));
+        assertTrue(lines.contains("githook_jira_concurrency_limit 2"));
+    }
+
+    @Test
+    public void writeKeepsUnknownMetrics() throws Exception {
+        File metricsFile = new File(temporaryFolder.newFolder(), HookMetrics.METRICS_FILE);
+        Files.asCharSink(metricsFile, Charsets.UTF_8).write("# TYPE old_metric counter\nold_metric 3\n");
+        HookMetrics.increment(HookMetrics.RUNS, "command", "commit-msg");
+
+        HookMetrics.write(metricsFile);
+
+        List<String> lines = Files.readLines(metricsFile, Charsets.UTF_8);
+        assertTrue(lines.contains("githook_runs_total{command=\"commit-msg\"} 1"));
+        assertTrue(lines.contains("old_metric 3"));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A throwaway git repository with its own home directory, used to run the hook as a separate process (the shaded
+ * jar, the classes of the build or the native executable) against a {@link StubJiraServer}. The global git
+ * configuration, the caches and the metrics of the hook are kept apart from the user's.
+ */
+final class HookRepository {
+    /**
+     * The placeholder of the commit message file in the command of a run
+     */
+    static final String COMMIT_MESSAGE_FILE = "${commitMessageFile}";
+
+    private static final String COMMIT_MESSAGE_FILENAME = ".git/COMMIT_EDITMSG";
+    private static final String HOOK_DIRECTORY = ".git/githook";
+
+    private final File home;
+    private final File repository;
+
+    /**
+     * Creates the repository and configures the hook
+     * @param workDirectory the directory to create the repository and the home directory in
+     * @param jiraAddress the address of the JIRA
+     * @param username the JIRA username
+     * @param password the JIRA password
+     * @param projectKeys the JIRA project keys of the repository
+     * @throws IOException if the repository can't be created
+     * @throws InterruptedException if interrupted while running git
+     */
+    HookRepository(File workDirectory, String jiraAddress, String username, String password,
+                   Collection<String> projectKeys) throws IOException, InterruptedException {
+        home = new File(workDirectory, "home");
+        repository = new File(workDirectory, "repository");
+        if (!home.mkdirs() || !repository.mkdirs()) {
+            throw new IOException("Unable to create " + home + " and " + repository);
+        }
+
+        git("init", "-q");
+        git("config", "--global", "githook.jira.address", jiraAddress);
+        git("config", "--global", "githook.jira.username", username);
+        git("config", "--global", "githook.jira.password",
+                Base64.getEncoder().encodeToString(password.getBytes(Charsets.UTF_8)));
+        for (String projectKey : projectKeys) {
+            git("config", "--add", "githook.jira.projectkey", projectKey);
+        }
+    }
+
+    File getHookDirectory() {
+        return new File(repository, HOOK_DIRECTORY);
+    }
+
+    /**
+     * Removes the caches, the ledger and the decision log of the hook
+     * @throws IOException if the directory can't be removed
+     */
+    void clearHookDirectory() throws IOException {
+        if (getHookDirectory().exists()) {
+            MoreFiles.deleteRecursively(getHookDirectory().toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+    }
+
+    /**
+     * Runs the commit-msg hook
+     * @param command the command starting the hook. The commit message file replaces the
+     * {@link #COMMIT_MESSAGE_FILE} placeholder or is added as the last argument
+     * @param commitMessage the commit message
+     * @return the result of the run
+     * @throws IOException if the hook can't be started
+     * @throws InterruptedException if interrupted while waiting for the hook
+     */
+    Run run(List<String> command, String commitMessage) throws IOException, InterruptedException {
+        File messageFile = new File(repository, COMMIT_MESSAGE_FILENAME);
+        Files.asCharSink(messageFile, Charsets.UTF_8).write(commitMessage);
+
+        List<String> hookCommand = new ArrayList<>();
+        for (String argument : command) {
+            hookCommand.add(argument.replace(COMMIT_MESSAGE_FILE, messageFile.getAbsolutePath()));
+        }
+        if (hookCommand.equals(command)) {
+            hookCommand.add(messageFile.getAbsolutePath());
+        }
+
+        long start = System.nanoTime();
+        int exitCode = execute(hookCommand);
+        double wallMillis = (System.nanoTime() - start) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        return new Run(exitCode, wallMillis, Files.asCharSource(messageFile, Charsets.UTF_8).readLines());
+    }
+
+    /**
+     * Runs a command in the repository, e.g to create the class data sharing archive of the hook
+     * @param command the command
+     * @return the exit code of the command
+     * @throws IOException if the command can't be started
+     * @throws InterruptedException if interrupted while waiting for the command
+     */
+    int execute(List<String> command) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(repository)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(home, "hook.log"));
+        environment(builder);
+        return builder.start().waitFor();
+    }
+
+    /**
+     * Runs git in the repository, e.g to make commits or start a merge
+     * @param arguments the arguments of git
+     * @throws IOException if git fails
+     * @throws InterruptedException if interrupted while waiting for git
+     */
+    void git(String... arguments) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(arguments));
+        ProcessBuilder builder = new ProcessBuilder(command).directory(repository).inheritIO();
+        environment(builder);
+        if (builder.start().waitFor() != 0) {
+            throw new IOException("Failed to run " + command);
+        }
+    }
+
+    private void environment(ProcessBuilder builder) {
+        builder.environment().put("HOME", home.getAbsolutePath());
+        builder.environment().put("XDG_CONFIG_HOME", new File(home, ".config").getAbsolutePath());
+        builder.environment().put("XDG_CACHE_HOME", new File(home, ".cache").getAbsolutePath());
+        builder.environment().remove("GIT_CONFIG_GLOBAL");
+        builder.environment().remove("GITHOOK_TRACE");
+    }
+
+    /**
+     * The result of a hook run
+     */
+    static final class Run {
+        private final int exitCode;
+        private final double wallMillis;
+        private final List<String> commitMessage;
+
+        private Run(int exitCode, double wallMillis, List<String> commitMessage) {
+            this.exitCode = exitCode;
+            this.wallMillis = wallMillis;
+            this.commitMessage = commitMessage;
+        }
+
+        int getExitCode() {
+            return exitCode;
+        }
+
+        double getWallMillis() {
+            return wallMillis;
+        }
+
+        /**
+         * Gets the commit message after the run, i.e with the traceability information added by the hook
+         * @return the lines of the commit message
+         */
+        List<String> getCommitMessage() {
+            return commitMessage;
+        }
+    }
+}
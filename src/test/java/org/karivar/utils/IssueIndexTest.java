@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IssueIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void findEmptyIndex() throws Exception {
+        IssueIndex index = new IssueIndex(temporaryFolder.newFolder());
+        assertTrue(index.find("EXAMPLE-1").isEmpty());
+    }
+
+    @Test
+    public void findAddedCommits() throws Exception {
+        IssueIndex index = new IssueIndex(temporaryFolder.newFolder());
+        index.add("EXAMPLE-1", "aaaa");
+        index.add("EXAMPLE-10", "bbbb");
+        index.add("EXAMPLE-1", "cccc");
+
+        assertEquals(Arrays.asList("aaaa", "cccc"), index.find("example-1"));
+        assertEquals(Collections.singletonList("bbbb"), index.find("EXAMPLE-10"));
+    }
+
+    @Test
+    public void findRebuiltIndex() throws Exception {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            entries.add("EXAMPLE-" + (i % 1000) + " " + String.format("%040d", i));
+        }
+
+        IssueIndex index = new IssueIndex(temporaryFolder.newFolder());
+        index.rebuild(entries);
+        index.add("EXAMPLE-999", "ffff");
+
+        assertEquals(5, index.find("EXAMPLE-1").size());
+        assertEquals(String.format("%040d", 1), index.find("EXAMPLE-1").get(0));
+        assertEquals(5, index.find("EXAMPLE-0").size());
+        assertEquals(6, index.find("EXAMPLE-999").size());
+        assertEquals("ffff", index.find("EXAMPLE-999").get(5));
+        assertTrue(index.find("EXAMPLE-1000").isEmpty());
+        assertTrue(index.find("ERROR-1").isEmpty());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class IssueKeyFilterTest {
+
+    @Test
+    public void addedKeysAreFound() {
+        IssueKeyFilter filter = IssueKeyFilter.create(1000);
+        for (int i = 1; i <= 1000; i++) {
+            filter.put("EXAMPLE-" + i);
+        }
+
+        for (int i = 1; i <= 1000; i++) {
+            assertTrue(filter.mightContain("EXAMPLE-" + i));
+        }
+        assertTrue(filter.mightContain("example-42"));
+    }
+
+    @Test
+    public void missingKeysAreMostlyRejected() {
+        IssueKeyFilter filter = IssueKeyFilter.create(10000);
+        for (int i = 1; i <= 10000; i++) {
+            filter.put("EXAMPLE-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 1; i <= 10000; i++) {
+            if (filter.mightContain("OTHER-" + i)) {
+                falsePositives++;
+            }
+        }
+        // About one percent
+        assertTrue("False positives: " + falsePositives, falsePositives < 200);
+    }
+
+    @Test
+    public void readWrittenFilter() throws Exception {
+        IssueKeyFilter filter = IssueKeyFilter.create(100);
+        filter.put("EXAMPLE-1");
+        filter.put("PR-7");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(42);
+        filter.writeTo(output);
+        output.writeInt(43);
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        assertEquals(42, buffer.getInt());
+        IssueKeyFilter readFilter = IssueKeyFilter.read(buffer);
+
+        assertEquals(43, buffer.getInt());
+        assertEquals(filter.getSizeInBytes(), readFilter.getSizeInBytes());
+        assertTrue(readFilter.mightContain("EXAMPLE-1"));
+        assertTrue(readFilter.mightContain("PR-7"));
+        assertFalse(readFilter.mightContain("EXAMPLE-2"));
+    }
+
+    @Test(expected = IOException.class)
+    public void readTruncatedFilter() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putInt(7).putInt(1000).flip();
+
+        IssueKeyFilter.read(buffer);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.karivar.utils.domain.BasicJiraIssue;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.User;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IssueSnapshotTest {
+
+    private static final List<String> COMPLETE_PROJECTS = Arrays.asList("example", "PR");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void getIssue() throws Exception {
+        IssueSnapshot snapshot = write(Arrays.asList(
+                createIssue("EXAMPLE-2", "In Progress", "alice", null),
+                createIssue("EXAMPLE-10", "Done", null, "EXAMPLE-2"),
+                createIssue("PR-1", "To Do", "bob", null)), System.currentTimeMillis());
+
+        assertEquals(3, snapshot.size());
+        JiraIssue issue = snapshot.getIssue("example-10").get();
+        assertEquals("EXAMPLE-10", issue.getKey());
+        assertEquals("Summary of EXAMPLE-10 ø", issue.getSummary());
+        assertEquals("Sub-task", issue.getIssueTypeName());
+        assertTrue(issue.isSubtask());
+        assertEquals("Done", issue.getStatus());
+        assertEquals("10001", issue.getStatusId());
+        assertEquals("done", issue.getStatusCategory());
+        assertFalse(issue.getAssignee().isPresent());
+        assertEquals(new BasicJiraIssue("EXAMPLE-2", "Summary of EXAMPLE-2 ø"), issue.getParentIssue().get());
+        assertEquals(Optional.of(new User("bob", "bob")), snapshot.getIssue("PR-1").get().getAssignee());
+        assertFalse(snapshot.getIssue("EXAMPLE-3").isPresent());
+    }
+
+    @Test
+    public void isMissing() throws Exception {
+        List<JiraIssue> issues = new ArrayList<>();
+        for (int i = 1; i <= 500; i += 2) {
+            issues.add(createIssue("EXAMPLE-" + i, "In Progress", "alice", null));
+        }
+        IssueSnapshot snapshot = write(issues, System.currentTimeMillis());
+
+        assertFalse(snapshot.isMissing("EXAMPLE-1"));
+        assertFalse(snapshot.isMissing("example-499"));
+        int missing = 0;
+        for (int i = 2; i <= 500; i += 2) {
+            if (snapshot.isMissing("EXAMPLE-" + i)) {
+                missing++;
+            }
+        }
+        assertTrue(missing > 240);
+
+        // Issues created after the snapshot and projects not in the snapshot are left to JIRA
+        assertFalse(snapshot.isMissing("EXAMPLE-501"));
+        assertFalse(snapshot.isMissing("OTHER-2"));
+        assertFalse(snapshot.isMissing("EXAMPLE"));
+    }
+
+    @Test
+    public void isMissingIncompleteProject() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), IssueSnapshot.SNAPSHOT_FILENAME);
+        IssueSnapshot.write(file, Arrays.asList(createIssue("EXAMPLE-1", "Done", null, null),
+                createIssue("EXAMPLE-3", "Done", null, null), createIssue("PR-1", "Done", null, null),
+                createIssue("PR-3", "Done", null, null)), System.currentTimeMillis(), Arrays.asList("EXAMPLE"),
+                Collections.emptyList());
+        IssueSnapshot snapshot = IssueSnapshot.open(file).get();
+
+        assertTrue(snapshot.isMissing("EXAMPLE-2"));
+        // PR-2 may be hidden from the publisher (e.g by an issue security level), so it's left to JIRA
+        assertFalse(snapshot.isMissing("PR-2"));
+        assertFalse(snapshot.getIssue("PR-2").isPresent());
+    }
+
+    @Test
+    public void isMissingMovedIssue() throws Exception {
+        List<JiraIssue> issues = Arrays.asList(createIssue("EXAMPLE-1", "Done", null, null),
+                createIssue("EXAMPLE-4", "Done", null, null), createIssue("PR-2", "Done", null, null));
+        assertEquals(Arrays.asList("EXAMPLE-2", "EXAMPLE-3", "PR-1"),
+                IssueSnapshot.getMissingIssueKeys(issues, COMPLETE_PROJECTS));
+
+        // EXAMPLE-3 is moved to another project, so JIRA still finds it by its old key
+        File file = new File(temporaryFolder.getRoot(), IssueSnapshot.SNAPSHOT_FILENAME);
+        IssueSnapshot.write(file, issues, System.currentTimeMillis(), COMPLETE_PROJECTS,
+                Collections.singletonList("example-3"));
+        IssueSnapshot snapshot = IssueSnapshot.open(file).get();
+
+        assertTrue(snapshot.isMissing("EXAMPLE-2"));
+        assertFalse(snapshot.isMissing("EXAMPLE-3"));
+        assertFalse(snapshot.getIssue("EXAMPLE-3").isPresent());
+        assertEquals(3, snapshot.size());
+    }
+
+    @Test
+    public void isFresh() throws Exception {
+        long created = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(90);
+        IssueSnapshot snapshot = write(Arrays.asList(createIssue("EXAMPLE-1", "Done", null, null)), created);
+
+        assertEquals(created, snapshot.getCreated());
+        assertTrue(snapshot.isFresh(TimeUnit.HOURS.toMillis(2)));
+        assertFalse(snapshot.isFresh(TimeUnit.HOURS.toMillis(1)));
+    }
+
+    @Test
+    public void replaceSnapshot() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), IssueSnapshot.SNAPSHOT_FILENAME);
+        IssueSnapshot.write(file, Arrays.asList(createIssue("EXAMPLE-1", "To Do", null, null)), 1, COMPLETE_PROJECTS,
+                Collections.emptyList());
+        IssueSnapshot oldSnapshot = IssueSnapshot.open(file).get();
+
+        IssueSnapshot.write(file, Arrays.asList(createIssue("EXAMPLE-1", "Done", null, null)), 2, COMPLETE_PROJECTS,
+                Collections.emptyList());
+
+        assertEquals("To Do", oldSnapshot.getIssue("EXAMPLE-1").get().getStatus());
+        assertEquals("Done", IssueSnapshot.open(file).get().getIssue("EXAMPLE-1").get().getStatus());
+        assertEquals(1, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void openInvalidSnapshot() throws Exception {
+        File file = temporaryFolder.newFile("empty");
+
+        assertFalse(IssueSnapshot.open(file).isPresent());
+        Files.write(new byte[] { 'G', 'J', 'I', 'S', 0, 0, 0, 99 }, file);
+        assertFalse(IssueSnapshot.open(file).isPresent());
+        assertFalse(IssueSnapshot.open(new File(temporaryFolder.getRoot(), "missing")).isPresent());
+    }
+
+    @Test
+    public void readSearchPage() throws Exception {
+        String json = "{\"expand\": \"schema,names\", \"startAt\": 50, \"maxResults\": 50, \"total\": 51, "
+                + "\"issues\": [{\"id\": \"10001\", \"key\": \"EXAMPLE-1\", \"fields\": {"
+                + "\"summary\": \"Add accounts\", \"assignee\": null, \"labels\": [\"a\"], "
+                + "\"issuetype\": {\"name\": \"Sub-task\", \"subtask\": true}, "
+                + "\"status\": {\"id\": \"3\", \"name\": \"In Progress\", "
+                + "\"statusCategory\": {\"id\": 4, \"key\": \"indeterminate\"}}, "
+                + "\"parent\": {\"key\": \"EXAMPLE-2\", \"fields\": {\"summary\": \"Accounting\"}}}}]}";
+
+        IssueSearchPage page = IssueSearchPage.fromJson(new StringReader(json));
+
+        assertEquals(50, page.getStartAt());
+        assertEquals(51, page.getTotal());
+        JiraIssue issue = page.getIssues().get(0);
+        assertEquals("EXAMPLE-1", issue.getKey());
+        assertEquals("Add accounts", issue.getSummary());
+        assertEquals("Sub-task", issue.getIssueTypeName());
+        assertTrue(issue.isSubtask());
+        assertEquals("3", issue.getStatusId());
+        assertEquals("indeterminate", issue.getStatusCategory());
+        assertFalse(issue.getAssignee().isPresent());
+        assertEquals("Accounting", issue.getParentIssue().get().getSummary());
+    }
+
+    private IssueSnapshot write(List<JiraIssue> issues, long created) throws Exception {
+        File file = new File(temporaryFolder.newFolder(), IssueSnapshot.SNAPSHOT_FILENAME);
+        IssueSnapshot.write(file, issues, created, COMPLETE_PROJECTS, Collections.emptyList());
+        return IssueSnapshot.open(file).get();
+    }
+
+    private static JiraIssue createIssue(String key, String status, String assignee, String parentKey) {
+        JiraIssue issue = new JiraIssue(key, "Summary of " + key + " ø");
+        issue.setStatus(status);
+        issue.setStatusId("Done".equals(status) ? "10001" : "3");
+        issue.setStatusCategory("Done".equals(status) ? "done" : "indeterminate");
+        issue.setIssueTypeName(parentKey != null ? "Sub-task" : "Task");
+        issue.setSubtask(parentKey != null);
+        issue.setAssignee(assignee != null ? Optional.of(new User(assignee, assignee)) : Optional.empty());
+        if (parentKey != null) {
+            issue.setParentIssue(Optional.of(new BasicJiraIssue(parentKey, "Summary of " + parentKey + " ø")));
+        }
+        return issue;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Resources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.karivar.utils.domain.BasicJiraIssue;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.User;
+import org.karivar.utils.domain.Verdict;
+import org.karivar.utils.utils.JiraIssueBuilder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class IssueWebhookListenerTest {
+
+    private static final String SECRET = "It's a secret to everybody";
+    private static final RepositoryContext MASTER = new RepositoryContext("master", null);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Multiset<String> fetchedIssues = ConcurrentHashMultiset.create();
+    private CommitMessageValidator validator;
+    private IssueWebhookListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        validator = new CommitMessageValidator(
+                new CommitMessageValidatorTest.TestConfiguration(temporaryFolder.newFolder()), this::getIssue);
+        listener = new IssueWebhookListener(validator, 0, SECRET);
+        listener.start();
+    }
+
+    @After
+    public void tearDown() {
+        listener.close();
+    }
+
+    @Test
+    public void issueUpdatedInvalidatesIssueAndChildren() throws Exception {
+        validate("EXAMPLE-1 Add accounts");
+        validate("EXAMPLE-2 Add accounts");
+        validate("EXAMPLE-4 Add accounts");
+
+        assertEquals(HttpURLConnection.HTTP_NO_CONTENT, post(fixture("issue_updated.json"), SECRET));
+        validate("EXAMPLE-1 Add accounts");
+        validate("EXAMPLE-2 Add accounts");
+        validate("EXAMPLE-4 Add accounts");
+
+        // EXAMPLE-1 is a sub-task of the updated EXAMPLE-2
+        assertEquals(2, fetchedIssues.count("EXAMPLE-1"));
+        assertEquals(2, fetchedIssues.count("EXAMPLE-2"));
+        assertEquals(1, fetchedIssues.count("EXAMPLE-4"));
+    }
+
+    @Test
+    public void issueDeletedInvalidatesIssue() throws Exception {
+        validate("EXAMPLE-1 Add accounts");
+
+        assertEquals(HttpURLConnection.HTTP_NO_CONTENT, post(fixture("issue_deleted.json"), SECRET));
+        validate("EXAMPLE-1 Add accounts");
+
+        assertEquals(2, fetchedIssues.count("EXAMPLE-1"));
+    }
+
+    @Test
+    public void issueMovedInvalidatesPreviousKey() throws Exception {
+        validate("EXAMPLE-3 Add accounts");
+
+        assertEquals(HttpURLConnection.HTTP_NO_CONTENT, post(fixture("issue_moved.json"), SECRET));
+        validate("EXAMPLE-3 Add accounts");
+
+        assertEquals(2, fetchedIssues.count("EXAMPLE-3"));
+    }
+
+    @Test
+    public void otherEventsAreIgnored() throws Exception {
+        validate("EXAMPLE-1 Add accounts");
+
+        assertEquals(HttpURLConnection.HTTP_NO_CONTENT, post(fixture("comment_created.json"), SECRET));
+        validate("EXAMPLE-1 Add accounts");
+
+        assertEquals(1, fetchedIssues.count("EXAMPLE-1"));
+    }
+
+    @Test
+    public void invalidSignatureIsRejected() throws Exception {
+        validate("EXAMPLE-1 Add accounts");
+
+        assertEquals(HttpURLConnection.HTTP_UNAUTHORIZED, post(fixture("issue_deleted.json"), "guessed"));
+        assertEquals(HttpURLConnection.HTTP_UNAUTHORIZED, post(fixture("issue_deleted.json"), null));
+        validate("EXAMPLE-1 Add accounts");
+
+        assertEquals(1, fetchedIssues.count("EXAMPLE-1"));
+    }
+
+    @Test
+    public void malformedPayloadIsRejected() throws Exception {
+        byte[] payload = "{\"webhookEvent\": \"jira:issue_deleted\", \"issue\": {\"key\": ".getBytes(Charsets.UTF_8);
+
+        assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, post(payload, SECRET));
+    }
+
+    @Test
+    public void onlyPostIsAllowed() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) getUrl().openConnection();
+
+        assertEquals(HttpURLConnection.HTTP_BAD_METHOD, connection.getResponseCode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void secretIsRequired() throws Exception {
+        new IssueWebhookListener(validator, 0, "").close();
+    }
+
+    private void validate(String commitMessage) {
+        assertEquals(Verdict.ACCEPTED, validator.validate(commitMessage, MASTER).getVerdict());
+    }
+
+    private int post(byte[] payload, String secret) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) getUrl().openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        if (secret != null) {
+            connection.setRequestProperty(IssueWebhookListener.SIGNATURE_HEADER,
+                    IssueWebhookListener.SIGNATURE_PREFIX + sign(payload, secret));
+        }
+        try (OutputStream body = connection.getOutputStream()) {
+            body.write(payload);
+        }
+        return connection.getResponseCode();
+    }
+
+    private URL getUrl() throws Exception {
+        return new URL("http", "localhost", listener.getPort(), IssueWebhookListener.PATH);
+    }
+
+    private static String sign(byte[] payload, String secret) throws Exception {
+        Mac mac = Mac.getInstance(IssueWebhookListener.HMAC_ALGORITHM);
+        mac.init(new SecretKeySpec(secret.getBytes(Charsets.UTF_8), IssueWebhookListener.HMAC_ALGORITHM));
+        return BaseEncoding.base16().lowerCase().encode(mac.doFinal(payload));
+    }
+
+    private static byte[] fixture(String name) throws Exception {
+        return Resources.toByteArray(Resources.getResource("webhooks/" + name));
+    }
+
+    private JiraIssue getIssue(String issueKey) {
+        fetchedIssues.add(issueKey);
+        JiraIssueBuilder builder = new JiraIssueBuilder(issueKey, "Add functionality for accounting")
+                .setStatus("In Progress")
+                .setAssignee(Optional.of(new User("alice", "alice")))
+                .setIssueTypeName("Improvement")
+                .setSubtask(false);
+        if ("EXAMPLE-1".equals(issueKey)) {
+            builder.setSubtask(true)
+                    .setParentIssue(Optional.of(new BasicJiraIssue("EXAMPLE-2", "Accounting")));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class JiraConnectionWarmUpTest {
+
+    @Test
+    public void getWarmedUpConnector() {
+        JiraConnector jiraConnector = new JiraConnector(null);
+
+        JiraConnectionWarmUp warmUp = JiraConnectionWarmUp.start(() -> jiraConnector);
+
+        assertSame(jiraConnector, warmUp.get());
+        assertSame(jiraConnector, warmUp.get());
+    }
+
+    @Test
+    public void getWaitsForWarmUp() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean daemon = new AtomicBoolean();
+
+        JiraConnectionWarmUp warmUp = JiraConnectionWarmUp.start(() -> {
+            daemon.set(Thread.currentThread().isDaemon());
+            started.countDown();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new JiraConnector(null);
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertNotNull(warmUp.get());
+        assertTrue(daemon.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getRethrowsFailureOfWarmUp() {
+        JiraConnectionWarmUp warmUp = JiraConnectionWarmUp.start(() -> {
+            throw new IllegalArgumentException("Illegal base64 character");
+        });
+
+        warmUp.get();
+    }
+}
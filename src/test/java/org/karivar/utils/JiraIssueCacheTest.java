@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.FileWriteMode;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.karivar.utils.domain.BasicJiraIssue;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.User;
+import org.karivar.utils.utils.JiraIssueBuilder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class JiraIssueCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void getFreshIssueNotCached() throws Exception {
+        JiraIssueCache cache = new JiraIssueCache(temporaryFolder.newFolder(), TimeUnit.MINUTES.toMillis(15));
+        assertFalse(cache.getFreshIssue("EXAMPLE-1").isPresent());
+    }
+
+    @Test
+    public void getFreshIssue() throws Exception {
+        JiraIssueCache cache = new JiraIssueCache(temporaryFolder.newFolder(), TimeUnit.MINUTES.toMillis(15));
+
+        List<BasicJiraIssue> relatedIssues = new ArrayList<>();
+        relatedIssues.add(new BasicJiraIssue("ERROR-123", "Found an error in listing of accounts"));
+
+        JiraIssue issue = new JiraIssueBuilder("EXAMPLE-1", "Add functionality for accounting")
+                .setStatus("In Progress")
+                .setAssignee(Optional.of(new User("alice", "Alice Developer")))
+                .setIssueTypeName("Sub-task")
+                .setParentIssue(Optional.of(new BasicJiraIssue("EXAMPLE-4", "Accounting doesn't work properly")))
+                .setRelatedIssues(relatedIssues)
+                .setSubtask(true)
+                .build();
+        cache.putIssue(issue);
+
+        Optional<JiraIssue> cachedIssue = cache.getFreshIssue("EXAMPLE-1");
+        assertTrue("The issue is cached", cachedIssue.isPresent());
+        assertEquals("Add functionality for accounting", cachedIssue.get().getSummary());
+        assertEquals("In Progress", cachedIssue.get().getStatus());
+        assertEquals("Sub-task", cachedIssue.get().getIssueTypeName());
+        assertTrue(cachedIssue.get().isSubtask());
+        assertEquals(issue.getAssignee(), cachedIssue.get().getAssignee());
+        assertEquals(issue.getParentIssue(), cachedIssue.get().getParentIssue());
+        assertEquals(relatedIssues, cachedIssue.get().getRelatedIssues());
+    }
+
+    @Test
+    public void getFreshIssueExpired() throws Exception {
+        JiraIssueCache cache = new JiraIssueCache(temporaryFolder.newFolder(), -1);
+
+        cache.putIssue(new JiraIssueBuilder("EXAMPLE-1", "Add functionality for accounting")
+                .setStatus("In Progress")
+                .build());
+
+        assertFalse("The cached issue has expired", cache.getFreshIssue("EXAMPLE-1").isPresent());
+    }
+
+    @Test
+    public void getFreshIssueUnparsableFetchedTime() throws Exception {
+        File cacheDirectory = temporaryFolder.newFolder();
+        JiraIssueCache cache = new JiraIssueCache(cacheDirectory, TimeUnit.MINUTES.toMillis(15));
+        cache.putIssue(new JiraIssueBuilder("EXAMPLE-1", "Add functionality for accounting")
+                .setStatus("In Progress")
+                .build());
+
+        File cacheFile = new File(cacheDirectory, "issuecache.properties");
+        Files.asCharSink(cacheFile, Charsets.ISO_8859_1, FileWriteMode.APPEND).write("EXAMPLE-1.fetched=yesterday\n");
+
+        assertFalse("A damaged entry is a miss", cache.getFreshIssue("EXAMPLE-1").isPresent());
+    }
+
+    @Test
+    public void getFreshIssues() throws Exception {
+        JiraIssueCache cache = new JiraIssueCache(temporaryFolder.newFolder(), TimeUnit.MINUTES.toMillis(15));
+        cache.putIssue(new JiraIssueBuilder("EXAMPLE-1", "Add functionality for accounting")
+                .setStatus("In Progress")
+                .build());
+        cache.putIssue(new JiraIssueBuilder("EXAMPLE-3", "Add functionality for reporting")
+                .setStatus("Open")
+                .build());
+
+        Map<String, JiraIssue> freshIssues = cache.getFreshIssues(Arrays.asList("EXAMPLE-3", "EXAMPLE-2", "EXAMPLE-1"));
+
+        assertEquals(Arrays.asList("EXAMPLE-3", "EXAMPLE-1"), new ArrayList<>(freshIssues.keySet()));
+        assertEquals("Open", freshIssues.get("EXAMPLE-3").getStatus());
+        assertEquals("In Progress", freshIssues.get("EXAMPLE-1").getStatus());
+    }
+}
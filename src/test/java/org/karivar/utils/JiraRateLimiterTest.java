@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Ticker;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class JiraRateLimiterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ManualTicker ticker = new ManualTicker();
+
+    @After
+    public void tearDown() {
+        HookMetrics.reset();
+    }
+
+    @Test
+    public void tokenBucketLimitsRate() {
+        JiraRateLimiter limiter = new JiraRateLimiter(2, ticker);
+
+        limiter.tryAcquire().get().release();
+        limiter.tryAcquire().get().release();
+        assertFalse(limiter.tryAcquire().isPresent());
+
+        ticker.advance(500);
+        assertTrue(limiter.tryAcquire().isPresent());
+    }
+
+    @Test
+    public void concurrencyLimitsRequestsInFlight() {
+        JiraRateLimiter limiter = new JiraRateLimiter(1000, ticker);
+        List<JiraRateLimiter.Permit> permits = acquireAll(limiter);
+
+        assertEquals(4, permits.size());
+        assertEquals(4, limiter.getInFlight());
+
+        permits.get(0).release();
+        assertTrue(limiter.tryAcquire().isPresent());
+    }
+
+    @Test
+    public void fastResponsesIncreaseConcurrency() {
+        JiraRateLimiter limiter = new JiraRateLimiter(1000, ticker);
+
+        for (int i = 0; i < 5; i++) {
+            ticker.advance(100);
+            acquireAll(limiter).forEach(JiraRateLimiter.Permit::release);
+        }
+        int increasedLimit = limiter.getConcurrencyLimit();
+        for (int i = 0; i < 1000; i++) {
+            ticker.advance(100);
+            acquireAll(limiter).forEach(JiraRateLimiter.Permit::release);
+        }
+
+        assertTrue(increasedLimit > 4);
+        assertEquals(32, limiter.getConcurrencyLimit());
+    }
+
+    @Test
+    public void throttledResponsePausesForRetryAfter() {
+        JiraRateLimiter limiter = new JiraRateLimiter(1000, ticker);
+
+        limiter.tryAcquire().get().throttled(2000);
+
+        assertEquals(2, limiter.getConcurrencyLimit());
+        ticker.advance(1999);
+        assertFalse(limiter.tryAcquire().isPresent());
+        ticker.advance(1);
+        assertTrue(limiter.tryAcquire().isPresent());
+    }
+
+    @Test
+    public void throttledResponsePausesAtMostMaxPause() {
+        JiraRateLimiter limiter = new JiraRateLimiter(1000, ticker);
+
+        assertTrue(limiter.tryAcquire().get().throttled(JiraRateLimiter.MAX_PAUSE_MILLIS));
+        ticker.advance(JiraRateLimiter.MAX_PAUSE_MILLIS);
+        // JIRA asks to retry in an hour
+        assertFalse(limiter.tryAcquire().get().throttled(TimeUnit.HOURS.toMillis(1)));
+
+        ticker.advance(JiraRateLimiter.MAX_PAUSE_MILLIS - 1);
+        assertFalse(limiter.tryAcquire().isPresent());
+        ticker.advance(1);
+        assertTrue(limiter.tryAcquire().isPresent());
+    }
+
+    @Test
+    public void throttledRequestsSentTogetherDecreaseOnce() {
+        JiraRateLimiter limiter = new JiraRateLimiter(1000, ticker);
+        List<JiraRateLimiter.Permit> permits = acquireAll(limiter);
+
+        ticker.advance(100);
+        permits.forEach(permit -> permit.throttled(0));
+
+        assertEquals(2, limiter.getConcurrencyLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void throttledResponseWithoutRetryAfterBacksOff() {
+        JiraRateLimiter limiter = new JiraRateLimiter(1000, ticker);
+
+        limiter.tryAcquire().get().throttled(-1);
+
+        ticker.advance(249);
+        assertFalse(limiter.tryAcquire().isPresent());
+        ticker.advance(251);
+        assertTrue(limiter.tryAcquire().isPresent());
+    }
+
+    @Test
+    public void slowResponseDecreasesConcurrency() {
+        JiraRateLimiter limiter = new JiraRateLimiter(1000, ticker);
+        JiraRateLimiter.Permit permit = limiter.tryAcquire().get();
+
+        ticker.advance(3000);
+        permit.release();
+
+        assertEquals(3, limiter.getConcurrencyLimit());
+    }
+
+    @Test
+    public void failedRequestKeepsConcurrency() {
+        JiraRateLimiter limiter = new JiraRateLimiter(1000, ticker);
+        JiraRateLimiter.Permit permit = limiter.tryAcquire().get();
+
+        permit.failed();
+        permit.failed();
+
+        assertEquals(4, limiter.getConcurrencyLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void acquireWaitsForPause() throws Exception {
+        JiraRateLimiter limiter = new JiraRateLimiter(1000);
+        limiter.acquire().throttled(100);
+
+        long start = System.nanoTime();
+        limiter.acquire().release();
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+    }
+
+    @Test
+    public void parseRetryAfter() {
+        long now = 1500000000000L;
+
+        assertEquals(120000, JiraRateLimiter.parseRetryAfter("120", now));
+        assertEquals(30000, JiraRateLimiter.parseRetryAfter("Fri, 14 Jul 2017 02:40:30 GMT", now));
+        assertEquals(0, JiraRateLimiter.parseRetryAfter("Thu, 01 Jan 2015 00:00:00 GMT", now));
+        assertEquals(-1, JiraRateLimiter.parseRetryAfter("soon", now));
+        assertEquals(-1, JiraRateLimiter.parseRetryAfter(null, now));
+    }
+
+    @Test
+    public void limitsAreExposedAsMetrics() throws Exception {
+        JiraRateLimiter limiter = new JiraRateLimiter(5, ticker);
+        limiter.tryAcquire().get().throttled(0);
+
+        File metricsFile = new File(temporaryFolder.newFolder(), HookMetrics.METRICS_FILE);
+        HookMetrics.write(metricsFile);
+
+        List<String> lines = Files.readLines(metricsFile, Charsets.UTF_8);
+        assertTrue(lines.contains("githook_jira_request_rate 5"));
+        assertTrue(lines.contains("githook_jira_concurrency_limit 2"));
+    }
+
+    private static List<JiraRateLimiter.Permit> acquireAll(JiraRateLimiter limiter) {
+        List<JiraRateLimiter.Permit> permits = new ArrayList<>();
+        for (Optional<JiraRateLimiter.Permit> permit = limiter.tryAcquire(); permit.isPresent();
+             permit = limiter.tryAcquire()) {
+            permits.add(permit.get());
+        }
+        return permits;
+    }
+
+    private static final class ManualTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public synchronized long read() {
+            return nanos;
+        }
+
+        synchronized void advance(long millis) {
+            nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class JsonStreamReaderTest {
+
+    @Test
+    public void readObject() throws Exception {
+        JsonStreamReader reader = reader("{\"key\": \"EXAMPLE-1\", \"id\": 10001, \"subtask\": false, "
+                + "\"assignee\": null, \"summary\": \"Tab\\t\\\"quoted\\\" \\u00e5\"}");
+
+        reader.beginObject();
+        assertEquals("key", reader.nextName());
+        assertEquals("EXAMPLE-1", reader.nextString());
+        assertEquals("id", reader.nextName());
+        assertEquals(JsonStreamReader.Token.NUMBER, reader.peek());
+        assertEquals("10001", reader.nextString());
+        assertEquals("subtask", reader.nextName());
+        assertEquals("false", reader.nextString());
+        assertEquals("assignee", reader.nextName());
+        assertNull(reader.nextString());
+        assertEquals("summary", reader.nextName());
+        assertEquals("Tab\t\"quoted\" \u00e5", reader.nextString());
+        assertFalse(reader.hasNext());
+        reader.endObject();
+        assertEquals(JsonStreamReader.Token.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void readArray() throws Exception {
+        JsonStreamReader reader = reader("[ \"a\" , -1.5e3,[],{} ]");
+
+        reader.beginArray();
+        assertEquals("a", reader.nextString());
+        assertEquals("-1.5e3", reader.nextString());
+        reader.beginArray();
+        assertFalse(reader.hasNext());
+        reader.endArray();
+        reader.beginObject();
+        reader.endObject();
+        assertFalse(reader.hasNext());
+        reader.endArray();
+    }
+
+    @Test
+    public void skipValue() throws Exception {
+        JsonStreamReader reader = reader("{\"fields\": {\"labels\": [1, {\"a\": [true, null]}], \"b\": \"}\"}, "
+                + "\"key\": \"EXAMPLE-1\"}");
+
+        reader.beginObject();
+        assertEquals("fields", reader.nextName());
+        reader.skipValue();
+        assertEquals("key", reader.nextName());
+        assertEquals("EXAMPLE-1", reader.nextString());
+        reader.endObject();
+    }
+
+    @Test(expected = IOException.class)
+    public void missingComma() throws Exception {
+        JsonStreamReader reader = reader("{\"a\": 1 \"b\": 2}");
+
+        reader.beginObject();
+        reader.skipValue();
+        reader.skipValue();
+        reader.nextName();
+    }
+
+    @Test(expected = IOException.class)
+    public void unterminatedDocument() throws Exception {
+        JsonStreamReader reader = reader("{\"a\": [1, 2");
+
+        reader.beginObject();
+        reader.nextName();
+        reader.skipValue();
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidLiteral() throws Exception {
+        reader("[nope]").skipValue();
+    }
+
+    @Test(expected = IOException.class)
+    public void trailingContent() throws Exception {
+        JsonStreamReader reader = reader("{} {}");
+
+        reader.skipValue();
+        reader.peek();
+    }
+
+    private static JsonStreamReader reader(String json) {
+        return new JsonStreamReader(new StringReader(json));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.Test;
+import org.karivar.utils.other.MessageBundles;
+import org.karivar.utils.other.UTF8Control;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class MessageBundlesTest {
+
+    @Test
+    public void forLanguageEnglish() throws Exception {
+        assertSameMessages("EN", ResourceBundle.getBundle("messages", Locale.forLanguageTag("EN"),
+                new UTF8Control()), MessageBundles.forLanguage("EN"));
+    }
+
+    @Test
+    public void forLanguageNorwegian() throws Exception {
+        assertSameMessages("NO", ResourceBundle.getBundle("messages", Locale.forLanguageTag("NO"),
+                new UTF8Control()), MessageBundles.forLanguage("NO"));
+    }
+
+    @Test
+    public void forLanguageUnsupported() throws Exception {
+        ResourceBundle messages = MessageBundles.forLanguage("de");
+        ResourceBundle expected = ResourceBundle.getBundle("messages", Locale.ROOT, new UTF8Control());
+
+        assertSameMessages("de", expected, messages);
+    }
+
+    private void assertSameMessages(String language, ResourceBundle expected, ResourceBundle actual) {
+        Set<String> expectedKeys = new TreeSet<>(Collections.list(expected.getKeys()));
+        assertEquals(language, expectedKeys, new TreeSet<>(Collections.list(actual.getKeys())));
+
+        for (String key : expectedKeys) {
+            assertEquals(language + ": " + key, expected.getString(key), actual.getString(key));
+        }
+    }
+}
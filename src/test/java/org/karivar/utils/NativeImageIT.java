@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.io.Resources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Verifies that the native executable of the hook makes the same decisions as the hook running on the JVM,
+ * i.e the same exit code, commit message and decision for each commit message of the test resources.
+ * Run by the failsafe plugin of the native profile (mvn -P native verify). The test is skipped if the native
+ * executable given by the githook.native.executable system property doesn't exist.
+ */
+public class NativeImageIT {
+    private static final String[] COMMIT_MESSAGES = {
+            "emptycommit.txt",
+            "multilinemergecommit.txt",
+            "multilinenormalcommit.txt",
+            "multilinetraceabilitycommit.txt",
+            "onelineassigneeoverridden.txt",
+            "onelinejiraconnectionoverridden.txt",
+            "onelinenoijiraissue.txt",
+            "onelinenoissue.txt",
+            "onelinenone.txt",
+            "onelineunregisteredjirapattern.txt",
+            "onlinenormalcommit.txt"
+    };
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubJiraServer jira;
+
+    @Before
+    public void setUp() throws Exception {
+        jira = new StubJiraServer();
+        jira.start();
+        jira.addIssue("EXAMPLE-1", "Example issue", "In Progress", null, "EXAMPLE-2");
+    }
+
+    @After
+    public void tearDown() {
+        jira.stop();
+    }
+
+    @Test
+    public void nativeAndJvmDecisionsAreIdentical() throws Exception {
+        File executable = new File(System.getProperty("githook.native.executable", "target/githook"));
+        assumeTrue("The native executable " + executable + " doesn't exist", executable.canExecute());
+
+        HookRepository jvmRepository = new HookRepository(temporaryFolder.newFolder(), jira.getAddress(), "stub",
+                "stub", Arrays.asList("EXAMPLE", "PR"));
+        HookRepository nativeRepository = new HookRepository(temporaryFolder.newFolder(), jira.getAddress(), "stub",
+                "stub", Arrays.asList("EXAMPLE", "PR"));
+        List<String> jvmCommand = Arrays.asList(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", getAbsoluteClassPath(), "org.karivar.utils.GitHook");
+        List<String> nativeCommand = Collections.singletonList(executable.getAbsolutePath());
+
+        for (String resource : COMMIT_MESSAGES) {
+            String commitMessage = Resources.toString(Resources.getResource(resource), Charsets.UTF_8);
+            jvmRepository.clearHookDirectory();
+            nativeRepository.clearHookDirectory();
+
+            HookRepository.Run jvmRun = jvmRepository.run(jvmCommand, commitMessage);
+            HookRepository.Run nativeRun = nativeRepository.run(nativeCommand, commitMessage);
+
+            assertEquals(resource, jvmRun.getExitCode(), nativeRun.getExitCode());
+            assertEquals(resource, jvmRun.getCommitMessage(), nativeRun.getCommitMessage());
+
+            List<Decision> jvmDecisions = new DecisionLog(jvmRepository.getHookDirectory()).readAll();
+            List<Decision> nativeDecisions = new DecisionLog(nativeRepository.getHookDirectory()).readAll();
+            assertEquals(resource, jvmDecisions.size(), nativeDecisions.size());
+            for (int i = 0; i < jvmDecisions.size(); i++) {
+                assertEquals(resource, jvmDecisions.get(i).getVerdict(), nativeDecisions.get(i).getVerdict());
+                assertEquals(resource, jvmDecisions.get(i).getReason(), nativeDecisions.get(i).getReason());
+                assertEquals(resource, jvmDecisions.get(i).getIssueKey(), nativeDecisions.get(i).getIssueKey());
+            }
+        }
+    }
+
+    /**
+     * Gets the class path of the test with absolute paths, as the hook runs in the directory of the repository
+     * @return the class path
+     */
+    private static String getAbsoluteClassPath() {
+        List<String> classPath = new ArrayList<>();
+        for (String entry : Splitter.on(File.pathSeparatorChar).omitEmptyStrings()
+                .split(System.getProperty("java.class.path"))) {
+            classPath.add(new File(entry).getAbsolutePath());
+        }
+        return Joiner.on(File.pathSeparatorChar).join(classPath);
+    }
+}
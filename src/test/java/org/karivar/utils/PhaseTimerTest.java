@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PhaseTimerTest {
+
+    @After
+    public void tearDown() {
+        PhaseTimer.disable();
+    }
+
+    @Test
+    public void startDisabled() {
+        PhaseTimer.enable();
+        PhaseTimer.disable();
+
+        try (PhaseTimer.Phase ignored = PhaseTimer.start("disabled")) {
+            assertFalse(PhaseTimer.isEnabled());
+        }
+        assertTrue(PhaseTimer.getPhases().isEmpty());
+    }
+
+    @Test
+    public void startNestedPhases() throws Exception {
+        PhaseTimer.enable();
+
+        try (PhaseTimer.Phase ignored = PhaseTimer.start("outer")) {
+            try (PhaseTimer.Phase ignoredInner = PhaseTimer.start("inner")) {
+                Thread.sleep(2);
+            }
+        }
+
+        List<PhaseTimer.Phase> phases = PhaseTimer.getPhases();
+        assertEquals(2, phases.size());
+        assertEquals("inner", phases.get(0).getName());
+        assertEquals("outer", phases.get(1).getName());
+        assertTrue(phases.get(1).getDurationNanos() >= phases.get(0).getDurationNanos());
+        assertTrue(phases.get(0).getDurationNanos() > 0);
+
+        PhaseTimer.printWaterfall();
+    }
+
+    @Test
+    public void configureRemovesTraceArgument() {
+        String[] args = PhaseTimer.configure(new String[] { "--find", PhaseTimer.TRACE_ARGUMENT, "EXAMPLE-1" });
+
+        assertArrayEquals(new String[] { "--find", "EXAMPLE-1" }, args);
+        assertTrue(PhaseTimer.isEnabled());
+    }
+}
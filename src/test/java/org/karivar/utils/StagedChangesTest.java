@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class StagedChangesTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File gitDirectory;
+    private GitIndexWriter writer;
+    private final Map<String, String> files = new TreeMap<>();
+    private final List<String> changedPaths = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        gitDirectory = temporaryFolder.newFolder();
+        writer = new GitIndexWriter(gitDirectory);
+        files.put("README.md", GitIndexWriter.blobId("readme"));
+        files.put("docs/guide.md", GitIndexWriter.blobId("guide"));
+        files.put("src/Main.java", GitIndexWriter.blobId("main"));
+        files.put("src/util/Strings.java", GitIndexWriter.blobId("strings"));
+    }
+
+    @Test
+    public void modifiedExemptFileSkipsUnchangedDirectories() throws Exception {
+        writer.commit(files);
+        // The tree of src is skipped using the cached tree, so it doesn't have to exist
+        assertTrue(deleteTree("src"));
+        files.put("README.md", GitIndexWriter.blobId("new readme"));
+        writer.writeIndex(files, 2, Collections.singleton(""));
+
+        assertTrue(new StagedChanges(new GitRepository(gitDirectory)).allMatch(this::isDocumentation));
+        assertEquals(Collections.singletonList("README.md"), changedPaths);
+    }
+
+    @Test
+    public void modifiedFileInSubdirectory() throws Exception {
+        writer.commit(files);
+        files.put("src/util/Strings.java", GitIndexWriter.blobId("new strings"));
+        writer.writeIndex(files, 4, Arrays.asList("", "src", "src/util"));
+
+        StagedChanges stagedChanges = new StagedChanges(new GitRepository(gitDirectory));
+
+        assertFalse(stagedChanges.allMatch(this::isDocumentation));
+        assertTrue(stagedChanges.allMatch(path -> path.startsWith("src/")));
+    }
+
+    @Test
+    public void deletedAndAddedFiles() throws Exception {
+        writer.commit(files);
+        files.remove("src/util/Strings.java");
+        files.put("docs/install.md", GitIndexWriter.blobId("install"));
+        writer.writeIndex(files, 2, Arrays.asList("", "src", "docs"));
+
+        assertTrue(new StagedChanges(new GitRepository(gitDirectory)).allMatch(this::collect));
+        assertEquals(Arrays.asList("docs/install.md", "src/util/Strings.java"), changedPaths);
+    }
+
+    @Test
+    public void noChanges() throws Exception {
+        writer.commit(files);
+        writer.writeIndex(files, 2, Collections.emptySet());
+
+        assertFalse(new StagedChanges(new GitRepository(gitDirectory)).allMatch(this::collect));
+        assertTrue(changedPaths.isEmpty());
+    }
+
+    @Test
+    public void noCacheTree() throws Exception {
+        writer.commit(files);
+        files.put("docs/guide.md", GitIndexWriter.blobId("new guide"));
+        writer.writeIndex(files, 2, null);
+
+        assertTrue(new StagedChanges(new GitRepository(gitDirectory)).allMatch(this::isDocumentation));
+        assertEquals(Collections.singletonList("docs/guide.md"), changedPaths);
+    }
+
+    @Test
+    public void initialCommit() throws Exception {
+        Files.asCharSink(new File(gitDirectory, "HEAD"), Charsets.UTF_8).write("ref: refs/heads/master\n");
+        writer.writeIndex(files, 2, Collections.singleton(""));
+
+        assertTrue(new StagedChanges(new GitRepository(gitDirectory)).allMatch(this::collect));
+        assertEquals(new ArrayList<>(files.keySet()), changedPaths);
+    }
+
+    @Test(expected = IOException.class)
+    public void sha256Repository() throws Exception {
+        writer.commit(files);
+        writer.writeIndex(files, 2, Collections.singleton(""));
+        Files.asCharSink(new File(gitDirectory, "config"), Charsets.UTF_8)
+                .write("[core]\n\trepositoryformatversion = 1\n[extensions]\n\tobjectFormat = sha256\n");
+
+        new StagedChanges(new GitRepository(gitDirectory));
+    }
+
+    private boolean isDocumentation(String path) {
+        changedPaths.add(path);
+        return path.endsWith(".md");
+    }
+
+    private boolean collect(String path) {
+        changedPaths.add(path);
+        return true;
+    }
+
+    private boolean deleteTree(String directory) throws Exception {
+        GitRepository repository = new GitRepository(gitDirectory);
+        byte[] tree = repository.readTree(repository.getHeadTree().get()).get();
+        String entry = "40000 " + directory + "\0";
+        int start = new String(tree, Charsets.ISO_8859_1).indexOf(entry) + entry.length();
+        String objectId = BaseEncoding.base16().lowerCase().encode(tree, start, 20);
+        return new File(gitDirectory, "objects/" + objectId.substring(0, 2) + "/" + objectId.substring(2)).delete();
+    }
+}
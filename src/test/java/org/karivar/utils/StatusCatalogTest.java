@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.domain.WorkflowStatus;
+import org.karivar.utils.other.UTF8Control;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class StatusCatalogTest {
+
+    private static ResourceBundle resourceBundle;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() {
+        resourceBundle = ResourceBundle.getBundle("messages", Locale.forLanguageTag("en"),
+                new UTF8Control());
+    }
+
+    @Test
+    public void fromJson() throws Exception {
+        String json = Files.asCharSource(new File("src/test/resources/projectstatuses.json"), Charsets.UTF_8).read();
+        StatusCatalog catalog = StatusCatalog.fromJson("EXAMPLE", json, 1000L);
+
+        assertEquals(Optional.of(new WorkflowStatus("3", "In Progress", "indeterminate")),
+                catalog.getStatus("Bug", "3"));
+        assertEquals(Optional.of(new WorkflowStatus("10001", "Under Development", "indeterminate")),
+                catalog.getStatus("Task", "10001"));
+        assertFalse(catalog.getStatus("Task", "3").isPresent());
+        assertTrue(catalog.getStatus(null, "1").isPresent());
+    }
+
+    @Test
+    public void getCatalogFromCache() throws Exception {
+        StatusCatalogCache cache = new StatusCatalogCache(temporaryFolder.newFolder());
+        assertFalse(cache.getCatalog("EXAMPLE").isPresent());
+
+        StatusCatalog catalog = createCatalog(1000L);
+        cache.putCatalog(catalog);
+
+        Optional<StatusCatalog> cachedCatalog = cache.getCatalog("example");
+        assertTrue(cachedCatalog.isPresent());
+        assertEquals(1000L, cachedCatalog.get().getFetched());
+        assertEquals(catalog.getStatuses(), cachedCatalog.get().getStatuses());
+        assertEquals(catalog.getIssueTypeStatuses(), cachedCatalog.get().getIssueTypeStatuses());
+    }
+
+    @Test
+    public void resolveUsingCachedCatalog() throws Exception {
+        StatusCatalogCache cache = new StatusCatalogCache(temporaryFolder.newFolder());
+        cache.putCatalog(createCatalog(System.currentTimeMillis()));
+        List<String> fetchedProjects = new ArrayList<>();
+
+        StatusResolver resolver = new StatusResolver(cache, () -> createConnector(fetchedProjects, null),
+                TimeUnit.HOURS.toMillis(1));
+        JiraIssue issue = createIssue("EXAMPLE-1", "Task", "10001");
+        resolver.resolve(issue);
+
+        assertEquals("Under Development", issue.getStatus());
+        assertEquals("indeterminate", issue.getStatusCategory());
+        assertTrue(fetchedProjects.isEmpty());
+    }
+
+    @Test
+    public void resolveRefreshesCatalogOnce() throws Exception {
+        StatusCatalogCache cache = new StatusCatalogCache(temporaryFolder.newFolder());
+        cache.putCatalog(createCatalog(System.currentTimeMillis()));
+        List<String> fetchedProjects = new ArrayList<>();
+
+        // The workflow got a new status after the catalog was cached
+        StatusCatalog refreshedCatalog = new StatusCatalog("EXAMPLE", System.currentTimeMillis(),
+                ImmutableMap.of("10002", new WorkflowStatus("10002", "Peer Review", "indeterminate")),
+                ImmutableMap.of("Task", ImmutableSet.of("10002")));
+        StatusResolver resolver = new StatusResolver(cache, () -> createConnector(fetchedProjects, refreshedCatalog),
+                TimeUnit.HOURS.toMillis(1));
+
+        JiraIssue issue = createIssue("EXAMPLE-1", "Task", "10002");
+        resolver.resolve(issue);
+        assertEquals("Peer Review", issue.getStatus());
+
+        JiraIssue unknownIssue = createIssue("EXAMPLE-2", "Task", "99999");
+        resolver.resolve(unknownIssue);
+        assertNull(unknownIssue.getStatusCategory());
+        assertEquals(1, fetchedProjects.size());
+        assertTrue(cache.getCatalog("EXAMPLE").get().getStatuses().containsKey("10002"));
+    }
+
+    @Test
+    public void resolveRefreshesCatalogAgainWhenExpired() throws Exception {
+        StatusCatalogCache cache = new StatusCatalogCache(temporaryFolder.newFolder());
+        cache.putCatalog(createCatalog(System.currentTimeMillis()));
+        List<String> fetchedProjects = new ArrayList<>();
+        AtomicReference<StatusCatalog> jiraCatalog = new AtomicReference<>(createCatalog(System.currentTimeMillis()));
+
+        // A long-lived resolver, e.g shared by the in-process validator
+        StatusResolver resolver = new StatusResolver(cache, () -> new JiraConnector(resourceBundle) {
+            @Override
+            Optional<StatusCatalog> getStatusCatalog(String projectKey) {
+                fetchedProjects.add(projectKey);
+                return Optional.of(jiraCatalog.get());
+            }
+        }, 200);
+
+        JiraIssue issue = createIssue("EXAMPLE-1", "Task", "10002");
+        resolver.resolve(issue);
+        resolver.resolve(issue);
+        assertEquals("Status 10002", issue.getStatus());
+        assertEquals(1, fetchedProjects.size());
+
+        // The workflow got a new status after the catalog was refreshed
+        jiraCatalog.set(new StatusCatalog("EXAMPLE", System.currentTimeMillis(),
+                ImmutableMap.of("10002", new WorkflowStatus("10002", "Peer Review", "indeterminate")),
+                ImmutableMap.of("Task", ImmutableSet.of("10002"))));
+        Thread.sleep(300);
+
+        resolver.resolve(issue);
+        assertEquals("Peer Review", issue.getStatus());
+        assertEquals("indeterminate", issue.getStatusCategory());
+    }
+
+    private StatusCatalog createCatalog(long fetched) {
+        return new StatusCatalog("EXAMPLE", fetched,
+                ImmutableMap.of("3", new WorkflowStatus("3", "In Progress", "indeterminate"),
+                        "10001", new WorkflowStatus("10001", "Under Development", "indeterminate")),
+                ImmutableMap.of("Bug", ImmutableSet.of("3"), "Task", ImmutableSet.of("10001")));
+    }
+
+    private JiraIssue createIssue(String key, String issueType, String statusId) {
+        JiraIssue issue = new JiraIssue(key, "Summary");
+        issue.setIssueTypeName(issueType);
+        issue.setStatus("Status " + statusId);
+        issue.setStatusId(statusId);
+        return issue;
+    }
+
+    private JiraConnector createConnector(List<String> fetchedProjects, StatusCatalog catalog) {
+        return new JiraConnector(resourceBundle) {
+            @Override
+            Optional<StatusCatalog> getStatusCatalog(String projectKey) {
+                fetchedProjects.add(projectKey);
+                return Optional.ofNullable(catalog);
+            }
+        };
+    }
+}
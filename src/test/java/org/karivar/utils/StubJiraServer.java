@@ -0,0 +1,547 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An embedded JIRA serving the REST resources used by the hook, i.e the issue, search, session and project
+ * status resources. Issues are either generated from {@link #addIssue(String, String, String, String, String...)}
+ * or replayed from responses recorded from a real JIRA. Latency, jitter, errors and stalled responses may be
+ * injected to measure the hook offline (see {@link HookLatencyBenchmark}).
+ */
+class StubJiraServer {
+    private static final Pattern ISSUE_PATH = Pattern.compile("/rest/api/(?:2|latest)/issue/([^/]+)/?");
+    private static final Pattern STATUSES_PATH = Pattern.compile("/rest/api/(?:2|latest)/project/([^/]+)/statuses");
+    private static final Pattern SEARCH_PATH = Pattern.compile("/rest/api/(?:2|latest)/search");
+    private static final Pattern SESSION_PATH = Pattern.compile("/rest/auth/(?:1|latest)/session");
+    private static final Pattern KEYS_QUERY = Pattern.compile("key in \\((.*)\\)");
+    private static final String TIMESTAMP = "2017-01-01T10:00:00.000+0000";
+    private static final String RECORDING_SUFFIX = ".json";
+
+    private final Map<String, StubIssue> issues = new ConcurrentHashMap<>();
+    private final Map<String, String> movedKeys = new ConcurrentHashMap<>();
+    private final Map<String, Response> responses = new ConcurrentHashMap<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger throttledResponses = new AtomicInteger();
+    private HttpServer server;
+    private ExecutorService executor;
+    private String baseAddress;
+
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double errorRate;
+    private volatile long stallMillis;
+    private volatile long retryAfterSeconds = -1;
+    private volatile String recordAddress;
+    private volatile File recordDirectory;
+
+    /**
+     * Starts the server on a free port of the loopback interface
+     * @throws IOException if the server can't be started
+     */
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        // Injected latency must not delay the other requests (e.g the related issues fetched in parallel)
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "stub-jira");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        baseAddress = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the address to use as githook.jira.address
+     * @return the address ending with /
+     */
+    String getAddress() {
+        return baseAddress;
+    }
+
+    int getRequestCount() {
+        return requestCount.get();
+    }
+
+    void resetRequestCount() {
+        requestCount.set(0);
+    }
+
+    /**
+     * Adds an issue. Each link is a related issue of the link type Relates, and the related issues are added
+     * as well if they don't exist
+     * @param key the JIRA issue key
+     * @param summary the summary
+     * @param status the name of the status
+     * @param parentKey the key of the parent issue or null if the issue isn't a sub-task
+     * @param linkedKeys the keys of the related issues
+     */
+    void addIssue(String key, String summary, String status, String parentKey, String... linkedKeys) {
+        issues.put(key, new StubIssue(key, summary, status, parentKey, linkedKeys));
+        for (String linkedKey : linkedKeys) {
+            issues.putIfAbsent(linkedKey, new StubIssue(linkedKey, "Related to " + key, "Open", null));
+        }
+        if (parentKey != null) {
+            issues.putIfAbsent(parentKey, new StubIssue(parentKey, "Parent of " + key, "In Progress", null));
+        }
+    }
+
+    /**
+     * Moves an issue to another project. Like JIRA, the issue is still found by its old key
+     * @param key the JIRA issue key
+     * @param newKey the key of the issue in the other project
+     */
+    void moveIssue(String key, String newKey) {
+        StubIssue issue = issues.remove(key);
+        issues.put(newKey, new StubIssue(newKey, issue.summary, issue.status, issue.parentKey, issue.linkedKeys));
+        movedKeys.put(key, newKey);
+    }
+
+    /**
+     * Sets the response of the given path regardless of the generated issues
+     * @param path the path without query, e.g /rest/api/2/project/EXAMPLE/statuses
+     * @param status the HTTP status code
+     * @param body the JSON body
+     */
+    void setResponse(String path, int status, String body) {
+        responses.put(path, new Response(status, body));
+    }
+
+    /**
+     * Delays each response
+     * @param latencyMillis the fixed delay
+     * @param jitterMillis the maximum random delay added to the fixed delay
+     */
+    void setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * Answers a share of the requests with 503 Service Unavailable
+     * @param errorRate the share of failed requests (0 - 1)
+     */
+    void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Answers the next requests with 429 Too Many Requests, like a JIRA protecting itself from load
+     * @param responses the number of throttled responses
+     * @param retryAfterSeconds the value of the Retry-After header or -1 to leave it out
+     */
+    void setThrottled(int responses, long retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+        throttledResponses.set(responses);
+    }
+
+    /**
+     * Holds each response for the given time, i.e longer than the read timeout of the client to simulate
+     * a JIRA which doesn't answer
+     * @param stallMillis the time to hold the response or 0 to answer normally
+     */
+    void setStall(long stallMillis) {
+        this.stallMillis = stallMillis;
+    }
+
+    /**
+     * Forwards all requests to a real JIRA and records the responses. The authorization of the client
+     * is forwarded as well
+     * @param jiraAddress the address of the JIRA
+     * @param directory the directory to write the recorded responses to
+     */
+    void record(String jiraAddress, File directory) {
+        this.recordAddress = jiraAddress.endsWith("/") ? jiraAddress.substring(0, jiraAddress.length() - 1)
+                : jiraAddress;
+        this.recordDirectory = directory;
+    }
+
+    /**
+     * Replays the responses recorded by {@link #record(String, File)}
+     * @param directory the directory containing the recorded responses
+     * @return the number of replayed responses
+     * @throws IOException if a recorded response can't be read
+     */
+    int replay(File directory) throws IOException {
+        File[] recordings = directory.listFiles((dir, name) -> name.endsWith(RECORDING_SUFFIX));
+        if (recordings == null) {
+            return 0;
+        }
+
+        for (File recording : recordings) {
+            try {
+                JSONObject object = new JSONObject(Files.asCharSource(recording, Charsets.UTF_8).read());
+                setResponse(object.getString("path"), object.getInt("status"), object.getString("body"));
+            } catch (JSONException e) {
+                throw new IOException("Malformed recording " + recording, e);
+            }
+        }
+        return recordings.length;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try {
+            delay();
+            Response response;
+            if (throttledResponses.getAndUpdate(responses -> Math.max(0, responses - 1)) > 0) {
+                response = new Response(429, errorMessages("Rate limit exceeded"));
+                if (retryAfterSeconds >= 0) {
+                    exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+                }
+            } else if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                response = new Response(HttpURLConnection.HTTP_UNAVAILABLE,
+                        errorMessages("Injected error of the stub JIRA"));
+            } else if (recordAddress != null) {
+                response = forward(exchange);
+            } else {
+                response = getResponse(exchange.getRequestURI().getPath(),
+                        exchange.getRequestURI().getRawQuery());
+            }
+
+            byte[] body = response.body.getBytes(Charsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+            exchange.sendResponseHeaders(response.status, body.length == 0 ? -1 : body.length);
+            try (OutputStream stream = exchange.getResponseBody()) {
+                stream.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (JSONException e) {
+            throw new IOException(e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        long delayMillis = stallMillis > 0 ? stallMillis : latencyMillis;
+        if (jitterMillis > 0) {
+            delayMillis += ThreadLocalRandom.current().nextLong(jitterMillis + 1);
+        }
+        if (delayMillis > 0) {
+            TimeUnit.MILLISECONDS.sleep(delayMillis);
+        }
+    }
+
+    private Response getResponse(String path, String query) throws JSONException {
+        Response response = responses.get(path);
+        if (response != null) {
+            return response;
+        }
+
+        Matcher matcher = ISSUE_PATH.matcher(path);
+        if (matcher.matches()) {
+            StubIssue issue = issues.get(movedKeys.getOrDefault(matcher.group(1), matcher.group(1)));
+            return issue != null ? new Response(HttpURLConnection.HTTP_OK, issueJson(issue))
+                    : new Response(HttpURLConnection.HTTP_NOT_FOUND,
+                    errorMessages("Issue Does Not Exist"));
+        }
+        matcher = STATUSES_PATH.matcher(path);
+        if (matcher.matches()) {
+            return new Response(HttpURLConnection.HTTP_OK, statusesJson());
+        }
+        if (SEARCH_PATH.matcher(path).matches()) {
+            return new Response(HttpURLConnection.HTTP_OK, searchJson(query));
+        }
+        if (SESSION_PATH.matcher(path).matches()) {
+            return new Response(HttpURLConnection.HTTP_OK, new JSONObject()
+                    .put("self", baseAddress + "rest/api/latest/user?username=stub")
+                    .put("name", "stub")
+                    .put("loginInfo", new JSONObject().put("loginCount", 1).put("previousLoginTime", TIMESTAMP))
+                    .toString());
+        }
+        return new Response(HttpURLConnection.HTTP_NOT_FOUND, errorMessages("Unknown resource " + path));
+    }
+
+    private Response forward(HttpExchange exchange) throws IOException, JSONException {
+        String query = exchange.getRequestURI().getRawQuery();
+        URL url = new URL(recordAddress + exchange.getRequestURI().getRawPath() + (query != null ? "?" + query : ""));
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod(exchange.getRequestMethod());
+            connection.setRequestProperty("Accept", "application/json");
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization != null) {
+                connection.setRequestProperty("Authorization", authorization);
+            }
+            if ("POST".equals(exchange.getRequestMethod()) || "PUT".equals(exchange.getRequestMethod())) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream stream = connection.getOutputStream()) {
+                    ByteStreams.copy(exchange.getRequestBody(), stream);
+                }
+            }
+
+            int status = connection.getResponseCode();
+            InputStream stream = status < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream()
+                    : connection.getErrorStream();
+            String body = "";
+            if (stream != null) {
+                try (InputStream responseStream = stream) {
+                    body = new String(ByteStreams.toByteArray(responseStream), Charsets.UTF_8);
+                }
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            if (!recordDirectory.exists() && !recordDirectory.mkdirs()) {
+                throw new IOException("Unable to create " + recordDirectory);
+            }
+            Files.asCharSink(new File(recordDirectory, path.replaceAll("[^A-Za-z0-9.-]", "_") + RECORDING_SUFFIX),
+                    Charsets.UTF_8).write(new JSONObject().put("path", path).put("status", status)
+                    .put("body", body).toString());
+            return new Response(status, body);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private String issueJson(StubIssue issue) throws JSONException {
+        JSONObject fields = new JSONObject();
+        fields.put("summary", issue.summary);
+        fields.put("issuetype", issue.parentKey != null ? issueType("5", "Sub-task", true)
+                : issueType("3", "Task", false));
+        fields.put("project", new JSONObject()
+                .put("self", baseAddress + "rest/api/2/project/" + issue.projectKey)
+                .put("id", "10000")
+                .put("key", issue.projectKey)
+                .put("name", issue.projectKey));
+        fields.put("status", status(issue.status));
+        fields.put("priority", new JSONObject()
+                .put("self", baseAddress + "rest/api/2/priority/3")
+                .put("id", "3")
+                .put("name", "Major")
+                .put("iconUrl", baseAddress + "images/icons/priorities/major.svg"));
+        fields.put("assignee", new JSONObject()
+                .put("self", baseAddress + "rest/api/2/user?username=stub")
+                .put("name", "stub")
+                .put("displayName", "Stub User")
+                .put("active", true)
+                .put("avatarUrls", new JSONObject().put("48x48", baseAddress + "secure/useravatar?avatarId=1")));
+        fields.put("created", TIMESTAMP);
+        fields.put("updated", TIMESTAMP);
+        fields.put("labels", new JSONArray());
+        fields.put("votes", new JSONObject()
+                .put("self", baseAddress + "rest/api/2/issue/" + issue.key + "/votes")
+                .put("votes", 0)
+                .put("hasVoted", false));
+        fields.put("watches", new JSONObject()
+                .put("self", baseAddress + "rest/api/2/issue/" + issue.key + "/watchers")
+                .put("watchCount", 0)
+                .put("isWatching", false));
+
+        if (issue.parentKey != null) {
+            StubIssue parent = issues.get(issue.parentKey);
+            fields.put("parent", new JSONObject()
+                    .put("id", parent.id)
+                    .put("key", parent.key)
+                    .put("self", baseAddress + "rest/api/2/issue/" + parent.id)
+                    .put("fields", new JSONObject()
+                            .put("summary", parent.summary)
+                            .put("status", status(parent.status))
+                            .put("issuetype", issueType("3", "Task", false))));
+        }
+
+        JSONArray links = new JSONArray();
+        for (int i = 0; i < issue.linkedKeys.length; i++) {
+            StubIssue linked = issues.get(issue.linkedKeys[i]);
+            links.put(new JSONObject()
+                    .put("id", String.valueOf(10000 + i))
+                    .put("self", baseAddress + "rest/api/2/issueLink/" + (10000 + i))
+                    .put("type", new JSONObject()
+                            .put("id", "10003")
+                            .put("name", "Relates")
+                            .put("inward", "relates to")
+                            .put("outward", "relates to")
+                            .put("self", baseAddress + "rest/api/2/issueLinkType/10003"))
+                    .put("outwardIssue", new JSONObject()
+                            .put("id", linked.id)
+                            .put("key", linked.key)
+                            .put("self", baseAddress + "rest/api/2/issue/" + linked.id)
+                            .put("fields", new JSONObject()
+                                    .put("summary", linked.summary)
+                                    .put("status", status(linked.status)))));
+        }
+        fields.put("issuelinks", links);
+
+        return new JSONObject()
+                .put("expand", "renderedFields")
+                .put("id", issue.id)
+                .put("self", baseAddress + "rest/api/latest/issue/" + issue.id)
+                .put("key", issue.key)
+                .put("fields", fields)
+                .toString();
+    }
+
+    private JSONObject issueType(String id, String name, boolean subtask) throws JSONException {
+        return new JSONObject()
+                .put("self", baseAddress + "rest/api/2/issuetype/" + id)
+                .put("id", id)
+                .put("name", name)
+                .put("description", name)
+                .put("subtask", subtask)
+                .put("iconUrl", baseAddress + "images/icons/issuetypes/task.svg");
+    }
+
+    private JSONObject status(String name) throws JSONException {
+        String id = String.valueOf(Math.abs(name.hashCode() % 10000) + 1);
+        return new JSONObject()
+                .put("self", baseAddress + "rest/api/2/status/" + id)
+                .put("id", id)
+                .put("name", name)
+                .put("description", name)
+                .put("iconUrl", baseAddress + "images/icons/statuses/generic.png")
+                .put("statusCategory", new JSONObject()
+                        .put("self", baseAddress + "rest/api/2/statuscategory/4")
+                        .put("id", 4)
+                        .put("key", "indeterminate")
+                        .put("colorName", "yellow")
+                        .put("name", "In Progress"));
+    }
+
+    private String statusesJson() throws JSONException {
+        // The statuses of all generated issues belong to one workflow
+        JSONArray statuses = new JSONArray();
+        List<String> names = new ArrayList<>();
+        for (StubIssue issue : issues.values()) {
+            if (!names.contains(issue.status)) {
+                names.add(issue.status);
+                statuses.put(status(issue.status));
+            }
+        }
+
+        JSONArray issueTypes = new JSONArray();
+        issueTypes.put(issueType("3", "Task", false).put("statuses", statuses));
+        issueTypes.put(issueType("5", "Sub-task", true).put("statuses", statuses));
+        return issueTypes.toString();
+    }
+
+    private String searchJson(String query) throws JSONException {
+        // The issues are found regardless of the JQL, unless it asks for keys. Pages hold at most 50 issues,
+        // like JIRA limits the pages
+        int startAt = getIntParameter(query, "startAt", 0);
+        int maxResults = Math.min(50, getIntParameter(query, "maxResults", 50));
+        List<StubIssue> sortedIssues = new ArrayList<>(issues.values());
+        Matcher matcher = KEYS_QUERY.matcher(getParameter(query, "jql"));
+        if (matcher.matches()) {
+            // Unknown keys are ignored like JIRA does when the query isn't validated
+            Set<String> keys = new HashSet<>();
+            for (String key : matcher.group(1).split(",")) {
+                keys.add(movedKeys.getOrDefault(key.trim(), key.trim()));
+            }
+            sortedIssues.removeIf(issue -> !keys.contains(issue.key));
+        }
+        sortedIssues.sort(Comparator.comparing(issue -> issue.key));
+
+        JSONArray page = new JSONArray();
+        for (StubIssue issue : sortedIssues.subList(Math.min(startAt, sortedIssues.size()),
+                Math.min(startAt + maxResults, sortedIssues.size()))) {
+            page.put(new JSONObject(issueJson(issue)));
+        }
+        return new JSONObject()
+                .put("expand", "names,schema")
+                .put("startAt", startAt)
+                .put("maxResults", maxResults)
+                .put("total", sortedIssues.size())
+                .put("issues", page)
+                .toString();
+    }
+
+    private static String getParameter(String query, String name) {
+        Matcher matcher = Pattern.compile("(?:^|&)" + name + "=([^&]*)").matcher(query != null ? query : "");
+        try {
+            return matcher.find() ? URLDecoder.decode(matcher.group(1), Charsets.UTF_8.name()) : "";
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int getIntParameter(String query, String name, int defaultValue) {
+        Matcher matcher = Pattern.compile("(?:^|&)" + name + "=(\\d+)").matcher(query != null ? query : "");
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : defaultValue;
+    }
+
+    private static String errorMessages(String message) throws JSONException {
+        return new JSONObject()
+                .put("errorMessages", new JSONArray().put(message))
+                .put("errors", new JSONObject())
+                .toString();
+    }
+
+    private static final class StubIssue {
+        private final String key;
+        private final String id;
+        private final String projectKey;
+        private final String summary;
+        private final String status;
+        private final String parentKey;
+        private final String[] linkedKeys;
+
+        private StubIssue(String key, String summary, String status, String parentKey, String... linkedKeys) {
+            this.key = key;
+            this.id = String.valueOf(10000 + Math.abs(key.hashCode() % 90000));
+            this.projectKey = key.substring(0, key.indexOf('-'));
+            this.summary = summary;
+            this.status = status;
+            this.parentKey = parentKey;
+            this.linkedKeys = linkedKeys;
+        }
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String body;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2017 Per Ivar Gjerløw
+ * All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+package org.karivar.utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.karivar.utils.domain.IssueKeyNotFoundException;
+import org.karivar.utils.domain.JiraIssue;
+import org.karivar.utils.other.MessageBundles;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StubJiraServerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubJiraServer jira;
+
+    @Before
+    public void setUp() throws Exception {
+        jira = new StubJiraServer();
+        jira.start();
+        jira.addIssue("EXAMPLE-1", "Example issue", "In Progress", "EXAMPLE-2", "EXAMPLE-3", "EXAMPLE-4");
+    }
+
+    @After
+    public void tearDown() {
+        jira.stop();
+    }
+
+    @Test
+    public void getIssue() throws Exception {
+        HttpURLConnection connection = open(jira, "rest/api/latest/issue/EXAMPLE-1?expand=names");
+        assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+
+        JSONObject fields = new JSONObject(read(connection)).getJSONObject("fields");
+        assertEquals("Example issue", fields.getString("summary"));
+        assertEquals("EXAMPLE-2", fields.getJSONObject("parent").getString("key"));
+        assertEquals(2, fields.getJSONArray("issuelinks").length());
+        assertEquals(1, jira.getRequestCount());
+    }
+
+    @Test
+    public void getMissingIssue() throws Exception {
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                open(jira, "rest/api/latest/issue/EXAMPLE-404").getResponseCode());
+    }
+
+    @Test
+    public void getRelatedIssue() throws Exception {
+        assertEquals(HttpURLConnection.HTTP_OK, open(jira, "rest/api/2/issue/EXAMPLE-3").getResponseCode());
+    }
+
+    @Test
+    public void injectedErrors() throws Exception {
+        jira.setErrorRate(1);
+        assertEquals(HttpURLConnection.HTTP_UNAVAILABLE,
+                open(jira, "rest/api/latest/issue/EXAMPLE-1").getResponseCode());
+    }
+
+    @Test
+    public void injectedLatency() throws Exception {
+        jira.setLatency(200, 0);
+        long start = System.nanoTime();
+        assertEquals(HttpURLConnection.HTTP_OK, open(jira, "rest/auth/1/session").getResponseCode());
+        assertTrue(System.nanoTime() - start >= 200_000_000L);
+    }
+
+    @Test
+    public void recordAndReplay() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        StubJiraServer recorder = new StubJiraServer();
+        recorder.start();
+        try {
+            recorder.record(jira.getAddress(), directory);
+            assertEquals(HttpURLConnection.HTTP_OK,
+                    open(recorder, "rest/api/latest/issue/EXAMPLE-1").getResponseCode());
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                    open(recorder, "rest/api/latest/issue/EXAMPLE-404").getResponseCode());
+        } finally {
+            recorder.stop();
+        }
+
+        StubJiraServer player = new StubJiraServer();
+        player.start();
+        try {
+            assertEquals(2, player.replay(directory));
+            HttpURLConnection connection = open(player, "rest/api/latest/issue/EXAMPLE-1");
+            assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+            assertEquals("EXAMPLE-1", new JSONObject(read(connection)).getString("key"));
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                    open(player, "rest/api/latest/issue/EXAMPLE-404").getResponseCode());
+        } finally {
+            player.stop();
+        }
+    }
+
+    @Test
+    public void getStatusCatalog() {
+        JiraConnector jiraConnector = new JiraConnector(MessageBundles.forLanguage("en"));
+        jiraConnector.connectToJira("stub", "c3R1Yg==", jira.getAddress());
+
+        Optional<StatusCatalog> statusCatalog = jiraConnector.getStatusCatalog("EXAMPLE");
+        assertTrue(statusCatalog.isPresent());
+    }
+
+    @Test
+    public void getStatusCatalogThrottled() {
+        JiraConnector jiraConnector = new JiraConnector(MessageBundles.forLanguage("en"));
+        jiraConnector.connectToJira("stub", "c3R1Yg==", jira.getAddress());
+        jira.setThrottled(1, 1);
+
+        long start = System.nanoTime();
+        Optional<StatusCatalog> statusCatalog = jiraConnector.getStatusCatalog("EXAMPLE");
+
+        assertTrue(statusCatalog.isPresent());
+        assertEquals(2, jira.getRequestCount());
+        assertTrue(System.nanoTime() - start >= 1_000_000_000L);
+    }
+
+    @Test
+    public void getStatusCatalogThrottledTooOften() {
+        JiraConnector jiraConnector = new JiraConnector(MessageBundles.forLanguage("en"));
+        jiraConnector.connectToJira("stub", "c3R1Yg==", jira.getAddress());
+        jira.setThrottled(JiraRateLimiter.MAX_ATTEMPTS, 0);
+
+        assertFalse(jiraConnector.getStatusCatalog("EXAMPLE").isPresent());
+        assertEquals(JiraRateLimiter.MAX_ATTEMPTS, jira.getRequestCount());
+    }
+
+    @Test
+    public void getStatusCatalogRetryAfterTooLong() {
+        JiraConnector jiraConnector = new JiraConnector(MessageBundles.forLanguage("en"));
+        jiraConnector.connectToJira("stub", "c3R1Yg==", jira.getAddress());
+        jira.setThrottled(1, TimeUnit.HOURS.toSeconds(1));
+
+        long start = System.nanoTime();
+        assertFalse(jiraConnector.getStatusCatalog("EXAMPLE").isPresent());
+
+        assertEquals(1, jira.getRequestCount());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void getJiraPopulatedIssuesMissingIssueReleasesPermits() {
+        JiraRateLimiter rateLimiter = new JiraRateLimiter(JiraRateLimiter.DEFAULT_REQUESTS_PER_SECOND);
+        JiraConnector jiraConnector = new JiraConnector(MessageBundles.forLanguage("en"), rateLimiter);
+        jiraConnector.connectToJira("stub", "c3R1Yg==", jira.getAddress());
+
+        try {
+            jiraConnector.getJiraPopulatedIssues(Arrays.asList("EXAMPLE-404", "EXAMPLE-1", "EXAMPLE-405"),
+                    Collections.emptySet(), false);
+            fail("EXAMPLE-404 doesn't exist");
+        } catch (IssueKeyNotFoundException e) {
+            assertEquals(0, rateLimiter.getInFlight());
+        }
+    }
+
+    @Test
+    public void searchIssuesPageByPage() throws Exception {
+        for (int i = 5; i <= 120; i++) {
+            jira.addIssue("EXAMPLE-" + i, "Example issue " + i, "Done", null);
+        }
+        JiraConnector jiraConnector = new JiraConnector(MessageBundles.forLanguage("en"));
+        jiraConnector.connectToJira("stub", "c3R1Yg==", jira.getAddress());
+
+        Optional<List<JiraIssue>> issues = jiraConnector.searchIssues("project in (\"EXAMPLE\") ORDER BY key");
+
+        assertTrue(issues.isPresent());
+        assertEquals(120, issues.get().size());
+        assertEquals(3, jira.getRequestCount());
+
+        File snapshotFile = new File(temporaryFolder.getRoot(), IssueSnapshot.SNAPSHOT_FILENAME);
+        IssueSnapshot.write(snapshotFile, issues.get(), System.currentTimeMillis(),
+                Collections.singletonList("EXAMPLE"), Collections.emptyList());
+        IssueSnapshot snapshot = IssueSnapshot.open(snapshotFile).get();
+        JiraIssue issue = snapshot.getIssue("EXAMPLE-1").get();
+        assertEquals("Example issue", issue.getSummary());
+        assertEquals("EXAMPLE-2", issue.getParentIssue().get().getKey());
+        assertEquals("indeterminate", issue.getStatusCategory());
+        assertEquals("stub", issue.getAssignee().get().getName());
+        assertTrue(snapshot.isMissing("EXAMPLE-0"));
+    }
+
+    @Test
+    public void findMovedIssueKeys() throws Exception {
+        jira.addIssue("EXAMPLE-320", "Moved issue", "Done", null);
+        jira.addIssue("EXAMPLE-450", "Moved issue", "Done", null);
+        jira.moveIssue("EXAMPLE-320", "OTHER-1");
+        jira.moveIssue("EXAMPLE-450", "OTHER-2");
+        List<String> missingIssueKeys = new ArrayList<>();
+        for (int i = 300; i < 500; i++) {
+            missingIssueKeys.add("EXAMPLE-" + i);
+        }
+        JiraConnector jiraConnector = new JiraConnector(MessageBundles.forLanguage("en"));
+        jiraConnector.connectToJira("stub", "c3R1Yg==", jira.getAddress());
+
+        assertEquals(Optional.of(Arrays.asList("EXAMPLE-320", "EXAMPLE-450")),
+                jiraConnector.findMovedIssueKeys(missingIssueKeys));
+        // Only the batches with moved issues are split
+        assertTrue(jira.getRequestCount() < 40);
+    }
+
+    @Test
+    public void searchIssuesThrottledTooOften() {
+        JiraConnector jiraConnector = new JiraConnector(MessageBundles.forLanguage("en"));
+        jiraConnector.connectToJira("stub", "c3R1Yg==", jira.getAddress());
+        jira.setThrottled(JiraRateLimiter.MAX_ATTEMPTS, 0);
+
+        assertFalse(jiraConnector.searchIssues("project = EXAMPLE").isPresent());
+    }
+
+    private static HttpURLConnection open(StubJiraServer server, String resource) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getAddress() + resource)
+                .openConnection();
+        connection.setReadTimeout(5000);
+        return connection;
+    }
+
+    private static String read(HttpURLConnection connection) throws IOException {
+        try (InputStream stream = connection.getInputStream()) {
+            return new String(ByteStreams.toByteArray(stream), Charsets.UTF_8);
+        }
+    }
+}